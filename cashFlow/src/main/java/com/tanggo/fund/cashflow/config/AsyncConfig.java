@@ -1,55 +1,46 @@
 package com.tanggo.fund.cashflow.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 异步配置
+ *
+ * 线程池均为InstrumentedTaskExecutor，指标按Bean名打标签，可通过JMX的executors端点在线调整容量。
+ * 计算路径不经过线程池，由ticker分区工作线程执行(见SpyTickerPartitions，指标spy.partition.queue.depth)
  */
 @Configuration
-@EnableAsync
 @Slf4j
 public class AsyncConfig {
     
     /**
-     * SPY数据处理线程池
+     * WebSocket广播分发线程池
+     *
+     * 任务为各会话发送队列的排空任务，每个会话同时最多一个，因此队列长度不超过会话数。
+     * 队列满时拒绝(由发送队列断开该会话)，不回退到调用线程，广播/计算线程不会被慢客户端阻塞
      */
-    @Bean(name = "spyTaskExecutor")
-    public Executor spyTaskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    @Bean(name = "wsFanoutExecutor")
+    public InstrumentedTaskExecutor wsFanoutExecutor(@Value("${app.spy.websocket.fanout-threads:4}") int threads,
+                                                     MeterRegistry meterRegistry) {
+        InstrumentedTaskExecutor executor = new InstrumentedTaskExecutor("wsFanoutExecutor", meterRegistry);
         
-        // 核心线程数
-        executor.setCorePoolSize(2);
-        
-        // 最大线程数
-        executor.setMaxPoolSize(5);
-        
-        // 队列容量
-        executor.setQueueCapacity(100);
-        
-        // 线程名前缀
-        executor.setThreadNamePrefix("SPY-Calc-");
-        
-        // 线程空闲时间
-        executor.setKeepAliveSeconds(60);
-        
-        // 拒绝策略：调用线程执行
-        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
-        
-        // 等待任务完成后关闭
-        executor.setWaitForTasksToCompleteOnShutdown(true);
-        executor.setAwaitTerminationSeconds(30);
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(100000);
+        executor.setThreadNamePrefix("WS-Fanout-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
         
         executor.initialize();
         
-        log.info("SPY任务执行器初始化完成: 核心线程={}, 最大线程={}, 队列容量={}", 
-            executor.getCorePoolSize(), executor.getMaxPoolSize(), executor.getQueueCapacity());
+        log.info("WebSocket分发执行器初始化完成: 线程数={}", threads);
         
         return executor;
     }
@@ -58,8 +49,8 @@ public class AsyncConfig {
      * 通用数据处理线程池
      */
     @Bean(name = "dataTaskExecutor")
-    public Executor dataTaskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    public InstrumentedTaskExecutor dataTaskExecutor(MeterRegistry meterRegistry) {
+        InstrumentedTaskExecutor executor = new InstrumentedTaskExecutor("dataTaskExecutor", meterRegistry);
         
         executor.setCorePoolSize(3);
         executor.setMaxPoolSize(8);
@@ -77,4 +68,26 @@ public class AsyncConfig {
         
         return executor;
     }
-}
\ No newline at end of file
+    
+    /**
+     * 定时任务调度器(Boot自动配置的taskScheduler)的任务执行耗时
+     *
+     * 线程数、队列等由Boot绑定；周期任务只在调度时包装一次，因此不统计排队耗时
+     */
+    @Bean
+    public ThreadPoolTaskSchedulerCustomizer taskSchedulerMetricsCustomizer(MeterRegistry meterRegistry) {
+        Timer runTimer = Timer.builder("executor.task.run")
+            .description("任务执行耗时")
+            .tag("name", "taskScheduler")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        return scheduler -> scheduler.setTaskDecorator(task -> () -> {
+            long started = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                runTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+}
@@ -0,0 +1,92 @@
+package com.tanggo.fund.cashflow.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanggo.fund.cashflow.spy.cache.InMemorySpyL2CacheStore;
+import com.tanggo.fund.cashflow.spy.cache.RedisSpyL2CacheStore;
+import com.tanggo.fund.cashflow.spy.cache.SpyCacheNames;
+import com.tanggo.fund.cashflow.spy.cache.SpyL2CacheStore;
+import com.tanggo.fund.cashflow.spy.cache.SpyTwoLevelCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 缓存配置
+ *
+ * 一级：进程内Caffeine(大小+时间淘汰)；二级：Redis(app.cache.l2=redis)或进程内替身(app.cache.l2=memory)
+ */
+@Configuration
+@EnableCaching
+@Slf4j
+public class CacheConfig {
+    
+    @Bean
+    public SpyTwoLevelCacheManager cacheManager(SpyL2CacheStore l2CacheStore,
+                                                MeterRegistry meterRegistry,
+                                                @Value("${app.cache.local.max-size:1000}") long localMaxSize,
+                                                @Value("${app.cache.local.ttl:60s}") Duration localTtl,
+                                                @Value("${app.cache.local.range-max-size:200}") long rangeMaxSize) {
+        SpyTwoLevelCacheManager cacheManager = new SpyTwoLevelCacheManager(l2CacheStore, meterRegistry,
+            localMaxSize, localTtl, Map.of(SpyCacheNames.RANGE, rangeMaxSize));
+        
+        // 预创建缓存以便启动即注册指标
+        cacheManager.getCache(SpyCacheNames.LATEST);
+        cacheManager.getCache(SpyCacheNames.BY_DATE);
+        cacheManager.getCache(SpyCacheNames.RANGE);
+        
+        log.info("两级缓存配置完成: 本地容量={}, 范围缓存容量={}, 本地TTL={}, 二级={}",
+            localMaxSize, rangeMaxSize, localTtl, l2CacheStore.getClass().getSimpleName());
+        
+        return cacheManager;
+    }
+    
+    /**
+     * Redis二级缓存
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "app.cache.l2", havingValue = "redis", matchIfMissing = true)
+    static class RedisL2Configuration {
+        
+        @Bean
+        public SpyL2CacheStore spyL2CacheStore(RedisConnectionFactory connectionFactory,
+                                               StringRedisTemplate stringRedisTemplate,
+                                               ObjectMapper objectMapper,
+                                               @Value("${app.cache.redis.ttl:10m}") Duration ttl) {
+            RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+            redisTemplate.setConnectionFactory(connectionFactory);
+            redisTemplate.setKeySerializer(StringRedisSerializer.UTF_8);
+            redisTemplate.setValueSerializer(GenericJackson2JsonRedisSerializer.builder()
+                .objectMapper(objectMapper.copy())
+                .defaultTyping(true)
+                .build());
+            redisTemplate.afterPropertiesSet();
+            
+            return new RedisSpyL2CacheStore(redisTemplate, stringRedisTemplate, connectionFactory, ttl);
+        }
+    }
+    
+    /**
+     * 进程内二级缓存替身
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "app.cache.l2", havingValue = "memory")
+    static class InMemoryL2Configuration {
+        
+        @Bean
+        public SpyL2CacheStore spyL2CacheStore(@Value("${app.cache.redis.ttl:10m}") Duration ttl) {
+            return new InMemorySpyL2CacheStore(ttl);
+        }
+    }
+}
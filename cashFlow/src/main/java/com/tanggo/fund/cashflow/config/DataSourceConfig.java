@@ -0,0 +1,76 @@
+package com.tanggo.fund.cashflow.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * 数据源配置
+ *
+ * DuckDB只允许单写者：写池固定1个连接，只供单写线程(SpyPersistenceWriter)使用；
+ * 控制器、WebSocket等只读查询走独立的读连接池
+ */
+@Configuration
+@Slf4j
+public class DataSourceConfig {
+    
+    /**
+     * 写连接池(单连接)
+     */
+    @Bean(name = "writeDataSource", destroyMethod = "close")
+    public HikariDataSource writeDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .build();
+        dataSource.setPoolName("DuckDB-Writer");
+        dataSource.setMaximumPoolSize(1);
+        dataSource.setMinimumIdle(1);
+        return dataSource;
+    }
+    
+    /**
+     * 读连接池
+     *
+     * DuckDB不支持连接级只读标记，只读语义由路由保证
+     */
+    @Bean(name = "readDataSource", destroyMethod = "close")
+    public HikariDataSource readDataSource(DataSourceProperties properties,
+                                           @Value("${app.persistence.read-pool-size:8}") int readPoolSize) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .build();
+        dataSource.setPoolName("DuckDB-Reader");
+        dataSource.setMaximumPoolSize(readPoolSize);
+        dataSource.setMinimumIdle(Math.min(2, readPoolSize));
+        return dataSource;
+    }
+    
+    /**
+     * 主数据源：按事务只读标记路由读写连接池
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("writeDataSource") DataSource writeDataSource,
+                                 @Qualifier("readDataSource") DataSource readDataSource) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource();
+        routing.setTargetDataSources(Map.of(
+            ReadWriteRoutingDataSource.WRITE, writeDataSource,
+            ReadWriteRoutingDataSource.READ, readDataSource));
+        routing.setDefaultTargetDataSource(writeDataSource);
+        routing.afterPropertiesSet();
+        
+        log.info("读写分离数据源配置完成: 写池=1, 读池={}",
+            ((HikariDataSource) readDataSource).getMaximumPoolSize());
+        
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
@@ -0,0 +1,109 @@
+package com.tanggo.fund.cashflow.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.JmxEndpoint;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 线程池管理端点(JMX: org.springframework.boot:type=Endpoint,name=Executors)
+ *
+ * executors/executor查看各线程池容量与负载；resize按名称携带corePoolSize/maxPoolSize/queueCapacity在线调整，
+ * 未提供的参数保持不变。调度器只支持调整corePoolSize(即线程数)。
+ * 写操作没有鉴权，因此只通过JMX暴露，不提供HTTP访问
+ */
+@Component
+@JmxEndpoint(id = "executors")
+@Slf4j
+public class ExecutorsEndpoint {
+
+    private final Map<String, InstrumentedTaskExecutor> executors;
+    private final Map<String, ThreadPoolTaskScheduler> schedulers;
+
+    public ExecutorsEndpoint(Map<String, InstrumentedTaskExecutor> executors,
+                             Map<String, ThreadPoolTaskScheduler> schedulers) {
+        this.executors = executors;
+        this.schedulers = schedulers;
+    }
+
+    @ReadOperation
+    public Map<String, PoolDescriptor> executors() {
+        Map<String, PoolDescriptor> descriptors = new TreeMap<>();
+        executors.forEach((name, executor) -> descriptors.put(name, describe(executor)));
+        schedulers.forEach((name, scheduler) -> descriptors.put(name, describe(scheduler)));
+        return descriptors;
+    }
+
+    @ReadOperation
+    public PoolDescriptor executor(@Selector String name) {
+        InstrumentedTaskExecutor executor = executors.get(name);
+        if (executor != null) {
+            return describe(executor);
+        }
+        ThreadPoolTaskScheduler scheduler = schedulers.get(name);
+        return scheduler != null ? describe(scheduler) : null;
+    }
+
+    @WriteOperation
+    public PoolDescriptor resize(@Selector String name,
+                                 @Nullable Integer corePoolSize,
+                                 @Nullable Integer maxPoolSize,
+                                 @Nullable Integer queueCapacity) {
+        InstrumentedTaskExecutor executor = executors.get(name);
+        ThreadPoolTaskScheduler scheduler = schedulers.get(name);
+        if (executor == null && scheduler == null) {
+            return null;
+        }
+
+        try {
+            if (executor != null) {
+                executor.resize(corePoolSize, maxPoolSize, queueCapacity);
+            } else {
+                if (maxPoolSize != null || queueCapacity != null) {
+                    throw new IllegalArgumentException("调度器只支持调整corePoolSize");
+                }
+                if (corePoolSize != null) {
+                    if (corePoolSize <= 0) {
+                        throw new IllegalArgumentException("线程数无效: " + corePoolSize);
+                    }
+                    scheduler.setPoolSize(corePoolSize);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+
+        PoolDescriptor descriptor = executor(name);
+        log.info("线程池已调整: name={}, core={}, max={}, queueCapacity={}",
+            name, descriptor.corePoolSize(), descriptor.maxPoolSize(), descriptor.queueCapacity());
+        return descriptor;
+    }
+
+    private static PoolDescriptor describe(InstrumentedTaskExecutor executor) {
+        ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+        return new PoolDescriptor(executor.getCorePoolSize(), executor.getMaxPoolSize(), executor.getQueueCapacity(),
+            pool.getPoolSize(), pool.getActiveCount(), pool.getQueue().size(), pool.getCompletedTaskCount());
+    }
+
+    private static PoolDescriptor describe(ThreadPoolTaskScheduler scheduler) {
+        ThreadPoolExecutor pool = scheduler.getScheduledThreadPoolExecutor();
+        return new PoolDescriptor(pool.getCorePoolSize(), pool.getMaximumPoolSize(), Integer.MAX_VALUE,
+            pool.getPoolSize(), pool.getActiveCount(), pool.getQueue().size(), pool.getCompletedTaskCount());
+    }
+
+    /**
+     * 线程池容量与当前负载
+     */
+    public record PoolDescriptor(int corePoolSize, int maxPoolSize, int queueCapacity,
+                                 int poolSize, int activeCount, int queueSize, long completedTaskCount) {
+    }
+}
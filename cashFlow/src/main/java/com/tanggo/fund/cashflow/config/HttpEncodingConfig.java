@@ -0,0 +1,40 @@
+package com.tanggo.fund.cashflow.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * 二进制编码配置
+ *
+ * CBOR/Smile转换器沿用Spring Boot的Jackson配置，按Accept头参与内容协商；
+ * Arrow IPC流由DuckDB查询结果直接导出，共用一个根内存分配器
+ */
+@Configuration
+public class HttpEncodingConfig {
+    
+    public static final String APPLICATION_ARROW_STREAM_VALUE = "application/vnd.apache.arrow.stream";
+    public static final MediaType APPLICATION_ARROW_STREAM = MediaType.parseMediaType(APPLICATION_ARROW_STREAM_VALUE);
+    
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+    
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+    
+    @Bean(destroyMethod = "close")
+    public BufferAllocator arrowBufferAllocator() {
+        return new RootAllocator();
+    }
+}
@@ -0,0 +1,138 @@
+package com.tanggo.fund.cashflow.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带指标、可在运行时调整容量的线程池
+ *
+ * 活跃线程、队列长度等由Boot按Bean名绑定为executor.*指标；这里补充任务排队/执行耗时直方图与拒绝(含CallerRuns)次数，
+ * 标签name同为Bean名。ThreadPoolTaskExecutor的队列创建后容量固定，这里改用软上限队列，核心/最大线程数与队列容量均可在线调整
+ */
+public class InstrumentedTaskExecutor extends ThreadPoolTaskExecutor {
+
+    private final String name;
+    private final MeterRegistry meterRegistry;
+    private final Timer waitTimer;
+    private final Timer runTimer;
+    private volatile ResizableQueue queue;
+
+    public InstrumentedTaskExecutor(String name, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.meterRegistry = meterRegistry;
+        this.waitTimer = Timer.builder("executor.task.wait")
+            .description("任务提交到开始执行的排队耗时")
+            .tag("name", name)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.runTimer = Timer.builder("executor.task.run")
+            .description("任务执行耗时")
+            .tag("name", name)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+
+        setTaskDecorator(task -> {
+            long submitted = System.nanoTime();
+            return () -> {
+                long started = System.nanoTime();
+                waitTimer.record(started - submitted, TimeUnit.NANOSECONDS);
+                try {
+                    task.run();
+                } finally {
+                    runTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            };
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 拒绝策略外包一层计数，CallerRunsPolicy下即调用线程自己执行任务的次数
+     */
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler rejectedExecutionHandler) {
+        Counter rejected = Counter.builder("executor.rejected")
+            .description("队列已满被拒绝的任务数(CallerRunsPolicy下由调用线程执行)")
+            .tag("name", name)
+            .tag("policy", rejectedExecutionHandler.getClass().getSimpleName())
+            .register(meterRegistry);
+        super.setRejectedExecutionHandler((task, executor) -> {
+            rejected.increment();
+            rejectedExecutionHandler.rejectedExecution(task, executor);
+        });
+    }
+
+    @Override
+    public void setQueueCapacity(int queueCapacity) {
+        super.setQueueCapacity(queueCapacity);
+        ResizableQueue current = queue;
+        if (current != null) {
+            current.capacity = queueCapacity;
+        }
+    }
+
+    @Override
+    protected BlockingQueue<Runnable> createQueue(int queueCapacity) {
+        ResizableQueue created = new ResizableQueue(queueCapacity);
+        this.queue = created;
+        return created;
+    }
+
+    /**
+     * 调整核心/最大线程数与队列容量，null表示不变；扩容立即生效，缩容时多余线程在空闲后退出、队列中已有任务不丢弃
+     */
+    public synchronized void resize(Integer corePoolSize, Integer maxPoolSize, Integer queueCapacity) {
+        int core = corePoolSize != null ? corePoolSize : getCorePoolSize();
+        int max = maxPoolSize != null ? maxPoolSize : getMaxPoolSize();
+        if (core < 0 || max <= 0 || core > max) {
+            throw new IllegalArgumentException("线程数无效: core=" + core + ", max=" + max);
+        }
+        if (queueCapacity != null && queueCapacity < 0) {
+            throw new IllegalArgumentException("队列容量无效: " + queueCapacity);
+        }
+
+        // ThreadPoolExecutor要求任意时刻core<=max，按扩缩方向决定设置顺序
+        if (max >= getMaxPoolSize()) {
+            setMaxPoolSize(max);
+            setCorePoolSize(core);
+        } else {
+            setCorePoolSize(core);
+            setMaxPoolSize(max);
+        }
+        if (queueCapacity != null) {
+            setQueueCapacity(queueCapacity);
+        }
+    }
+
+    /**
+     * 软上限队列: 线程池只通过offer入队，超过上限时返回false以触发扩线程或拒绝策略；并发入队可能短暂超出上限几个元素
+     */
+    private static class ResizableQueue extends LinkedBlockingQueue<Runnable> {
+
+        private volatile int capacity;
+
+        ResizableQueue(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            return size() < capacity && super.offer(task);
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return Math.max(0, capacity - size());
+        }
+    }
+}
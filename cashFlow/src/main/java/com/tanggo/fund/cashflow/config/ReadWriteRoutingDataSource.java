@@ -0,0 +1,21 @@
+package com.tanggo.fund.cashflow.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 读写分离路由数据源
+ *
+ * 只读事务路由到读连接池，其余(写事务、无事务访问)路由到单连接写池。
+ * 需配合LazyConnectionDataSourceProxy使用，保证路由时事务同步状态已就绪
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+    
+    public static final String WRITE = "write";
+    public static final String READ = "read";
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? READ : WRITE;
+    }
+}
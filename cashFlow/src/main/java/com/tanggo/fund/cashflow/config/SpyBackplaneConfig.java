@@ -0,0 +1,52 @@
+package com.tanggo.fund.cashflow.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanggo.fund.cashflow.spy.event.InMemorySpyUpdateBackplane;
+import com.tanggo.fund.cashflow.spy.event.RedisSpyUpdateBackplane;
+import com.tanggo.fund.cashflow.spy.event.SpyUpdateBackplane;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 实时更新背板配置
+ *
+ * Redis pub/sub(app.spy.backplane.type=redis)使多实例各自向本地会话广播；进程内替身(app.spy.backplane.type=memory)
+ */
+@Configuration
+public class SpyBackplaneConfig {
+
+    /**
+     * Redis背板
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "app.spy.backplane.type", havingValue = "redis", matchIfMissing = true)
+    static class RedisBackplaneConfiguration {
+
+        @Bean
+        public SpyUpdateBackplane spyUpdateBackplane(StringRedisTemplate stringRedisTemplate,
+                                                     RedisConnectionFactory connectionFactory,
+                                                     ObjectMapper objectMapper,
+                                                     MeterRegistry meterRegistry,
+                                                     @Value("${app.spy.backplane.channel:spy:updates}") String channel) {
+            return new RedisSpyUpdateBackplane(stringRedisTemplate, connectionFactory, objectMapper, meterRegistry, channel);
+        }
+    }
+
+    /**
+     * 进程内背板替身
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "app.spy.backplane.type", havingValue = "memory")
+    static class InMemoryBackplaneConfiguration {
+
+        @Bean
+        public SpyUpdateBackplane spyUpdateBackplane(MeterRegistry meterRegistry) {
+            return new InMemorySpyUpdateBackplane(meterRegistry);
+        }
+    }
+}
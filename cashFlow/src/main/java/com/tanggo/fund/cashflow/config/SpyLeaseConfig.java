@@ -0,0 +1,77 @@
+package com.tanggo.fund.cashflow.config;
+
+import com.tanggo.fund.cashflow.spy.repository.InMemorySpyLeaseStore;
+import com.tanggo.fund.cashflow.spy.repository.JdbcSpyLeaseStore;
+import com.tanggo.fund.cashflow.spy.repository.RedisSpyLeaseStore;
+import com.tanggo.fund.cashflow.spy.repository.SpyLeaseStore;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 采集租约存储配置
+ *
+ * Redis(app.spy.lease.type=redis，与背板共用同一Redis)；数据库表(app.spy.lease.type=jdbc，仅限各实例共享的数据库服务)；
+ * 进程内替身(app.spy.lease.type=memory，单实例)
+ */
+@Configuration
+public class SpyLeaseConfig {
+
+    /**
+     * Redis租约
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "app.spy.lease.type", havingValue = "redis", matchIfMissing = true)
+    static class RedisLeaseConfiguration {
+
+        @Bean
+        public SpyLeaseStore spyLeaseStore(StringRedisTemplate stringRedisTemplate,
+                                           @Value("${app.spy.lease.key:spy:leases}") String key) {
+            return new RedisSpyLeaseStore(stringRedisTemplate, key);
+        }
+    }
+
+    /**
+     * 数据库表租约
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "app.spy.lease.type", havingValue = "jdbc")
+    static class JdbcLeaseConfiguration {
+
+        @Bean
+        public SpyLeaseStore spyLeaseStore(JdbcTemplate jdbcTemplate, SpyPersistenceWriter persistenceWriter,
+                                           @Value("${spring.datasource.url:}") String url) {
+            requireSharedDatabase(url);
+            return new JdbcSpyLeaseStore(jdbcTemplate, persistenceWriter);
+        }
+    }
+
+    /**
+     * 进程内租约替身
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "app.spy.lease.type", havingValue = "memory")
+    static class InMemoryLeaseConfiguration {
+
+        @Bean
+        public SpyLeaseStore spyLeaseStore() {
+            return new InMemorySpyLeaseStore();
+        }
+    }
+
+    /**
+     * 嵌入式数据库只在本进程可见，其他实例看不到租约，每个实例都会认为自己是唯一的采集节点
+     */
+    static void requireSharedDatabase(String url) {
+        boolean embedded = (url.startsWith("jdbc:duckdb:") && !url.startsWith("jdbc:duckdb:md:"))
+            || (url.startsWith("jdbc:h2:") && !url.startsWith("jdbc:h2:tcp:") && !url.startsWith("jdbc:h2:ssl:"));
+        if (embedded) {
+            throw new IllegalStateException("app.spy.lease.type=jdbc要求各实例共享同一数据库，" +
+                "嵌入式数据库(" + url + ")无法跨实例可见，请改用app.spy.lease.type=redis或memory(单实例)");
+        }
+    }
+}
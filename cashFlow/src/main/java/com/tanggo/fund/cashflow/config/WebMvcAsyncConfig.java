@@ -0,0 +1,64 @@
+package com.tanggo.fund.cashflow.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Spring MVC异步请求配置
+ *
+ * 应用自定义了Executor，Boot不再创建applicationTaskExecutor，MVC会退回为每次写出新建线程。
+ * SSE推送和流式响应改用固定大小的线程池，一次广播给大量连接只会排队而不会创建大量线程
+ */
+@Configuration
+@Slf4j
+public class WebMvcAsyncConfig implements WebMvcConfigurer {
+
+    private final AsyncTaskExecutor mvcAsyncExecutor;
+    private final Duration requestTimeout;
+
+    public WebMvcAsyncConfig(@Qualifier("mvcAsyncExecutor") AsyncTaskExecutor mvcAsyncExecutor,
+                             @Value("${app.spy.stream.timeout:30m}") Duration requestTimeout) {
+        this.mvcAsyncExecutor = mvcAsyncExecutor;
+        this.requestTimeout = requestTimeout;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(mvcAsyncExecutor);
+        // 超时后连接正常结束，SSE客户端带Last-Event-ID自动重连
+        configurer.setDefaultTimeout(requestTimeout.toMillis());
+    }
+
+    /**
+     * MVC异步写出线程池
+     */
+    @Bean(name = "mvcAsyncExecutor")
+    public static InstrumentedTaskExecutor mvcAsyncExecutor(
+            @Value("${app.spy.stream.async-threads:16}") int threads,
+            @Value("${app.spy.stream.async-queue-capacity:100000}") int queueCapacity,
+            MeterRegistry meterRegistry) {
+        InstrumentedTaskExecutor executor = new InstrumentedTaskExecutor("mvcAsyncExecutor", meterRegistry);
+
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("Mvc-Async-");
+        // 队列满时由推送线程自己写出，形成背压
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+
+        log.info("MVC异步执行器初始化完成: 线程数={}, 队列容量={}", threads, queueCapacity);
+
+        return executor;
+    }
+}
@@ -1,30 +1,125 @@
 package com.tanggo.fund.cashflow.config;
 
 import com.tanggo.fund.cashflow.spy.websocket.SpyWebSocketHandler;
-import lombok.RequiredArgsConstructor;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.Lifecycle;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.HandshakeHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
 
 /**
  * WebSocket配置
  */
 @Configuration
 @EnableWebSocket
-@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketConfigurer {
-    
+
     private final SpyWebSocketHandler spyWebSocketHandler;
-    
+    private final boolean permessageDeflate;
+
+    public WebSocketConfig(SpyWebSocketHandler spyWebSocketHandler,
+                           @Value("${app.spy.websocket.permessage-deflate:true}") boolean permessageDeflate) {
+        this.spyWebSocketHandler = spyWebSocketHandler;
+        this.permessageDeflate = permessageDeflate;
+    }
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        // SPY实时数据WebSocket端点
+        // SPY实时数据WebSocket端点；原生WebSocket客户端连接/ws/spy/websocket，可协商子协议与压缩
+        // 握手处理器须在withSockJS之前设置，SockJS的websocket传输才会使用它
         registry.addHandler(spyWebSocketHandler, "/ws/spy")
+                .setHandshakeHandler(handshakeHandler())
                 .setAllowedOrigins("*") // 生产环境应配置具体域名
                 .withSockJS(); // 支持SockJS降级
-        
+
         // 未来可添加其他资产类别的WebSocket端点
         // registry.addHandler(otherHandler, "/ws/bonds").setAllowedOrigins("*");
     }
-}
\ No newline at end of file
+
+    /**
+     * 容器(Tomcat)已安装permessage-deflate，客户端请求时即协商启用；
+     * Tomcat在未指定扩展时会回退到全部内置扩展，因此关闭时直接对握手隐藏客户端请求的扩展
+     */
+    private HandshakeHandler handshakeHandler() {
+        DefaultHandshakeHandler delegate = new DefaultHandshakeHandler();
+        if (permessageDeflate) {
+            return delegate;
+        }
+        return new WithoutExtensionsHandshakeHandler(delegate);
+    }
+
+    private static class WithoutExtensionsHandshakeHandler implements HandshakeHandler, Lifecycle {
+
+        private final DefaultHandshakeHandler delegate;
+
+        WithoutExtensionsHandshakeHandler(DefaultHandshakeHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean doHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            if (request instanceof ServletServerHttpRequest servletRequest) {
+                request = new ServletServerHttpRequest(new WithoutExtensions(servletRequest.getServletRequest()));
+            }
+            return delegate.doHandshake(request, response, wsHandler, attributes);
+        }
+
+        @Override
+        public void start() {
+            delegate.start();
+        }
+
+        @Override
+        public void stop() {
+            delegate.stop();
+        }
+
+        @Override
+        public boolean isRunning() {
+            return delegate.isRunning();
+        }
+    }
+
+    private static class WithoutExtensions extends HttpServletRequestWrapper {
+
+        WithoutExtensions(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isExtensions(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return isExtensions(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+                    .filter(name -> !isExtensions(name))
+                    .toList());
+        }
+
+        private static boolean isExtensions(String name) {
+            return WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS.equalsIgnoreCase(name);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * 进程内二级缓存(单实例部署及测试环境下替代Redis)
+ */
+public class InMemorySpyL2CacheStore implements SpyL2CacheStore {
+    
+    private final Map<String, Map<String, Entry>> caches = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    
+    public InMemorySpyL2CacheStore(Duration ttl) {
+        this.ttlMillis = ttl.toMillis();
+    }
+    
+    @Override
+    public Object get(String cacheName, String key) {
+        Entry entry = cache(cacheName).get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            cache(cacheName).remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+    
+    @Override
+    public void put(String cacheName, String key, Object value) {
+        cache(cacheName).put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+    }
+    
+    @Override
+    public void evict(String cacheName, String key) {
+        cache(cacheName).remove(key);
+    }
+    
+    @Override
+    public void clear(String cacheName) {
+        cache(cacheName).clear();
+    }
+    
+    @Override
+    public Set<String> keys(String cacheName) {
+        return new HashSet<>(cache(cacheName).keySet());
+    }
+    
+    @Override
+    public void publishEviction(String cacheName, String key) {
+        // 单实例无需通知
+    }
+    
+    @Override
+    public void onRemoteEviction(BiConsumer<String, String> listener) {
+        // 单实例无远程淘汰
+    }
+    
+    private Map<String, Entry> cache(String cacheName) {
+        return caches.computeIfAbsent(cacheName, name -> new ConcurrentHashMap<>());
+    }
+    
+    private record Entry(Object value, long expiresAt) {
+    }
+}
@@ -0,0 +1,142 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Redis二级缓存，淘汰通知通过Redis pub/sub广播给其他实例
+ */
+@Slf4j
+public class RedisSpyL2CacheStore implements SpyL2CacheStore, DisposableBean {
+    
+    private static final String KEY_SEPARATOR = "::";
+    private static final String EVICTION_CHANNEL = "spy:cache:evict";
+    private static final String ALL_KEYS = "*";
+    
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final Duration ttl;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final List<BiConsumer<String, String>> evictionListeners = new CopyOnWriteArrayList<>();
+    
+    public RedisSpyL2CacheStore(RedisTemplate<String, Object> redisTemplate,
+                                StringRedisTemplate stringRedisTemplate,
+                                RedisConnectionFactory connectionFactory,
+                                Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.ttl = ttl;
+        
+        // 监听容器不注册为Bean，避免Redis不可用时阻塞应用启动
+        this.listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.addMessageListener((message, pattern) ->
+            handleEvictionMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(EVICTION_CHANNEL));
+    }
+    
+    /**
+     * 订阅淘汰通知频道
+     *
+     * Redis不可用时定期重试
+     */
+    @Scheduled(initialDelay = 0, fixedDelay = 30000)
+    public void ensureSubscribed() {
+        if (listenerContainer.isRunning()) {
+            return;
+        }
+        
+        try {
+            listenerContainer.start();
+            log.info("已订阅缓存淘汰通知频道: {}", EVICTION_CHANNEL);
+        } catch (Exception e) {
+            log.warn("订阅缓存淘汰通知失败，稍后重试: {}", e.getMessage());
+        }
+    }
+    
+    @Override
+    public void destroy() throws Exception {
+        listenerContainer.destroy();
+    }
+    
+    @Override
+    public Object get(String cacheName, String key) {
+        return redisTemplate.opsForValue().get(redisKey(cacheName, key));
+    }
+    
+    @Override
+    public void put(String cacheName, String key, Object value) {
+        redisTemplate.opsForValue().set(redisKey(cacheName, key), value, ttl);
+    }
+    
+    @Override
+    public void evict(String cacheName, String key) {
+        redisTemplate.delete(redisKey(cacheName, key));
+    }
+    
+    @Override
+    public void clear(String cacheName) {
+        Set<String> keys = keys(cacheName);
+        if (!keys.isEmpty()) {
+            redisTemplate.delete(keys.stream().map(key -> redisKey(cacheName, key)).toList());
+        }
+    }
+    
+    @Override
+    public Set<String> keys(String cacheName) {
+        String prefix = cacheName + KEY_SEPARATOR;
+        Set<String> keys = new HashSet<>();
+        ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(500).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            cursor.forEachRemaining(redisKey -> keys.add(redisKey.substring(prefix.length())));
+        }
+        return keys;
+    }
+    
+    @Override
+    public void publishEviction(String cacheName, String key) {
+        String message = instanceId + KEY_SEPARATOR + cacheName + KEY_SEPARATOR + (key != null ? key : ALL_KEYS);
+        stringRedisTemplate.convertAndSend(EVICTION_CHANNEL, message);
+    }
+    
+    @Override
+    public void onRemoteEviction(BiConsumer<String, String> listener) {
+        evictionListeners.add(listener);
+    }
+    
+    private void handleEvictionMessage(String message) {
+        String[] parts = message.split(KEY_SEPARATOR, 3);
+        if (parts.length != 3 || instanceId.equals(parts[0])) {
+            return; // 忽略格式错误及本实例发出的通知
+        }
+        
+        String key = ALL_KEYS.equals(parts[2]) ? null : parts[2];
+        for (BiConsumer<String, String> listener : evictionListeners) {
+            listener.accept(parts[1], key);
+        }
+        log.debug("收到远程缓存淘汰通知: cache={}, key={}", parts[1], parts[2]);
+    }
+    
+    private static String redisKey(String cacheName, String key) {
+        return cacheName + KEY_SEPARATOR + key;
+    }
+}
@@ -0,0 +1,33 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import java.time.LocalDate;
+
+/**
+ * SPY结果缓存名称
+ */
+public final class SpyCacheNames {
+    
+    /** 最新结果，键为ticker */
+    public static final String LATEST = "spyFlowLatest";
+    
+    /** 按日期的结果，键为 ticker:yyyy-MM-dd */
+    public static final String BY_DATE = "spyFlowByDate";
+    
+    /** 日期范围结果，键为 ticker:start_end */
+    public static final String RANGE = "spyFlowRange";
+    
+    public static final String TICKER_KEY_SEPARATOR = ":";
+    
+    public static final String RANGE_KEY_SEPARATOR = "_";
+    
+    public static String dateKey(String ticker, LocalDate date) {
+        return ticker + TICKER_KEY_SEPARATOR + date;
+    }
+    
+    public static String rangeKey(String ticker, LocalDate startDate, LocalDate endDate) {
+        return ticker + TICKER_KEY_SEPARATOR + startDate + RANGE_KEY_SEPARATOR + endDate;
+    }
+    
+    private SpyCacheNames() {
+    }
+}
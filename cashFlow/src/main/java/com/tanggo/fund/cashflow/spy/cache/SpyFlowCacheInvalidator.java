@@ -0,0 +1,59 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.event.SpyFlowResultSavedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * 结果保存后精确失效相关缓存项
+ *
+ * 只淘汰该ticker的最新结果、该日期结果以及覆盖该日期的范围结果。
+ * 远程结果同样淘汰：发布实例广播的淘汰可能早于本实例写入该结果，期间的查询会把不含该结果的数据重新缓存
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SpyFlowCacheInvalidator {
+    
+    private final SpyTwoLevelCacheManager cacheManager;
+    
+    @EventListener
+    public void onResultSaved(SpyFlowResultSavedEvent event) {
+        SpyFlowResult result = event.getResult();
+        String ticker = result.getTicker() != null ? result.getTicker() : SpyFlowHotWindow.DEFAULT_TICKER;
+        LocalDate dataDate = result.getDataDate();
+        
+        cacheManager.getCache(SpyCacheNames.LATEST).evict(ticker);
+        cacheManager.getCache(SpyCacheNames.BY_DATE).evict(SpyCacheNames.dateKey(ticker, dataDate));
+        cacheManager.getCache(SpyCacheNames.RANGE).evictIf(key -> rangeContains(key, ticker, dataDate));
+        
+        log.debug("SPY结果缓存已失效: ticker={}, dataDate={}", ticker, dataDate);
+    }
+    
+    /**
+     * 判断范围键(ticker:start_end)是否属于该ticker且覆盖指定日期
+     */
+    static boolean rangeContains(String rangeKey, String ticker, LocalDate date) {
+        String prefix = ticker + SpyCacheNames.TICKER_KEY_SEPARATOR;
+        if (!rangeKey.startsWith(prefix)) {
+            return !rangeKey.contains(SpyCacheNames.TICKER_KEY_SEPARATOR); // 无法识别的键保守淘汰
+        }
+        
+        String[] bounds = rangeKey.substring(prefix.length()).split(SpyCacheNames.RANGE_KEY_SEPARATOR, 2);
+        if (bounds.length != 2) {
+            return true; // 无法识别的键保守淘汰
+        }
+        
+        try {
+            return !date.isBefore(LocalDate.parse(bounds[0])) && !date.isAfter(LocalDate.parse(bounds[1]));
+        } catch (DateTimeParseException e) {
+            return true;
+        }
+    }
+}
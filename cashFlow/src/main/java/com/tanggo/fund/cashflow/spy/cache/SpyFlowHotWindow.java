@@ -0,0 +1,360 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.event.SpyFlowResultSavedEvent;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 近期计算结果的内存列式热窗口
+ *
+ * 每个ticker保存最近N天结果的不可变列快照(按data_date升序的原始类型数组)，
+ * 新结果保存后写时复制生成新快照并原子替换，读路径无锁也不访问数据库。
+ * 启动时从DuckDB加载一次，加载失败时调用方回退到数据库查询
+ */
+@Component
+@Slf4j
+public class SpyFlowHotWindow {
+
+    public static final String DEFAULT_TICKER = "SPY";
+
+    private final SpyFlowResultRepository flowResultRepository;
+    private final int windowDays;
+
+    private final Map<String, AtomicReference<TickerWindow>> windows = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded;
+
+    public SpyFlowHotWindow(SpyFlowResultRepository flowResultRepository,
+                            @Value("${app.spy.hot-window.days:30}") int windowDays) {
+        this.flowResultRepository = flowResultRepository;
+        this.windowDays = windowDays;
+    }
+
+    /**
+     * 启动时加载窗口内的结果
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadFromDatabase() {
+        try {
+            List<SpyFlowResult> results = flowResultRepository.findRecentResults(windowStart());
+            results.forEach(this::apply);
+            loaded = true;
+            log.info("热窗口加载完成: 窗口={}天, 记录数={}", windowDays, results.size());
+        } catch (Exception e) {
+            log.warn("热窗口加载失败，近期查询将回退数据库: {}", e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onResultSaved(SpyFlowResultSavedEvent event) {
+        apply(event.getResult());
+    }
+
+    /**
+     * 合并一条结果，同一日期保留时间戳较新的记录
+     */
+    public void apply(SpyFlowResult result) {
+        if (result == null || result.getDataDate() == null) {
+            return;
+        }
+
+        AtomicReference<TickerWindow> ref = windows.computeIfAbsent(tickerOf(result),
+            t -> new AtomicReference<>(TickerWindow.EMPTY));
+        long minEpochDay = windowStart().toEpochDay();
+
+        TickerWindow current;
+        TickerWindow next;
+        do {
+            current = ref.get();
+            next = current.with(result, minEpochDay);
+        } while (current != next && !ref.compareAndSet(current, next));
+    }
+
+    /**
+     * 窗口是否已从数据库加载，未加载时窗口内容不完整
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int getWindowDays() {
+        return windowDays;
+    }
+
+    /**
+     * 最新结果(直接返回保存时的实体，不做拷贝)
+     */
+    public Optional<SpyFlowResult> latest(String ticker) {
+        return Optional.ofNullable(snapshot(ticker).latest);
+    }
+
+    /**
+     * 最近N天的结果，按日期倒序；超出窗口范围或窗口未加载时返回empty
+     */
+    public Optional<List<SpyFlowResult>> recent(String ticker, int days) {
+        if (!loaded || days < 0 || days > windowDays) {
+            return Optional.empty();
+        }
+        return Optional.of(snapshot(ticker).since(LocalDate.now().minusDays(days).toEpochDay()));
+    }
+
+    /**
+     * 日期范围内的结果，按日期升序；范围起点早于窗口或窗口未加载时返回empty
+     */
+    public Optional<List<SpyFlowResult>> between(String ticker, LocalDate startDate, LocalDate endDate) {
+        if (!loaded || startDate.isBefore(windowStart())) {
+            return Optional.empty();
+        }
+        return Optional.of(snapshot(ticker).between(startDate.toEpochDay(), endDate.toEpochDay()));
+    }
+
+    /**
+     * 窗口内的记录数
+     */
+    public int size(String ticker) {
+        return snapshot(ticker).size;
+    }
+
+    private TickerWindow snapshot(String ticker) {
+        AtomicReference<TickerWindow> ref = windows.get(ticker);
+        return ref != null ? ref.get() : TickerWindow.EMPTY;
+    }
+
+    private LocalDate windowStart() {
+        return LocalDate.now().minusDays(windowDays);
+    }
+
+    private static String tickerOf(SpyFlowResult result) {
+        return result.getTicker() != null ? result.getTicker() : DEFAULT_TICKER;
+    }
+
+    /**
+     * 单个ticker的不可变列快照
+     *
+     * 数值列以double保存，null用NaN表示；验证结果以byte保存(1通过/0失败/-1未知)
+     */
+    static final class TickerWindow {
+
+        static final TickerWindow EMPTY = new TickerWindow(0);
+
+        final int size;
+        final long[] ids;
+        final long[] epochDays;
+        final long[] timestamps;
+        final long[] createdAts;
+        final double[] netInflows;
+        final double[] intensities;
+        final double[] weightedPrices;
+        final double[] etfComContributions;
+        final double[] yahooContributions;
+        final double[] confidences;
+        final double[] qualityScores;
+        final byte[] validations;
+        final String[] tickers;
+        final String[] primarySources;
+        final String[] geographicDimensions;
+        final String[] currencyDimensions;
+        final String[] marketCapDimensions;
+        final String[] sectorDimensions;
+
+        SpyFlowResult latest;
+
+        private TickerWindow(int size) {
+            this.size = size;
+            this.ids = new long[size];
+            this.epochDays = new long[size];
+            this.timestamps = new long[size];
+            this.createdAts = new long[size];
+            this.netInflows = new double[size];
+            this.intensities = new double[size];
+            this.weightedPrices = new double[size];
+            this.etfComContributions = new double[size];
+            this.yahooContributions = new double[size];
+            this.confidences = new double[size];
+            this.qualityScores = new double[size];
+            this.validations = new byte[size];
+            this.tickers = new String[size];
+            this.primarySources = new String[size];
+            this.geographicDimensions = new String[size];
+            this.currencyDimensions = new String[size];
+            this.marketCapDimensions = new String[size];
+            this.sectorDimensions = new String[size];
+        }
+
+        /**
+         * 合并一条结果并裁剪过期行，生成新快照；结果无需合并时返回自身
+         */
+        TickerWindow with(SpyFlowResult result, long minEpochDay) {
+            long epochDay = result.getDataDate().toEpochDay();
+            if (epochDay < minEpochDay) {
+                return this;
+            }
+
+            int from = lowerBound(minEpochDay);
+            int pos = Arrays.binarySearch(epochDays, from, size, epochDay);
+            boolean replace = pos >= 0;
+            if (replace && timestamps[pos] > toMillis(result.getTimestamp())) {
+                return from == 0 ? this : copy(from, size, -1, null);
+            }
+
+            int insertAt = replace ? pos : -pos - 1;
+            return copy(from, insertAt, replace ? 1 : 0, result);
+        }
+
+        /**
+         * 复制[from, size)区间的行，在insertAt处写入result并跳过skip行
+         */
+        private TickerWindow copy(int from, int insertAt, int skip, SpyFlowResult result) {
+            int newSize = size - from - Math.max(skip, 0) + (result != null ? 1 : 0);
+            TickerWindow next = new TickerWindow(newSize);
+
+            int target = 0;
+            for (int i = from; i < insertAt; i++) {
+                next.copyRow(target++, this, i);
+            }
+            if (result != null) {
+                next.setRow(target++, result);
+            }
+            for (int i = insertAt + Math.max(skip, 0); i < size; i++) {
+                next.copyRow(target++, this, i);
+            }
+
+            if (newSize > 0) {
+                boolean newIsLatest = result != null && insertAt - from + 1 == newSize;
+                next.latest = newIsLatest ? result : (latest != null ? latest : next.toResult(newSize - 1));
+            }
+            return next;
+        }
+
+        private void copyRow(int to, TickerWindow source, int from) {
+            ids[to] = source.ids[from];
+            epochDays[to] = source.epochDays[from];
+            timestamps[to] = source.timestamps[from];
+            createdAts[to] = source.createdAts[from];
+            netInflows[to] = source.netInflows[from];
+            intensities[to] = source.intensities[from];
+            weightedPrices[to] = source.weightedPrices[from];
+            etfComContributions[to] = source.etfComContributions[from];
+            yahooContributions[to] = source.yahooContributions[from];
+            confidences[to] = source.confidences[from];
+            qualityScores[to] = source.qualityScores[from];
+            validations[to] = source.validations[from];
+            tickers[to] = source.tickers[from];
+            primarySources[to] = source.primarySources[from];
+            geographicDimensions[to] = source.geographicDimensions[from];
+            currencyDimensions[to] = source.currencyDimensions[from];
+            marketCapDimensions[to] = source.marketCapDimensions[from];
+            sectorDimensions[to] = source.sectorDimensions[from];
+        }
+
+        private void setRow(int i, SpyFlowResult result) {
+            ids[i] = result.getId() != null ? result.getId() : 0L;
+            epochDays[i] = result.getDataDate().toEpochDay();
+            timestamps[i] = toMillis(result.getTimestamp());
+            createdAts[i] = toMillis(result.getCreatedAt());
+            netInflows[i] = toDouble(result.getFinalNetInflow());
+            intensities[i] = toDouble(result.getFlowIntensity());
+            weightedPrices[i] = toDouble(result.getVolumeWeightedPrice());
+            etfComContributions[i] = toDouble(result.getEtfComContribution());
+            yahooContributions[i] = toDouble(result.getYahooContribution());
+            confidences[i] = toDouble(result.getOverallConfidence());
+            qualityScores[i] = toDouble(result.getDataQualityScore());
+            validations[i] = result.getValidationPassed() == null ? -1 : (byte) (result.getValidationPassed() ? 1 : 0);
+            tickers[i] = tickerOf(result);
+            primarySources[i] = result.getPrimarySource();
+            geographicDimensions[i] = result.getGeographicDimension();
+            currencyDimensions[i] = result.getCurrencyDimension();
+            marketCapDimensions[i] = result.getMarketCapDimension();
+            sectorDimensions[i] = result.getSectorDimension();
+        }
+
+        /**
+         * 按列还原实体，数值按spy_flow_result列精度恢复小数位，与数据库读出的结果一致
+         */
+        SpyFlowResult toResult(int i) {
+            return SpyFlowResult.builder()
+                .id(ids[i] != 0L ? ids[i] : null)
+                .ticker(tickers[i])
+                .dataDate(LocalDate.ofEpochDay(epochDays[i]))
+                .timestamp(toInstant(timestamps[i]))
+                .finalNetInflow(toBigDecimal(netInflows[i], 2))
+                .flowIntensity(toBigDecimal(intensities[i], 4))
+                .volumeWeightedPrice(toBigDecimal(weightedPrices[i], 4))
+                .etfComContribution(toBigDecimal(etfComContributions[i], 2))
+                .yahooContribution(toBigDecimal(yahooContributions[i], 2))
+                .primarySource(primarySources[i])
+                .overallConfidence(toBigDecimal(confidences[i], 2))
+                .dataQualityScore(toBigDecimal(qualityScores[i], 2))
+                .validationPassed(validations[i] < 0 ? null : validations[i] == 1)
+                .geographicDimension(geographicDimensions[i])
+                .currencyDimension(currencyDimensions[i])
+                .marketCapDimension(marketCapDimensions[i])
+                .sectorDimension(sectorDimensions[i])
+                .createdAt(toInstant(createdAts[i]))
+                .build();
+        }
+
+        /**
+         * data_date >= minEpochDay的行，按日期倒序
+         */
+        List<SpyFlowResult> since(long minEpochDay) {
+            int from = lowerBound(minEpochDay);
+            List<SpyFlowResult> results = new ArrayList<>(size - from);
+            for (int i = size - 1; i >= from; i--) {
+                results.add(toResult(i));
+            }
+            return results;
+        }
+
+        /**
+         * minEpochDay <= data_date <= maxEpochDay的行，按日期升序
+         */
+        List<SpyFlowResult> between(long minEpochDay, long maxEpochDay) {
+            int from = lowerBound(minEpochDay);
+            int to = lowerBound(maxEpochDay + 1);
+            List<SpyFlowResult> results = new ArrayList<>(Math.max(to - from, 0));
+            for (int i = from; i < to; i++) {
+                results.add(toResult(i));
+            }
+            return results;
+        }
+
+        private int lowerBound(long epochDay) {
+            int pos = Arrays.binarySearch(epochDays, 0, size, epochDay);
+            return pos >= 0 ? pos : -pos - 1;
+        }
+
+        private static long toMillis(Instant instant) {
+            return instant != null ? instant.toEpochMilli() : Long.MIN_VALUE;
+        }
+
+        private static Instant toInstant(long millis) {
+            return millis != Long.MIN_VALUE ? Instant.ofEpochMilli(millis) : null;
+        }
+
+        private static double toDouble(BigDecimal value) {
+            return value != null ? value.doubleValue() : Double.NaN;
+        }
+
+        private static BigDecimal toBigDecimal(double value, int scale) {
+            return Double.isNaN(value) ? null : BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP);
+        }
+    }
+}
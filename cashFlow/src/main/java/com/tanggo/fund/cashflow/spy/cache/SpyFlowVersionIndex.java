@@ -0,0 +1,138 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.event.SpyFlowResultSavedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 结果版本索引(HTTP条件请求)
+ *
+ * 记录每个ticker最新结果及各日期结果的ETag/Last-Modified，并提供各端点的缓存策略。新结果保存后由事件更新，
+ * 查询命中数据库后补录。
+ * 控制器在查询前用索引预判：客户端ETag与索引一致即回304；索引只反映本节点已知的版本，不一致时以实际返回的结果为准
+ */
+@Component
+public class SpyFlowVersionIndex {
+
+    private final Map<String, AtomicReference<Version>> latestByTicker = new ConcurrentHashMap<>();
+    private final Cache<String, Version> byDate;
+    private final CacheControl latestCacheControl;
+    private final CacheControl dateCacheControl;
+
+    public SpyFlowVersionIndex(@Value("${app.spy.http.version-index-size:10000}") long maxDates,
+                               @Value("${app.spy.http.latest-max-age:30s}") Duration latestMaxAge,
+                               @Value("${app.spy.http.date-max-age:300s}") Duration dateMaxAge) {
+        this.byDate = Caffeine.newBuilder().maximumSize(maxDates).build();
+        this.latestCacheControl = CacheControl.maxAge(latestMaxAge).cachePublic().mustRevalidate();
+        this.dateCacheControl = CacheControl.maxAge(dateMaxAge).cachePublic().mustRevalidate();
+    }
+
+    @EventListener
+    public void onResultSaved(SpyFlowResultSavedEvent event) {
+        record(event.getResult(), true);
+    }
+
+    /**
+     * 查询返回的结果补录到索引，不会覆盖更新的版本
+     *
+     * @param isLatest 结果是否作为该ticker的最新结果返回
+     */
+    public void record(SpyFlowResult result, boolean isLatest) {
+        Version version = Version.of(result);
+        if (version == null) {
+            return;
+        }
+
+        byDate.asMap().merge(dateKey(version.ticker, result.getDataDate()), version, Version::newer);
+        if (isLatest) {
+            latestByTicker.computeIfAbsent(version.ticker, t -> new AtomicReference<>())
+                .accumulateAndGet(version, (current, candidate) -> current == null ? candidate : current.newer(candidate));
+        }
+    }
+
+    public Optional<Version> latest(String ticker) {
+        AtomicReference<Version> ref = latestByTicker.get(ticker);
+        return Optional.ofNullable(ref != null ? ref.get() : null);
+    }
+
+    public Optional<Version> forDate(String ticker, LocalDate dataDate) {
+        return Optional.ofNullable(byDate.getIfPresent(dateKey(ticker, dataDate)));
+    }
+
+    /**
+     * 最新结果每个采集周期都可能变化，缓存时间短于按日期查询
+     */
+    public CacheControl cacheControl(boolean isLatest) {
+        return isLatest ? latestCacheControl : dateCacheControl;
+    }
+
+    private static String dateKey(String ticker, LocalDate dataDate) {
+        return ticker + ":" + dataDate;
+    }
+
+    /**
+     * 结果版本，由ticker、日期、计算时间戳和id构成强ETag
+     */
+    public static final class Version {
+
+        private final String ticker;
+        private final LocalDate dataDate;
+        private final long timestampMillis;
+        private final String eTag;
+
+        private Version(String ticker, LocalDate dataDate, long timestampMillis, Long id) {
+            this.ticker = ticker;
+            this.dataDate = dataDate;
+            this.timestampMillis = timestampMillis;
+            this.eTag = "\"" + ticker + "-" + dataDate + "-" + Long.toHexString(timestampMillis) +
+                (id != null ? "-" + id : "") + "\"";
+        }
+
+        /**
+         * 结果缺少日期或时间戳时无法生成版本
+         */
+        public static Version of(SpyFlowResult result) {
+            if (result == null || result.getDataDate() == null || result.getTimestamp() == null) {
+                return null;
+            }
+            String ticker = result.getTicker() != null ? result.getTicker() : SpyFlowHotWindow.DEFAULT_TICKER;
+            return new Version(ticker, result.getDataDate(), result.getTimestamp().toEpochMilli(), result.getId());
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public long getLastModified() {
+            return timestampMillis;
+        }
+
+        public Instant getLastModifiedInstant() {
+            return Instant.ofEpochMilli(timestampMillis);
+        }
+
+        /**
+         * 日期较新者优先，同一日期取时间戳较新者
+         */
+        Version newer(Version other) {
+            int byDate = dataDate.compareTo(other.dataDate);
+            if (byDate != 0) {
+                return byDate > 0 ? this : other;
+            }
+            return other.timestampMillis >= timestampMillis ? other : this;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * 二级(跨实例共享)缓存存储
+ */
+public interface SpyL2CacheStore {
+    
+    /**
+     * 读取缓存值，未命中返回null(缓存的空值以NullValue表示)
+     */
+    Object get(String cacheName, String key);
+    
+    void put(String cacheName, String key, Object value);
+    
+    void evict(String cacheName, String key);
+    
+    void clear(String cacheName);
+    
+    /**
+     * 列出缓存中的全部键
+     */
+    Set<String> keys(String cacheName);
+    
+    /**
+     * 通知其他实例淘汰一级缓存
+     */
+    void publishEviction(String cacheName, String key);
+    
+    /**
+     * 注册其他实例的淘汰通知回调(cacheName, key)，key为null表示整个缓存
+     */
+    void onRemoteEviction(BiConsumer<String, String> listener);
+}
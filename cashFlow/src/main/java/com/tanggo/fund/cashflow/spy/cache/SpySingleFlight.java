@@ -0,0 +1,94 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 并发相同查询合并(single-flight)
+ *
+ * 同一键的查询在执行期间只有第一个调用者访问数据库，其余调用者等待并共享同一结果或异常；
+ * 执行结束后立即移除，后续调用重新查询。结果在调用者之间共享，调用方不得修改
+ */
+@Component
+public class SpySingleFlight {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counter> executedCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> coalescedCounters = new ConcurrentHashMap<>();
+
+    public SpySingleFlight(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("spy.singleflight.inflight", inFlight, Map::size)
+            .description("正在执行的合并查询数")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 执行查询，相同query与key的并发调用共享一次执行
+     *
+     * @param query 查询名称，用作指标标签
+     * @param key   查询参数
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String query, Object key, Supplier<T> loader) {
+        String flightKey = query + ":" + key;
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            counter(coalescedCounters, query, "coalesced").increment();
+            return (T) await(existing);
+        }
+
+        counter(executedCounters, query, "executed").increment();
+        try {
+            T value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    public double getCoalescedCount(String query) {
+        Counter counter = coalescedCounters.get(query);
+        return counter != null ? counter.count() : 0;
+    }
+
+    /**
+     * 等待执行中的查询，异常按原类型抛出
+     */
+    private Object await(CompletableFuture<Object> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private Counter counter(Map<String, Counter> counters, String query, String outcome) {
+        return counters.computeIfAbsent(query, q -> Counter.builder("spy.singleflight.calls")
+            .description("查询调用数(executed实际执行/coalesced合并等待)")
+            .tag("query", q)
+            .tag("outcome", outcome)
+            .register(meterRegistry));
+    }
+}
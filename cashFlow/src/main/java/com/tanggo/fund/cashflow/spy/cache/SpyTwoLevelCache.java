@@ -0,0 +1,228 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 两级缓存：一级为进程内有界Caffeine缓存，二级为跨实例共享缓存(Redis)
+ *
+ * 二级缓存不可用时自动降级为仅一级缓存，并在熔断时间后重试。
+ * 每次淘汰递增代数，加载期间发生过淘汰的结果不回填缓存，避免保存前开始的读取在淘汰后写回旧值
+ */
+@Slf4j
+public class SpyTwoLevelCache extends AbstractValueAdaptingCache {
+    
+    private static final long L2_SUSPEND_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    
+    private final String name;
+    private final Cache<String, Object> local;
+    private final SpyL2CacheStore l2;
+    
+    private final Counter l2Hits;
+    private final Counter l2Misses;
+    private final Counter l2Errors;
+    private final Counter invalidations;
+    private final Counter staleLoads;
+    private final AtomicLong generation = new AtomicLong();
+    
+    private volatile long l2SuspendedUntil;
+    
+    public SpyTwoLevelCache(String name, Cache<String, Object> local, SpyL2CacheStore l2, MeterRegistry meterRegistry) {
+        super(true);
+        this.name = name;
+        this.local = local;
+        this.l2 = l2;
+        
+        this.l2Hits = l2Counter(meterRegistry, "hit");
+        this.l2Misses = l2Counter(meterRegistry, "miss");
+        this.l2Errors = l2Counter(meterRegistry, "error");
+        this.invalidations = Counter.builder("spy.cache.invalidations")
+            .description("结果保存触发的缓存失效次数")
+            .tag("cache", name)
+            .register(meterRegistry);
+        this.staleLoads = Counter.builder("spy.cache.stale.loads")
+            .description("加载期间发生淘汰而未回填的次数")
+            .tag("cache", name)
+            .register(meterRegistry);
+    }
+    
+    @Override
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public Cache<String, Object> getNativeCache() {
+        return local;
+    }
+    
+    @Override
+    protected Object lookup(Object key) {
+        String cacheKey = String.valueOf(key);
+        Object value = local.getIfPresent(cacheKey);
+        if (value != null || !isL2Available()) {
+            return value;
+        }
+        
+        try {
+            value = l2.get(name, cacheKey);
+        } catch (Exception e) {
+            suspendL2(e);
+            return null;
+        }
+        
+        if (value != null) {
+            l2Hits.increment();
+            local.put(cacheKey, value);
+        } else {
+            l2Misses.increment();
+        }
+        return value;
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        
+        long loadGeneration = generation.get();
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        putIfCurrent(key, value, loadGeneration);
+        return value;
+    }
+    
+    /**
+     * 仅当加载开始后没有发生淘汰时回填；回填与淘汰并发时撤销本次回填
+     */
+    private void putIfCurrent(Object key, Object value, long loadGeneration) {
+        if (generation.get() != loadGeneration) {
+            staleLoads.increment();
+            return;
+        }
+        put(key, value);
+        if (generation.get() != loadGeneration) {
+            staleLoads.increment();
+            String cacheKey = String.valueOf(key);
+            local.invalidate(cacheKey);
+            if (isL2Available()) {
+                try {
+                    l2.evict(name, cacheKey);
+                } catch (Exception e) {
+                    suspendL2(e);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void put(Object key, Object value) {
+        String cacheKey = String.valueOf(key);
+        Object storeValue = toStoreValue(value);
+        local.put(cacheKey, storeValue);
+        
+        if (isL2Available()) {
+            try {
+                l2.put(name, cacheKey, storeValue);
+            } catch (Exception e) {
+                suspendL2(e);
+            }
+        }
+    }
+    
+    @Override
+    public void evict(Object key) {
+        String cacheKey = String.valueOf(key);
+        generation.incrementAndGet();
+        local.invalidate(cacheKey);
+        invalidations.increment();
+        
+        if (isL2Available()) {
+            try {
+                l2.evict(name, cacheKey);
+                l2.publishEviction(name, cacheKey);
+            } catch (Exception e) {
+                suspendL2(e);
+            }
+        }
+    }
+    
+    /**
+     * 淘汰满足条件的所有键(两级)
+     */
+    public void evictIf(Predicate<String> keyPredicate) {
+        Set<String> keys = new HashSet<>(local.asMap().keySet());
+        if (isL2Available()) {
+            try {
+                keys.addAll(l2.keys(name));
+            } catch (Exception e) {
+                suspendL2(e);
+            }
+        }
+        
+        keys.stream().filter(keyPredicate).forEach(this::evict);
+    }
+    
+    @Override
+    public void clear() {
+        generation.incrementAndGet();
+        local.invalidateAll();
+        
+        if (isL2Available()) {
+            try {
+                l2.clear(name);
+                l2.publishEviction(name, null);
+            } catch (Exception e) {
+                suspendL2(e);
+            }
+        }
+    }
+    
+    /**
+     * 仅淘汰一级缓存(响应其他实例的通知)
+     */
+    void evictLocal(String key) {
+        generation.incrementAndGet();
+        if (key == null) {
+            local.invalidateAll();
+        } else {
+            local.invalidate(key);
+        }
+    }
+    
+    private boolean isL2Available() {
+        return System.currentTimeMillis() >= l2SuspendedUntil;
+    }
+    
+    private void suspendL2(Exception e) {
+        l2Errors.increment();
+        l2SuspendedUntil = System.currentTimeMillis() + L2_SUSPEND_MILLIS;
+        log.warn("二级缓存不可用，{}秒内仅使用本地缓存: cache={}, error={}",
+            TimeUnit.MILLISECONDS.toSeconds(L2_SUSPEND_MILLIS), name, e.getMessage());
+    }
+    
+    private Counter l2Counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("spy.cache.l2.requests")
+            .description("二级缓存访问次数")
+            .tag("cache", name)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,71 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.cache.CacheManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 两级缓存管理器
+ */
+public class SpyTwoLevelCacheManager implements CacheManager {
+    
+    private final Map<String, SpyTwoLevelCache> caches = new ConcurrentHashMap<>();
+    private final SpyL2CacheStore l2;
+    private final MeterRegistry meterRegistry;
+    private final long localMaxSize;
+    private final Duration localTtl;
+    private final Map<String, Long> localMaxSizes;
+    
+    public SpyTwoLevelCacheManager(SpyL2CacheStore l2, MeterRegistry meterRegistry,
+                                   long localMaxSize, Duration localTtl) {
+        this(l2, meterRegistry, localMaxSize, localTtl, Map.of());
+    }
+    
+    /**
+     * @param localMaxSizes 按缓存名覆盖一级缓存容量(如范围缓存的键空间远大于其他缓存)
+     */
+    public SpyTwoLevelCacheManager(SpyL2CacheStore l2, MeterRegistry meterRegistry,
+                                   long localMaxSize, Duration localTtl, Map<String, Long> localMaxSizes) {
+        this.l2 = l2;
+        this.meterRegistry = meterRegistry;
+        this.localMaxSize = localMaxSize;
+        this.localTtl = localTtl;
+        this.localMaxSizes = Map.copyOf(localMaxSizes);
+        
+        l2.onRemoteEviction((cacheName, key) -> {
+            SpyTwoLevelCache cache = caches.get(cacheName);
+            if (cache != null) {
+                cache.evictLocal(key);
+            }
+        });
+    }
+    
+    @Override
+    public SpyTwoLevelCache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+    
+    @Override
+    public Collection<String> getCacheNames() {
+        return caches.keySet();
+    }
+    
+    private SpyTwoLevelCache createCache(String name) {
+        Cache<String, Object> local = Caffeine.newBuilder()
+            .maximumSize(localMaxSizes.getOrDefault(name, localMaxSize))
+            .expireAfterWrite(localTtl)
+            .recordStats()
+            .build();
+        // 一级缓存命中/未命中/淘汰指标
+        CaffeineCacheMetrics.monitor(meterRegistry, local, name);
+        
+        return new SpyTwoLevelCache(name, local, l2, meterRegistry);
+    }
+}
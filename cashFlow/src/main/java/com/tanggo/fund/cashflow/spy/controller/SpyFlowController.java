@@ -1,20 +1,53 @@
 package com.tanggo.fund.cashflow.spy.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.tanggo.fund.cashflow.config.HttpEncodingConfig;
+import com.tanggo.fund.cashflow.spy.cache.SpyFlowHotWindow;
+import com.tanggo.fund.cashflow.spy.cache.SpyFlowVersionIndex;
+import com.tanggo.fund.cashflow.spy.dto.SpyBatchQueryRequest;
+import com.tanggo.fund.cashflow.spy.dto.SpyBatchQueryResponse;
+import com.tanggo.fund.cashflow.spy.dto.SpyFlowResponse;
+import com.tanggo.fund.cashflow.spy.dto.SpyPage;
+import com.tanggo.fund.cashflow.spy.dto.SpyPageCursor;
 import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowRollup;
+import com.tanggo.fund.cashflow.spy.entity.SpyRollupGrain;
 import com.tanggo.fund.cashflow.spy.entity.SpyRawData;
 import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
 import com.tanggo.fund.cashflow.spy.repository.SpyRawDataRepository;
+import com.tanggo.fund.cashflow.spy.service.SpyBatchQueryService;
+import com.tanggo.fund.cashflow.spy.service.SpyDownsampler;
+import com.tanggo.fund.cashflow.spy.service.SpyFlowQueryService;
+import com.tanggo.fund.cashflow.spy.service.SpyFlowRollupService;
+import com.tanggo.fund.cashflow.spy.service.SpyFreshnessHealthIndicator;
+import com.tanggo.fund.cashflow.spy.service.SpyTimeSeriesService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * SPY资金流向API控制器
@@ -25,107 +58,263 @@ import java.util.Optional;
 @Slf4j
 public class SpyFlowController {
     
+    private static final int MAX_PAGE_SIZE = 5000;
+    private static final int STREAM_FLUSH_ROWS = 256;
+    private static final int MIN_DOWNSAMPLE_POINTS = 3;
+    
     private final SpyFlowResultRepository flowResultRepository;
     private final SpyRawDataRepository rawDataRepository;
+    private final SpyFlowQueryService flowQueryService;
+    private final SpyFlowHotWindow hotWindow;
+    private final SpyFlowVersionIndex versionIndex;
+    private final SpyFlowRollupService rollupService;
+    private final SpyTimeSeriesService timeSeriesService;
+    private final SpyBatchQueryService batchQueryService;
+    private final ObjectMapper objectMapper;
+    private final SpyResponseEncoder responseEncoder;
+    private final SpyFreshnessHealthIndicator freshnessHealth;
     
     /**
      * 获取最新的SPY流向数据
+     *
+     * 热窗口已加载时ETag取自本次实际返回的结果；未加载时先按版本索引判断，客户端已持有最新版本则直接返回304，不查询
      */
     @GetMapping("/latest")
-    public ResponseEntity<SpyFlowResult> getLatestFlow() {
-        Optional<SpyFlowResult> latest = flowResultRepository.findTopByOrderByDataDateDesc();
+    public ResponseEntity<SpyFlowResult> getLatestFlow(
+            @RequestParam(defaultValue = SpyFlowHotWindow.DEFAULT_TICKER) String ticker,
+            WebRequest webRequest) {
+        if (!hotWindow.isLoaded()) {
+            Optional<ResponseEntity<SpyFlowResult>> notModified =
+                notModifiedByIndex(webRequest, versionIndex.latest(ticker), true);
+            if (notModified.isPresent()) {
+                return notModified.get();
+            }
+        }
         
-        return latest.map(ResponseEntity::ok)
+        Optional<SpyFlowResult> latest = findLatest(ticker);
+        latest.ifPresent(result -> versionIndex.record(result, true));
+        
+        return latest.map(result -> conditionalResponse(webRequest, result, true))
                     .orElse(ResponseEntity.notFound().build());
     }
     
     /**
      * 根据日期获取SPY流向数据
+     *
+     * 客户端ETag与版本索引一致时直接返回304，不经缓存与数据库
      */
     @GetMapping("/date/{date}")
     public ResponseEntity<SpyFlowResult> getFlowByDate(
-            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(defaultValue = SpyFlowHotWindow.DEFAULT_TICKER) String ticker,
+            WebRequest webRequest) {
         
-        Optional<SpyFlowResult> result = flowResultRepository.findByDataDate(date);
+        Optional<ResponseEntity<SpyFlowResult>> notModified =
+            notModifiedByIndex(webRequest, versionIndex.forDate(ticker, date), false);
+        if (notModified.isPresent()) {
+            return notModified.get();
+        }
+        
+        Optional<SpyFlowResult> result = flowQueryService.getByDate(ticker, date);
+        result.ifPresent(r -> versionIndex.record(r, false));
         
-        return result.map(ResponseEntity::ok)
+        return result.map(r -> conditionalResponse(webRequest, r, false))
                     .orElse(ResponseEntity.notFound().build());
     }
     
+    /**
+     * 批量获取多个ticker在多个日期(或日期范围)的流向数据
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<SpyBatchQueryResponse> getFlowBatch(@RequestBody SpyBatchQueryRequest request) {
+        try {
+            return ResponseEntity.ok(batchQueryService.query(request));
+        } catch (IllegalArgumentException e) {
+            log.debug("批量查询参数无效: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     /**
      * 获取日期范围内的SPY流向数据
      */
     @GetMapping("/range")
     public ResponseEntity<List<SpyFlowResult>> getFlowByRange(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = SpyFlowHotWindow.DEFAULT_TICKER) String ticker) {
         
-        List<SpyFlowResult> results = flowResultRepository.findByDataDateBetweenOrderByDataDateDesc(startDate, endDate);
+        List<SpyFlowResult> results = flowQueryService.getByRange(ticker, startDate, endDate);
         
         return ResponseEntity.ok(results);
     }
     
     /**
-     * 获取最近N天的SPY流向数据
+     * 以Arrow IPC流获取日期范围内的SPY流向数据(Accept: application/vnd.apache.arrow.stream)
      */
-    @GetMapping("/recent/{days}")
-    public ResponseEntity<List<SpyFlowResult>> getRecentFlow(@PathVariable int days) {
-        LocalDate startDate = LocalDate.now().minusDays(days);
-        List<SpyFlowResult> results = flowResultRepository.findRecentResults(startDate);
+    @GetMapping(value = "/range", produces = HttpEncodingConfig.APPLICATION_ARROW_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> getFlowByRangeArrow(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = SpyFlowHotWindow.DEFAULT_TICKER) String ticker) {
         
-        return ResponseEntity.ok(results);
+        StreamingResponseBody body = out -> flowResultRepository.exportTieredArrow(ticker, startDate, endDate, out);
+        
+        return ResponseEntity.ok().contentType(HttpEncodingConfig.APPLICATION_ARROW_STREAM).body(body);
     }
     
     /**
-     * 获取SPY数据统计信息
+     * 分页获取日期范围内的SPY流向数据(键集分页)
      */
-    @GetMapping("/stats")
-    public ResponseEntity<Map<String, Object>> getStats(
-            @RequestParam(defaultValue = "30") int days) {
+    @GetMapping("/range/page")
+    public ResponseEntity<SpyPage<SpyFlowResult>> getFlowPage(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "500") int limit,
+            @RequestParam(required = false) String cursor) {
+        
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        SpyPageCursor after;
+        try {
+            after = cursor != null ? SpyPageCursor.decode(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        // 多取一行判断是否还有下一页
+        List<SpyFlowResult> rows = flowResultRepository.findTieredPage(startDate, endDate, after, limit + 1);
+        
+        return ResponseEntity.ok(SpyPage.of(rows, limit, r -> new SpyPageCursor(r.getDataDate(), r.getId())));
+    }
+    
+    /**
+     * 以NDJSON流式输出日期范围内的SPY流向数据
+     */
+    @GetMapping(value = "/range/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFlowByRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
         
-        LocalDate startDate = LocalDate.now().minusDays(days);
+        StreamingResponseBody body = out -> writeNdjson(out,
+            consumer -> flowResultRepository.streamTieredByDataDateBetween(startDate, endDate, consumer));
         
-        Map<String, Object> stats = new HashMap<>();
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+    
+    /**
+     * 获取列式时间序列(面向图表客户端)
+     *
+     * 按Accept头编码为JSON/CBOR/Smile，响应头报告序列化字节数与构建耗时；
+     * 指定maxPoints时按downsample算法(lttb/minmax)降采样，响应大小与历史长度无关；
+     * compare=true时以相同编码构建实体列表响应用于对比
+     */
+    @GetMapping("/timeseries")
+    public ResponseEntity<byte[]> getTimeSeries(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = SpyFlowHotWindow.DEFAULT_TICKER) String ticker,
+            @RequestParam(required = false) Integer maxPoints,
+            @RequestParam(defaultValue = "lttb") String downsample,
+            @RequestParam(defaultValue = "false") boolean compare,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) throws IOException {
         
-        // 置信度统计
-        Object[] confidenceStats = flowResultRepository.getConfidenceStats(startDate);
-        if (confidenceStats != null && confidenceStats.length >= 3) {
-            Map<String, Object> confidence = new HashMap<>();
-            confidence.put("average", confidenceStats[0]);
-            confidence.put("minimum", confidenceStats[1]);
-            confidence.put("maximum", confidenceStats[2]);
-            stats.put("confidence", confidence);
+        SpyDownsampler.Mode mode;
+        try {
+            mode = SpyDownsampler.Mode.fromParam(downsample);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (maxPoints != null && maxPoints < MIN_DOWNSAMPLE_POINTS) {
+            return ResponseEntity.badRequest().build();
         }
         
-        // 净流入统计
-        Object[] inflowStats = flowResultRepository.getNetInflowStats(startDate);
-        if (inflowStats != null && inflowStats.length >= 3) {
-            Map<String, Object> inflow = new HashMap<>();
-            inflow.put("total", inflowStats[0]);
-            inflow.put("average", inflowStats[1]);
-            inflow.put("count", inflowStats[2]);
-            stats.put("netInflow", inflow);
+        MediaType mediaType = responseEncoder.negotiate(accept);
+        long start = System.nanoTime();
+        SpyFlowResponse response = timeSeriesService.getColumnar(ticker, startDate, endDate, maxPoints, mode);
+        byte[] body = responseEncoder.encode(response, mediaType);
+        long buildMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Payload-Bytes", String.valueOf(body.length));
+        headers.set("X-Build-Time-Micros", String.valueOf(buildMicros));
+        
+        if (compare) {
+            long entityStart = System.nanoTime();
+            byte[] entityBody = responseEncoder.encode(
+                flowResultRepository.findTieredByDataDateBetween(ticker, startDate, endDate), mediaType);
+            headers.set("X-Entity-Payload-Bytes", String.valueOf(entityBody.length));
+            headers.set("X-Entity-Build-Time-Micros",
+                String.valueOf(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - entityStart)));
         }
         
-        // 数据质量统计
-        Double avgQuality = flowResultRepository.getAverageDataQualityScore(startDate);
-        stats.put("averageDataQuality", avgQuality);
+        return ResponseEntity.ok()
+            .headers(headers)
+            .contentType(mediaType)
+            .body(body);
+    }
+    
+    /**
+     * 以Arrow IPC流获取时间序列(Accept: application/vnd.apache.arrow.stream)
+     */
+    @GetMapping(value = "/timeseries", produces = HttpEncodingConfig.APPLICATION_ARROW_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> getTimeSeriesArrow(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = SpyFlowHotWindow.DEFAULT_TICKER) String ticker) {
+        
+        StreamingResponseBody body = out -> timeSeriesService.exportArrow(ticker, startDate, endDate, out);
+        
+        return ResponseEntity.ok().contentType(HttpEncodingConfig.APPLICATION_ARROW_STREAM).body(body);
+    }
+    
+    /**
+     * 获取周/月/季汇总数据
+     */
+    @GetMapping("/rollup/{grain}")
+    public ResponseEntity<List<SpyFlowRollup>> getRollups(
+            @PathVariable String grain,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = SpyFlowHotWindow.DEFAULT_TICKER) String ticker) {
+        
+        SpyRollupGrain rollupGrain;
+        try {
+            rollupGrain = SpyRollupGrain.fromPath(grain);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
         
-        // 验证失败记录数
-        List<SpyFlowResult> failedValidations = flowResultRepository
-            .findByValidationPassedFalseAndDataDateGreaterThanEqual(startDate);
-        stats.put("validationFailures", failedValidations.size());
+        List<SpyFlowRollup> rollups = rollupService.getRollups(ticker, rollupGrain, startDate, endDate);
         
-        // 数据可用性统计
-        List<Object[]> availabilityStats = rawDataRepository.getDataSourceAvailabilityStats(startDate);
-        Map<String, Object> availability = new HashMap<>();
-        availability.put("dataSources", availabilityStats);
+        return ResponseEntity.ok(rollups);
+    }
+    
+    /**
+     * 获取最近N天的SPY流向数据
+     */
+    @GetMapping("/recent/{days}")
+    public ResponseEntity<List<SpyFlowResult>> getRecentFlow(
+            @PathVariable int days,
+            @RequestParam(defaultValue = SpyFlowHotWindow.DEFAULT_TICKER) String ticker) {
+        // 窗口范围内直接读内存，否则回退数据库
+        List<SpyFlowResult> results = hotWindow.recent(ticker, days)
+            .orElseGet(() -> flowQueryService.getByRange(ticker, LocalDate.now().minusDays(days), LocalDate.now()));
         
-        Double avgConfidence = rawDataRepository.getAverageConfidenceScore(startDate);
-        availability.put("averageConfidence", avgConfidence);
-        stats.put("dataAvailability", availability);
+        return ResponseEntity.ok(results);
+    }
+    
+    /**
+     * 获取SPY数据统计信息
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats(
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(defaultValue = SpyFlowHotWindow.DEFAULT_TICKER) String ticker) {
         
-        return ResponseEntity.ok(stats);
+        return ResponseEntity.ok(flowQueryService.getStats(ticker, days));
     }
     
     /**
@@ -135,20 +324,62 @@ public class SpyFlowController {
     public ResponseEntity<List<SpyRawData>> getRawDataByDate(
             @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
         
-        List<SpyRawData> rawData = rawDataRepository.findByDataDateBetweenOrderByDataDateDesc(date, date);
+        List<SpyRawData> rawData = rawDataRepository.findTieredByDataDateBetween(date, date);
         
         return ResponseEntity.ok(rawData);
     }
     
+    /**
+     * 分页获取日期范围内的原始数据(键集分页)
+     */
+    @GetMapping("/raw/page")
+    public ResponseEntity<SpyPage<SpyRawData>> getRawDataPage(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "500") int limit,
+            @RequestParam(required = false) String cursor) {
+        
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        SpyPageCursor after;
+        try {
+            after = cursor != null ? SpyPageCursor.decode(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        List<SpyRawData> rows = rawDataRepository.findTieredPage(startDate, endDate, after, limit + 1);
+        
+        return ResponseEntity.ok(SpyPage.of(rows, limit, r -> new SpyPageCursor(r.getDataDate(), r.getId())));
+    }
+    
+    /**
+     * 以NDJSON流式输出日期范围内的原始数据
+     */
+    @GetMapping(value = "/raw/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamRawData(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        
+        StreamingResponseBody body = out -> writeNdjson(out,
+            consumer -> rawDataRepository.streamTieredByDataDateBetween(startDate, endDate, consumer));
+        
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+    
     /**
      * 健康检查
+     *
+     * 新鲜度以采集到推送的端到端p99与SLO比较(见SpyFreshnessHealthIndicator)，尚无推送样本时按最新数据日期判断
      */
     @GetMapping("/health")
     public ResponseEntity<Map<String, Object>> health() {
         Map<String, Object> health = new HashMap<>();
         
         // 检查最新数据
-        Optional<SpyFlowResult> latest = flowResultRepository.findTopByOrderByDataDateDesc();
+        Optional<SpyFlowResult> latest = findLatest(SpyFlowHotWindow.DEFAULT_TICKER);
         health.put("hasLatestData", latest.isPresent());
         
         if (latest.isPresent()) {
@@ -164,10 +395,108 @@ public class SpyFlowController {
             (latest.get().getDataDate().equals(today) || latest.get().getDataDate().equals(yesterday));
         health.put("hasRecentData", hasRecentData);
         
-        // 系统状态
-        health.put("status", hasRecentData ? "HEALTHY" : "WARNING");
+        Health freshness = freshnessHealth.health();
+        health.put("freshness", freshness.getStatus().getCode());
+        health.putAll(freshness.getDetails());
+        
+        // 系统状态: 重启后尚无推送样本(UNKNOWN)时按数据日期判断
+        boolean healthy = Status.UNKNOWN.equals(freshness.getStatus())
+            ? hasRecentData
+            : Status.UP.equals(freshness.getStatus());
+        health.put("status", healthy ? "HEALTHY" : "WARNING");
         health.put("timestamp", java.time.Instant.now());
         
         return ResponseEntity.ok(health);
     }
+    
+    /**
+     * 逐行序列化为NDJSON，每STREAM_FLUSH_ROWS行刷新一次输出
+     */
+    private void writeNdjson(OutputStream out, Consumer<Consumer<Object>> source) throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(StreamUtils.nonClosing(out))) {
+            generator.setRootValueSeparator(null);
+            int[] rows = {0};
+            source.accept(row -> {
+                try {
+                    writer.writeValue(generator, row);
+                    generator.writeRaw('\n');
+                    if (++rows[0] % STREAM_FLUSH_ROWS == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * 按返回结果的版本处理条件请求
+     *
+     * 版本只取自本次返回的数据(客户端版本与索引不一致时才会走到这里)。
+     * checkNotModified会把ETag/Last-Modified写入响应，响应体不再重复设置
+     */
+    private ResponseEntity<SpyFlowResult> conditionalResponse(WebRequest webRequest, SpyFlowResult result, boolean isLatest) {
+        SpyFlowVersionIndex.Version version = SpyFlowVersionIndex.Version.of(result);
+        if (version == null) {
+            return ResponseEntity.ok(result);
+        }
+        if (webRequest.checkNotModified(version.getETag(), version.getLastModified())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(versionIndex.cacheControl(isLatest))
+                .build();
+        }
+        return ResponseEntity.ok()
+            .cacheControl(versionIndex.cacheControl(isLatest))
+            .body(result);
+    }
+    
+    /**
+     * 按版本索引预判条件请求
+     *
+     * 只在If-None-Match含索引中的ETag时回304；不一致(客户端较旧，或从其他实例拿到了本节点未知的版本)时返回空，
+     * 由调用方查询后按实际结果判断
+     */
+    private Optional<ResponseEntity<SpyFlowResult>> notModifiedByIndex(WebRequest webRequest,
+                                                                       Optional<SpyFlowVersionIndex.Version> indexed,
+                                                                       boolean isLatest) {
+        return indexed
+            .filter(version -> clientHolds(webRequest, version.getETag()))
+            .filter(version -> webRequest.checkNotModified(version.getETag(), version.getLastModified()))
+            .map(version -> ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(versionIndex.cacheControl(isLatest))
+                .build());
+    }
+    
+    private static boolean clientHolds(WebRequest webRequest, String eTag) {
+        String[] values = webRequest.getHeaderValues(HttpHeaders.IF_NONE_MATCH);
+        if (values == null) {
+            return false;
+        }
+        for (String value : values) {
+            for (String candidate : value.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(eTag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 最新结果优先取热窗口，窗口未加载或窗口内没有该ticker的结果时走缓存查询
+     */
+    private Optional<SpyFlowResult> findLatest(String ticker) {
+        Optional<SpyFlowResult> latest = hotWindow.isLoaded()
+            ? hotWindow.latest(ticker)
+            : Optional.empty();
+        return latest.isPresent() ? latest : flowQueryService.getLatest(ticker);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package com.tanggo.fund.cashflow.spy.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按Accept头选择JSON/CBOR/Smile编码
+ *
+ * 用于需要先序列化再返回的端点(如需报告负载大小)，编码器与消息转换器共用同一组ObjectMapper
+ */
+@Component
+public class SpyResponseEncoder {
+
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    // 按优先级排列，通配Accept时取第一个
+    private final Map<MediaType, ObjectMapper> mappers = new LinkedHashMap<>();
+
+    public SpyResponseEncoder(ObjectMapper objectMapper,
+                              MappingJackson2CborHttpMessageConverter cborConverter,
+                              MappingJackson2SmileHttpMessageConverter smileConverter) {
+        mappers.put(MediaType.APPLICATION_JSON, objectMapper);
+        mappers.put(MediaType.APPLICATION_CBOR, cborConverter.getObjectMapper());
+        mappers.put(APPLICATION_SMILE, smileConverter.getObjectMapper());
+    }
+
+    /**
+     * 协商响应编码，按Accept中的质量值优先，无法识别时返回JSON
+     */
+    public MediaType negotiate(String acceptHeader) {
+        if (!StringUtils.hasText(acceptHeader)) {
+            return MediaType.APPLICATION_JSON;
+        }
+
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(acceptHeader);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+
+        // 按质量值从高到低(相同质量值时具体类型优先)，再依次匹配
+        MimeTypeUtils.sortBySpecificity(accepted);
+        accepted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            for (MediaType supported : mappers.keySet()) {
+                if (type.includes(supported)) {
+                    return supported;
+                }
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    /**
+     * 按指定编码序列化
+     */
+    public byte[] encode(Object value, MediaType mediaType) throws IOException {
+        ObjectMapper mapper = mappers.getOrDefault(mediaType, mappers.get(MediaType.APPLICATION_JSON));
+        return mapper.writeValueAsBytes(value);
+    }
+}
@@ -0,0 +1,82 @@
+package com.tanggo.fund.cashflow.spy.controller;
+
+import com.tanggo.fund.cashflow.spy.event.SpyUpdateJournal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+
+/**
+ * SPY实时更新SSE端点
+ *
+ * 供无法完成WebSocket/SockJS握手的客户端使用，推送内容与WebSocket广播一致。
+ * 重连时按Last-Event-ID从更新日志补发；所有连接共用一个心跳定时器，空闲连接不占用线程
+ */
+@RestController
+@RequestMapping("/api/spy")
+@Slf4j
+public class SpyStreamController {
+
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    private final SpyUpdateJournal updateJournal;
+    private final Flux<ServerSentEvent<String>> heartbeat;
+
+    public SpyStreamController(SpyUpdateJournal updateJournal,
+                               @Value("${app.spy.stream.heartbeat:15s}") Duration heartbeatInterval) {
+        this.updateJournal = updateJournal;
+        this.heartbeat = Flux.interval(heartbeatInterval)
+            .map(tick -> ServerSentEvent.<String>builder().comment("keepalive").build())
+            .share();
+    }
+
+    /**
+     * 订阅SPY实时更新
+     *
+     * 不支持自定义请求头的EventSource实现可通过lastEventId参数传递最后收到的ID
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<String>>> streamUpdates(
+            @RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+
+        Long lastEventId = parseEventId(lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam);
+
+        Flux<ServerSentEvent<String>> updates = updateJournal.subscribe(lastEventId)
+            .map(entry -> ServerSentEvent.builder(entry.getPayload())
+                .id(Long.toString(entry.getId()))
+                .event(entry.getEvent())
+                .build());
+
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noStore())
+            // 关闭反向代理缓冲，保证事件及时送达
+            .header("X-Accel-Buffering", "no")
+            .body(Flux.merge(updates, heartbeat));
+    }
+
+    /**
+     * 无法解析的ID按新连接处理
+     */
+    private Long parseEventId(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.debug("忽略无效的Last-Event-ID: {}", value);
+            return null;
+        }
+    }
+}
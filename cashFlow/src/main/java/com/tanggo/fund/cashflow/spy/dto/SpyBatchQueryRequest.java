@@ -0,0 +1,26 @@
+package com.tanggo.fund.cashflow.spy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 批量流向查询请求
+ *
+ * dates与startDate/endDate二选一：指定dates时只返回这些日期，否则返回日期范围内的全部结果
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpyBatchQueryRequest {
+    
+    private List<String> tickers;
+    private List<LocalDate> dates;
+    private LocalDate startDate;
+    private LocalDate endDate;
+}
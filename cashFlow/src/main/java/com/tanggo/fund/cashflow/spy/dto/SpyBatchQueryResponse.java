@@ -0,0 +1,46 @@
+package com.tanggo.fund.cashflow.spy.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量流向查询响应
+ *
+ * 按ticker分组(保持请求顺序)，每个日期只返回最新一条结果的核心字段
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpyBatchQueryResponse {
+    
+    private Map<String, List<FlowPoint>> flows;
+    private Integer requestedKeys; // ticker数 × 日期数
+    private Integer foundKeys;
+    private Integer queries;       // 实际执行的数据库查询次数，热窗口命中时为0
+    private String source;         // hot-window 或 database
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class FlowPoint {
+        private LocalDate date;
+        private BigDecimal netInflow;
+        private BigDecimal flowIntensity;
+        private BigDecimal confidence;
+        private BigDecimal dataQuality;
+        private Boolean validationPassed;
+        private Instant timestamp;
+    }
+}
@@ -1,5 +1,6 @@
 package com.tanggo.fund.cashflow.spy.dto;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -32,6 +33,7 @@ public class SpyFlowResponse {
         private String timeRange;
         private SpyFlowSummary summary;
         private List<SpyTimeSeriesPoint> timeSeries;
+        private SpyTimeSeriesColumns columns; // 列式时间序列，与timeSeries二选一
     }
     
     @Data
@@ -56,4 +58,23 @@ public class SpyFlowResponse {
         private BigDecimal confidence;
         private BigDecimal flowIntensity;
     }
-}
\ No newline at end of file
+    
+    /**
+     * 列式时间序列: 下标相同的元素属于同一天，缺失值在内存中为NaN，序列化为null
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SpyTimeSeriesColumns {
+        private long[] timestamps; // data_date当天UTC零点的epoch毫秒
+        @JsonSerialize(using = SpyMissingAsNullSerializer.class)
+        private double[] netInflow;
+        @JsonSerialize(using = SpyMissingAsNullSerializer.class)
+        private double[] confidence;
+        @JsonSerialize(using = SpyMissingAsNullSerializer.class)
+        private double[] flowIntensity;
+        private Integer sourcePoints; // 降采样前的点数
+        private String downsample;    // 降采样算法(lttb/minmax)，未降采样时为null
+    }
+}
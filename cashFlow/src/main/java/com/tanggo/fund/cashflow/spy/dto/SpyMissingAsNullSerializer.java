@@ -0,0 +1,30 @@
+package com.tanggo.fund.cashflow.spy.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * 列式数组序列化: 内部以NaN表示缺失点，输出为null(JSON无NaN字面量，默认会写成字符串"NaN")
+ */
+public class SpyMissingAsNullSerializer extends StdSerializer<double[]> {
+
+    public SpyMissingAsNullSerializer() {
+        super(double[].class);
+    }
+
+    @Override
+    public void serialize(double[] values, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartArray(values, values.length);
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(value);
+            }
+        }
+        gen.writeEndArray();
+    }
+}
@@ -0,0 +1,35 @@
+package com.tanggo.fund.cashflow.spy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 键集分页结果
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpyPage<T> {
+    
+    private List<T> items;
+    private String nextCursor; // 无后续数据时为null
+    private Boolean hasMore;
+    
+    /**
+     * 由多取一行的查询结果构造分页
+     *
+     * @param rows 最多limit + 1行，多出的一行只用于判断是否还有下一页
+     */
+    public static <T> SpyPage<T> of(List<T> rows, int limit, Function<T, SpyPageCursor> cursorOf) {
+        boolean hasMore = rows.size() > limit;
+        List<T> items = hasMore ? rows.subList(0, limit) : rows;
+        String nextCursor = hasMore ? cursorOf.apply(items.get(items.size() - 1)).encode() : null;
+        return new SpyPage<>(items, nextCursor, hasMore);
+    }
+}
@@ -0,0 +1,51 @@
+package com.tanggo.fund.cashflow.spy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * 键集分页游标
+ *
+ * 指向上一页最后一行的(data_date, id)，结果按data_date DESC, id DESC排序，
+ * 下一页从该行之后继续；对外编码为不透明的URL安全字符串
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class SpyPageCursor {
+    
+    private final LocalDate dataDate;
+    private final long id;
+    
+    /**
+     * 编码为游标字符串
+     */
+    public String encode() {
+        String raw = dataDate + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 解析游标字符串
+     *
+     * @throws IllegalArgumentException 游标格式无效
+     */
+    public static SpyPageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new SpyPageCursor(LocalDate.parse(raw.substring(0, separator)),
+                Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + token, e);
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package com.tanggo.fund.cashflow.spy.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.tanggo.fund.cashflow.spy.event.SpyPipelineTrace;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -16,7 +20,7 @@ import java.time.LocalDate;
 @Entity
 @Table(name = "spy_flow_result")
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class SpyFlowResult {
@@ -25,6 +29,10 @@ public class SpyFlowResult {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
+    @Column(name = "ticker", length = 10)
+    @Builder.Default
+    private String ticker = "SPY";
+    
     @Column(name = "data_date", nullable = false)
     private LocalDate dataDate;
     
@@ -81,4 +89,11 @@ public class SpyFlowResult {
     @Column(name = "created_at", columnDefinition = "TIMESTAMP")
     @Builder.Default
     private Instant createdAt = Instant.now();
+    
+    // 采集流水线阶段时间戳，只在内存中随记录传递
+    @Transient
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private SpyPipelineTrace trace;
 }
\ No newline at end of file
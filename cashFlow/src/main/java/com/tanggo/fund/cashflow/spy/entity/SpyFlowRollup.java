@@ -0,0 +1,82 @@
+package com.tanggo.fund.cashflow.spy.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * SPY资金流向周期汇总实体(周/月/季)
+ *
+ * 每个(ticker, grain, bucket_start)一行，由SpyFlowRollupService增量维护
+ */
+@Entity
+@Table(name = "spy_flow_rollup")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpyFlowRollup {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "ticker", length = 10, nullable = false)
+    private String ticker;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "grain", length = 10, nullable = false)
+    private SpyRollupGrain grain;
+    
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDate bucketStart;
+    
+    @Column(name = "bucket_end", nullable = false)
+    private LocalDate bucketEnd;
+    
+    // 净流入汇总
+    @Column(name = "total_net_inflow", precision = 18, scale = 2)
+    private BigDecimal totalNetInflow; // 区间净流入合计
+    
+    @Column(name = "avg_net_inflow", precision = 15, scale = 2)
+    private BigDecimal avgNetInflow; // 日均净流入
+    
+    @Column(name = "min_net_inflow", precision = 15, scale = 2)
+    private BigDecimal minNetInflow;
+    
+    @Column(name = "max_net_inflow", precision = 15, scale = 2)
+    private BigDecimal maxNetInflow;
+    
+    @Column(name = "avg_flow_intensity", precision = 8, scale = 4)
+    private BigDecimal avgFlowIntensity;
+    
+    // 质量指标
+    @Column(name = "avg_confidence", precision = 5, scale = 2)
+    private BigDecimal avgConfidence;
+    
+    @Column(name = "avg_data_quality", precision = 5, scale = 2)
+    private BigDecimal avgDataQuality;
+    
+    @Column(name = "validation_failures")
+    private Integer validationFailures;
+    
+    // 覆盖情况
+    @Column(name = "day_count")
+    private Integer dayCount; // 区间内有结果的天数
+    
+    @Column(name = "first_data_date")
+    private LocalDate firstDataDate;
+    
+    @Column(name = "last_data_date")
+    private LocalDate lastDataDate;
+    
+    @Column(name = "updated_at", columnDefinition = "TIMESTAMP")
+    @Builder.Default
+    private Instant updatedAt = Instant.now();
+}
@@ -1,10 +1,14 @@
 package com.tanggo.fund.cashflow.spy.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.tanggo.fund.cashflow.spy.event.SpyPipelineTrace;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -85,6 +89,13 @@ public class SpyRawData {
     @Builder.Default
     private Instant createdAt = Instant.now();
     
+    // 采集流水线阶段时间戳，只在内存中随记录传递
+    @Transient
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private SpyPipelineTrace trace;
+    
     // 唯一约束
     @Table(uniqueConstraints = {
         @UniqueConstraint(columnNames = {"data_date", "data_source"})
@@ -0,0 +1,60 @@
+package com.tanggo.fund.cashflow.spy.entity;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+
+/**
+ * 汇总粒度
+ *
+ * 周从周一开始，与DuckDB date_trunc('week')一致
+ */
+public enum SpyRollupGrain {
+    
+    WEEK("week"),
+    MONTH("month"),
+    QUARTER("quarter");
+    
+    private final String truncUnit;
+    
+    SpyRollupGrain(String truncUnit) {
+        this.truncUnit = truncUnit;
+    }
+    
+    /**
+     * DuckDB date_trunc使用的单位
+     */
+    public String getTruncUnit() {
+        return truncUnit;
+    }
+    
+    /**
+     * 日期所属桶的起始日
+     */
+    public LocalDate bucketStart(LocalDate date) {
+        return switch (this) {
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> date.withDayOfMonth(1);
+            case QUARTER -> LocalDate.of(date.getYear(), (date.getMonthValue() - 1) / 3 * 3 + 1, 1);
+        };
+    }
+    
+    /**
+     * 桶的结束日(含)
+     */
+    public LocalDate bucketEnd(LocalDate bucketStart) {
+        return switch (this) {
+            case WEEK -> bucketStart.plusDays(6);
+            case MONTH -> bucketStart.plusMonths(1).minusDays(1);
+            case QUARTER -> bucketStart.plusMonths(3).minusDays(1);
+        };
+    }
+    
+    /**
+     * 解析路径参数(week/month/quarter，忽略大小写)
+     */
+    public static SpyRollupGrain fromPath(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
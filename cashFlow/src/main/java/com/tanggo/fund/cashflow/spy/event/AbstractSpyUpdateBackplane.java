@@ -0,0 +1,95 @@
+package com.tanggo.fund.cashflow.spy.event;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 背板公共部分: 本实例的投递回调与投递指标
+ */
+@Slf4j
+public abstract class AbstractSpyUpdateBackplane implements SpyUpdateBackplane {
+
+    private final List<Consumer<SpyFlowResult>> listeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<SpyFlowResult>> remoteListeners = new CopyOnWriteArrayList<>();
+
+    private final Counter published;
+    private final Counter publishFailures;
+    private final Counter deliveredLocal;
+    private final Counter deliveredRemote;
+    private final Timer remoteLag;
+
+    protected AbstractSpyUpdateBackplane(MeterRegistry meterRegistry) {
+        this.published = Counter.builder("spy.backplane.published")
+            .description("本实例发布到背板的更新数")
+            .register(meterRegistry);
+        this.publishFailures = Counter.builder("spy.backplane.publish.failures")
+            .description("发布到背板失败的更新数(本实例仍会投递)")
+            .register(meterRegistry);
+        this.deliveredLocal = Counter.builder("spy.backplane.delivered")
+            .description("本实例从背板投递给订阅者的更新数，按来源区分")
+            .tag("origin", "local")
+            .register(meterRegistry);
+        this.deliveredRemote = Counter.builder("spy.backplane.delivered")
+            .description("本实例从背板投递给订阅者的更新数，按来源区分")
+            .tag("origin", "remote")
+            .register(meterRegistry);
+        this.remoteLag = Timer.builder("spy.backplane.lag")
+            .description("其他实例发布到本实例开始投递的延迟")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void subscribe(Consumer<SpyFlowResult> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void subscribeRemote(Consumer<SpyFlowResult> listener) {
+        remoteListeners.add(listener);
+    }
+
+    protected void recordPublished() {
+        published.increment();
+    }
+
+    protected void recordPublishFailure() {
+        publishFailures.increment();
+    }
+
+    /**
+     * 投递发布者自身的更新
+     */
+    protected void deliverLocal(SpyFlowResult result) {
+        deliveredLocal.increment();
+        deliver(listeners, result);
+    }
+
+    /**
+     * 投递其他实例发布的更新，publishedAt为发布时刻(epoch毫秒)
+     */
+    protected void deliverRemote(SpyFlowResult result, long publishedAt) {
+        deliveredRemote.increment();
+        remoteLag.record(Math.max(0, System.currentTimeMillis() - publishedAt), TimeUnit.MILLISECONDS);
+        // 先更新本地读模型，推送时的快照与之一致
+        deliver(remoteListeners, result);
+        deliver(listeners, result);
+    }
+
+    private static void deliver(List<Consumer<SpyFlowResult>> targets, SpyFlowResult result) {
+        for (Consumer<SpyFlowResult> listener : targets) {
+            try {
+                listener.accept(result);
+            } catch (Exception e) {
+                log.error("投递背板更新失败: ticker={}, dataDate={}", result.getTicker(), result.getDataDate(), e);
+            }
+        }
+    }
+}
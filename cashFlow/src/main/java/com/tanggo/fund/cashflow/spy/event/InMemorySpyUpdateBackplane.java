@@ -0,0 +1,20 @@
+package com.tanggo.fund.cashflow.spy.event;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 进程内背板(单实例部署及测试环境下替代Redis)，发布时同步投递给所有回调
+ */
+public class InMemorySpyUpdateBackplane extends AbstractSpyUpdateBackplane {
+
+    public InMemorySpyUpdateBackplane(MeterRegistry meterRegistry) {
+        super(meterRegistry);
+    }
+
+    @Override
+    public void publish(SpyFlowResult result) {
+        recordPublished();
+        deliverLocal(result);
+    }
+}
@@ -0,0 +1,112 @@
+package com.tanggo.fund.cashflow.spy.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Redis pub/sub背板
+ *
+ * 发布者先在本实例投递，再把结果发布到频道；其他实例收到后各自投递，忽略本实例发出的消息。
+ * Redis不可用时发布失败只计数，本实例订阅者不受影响
+ */
+@Slf4j
+public class RedisSpyUpdateBackplane extends AbstractSpyUpdateBackplane implements DisposableBean {
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final String channel;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    public RedisSpyUpdateBackplane(StringRedisTemplate redisTemplate,
+                                   RedisConnectionFactory connectionFactory,
+                                   ObjectMapper objectMapper,
+                                   MeterRegistry meterRegistry,
+                                   String channel) {
+        super(meterRegistry);
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.channel = channel;
+
+        // 监听容器不注册为Bean，避免Redis不可用时阻塞应用启动
+        this.listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.addMessageListener((message, pattern) ->
+            handleMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(channel));
+    }
+
+    /**
+     * 订阅更新频道
+     *
+     * Redis不可用时定期重试
+     */
+    @Scheduled(initialDelay = 0, fixedDelay = 30000)
+    public void ensureSubscribed() {
+        if (listenerContainer.isRunning()) {
+            return;
+        }
+
+        try {
+            listenerContainer.start();
+            log.info("已订阅实时更新背板频道: {}", channel);
+        } catch (Exception e) {
+            log.warn("订阅实时更新背板失败，稍后重试: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        listenerContainer.destroy();
+    }
+
+    @Override
+    public void publish(SpyFlowResult result) {
+        recordPublished();
+        deliverLocal(result);
+
+        try {
+            Envelope envelope = new Envelope(instanceId, System.currentTimeMillis(), result, result.getTrace());
+            String message = objectMapper.writeValueAsString(envelope);
+            redisTemplate.convertAndSend(channel, message);
+        } catch (Exception e) {
+            recordPublishFailure();
+            log.warn("发布实时更新到背板失败，仅本实例投递: {}", e.getMessage());
+        }
+    }
+
+    void handleMessage(String message) {
+        Envelope envelope;
+        try {
+            envelope = objectMapper.readValue(message, Envelope.class);
+        } catch (Exception e) {
+            log.warn("背板消息格式错误: {}", e.getMessage());
+            return;
+        }
+        if (instanceId.equals(envelope.origin()) || envelope.result() == null) {
+            return; // 本实例发布的更新已在发布时投递
+        }
+
+        envelope.result().setTrace(envelope.trace());
+        deliverRemote(envelope.result(), envelope.publishedAt());
+        log.debug("收到远程实时更新: origin={}, ticker={}", envelope.origin(), envelope.result().getTicker());
+    }
+
+    /**
+     * 频道消息: 发布实例、发布时刻(epoch毫秒)、计算结果及其流水线时间戳(结果序列化时不含时间戳)
+     */
+    record Envelope(String origin, long publishedAt, SpyFlowResult result, SpyPipelineTrace trace) {
+    }
+}
@@ -0,0 +1,25 @@
+package com.tanggo.fund.cashflow.spy.event;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * SPY计算结果已保存事件
+ *
+ * 由SpyCalculationService在结果落库后发布，缓存失效等下游组件据此精确更新。
+ * 其他实例保存的结果经背板到达并写入本实例数据库后以remote=true发布，不会再发布到背板
+ */
+@Getter
+@AllArgsConstructor
+public class SpyFlowResultSavedEvent {
+    
+    private final SpyFlowResult result;
+    
+    // 是否为其他实例保存的结果
+    private final boolean remote;
+    
+    public SpyFlowResultSavedEvent(SpyFlowResult result) {
+        this(result, false);
+    }
+}
@@ -0,0 +1,63 @@
+package com.tanggo.fund.cashflow.spy.event;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 采集流水线各阶段时间戳
+ *
+ * 采集到源数据时创建，随原始数据、计算结果(及背板消息)传递，在推送到WebSocket会话后由SpyFreshnessTracker统计
+ */
+public class SpyPipelineTrace {
+
+    /**
+     * 流水线阶段，按发生顺序排列
+     */
+    public enum Stage {
+        FETCHED,
+        VALIDATED,
+        RAW_SAVED,
+        CALC_STARTED,
+        CALCULATED,
+        RESULT_SAVED,
+        DELIVERED
+    }
+
+    private final Map<Stage, Instant> stages = new EnumMap<>(Stage.class);
+
+    public SpyPipelineTrace() {
+    }
+
+    @JsonCreator
+    public SpyPipelineTrace(@JsonProperty("stages") Map<Stage, Instant> stages) {
+        if (stages != null) {
+            this.stages.putAll(stages);
+        }
+    }
+
+    /**
+     * 以刚采集到源数据为起点
+     */
+    public static SpyPipelineTrace fetched() {
+        SpyPipelineTrace trace = new SpyPipelineTrace();
+        trace.mark(Stage.FETCHED);
+        return trace;
+    }
+
+    public synchronized void mark(Stage stage) {
+        stages.put(stage, Instant.now());
+    }
+
+    public synchronized Optional<Instant> at(Stage stage) {
+        return Optional.ofNullable(stages.get(stage));
+    }
+
+    public synchronized Map<Stage, Instant> getStages() {
+        return new EnumMap<>(stages);
+    }
+}
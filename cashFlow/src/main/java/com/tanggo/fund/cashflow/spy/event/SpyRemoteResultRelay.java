@@ -0,0 +1,84 @@
+package com.tanggo.fund.cashflow.spy.event;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
+import com.tanggo.fund.cashflow.spy.service.SpyTickerPartitions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 远程结果转发
+ *
+ * 其他实例保存的结果经背板到达后，先经单写线程写入本实例数据库，再回到ticker所属分区发布remote=true的
+ * SpyFlowResultSavedEvent。本地库因此含有各分片的结果，按日期/范围/统计等走数据库的查询与热窗口、
+ * 版本索引、汇总等读模型保持一致；该事件不会再发布到背板。
+ *
+ * 写入按(ticker, 日期, 计算时间戳)幂等：共享数据库或重复投递时已有同一版本则沿用原行。
+ * 各实例主键序列独立，远程结果以新主键写入，事件携带本地行
+ */
+@Component
+@Slf4j
+public class SpyRemoteResultRelay {
+
+    private final SpyFlowResultRepository flowResultRepository;
+    private final SpyPersistenceWriter persistenceWriter;
+    private final SpyTickerPartitions partitions;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public SpyRemoteResultRelay(SpyUpdateBackplane updateBackplane, ApplicationEventPublisher eventPublisher,
+                                SpyFlowResultRepository flowResultRepository, SpyPersistenceWriter persistenceWriter,
+                                SpyTickerPartitions partitions) {
+        this.flowResultRepository = flowResultRepository;
+        this.persistenceWriter = persistenceWriter;
+        this.partitions = partitions;
+        this.eventPublisher = eventPublisher;
+        updateBackplane.subscribeRemote(this::apply);
+    }
+
+    private void apply(SpyFlowResult remote) {
+        if (remote.getDataDate() == null || remote.getTimestamp() == null) {
+            log.warn("忽略缺少日期或时间戳的远程结果: ticker={}", remote.getTicker());
+            return;
+        }
+
+        String ticker = remote.getTicker() != null ? remote.getTicker() : "SPY";
+        CompletableFuture<SpyFlowResult> stored = persistenceWriter.submit(() -> storeLocally(ticker, remote));
+
+        // 落库确认后回到本ticker的分区发布，与本实例自己的结果保持同一顺序
+        partitions.executeWhenComplete(ticker, stored, (state, error) -> {
+            if (error != null) {
+                log.error("远程结果写入本地失败: ticker={}, dataDate={}", ticker, remote.getDataDate(), error);
+                return;
+            }
+            eventPublisher.publishEvent(new SpyFlowResultSavedEvent(stored.join(), true));
+            log.debug("已应用远程结果: ticker={}, dataDate={}", ticker, remote.getDataDate());
+        });
+    }
+
+    /**
+     * 已有同一版本则返回原行，否则以本地主键写入副本(需在写线程内调用)
+     *
+     * 数据库时间戳精度为微秒，按微秒截断后比较，避免发布实例内存中的纳秒时间戳与库中的值对不上
+     */
+    private SpyFlowResult storeLocally(String ticker, SpyFlowResult remote) {
+        Instant timestamp = remote.getTimestamp().truncatedTo(ChronoUnit.MICROS);
+        return flowResultRepository.findVersion(ticker, remote.getDataDate(), timestamp).stream()
+            .findFirst()
+            .orElseGet(() -> flowResultRepository.save(copyOf(remote, ticker, timestamp)));
+    }
+
+    private static SpyFlowResult copyOf(SpyFlowResult remote, String ticker, Instant timestamp) {
+        return remote.toBuilder()
+            .id(null)
+            .ticker(ticker)
+            .timestamp(timestamp)
+            .trace(null)
+            .build();
+    }
+}
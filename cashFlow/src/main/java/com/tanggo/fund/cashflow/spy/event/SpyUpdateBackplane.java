@@ -0,0 +1,28 @@
+package com.tanggo.fund.cashflow.spy.event;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+
+import java.util.function.Consumer;
+
+/**
+ * 跨实例实时更新背板
+ *
+ * 计算结果只发布一次，每个实例(含发布者)的投递回调各收到一次，再分发给本实例的WebSocket/SSE订阅者
+ */
+public interface SpyUpdateBackplane {
+
+    /**
+     * 发布一条计算结果
+     */
+    void publish(SpyFlowResult result);
+
+    /**
+     * 注册本实例的投递回调
+     */
+    void subscribe(Consumer<SpyFlowResult> listener);
+
+    /**
+     * 注册只接收其他实例发布的更新的回调，在投递回调之前调用
+     */
+    void subscribeRemote(Consumer<SpyFlowResult> listener);
+}
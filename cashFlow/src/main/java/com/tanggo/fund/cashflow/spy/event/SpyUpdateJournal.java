@@ -0,0 +1,195 @@
+package com.tanggo.fund.cashflow.spy.event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SPY实时更新日志
+ *
+ * 每条更新只序列化一次，分配单调递增的ID后写入有界环形缓冲并推送给所有在线订阅者。
+ * 断线重连的客户端按最后收到的ID从缓冲补发，不查询数据库；缺口超出缓冲时发送reset提示客户端重新拉取。
+ * SSE与WebSocket共用同一序列号(消息中的seq)
+ */
+@Component
+@Slf4j
+public class SpyUpdateJournal {
+
+    public static final String UPDATE_EVENT = "spy_update";
+    public static final String RESET_EVENT = "reset";
+
+    private static final Duration EMIT_RETRY = Duration.ofMillis(100);
+
+    private final ObjectMapper objectMapper;
+    private final Entry[] ring;
+    private final Sinks.Many<Entry> live = Sinks.many().multicast().directBestEffort();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    // 以启动时刻为起点，重启后ID仍然递增，旧进程的ID会落在缓冲之外而触发reset
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final long firstId = sequence.get() + 1;
+
+    public SpyUpdateJournal(ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.spy.stream.journal-size:1024}") int journalSize) {
+        this.objectMapper = objectMapper;
+        this.ring = new Entry[journalSize];
+        Gauge.builder("spy.stream.subscribers", subscribers, AtomicInteger::get)
+            .description("实时更新流当前订阅者数量")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 追加一条结果更新，消息即WebSocket v1广播帧；序列化失败时返回null且不占用序列号
+     */
+    public Entry append(SpyFlowResult result) {
+        Entry entry;
+        synchronized (ring) {
+            long id = sequence.get() + 1;
+            Map<String, Object> update = new LinkedHashMap<>();
+            update.put("type", UPDATE_EVENT);
+            update.put("seq", id);
+            update.put("timestamp", Instant.now().toString());
+            update.put("data", result);
+
+            try {
+                entry = new Entry(id, UPDATE_EVENT, objectMapper.writeValueAsString(update), result);
+            } catch (JsonProcessingException e) {
+                log.error("序列化SPY更新数据失败", e);
+                return null;
+            }
+            sequence.set(id);
+            ring[(int) (id % ring.length)] = entry;
+        }
+        // 在锁外推送，订阅者按ID从缓冲补齐，并发追加造成的乱序不影响投递顺序
+        live.emitNext(entry, Sinks.EmitFailureHandler.busyLooping(EMIT_RETRY));
+        return entry;
+    }
+
+    /**
+     * 订阅更新流
+     *
+     * @param lastEventId 客户端最后收到的ID，null表示新连接(补发最近一条作为初始状态)
+     */
+    public Flux<Entry> subscribe(Long lastEventId) {
+        return Flux.defer(() -> {
+            AtomicLong delivered = new AtomicLong(lastEventId != null ? lastEventId : Math.max(head() - 1, firstId - 1));
+
+            // 先订阅实时流再读取当前位置，二者之间追加的更新不会遗漏；
+            // 每次收到信号都从缓冲补齐到该ID，实时流丢弃(慢订阅者)的更新也能补上
+            Flux<Long> signals = Flux.merge(live.asFlux().map(Entry::getId), Mono.fromSupplier(this::head));
+            return signals.concatMap(upTo -> Flux.fromIterable(drain(delivered, upTo)))
+                .doOnSubscribe(s -> subscribers.incrementAndGet())
+                .doFinally(signal -> subscribers.decrementAndGet());
+        });
+    }
+
+    /**
+     * lastId之后的全部更新；lastId超出当前进程范围或缺口已被覆盖时返回empty，调用方应改为发送完整状态
+     */
+    public Optional<List<Entry>> since(long lastId) {
+        synchronized (ring) {
+            long head = head();
+            if (lastId > head || lastId + 1 < oldestId(head)) {
+                return Optional.empty();
+            }
+            List<Entry> entries = new ArrayList<>((int) (head - lastId));
+            for (long id = lastId + 1; id <= head; id++) {
+                entries.add(ring[(int) (id % ring.length)]);
+            }
+            return Optional.of(entries);
+        }
+    }
+
+    public long head() {
+        return sequence.get();
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.get();
+    }
+
+    /**
+     * 取出(delivered, upTo]区间的更新并推进delivered，缺口已被覆盖时返回reset
+     */
+    private List<Entry> drain(AtomicLong delivered, long upTo) {
+        long from = delivered.get();
+        synchronized (ring) {
+            long head = head();
+            // 客户端ID超出当前进程范围(如重启前的ID)或已被覆盖
+            if (from > head || (from + 1 < oldestId(head) && upTo > from)) {
+                delivered.set(head);
+                return List.of(new Entry(head, RESET_EVENT, "{\"type\":\"" + RESET_EVENT + "\"}", null));
+            }
+            if (upTo <= from) {
+                return List.of();
+            }
+
+            List<Entry> entries = new ArrayList<>((int) (upTo - from));
+            for (long id = from + 1; id <= upTo; id++) {
+                entries.add(ring[(int) (id % ring.length)]);
+            }
+            delivered.set(upTo);
+            return entries;
+        }
+    }
+
+    private long oldestId(long head) {
+        return Math.max(firstId, head - ring.length + 1);
+    }
+
+    /**
+     * 已序列化的更新
+     */
+    public static final class Entry {
+
+        private final long id;
+        private final String event;
+        private final String payload;
+        private final SpyFlowResult result;
+
+        Entry(long id, String event, String payload, SpyFlowResult result) {
+            this.id = id;
+            this.event = event;
+            this.payload = payload;
+            this.result = result;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        /**
+         * 更新对应的结果，用于按主题过滤补发；reset条目为null
+         */
+        public SpyFlowResult getResult() {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内租约存储(单实例/测试)
+ */
+public class InMemorySpyLeaseStore implements SpyLeaseStore {
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public Acquisition tryAcquire(String name, String owner, Instant now, Duration ttl) {
+        Lease[] previous = new Lease[1];
+        Lease current = leases.compute(name, (key, lease) -> {
+            previous[0] = lease;
+            if (lease == null || lease.owner().equals(owner) || lease.isExpired(now)) {
+                return new Lease(owner, now, now.plus(ttl));
+            }
+            return lease;
+        });
+        return new Acquisition(current.owner().equals(owner), previous[0]);
+    }
+
+    @Override
+    public void release(String name, String owner) {
+        leases.computeIfPresent(name, (key, lease) ->
+            lease.owner().equals(owner) ? new Lease(owner, lease.renewedAt(), Instant.EPOCH) : lease);
+    }
+
+    @Override
+    public Optional<Lease> find(String name) {
+        return Optional.ofNullable(leases.get(name));
+    }
+
+    @Override
+    public Map<String, Lease> findByPrefix(String prefix) {
+        Map<String, Lease> result = new TreeMap<>();
+        leases.forEach((name, lease) -> {
+            if (name.startsWith(prefix)) {
+                result.put(name, lease);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public int removeStale(String prefix, Instant renewedBefore) {
+        int[] removed = {0};
+        leases.keySet().forEach(name -> {
+            if (name.startsWith(prefix) && leases.computeIfPresent(name, (key, lease) ->
+                lease.renewedAt().isBefore(renewedBefore) ? null : lease) == null) {
+                removed[0]++;
+            }
+        });
+        return removed[0];
+    }
+}
@@ -0,0 +1,139 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * 数据库表租约存储
+ *
+ * 各实例须连接同一数据库服务；嵌入式DuckDB只在本进程可见，配置时拒绝(见SpyLeaseConfig)。
+ * 接管已过期租约时以原持有者和原到期时间做条件更新(CAS)，多个实例同时接管只有一个成功。
+ * 写操作经DuckDB单写线程执行；到期时间取各实例本地时钟，ttl应远大于实例间时钟偏差
+ */
+public class JdbcSpyLeaseStore implements SpyLeaseStore {
+
+    static final String TABLE = "spy_lease";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SpyPersistenceWriter persistenceWriter;
+    private volatile boolean tableReady;
+
+    public JdbcSpyLeaseStore(JdbcTemplate jdbcTemplate, SpyPersistenceWriter persistenceWriter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.persistenceWriter = persistenceWriter;
+    }
+
+    @Override
+    public Acquisition tryAcquire(String name, String owner, Instant now, Duration ttl) {
+        return execute(() -> {
+            Lease previous = select(name).orElse(null);
+            long expiresAt = now.plus(ttl).toEpochMilli();
+
+            int updated;
+            if (previous == null) {
+                // 并发首次插入时主键冲突使本次写入失败，单写线程逐条重试时将读到已有租约
+                updated = jdbcTemplate.update("INSERT INTO " + TABLE +
+                        " (lease_name, holder, renewed_at, expires_at) VALUES (?, ?, ?, ?)",
+                    name, owner, now.toEpochMilli(), expiresAt);
+            } else if (previous.owner().equals(owner) || previous.isExpired(now)) {
+                updated = jdbcTemplate.update("UPDATE " + TABLE +
+                        " SET holder = ?, renewed_at = ?, expires_at = ?" +
+                        " WHERE lease_name = ? AND holder = ? AND expires_at = ?",
+                    owner, now.toEpochMilli(), expiresAt, name, previous.owner(), previous.expiresAt().toEpochMilli());
+            } else {
+                updated = 0;
+            }
+            return new Acquisition(updated == 1, previous);
+        });
+    }
+
+    @Override
+    public void release(String name, String owner) {
+        execute(() -> jdbcTemplate.update("UPDATE " + TABLE + " SET expires_at = 0 WHERE lease_name = ? AND holder = ?",
+            name, owner));
+    }
+
+    @Override
+    public Optional<Lease> find(String name) {
+        return execute(() -> select(name));
+    }
+
+    @Override
+    public Map<String, Lease> findByPrefix(String prefix) {
+        return execute(() -> selectByPrefix(prefix));
+    }
+
+    @Override
+    public int removeStale(String prefix, Instant renewedBefore) {
+        return execute(() -> {
+            int removed = 0;
+            for (String name : selectByPrefix(prefix).keySet()) {
+                // 以续期时刻为条件，删除前刚续期的租约不受影响
+                removed += jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE lease_name = ? AND renewed_at < ?",
+                    name, renewedBefore.toEpochMilli());
+            }
+            return removed;
+        });
+    }
+
+    private Map<String, Lease> selectByPrefix(String prefix) {
+        Map<String, Lease> result = new TreeMap<>();
+        jdbcTemplate.query(
+            "SELECT lease_name, holder, renewed_at, expires_at FROM " + TABLE + " WHERE lease_name LIKE ?",
+            rs -> {
+                String name = rs.getString("lease_name");
+                // LIKE中的_和%为通配符，按前缀再过滤一次
+                if (name.startsWith(prefix)) {
+                    result.put(name, mapLease(rs));
+                }
+            },
+            prefix + "%");
+        return result;
+    }
+
+    private Optional<Lease> select(String name) {
+        List<Lease> leases = jdbcTemplate.query(
+            "SELECT holder, renewed_at, expires_at FROM " + TABLE + " WHERE lease_name = ?",
+            (rs, rowNum) -> mapLease(rs),
+            name);
+        return leases.stream().findFirst();
+    }
+
+    private static Lease mapLease(ResultSet rs) throws SQLException {
+        return new Lease(rs.getString("holder"),
+            Instant.ofEpochMilli(rs.getLong("renewed_at")),
+            Instant.ofEpochMilli(rs.getLong("expires_at")));
+    }
+
+    /**
+     * 在写线程的批次事务内执行，首次执行时建表(建表随事务提交后才记为完成)
+     */
+    private <T> T execute(Supplier<T> operation) {
+        boolean createTable = !tableReady;
+        T result = persistenceWriter.submit(() -> {
+            if (createTable) {
+                createTable();
+            }
+            return operation.get();
+        }).join();
+        tableReady = true;
+        return result;
+    }
+
+    private void createTable() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+            "lease_name VARCHAR(64) PRIMARY KEY, " +
+            "holder VARCHAR(128) NOT NULL, " +
+            "renewed_at BIGINT NOT NULL, " +
+            "expires_at BIGINT NOT NULL)");
+    }
+}
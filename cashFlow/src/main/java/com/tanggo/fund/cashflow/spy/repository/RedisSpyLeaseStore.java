@@ -0,0 +1,114 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Redis租约存储(各实例共享同一Redis)
+ *
+ * 全部租约存于一个哈希，字段为租约名，值为"到期时刻|续期时刻|持有者"(毫秒)。获得、释放与清理由Lua脚本原子执行，
+ * 多个实例同时接管只有一个成功。到期时间取各实例本地时钟，ttl应远大于实例间时钟偏差
+ */
+public class RedisSpyLeaseStore implements SpyLeaseStore {
+
+    private static final RedisScript<List> ACQUIRE = new DefaultRedisScript<>(
+        "local current = redis.call('HGET', KEYS[1], ARGV[1]) " +
+        "if current then " +
+        "  local expiresAt, holder = string.match(current, '^(%d+)|%d+|(.*)$') " +
+        "  if holder ~= ARGV[2] and tonumber(expiresAt) > tonumber(ARGV[3]) then " +
+        "    return {'0', current} " +
+        "  end " +
+        "end " +
+        "redis.call('HSET', KEYS[1], ARGV[1], ARGV[4]) " +
+        "return {'1', current or ''}",
+        List.class);
+
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+        "local current = redis.call('HGET', KEYS[1], ARGV[1]) " +
+        "if current then " +
+        "  local renewedAt, holder = string.match(current, '^%d+|(%d+)|(.*)$') " +
+        "  if holder == ARGV[2] then " +
+        "    redis.call('HSET', KEYS[1], ARGV[1], '0|' .. renewedAt .. '|' .. holder) " +
+        "    return 1 " +
+        "  end " +
+        "end " +
+        "return 0",
+        Long.class);
+
+    private static final RedisScript<Long> REMOVE_STALE = new DefaultRedisScript<>(
+        "local removed = 0 " +
+        "local entries = redis.call('HGETALL', KEYS[1]) " +
+        "for i = 1, #entries, 2 do " +
+        "  local renewedAt = tonumber(string.match(entries[i + 1], '^%d+|(%d+)|')) " +
+        "  if string.sub(entries[i], 1, #ARGV[1]) == ARGV[1] and renewedAt < tonumber(ARGV[2]) then " +
+        "    redis.call('HDEL', KEYS[1], entries[i]) " +
+        "    removed = removed + 1 " +
+        "  end " +
+        "end " +
+        "return removed",
+        Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String key;
+
+    public RedisSpyLeaseStore(StringRedisTemplate redisTemplate, String key) {
+        this.redisTemplate = redisTemplate;
+        this.key = key;
+    }
+
+    @Override
+    public Acquisition tryAcquire(String name, String owner, Instant now, Duration ttl) {
+        List<?> reply = redisTemplate.execute(ACQUIRE, List.of(key), name, owner, String.valueOf(now.toEpochMilli()),
+            encode(new Lease(owner, now, now.plus(ttl))));
+        String previous = String.valueOf(reply.get(1));
+        return new Acquisition("1".equals(String.valueOf(reply.get(0))),
+            previous.isEmpty() ? null : decode(previous));
+    }
+
+    @Override
+    public void release(String name, String owner) {
+        redisTemplate.execute(RELEASE, List.of(key), name, owner);
+    }
+
+    @Override
+    public Optional<Lease> find(String name) {
+        Object value = redisTemplate.opsForHash().get(key, name);
+        return Optional.ofNullable(value).map(v -> decode(v.toString()));
+    }
+
+    @Override
+    public Map<String, Lease> findByPrefix(String prefix) {
+        Map<String, Lease> result = new TreeMap<>();
+        redisTemplate.opsForHash().entries(key).forEach((name, value) -> {
+            if (name.toString().startsWith(prefix)) {
+                result.put(name.toString(), decode(value.toString()));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public int removeStale(String prefix, Instant renewedBefore) {
+        Long removed = redisTemplate.execute(REMOVE_STALE, List.of(key), prefix,
+            String.valueOf(renewedBefore.toEpochMilli()));
+        return removed != null ? removed.intValue() : 0;
+    }
+
+    static String encode(Lease lease) {
+        return lease.expiresAt().toEpochMilli() + "|" + lease.renewedAt().toEpochMilli() + "|" + lease.owner();
+    }
+
+    static Lease decode(String value) {
+        String[] parts = value.split("\\|", 3);
+        return new Lease(parts[2], Instant.ofEpochMilli(Long.parseLong(parts[1])),
+            Instant.ofEpochMilli(Long.parseLong(parts[0])));
+    }
+}
@@ -0,0 +1,51 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.duckdb.DuckDBResultSet;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 将DuckDB查询结果直接导出为Arrow IPC流
+ *
+ * 结果由DuckDB按向量批次通过Arrow C数据接口交给Java，不经过逐行JDBC取值
+ */
+public final class SpyArrowStreams {
+
+    // DuckDB向量大小
+    private static final int BATCH_SIZE = 2048;
+
+    private SpyArrowStreams() {
+    }
+
+    /**
+     * 写出整个结果集，返回写出的行数
+     */
+    public static long write(ResultSet rs, BufferAllocator allocator, OutputStream out) throws SQLException {
+        DuckDBResultSet duckResult = rs.unwrap(DuckDBResultSet.class);
+
+        try (BufferAllocator child = allocator.newChildAllocator("arrow-export", 0, Long.MAX_VALUE);
+             ArrowReader reader = (ArrowReader) duckResult.arrowExportStream(child, BATCH_SIZE);
+             ArrowStreamWriter writer = new ArrowStreamWriter(reader.getVectorSchemaRoot(), null,
+                 Channels.newChannel(StreamUtils.nonClosing(out)))) {
+            long rows = 0;
+            writer.start();
+            while (reader.loadNextBatch()) {
+                writer.writeBatch();
+                rows += reader.getVectorSchemaRoot().getRowCount();
+            }
+            writer.end();
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -30,11 +30,11 @@ public class SpyDataSourceRepository {
     private String alphaVantageApiKey;
 
     /**
-     * 从主数据源获取SPY数据
+     * 从主数据源获取ticker数据
      */
-    public SpyFlowData fetchFromPrimarySource() {
+    public SpyFlowData fetchFromPrimarySource(String ticker) {
         try {
-            return fetchFromYahooFinance(); // 使用免费可靠的Yahoo Finance作为主数据源
+            return fetchFromYahooFinance(ticker); // 使用免费可靠的Yahoo Finance作为主数据源
         } catch (Exception e) {
             log.error("Yahoo Finance数据获取失败", e);
             throw new RuntimeException("主数据源不可用", e);
@@ -42,11 +42,11 @@ public class SpyDataSourceRepository {
     }
 
     /**
-     * 从备用数据源获取SPY数据
+     * 从备用数据源获取ticker数据
      */
-    public SpyFlowData fetchFromBackupSource() {
+    public SpyFlowData fetchFromBackupSource(String ticker) {
         try {
-            return fetchFromAlphaVantage(); // Alpha Vantage作为备用
+            return fetchFromAlphaVantage(ticker); // Alpha Vantage作为备用
         } catch (Exception e) {
             log.error("Alpha Vantage数据获取失败", e);
             throw new RuntimeException("备用数据源不可用", e);
@@ -54,10 +54,10 @@ public class SpyDataSourceRepository {
     }
 
     /**
-     * 从Yahoo Finance获取SPY数据
+     * 从Yahoo Finance获取数据
      */
-    private SpyFlowData fetchFromYahooFinance() {
-        String url = "https://query1.finance.yahoo.com/v8/finance/chart/SPY";
+    private SpyFlowData fetchFromYahooFinance(String ticker) {
+        String url = "https://query1.finance.yahoo.com/v8/finance/chart/" + ticker;
 
         try {
             Map<String, Object> response = webClient.get()
@@ -67,7 +67,7 @@ public class SpyDataSourceRepository {
                 .timeout(Duration.ofSeconds(15))
                 .block();
 
-            return parseYahooResponse(response);
+            return parseYahooResponse(ticker, response);
         } catch (WebClientResponseException e) {
             log.error("Yahoo Finance API调用失败: {}", e.getMessage());
             throw new RuntimeException("Yahoo Finance API错误", e);
@@ -75,14 +75,14 @@ public class SpyDataSourceRepository {
     }
 
     /**
-     * 从Alpha Vantage获取SPY数据
+     * 从Alpha Vantage获取数据
      */
-    private SpyFlowData fetchFromAlphaVantage() {
+    private SpyFlowData fetchFromAlphaVantage(String ticker) {
         if (alphaVantageApiKey == null || alphaVantageApiKey.isEmpty()) {
             throw new RuntimeException("Alpha Vantage API密钥未配置");
         }
 
-        String url = "https://www.alphavantage.co/query?function=GLOBAL_QUOTE&symbol=SPY&apikey=" + alphaVantageApiKey;
+        String url = "https://www.alphavantage.co/query?function=GLOBAL_QUOTE&symbol=" + ticker + "&apikey=" + alphaVantageApiKey;
 
         try {
             Map<String, Object> response = webClient.get()
@@ -92,7 +92,7 @@ public class SpyDataSourceRepository {
                 .timeout(Duration.ofSeconds(30))
                 .block();
 
-            return parseAlphaVantageResponse(response);
+            return parseAlphaVantageResponse(ticker, response);
         } catch (WebClientResponseException e) {
             log.error("Alpha Vantage API调用失败: {}", e.getMessage());
             throw new RuntimeException("Alpha Vantage API错误", e);
@@ -103,7 +103,7 @@ public class SpyDataSourceRepository {
      * 解析Yahoo Finance响应
      */
     @SuppressWarnings("unchecked")
-    private SpyFlowData parseYahooResponse(Map<String, Object> response) {
+    private SpyFlowData parseYahooResponse(String ticker, Map<String, Object> response) {
         try {
             Map<String, Object> chart = (Map<String, Object>) response.get("chart");
             Map<String, Object>[] results = (Map<String, Object>[]) chart.get("result");
@@ -123,7 +123,7 @@ public class SpyDataSourceRepository {
             BigDecimal mockNetInflow = calculateMockNetInflow(currentPrice, previousClose);
 
             return SpyFlowData.builder()
-                .ticker("SPY")
+                .ticker(ticker)
                 .dataDate(LocalDate.now())
                 .marketPrice(currentPrice)
                 .nav(currentPrice) // NAV通常接近市场价格
@@ -149,7 +149,7 @@ public class SpyDataSourceRepository {
      * 解析Alpha Vantage响应
      */
     @SuppressWarnings("unchecked")
-    private SpyFlowData parseAlphaVantageResponse(Map<String, Object> response) {
+    private SpyFlowData parseAlphaVantageResponse(String ticker, Map<String, Object> response) {
         try {
             Map<String, Object> quote = (Map<String, Object>) response.get("Global Quote");
 
@@ -165,7 +165,7 @@ public class SpyDataSourceRepository {
             BigDecimal mockNetInflow = calculateMockNetInflow(currentPrice, previousClose);
 
             return SpyFlowData.builder()
-                .ticker("SPY")
+                .ticker(ticker)
                 .dataDate(LocalDate.now())
                 .marketPrice(currentPrice)
                 .nav(currentPrice)
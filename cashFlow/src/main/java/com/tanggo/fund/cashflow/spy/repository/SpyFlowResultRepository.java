@@ -1,10 +1,12 @@
 package com.tanggo.fund.cashflow.spy.repository;
 
 import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -14,7 +16,8 @@ import java.util.Optional;
  * SPY计算结果仓库
  */
 @Repository
-public interface SpyFlowResultRepository extends JpaRepository<SpyFlowResult, Long> {
+@Transactional(readOnly = true)
+public interface SpyFlowResultRepository extends JpaRepository<SpyFlowResult, Long>, SpyFlowResultRepositoryCustom {
     
     /**
      * 根据日期查找结果
@@ -22,43 +25,14 @@ public interface SpyFlowResultRepository extends JpaRepository<SpyFlowResult, Lo
     Optional<SpyFlowResult> findByDataDate(LocalDate dataDate);
     
     /**
-     * 查找最新的结果
+     * 查找ticker的最新结果(日期最新，同一日期取时间戳最新)，旧数据ticker为空时视为SPY
      */
-    Optional<SpyFlowResult> findTopByOrderByDataDateDesc();
+    @Query("SELECT s FROM SpyFlowResult s WHERE COALESCE(s.ticker, 'SPY') = :ticker " +
+           "ORDER BY s.dataDate DESC, s.timestamp DESC, s.id DESC")
+    List<SpyFlowResult> findLatestByTicker(@Param("ticker") String ticker, Limit limit);
     
     /**
      * 根据日期范围查找结果
      */
     List<SpyFlowResult> findByDataDateBetweenOrderByDataDateDesc(LocalDate startDate, LocalDate endDate);
-    
-    /**
-     * 获取最近N天的数据
-     */
-    @Query("SELECT s FROM SpyFlowResult s WHERE s.dataDate >= :startDate ORDER BY s.dataDate DESC")
-    List<SpyFlowResult> findRecentResults(@Param("startDate") LocalDate startDate);
-    
-    /**
-     * 获取置信度统计
-     */
-    @Query("SELECT AVG(s.overallConfidence), MIN(s.overallConfidence), MAX(s.overallConfidence) " +
-           "FROM SpyFlowResult s WHERE s.dataDate >= :startDate")
-    Object[] getConfidenceStats(@Param("startDate") LocalDate startDate);
-    
-    /**
-     * 获取净流入统计
-     */
-    @Query("SELECT SUM(s.finalNetInflow), AVG(s.finalNetInflow), COUNT(s) " +
-           "FROM SpyFlowResult s WHERE s.dataDate >= :startDate")
-    Object[] getNetInflowStats(@Param("startDate") LocalDate startDate);
-    
-    /**
-     * 获取数据质量评分平均值
-     */
-    @Query("SELECT AVG(s.dataQualityScore) FROM SpyFlowResult s WHERE s.dataDate >= :startDate")
-    Double getAverageDataQualityScore(@Param("startDate") LocalDate startDate);
-    
-    /**
-     * 查找验证未通过的记录
-     */
-    List<SpyFlowResult> findByValidationPassedFalseAndDataDateGreaterThanEqual(LocalDate startDate);
 }
\ No newline at end of file
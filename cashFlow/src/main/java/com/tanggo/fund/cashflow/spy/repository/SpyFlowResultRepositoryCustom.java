@@ -0,0 +1,85 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import com.tanggo.fund.cashflow.spy.dto.SpyPageCursor;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * SPY计算结果冷热分层查询
+ */
+@Transactional(readOnly = true)
+public interface SpyFlowResultRepositoryCustom {
+
+    /**
+     * 根据日期范围查找ticker的结果(合并DuckDB热表与Parquet冷分区)，旧数据ticker为空时视为SPY
+     */
+    List<SpyFlowResult> findTieredByDataDateBetween(String ticker, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * 根据日期查找ticker的结果(合并DuckDB热表与Parquet冷分区)，同一日期有多条时取时间戳最新的一条
+     */
+    Optional<SpyFlowResult> findTieredByDataDate(String ticker, LocalDate dataDate);
+
+    /**
+     * 查找startDate以来所有ticker的结果(合并DuckDB热表与Parquet冷分区)，按日期倒序，供热窗口加载
+     */
+    List<SpyFlowResult> findRecentResults(LocalDate startDate);
+
+    /**
+     * 在热表中查找同一版本(ticker、日期、计算时间戳均相同)的结果，旧数据ticker为空时视为SPY
+     */
+    List<SpyFlowResult> findVersion(String ticker, LocalDate dataDate, Instant timestamp);
+
+    /**
+     * ticker自startDate起的置信度统计: 平均、最小、最大(合并冷热数据，下同)
+     */
+    Object[] getConfidenceStats(String ticker, LocalDate startDate);
+
+    /**
+     * ticker自startDate起的净流入统计: 合计、平均、条数
+     */
+    Object[] getNetInflowStats(String ticker, LocalDate startDate);
+
+    /**
+     * ticker自startDate起的数据质量评分平均值
+     */
+    Double getAverageDataQualityScore(String ticker, LocalDate startDate);
+
+    /**
+     * ticker自startDate起验证未通过的记录数
+     */
+    long countValidationFailures(String ticker, LocalDate startDate);
+
+    /**
+     * 批量查询多个ticker在日期范围内每日最新的一条结果(单条集合查询)，按ticker、data_date升序
+     *
+     * @param dates 只返回这些日期，传null返回范围内全部日期
+     */
+    List<SpyFlowResult> findTieredLatestByTickers(Collection<String> tickers, LocalDate startDate, LocalDate endDate,
+                                                  Collection<LocalDate> dates);
+
+    /**
+     * 键集分页查询，按data_date DESC, id DESC排序返回游标之后的最多limit条结果
+     *
+     * @param after 上一页最后一行的游标，首页传null
+     */
+    List<SpyFlowResult> findTieredPage(LocalDate startDate, LocalDate endDate, SpyPageCursor after, int limit);
+
+    /**
+     * 流式查询日期范围内的结果，按键集分页逐页查询、逐行回调，内存中最多保留一页(app.spy.query.fetch-size行)
+     */
+    void streamTieredByDataDateBetween(LocalDate startDate, LocalDate endDate, Consumer<? super SpyFlowResult> consumer);
+
+    /**
+     * 将ticker在日期范围内的结果以Arrow IPC流写出(由DuckDB直接导出)，返回行数
+     */
+    long exportTieredArrow(String ticker, LocalDate startDate, LocalDate endDate, OutputStream out);
+}
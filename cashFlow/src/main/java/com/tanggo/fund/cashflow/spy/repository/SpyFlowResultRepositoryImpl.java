@@ -0,0 +1,165 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import com.tanggo.fund.cashflow.spy.dto.SpyPageCursor;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import org.apache.arrow.memory.BufferAllocator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static com.tanggo.fund.cashflow.spy.repository.SpyParquetPartitionCatalog.FLOW_RESULT_TABLE;
+
+/**
+ * SPY计算结果冷热分层查询实现
+ */
+public class SpyFlowResultRepositoryImpl implements SpyFlowResultRepositoryCustom {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SpyParquetPartitionCatalog partitionCatalog;
+    private final BufferAllocator arrowBufferAllocator;
+    private final int fetchSize;
+
+    public SpyFlowResultRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                       SpyParquetPartitionCatalog partitionCatalog,
+                                       BufferAllocator arrowBufferAllocator,
+                                       @Value("${app.spy.query.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitionCatalog = partitionCatalog;
+        this.arrowBufferAllocator = arrowBufferAllocator;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public List<SpyFlowResult> findTieredByDataDateBetween(String ticker, LocalDate startDate, LocalDate endDate) {
+        String sql = "SELECT * FROM " + partitionCatalog.tieredSource(FLOW_RESULT_TABLE, startDate, endDate) +
+            " WHERE data_date BETWEEN CAST(? AS DATE) AND CAST(? AS DATE) AND COALESCE(ticker, 'SPY') = ?" +
+            " ORDER BY data_date DESC, id DESC";
+
+        return jdbcTemplate.query(sql, SpyFlowResultRowMapper.INSTANCE, startDate.toString(), endDate.toString(), ticker);
+    }
+
+    @Override
+    public Optional<SpyFlowResult> findTieredByDataDate(String ticker, LocalDate dataDate) {
+        String sql = "SELECT * FROM " + partitionCatalog.tieredSource(FLOW_RESULT_TABLE, dataDate, dataDate) +
+            " WHERE data_date = CAST(? AS DATE) AND COALESCE(ticker, 'SPY') = ?" +
+            " ORDER BY timestamp DESC, id DESC LIMIT 1";
+
+        return jdbcTemplate.query(sql, SpyFlowResultRowMapper.INSTANCE, dataDate.toString(), ticker).stream().findFirst();
+    }
+
+    @Override
+    public List<SpyFlowResult> findRecentResults(LocalDate startDate) {
+        String sql = "SELECT * FROM " + partitionCatalog.tieredSource(FLOW_RESULT_TABLE, startDate, LocalDate.now()) +
+            " WHERE data_date >= CAST(? AS DATE) ORDER BY data_date DESC, id DESC";
+
+        return jdbcTemplate.query(sql, SpyFlowResultRowMapper.INSTANCE, startDate.toString());
+    }
+
+    /**
+     * 时间戳按JVM时区绑定，与Hibernate写入及行映射读取的方式一致
+     */
+    @Override
+    public List<SpyFlowResult> findVersion(String ticker, LocalDate dataDate, Instant timestamp) {
+        String sql = "SELECT * FROM " + FLOW_RESULT_TABLE +
+            " WHERE COALESCE(ticker, 'SPY') = ? AND data_date = CAST(? AS DATE) AND timestamp = ?";
+
+        return jdbcTemplate.query(sql, SpyFlowResultRowMapper.INSTANCE, ticker, dataDate.toString(),
+            Timestamp.from(timestamp));
+    }
+
+    @Override
+    public Object[] getConfidenceStats(String ticker, LocalDate startDate) {
+        return aggregateSince(ticker, startDate, "AVG(overall_confidence), MIN(overall_confidence), MAX(overall_confidence)",
+            (rs, rowNum) -> new Object[] {rs.getObject(1), rs.getObject(2), rs.getObject(3)});
+    }
+
+    @Override
+    public Object[] getNetInflowStats(String ticker, LocalDate startDate) {
+        return aggregateSince(ticker, startDate, "SUM(final_net_inflow), AVG(final_net_inflow), COUNT(*)",
+            (rs, rowNum) -> new Object[] {rs.getObject(1), rs.getObject(2), rs.getLong(3)});
+    }
+
+    @Override
+    public Double getAverageDataQualityScore(String ticker, LocalDate startDate) {
+        return aggregateSince(ticker, startDate, "AVG(data_quality_score)",
+            (rs, rowNum) -> rs.getObject(1) != null ? rs.getDouble(1) : null);
+    }
+
+    @Override
+    public long countValidationFailures(String ticker, LocalDate startDate) {
+        return aggregateSince(ticker, startDate, "COUNT(*) FILTER (WHERE validation_passed = false)",
+            (rs, rowNum) -> rs.getLong(1));
+    }
+
+    /**
+     * 对ticker自startDate起的冷热数据执行单行聚合
+     */
+    private <T> T aggregateSince(String ticker, LocalDate startDate, String aggregates, RowMapper<T> mapper) {
+        String sql = "SELECT " + aggregates + " FROM " +
+            partitionCatalog.tieredSource(FLOW_RESULT_TABLE, startDate, LocalDate.now()) +
+            " WHERE data_date >= CAST(? AS DATE) AND COALESCE(ticker, 'SPY') = ?";
+
+        return jdbcTemplate.queryForObject(sql, mapper, startDate.toString(), ticker);
+    }
+
+    @Override
+    public List<SpyFlowResult> findTieredLatestByTickers(Collection<String> tickers, LocalDate startDate, LocalDate endDate,
+                                                         Collection<LocalDate> dates) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM ")
+            .append(partitionCatalog.tieredSource(FLOW_RESULT_TABLE, startDate, endDate))
+            .append(" WHERE data_date BETWEEN CAST(? AS DATE) AND CAST(? AS DATE) AND COALESCE(ticker, 'SPY') IN (")
+            .append(String.join(", ", Collections.nCopies(tickers.size(), "?")))
+            .append(')');
+        List<Object> args = new ArrayList<>(tickers.size() + (dates != null ? dates.size() : 0) + 2);
+        args.add(startDate.toString());
+        args.add(endDate.toString());
+        args.addAll(tickers);
+
+        if (dates != null) {
+            sql.append(" AND data_date IN (")
+                .append(String.join(", ", Collections.nCopies(dates.size(), "CAST(? AS DATE)")))
+                .append(')');
+            dates.forEach(date -> args.add(date.toString()));
+        }
+
+        sql.append(" QUALIFY ROW_NUMBER() OVER (PARTITION BY COALESCE(ticker, 'SPY'), data_date ORDER BY timestamp DESC, id DESC) = 1")
+            .append(" ORDER BY COALESCE(ticker, 'SPY'), data_date");
+
+        return jdbcTemplate.query(sql.toString(), SpyFlowResultRowMapper.INSTANCE, args.toArray());
+    }
+
+    @Override
+    public List<SpyFlowResult> findTieredPage(LocalDate startDate, LocalDate endDate, SpyPageCursor after, int limit) {
+        return SpyTieredQueries.findPage(jdbcTemplate, partitionCatalog, FLOW_RESULT_TABLE, SpyFlowResultRowMapper.INSTANCE,
+            startDate, endDate, after, limit);
+    }
+
+    @Override
+    public void streamTieredByDataDateBetween(LocalDate startDate, LocalDate endDate, Consumer<? super SpyFlowResult> consumer) {
+        SpyTieredQueries.stream(jdbcTemplate, partitionCatalog, FLOW_RESULT_TABLE, SpyFlowResultRowMapper.INSTANCE,
+            row -> new SpyPageCursor(row.getDataDate(), row.getId()), startDate, endDate, fetchSize, consumer);
+    }
+
+    @Override
+    public long exportTieredArrow(String ticker, LocalDate startDate, LocalDate endDate, OutputStream out) {
+        String sql = "SELECT * FROM " + partitionCatalog.tieredSource(FLOW_RESULT_TABLE, startDate, endDate) +
+            " WHERE data_date BETWEEN CAST(? AS DATE) AND CAST(? AS DATE) AND COALESCE(ticker, 'SPY') = ?" +
+            " ORDER BY data_date DESC, id DESC";
+
+        ResultSetExtractor<Long> exporter = rs -> SpyArrowStreams.write(rs, arrowBufferAllocator, out);
+        Long rows = jdbcTemplate.query(sql, exporter, startDate.toString(), endDate.toString(), ticker);
+        return rows != null ? rows : 0L;
+    }
+}
@@ -0,0 +1,47 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * spy_flow_result行映射(热表与Parquet冷分区通用)
+ */
+public class SpyFlowResultRowMapper implements RowMapper<SpyFlowResult> {
+
+    public static final SpyFlowResultRowMapper INSTANCE = new SpyFlowResultRowMapper();
+
+    @Override
+    public SpyFlowResult mapRow(ResultSet rs, int rowNum) throws SQLException {
+        SpyFlowResult result = new SpyFlowResult();
+        result.setId(rs.getLong("id"));
+        // 早期归档的冷分区没有ticker列
+        String ticker = rs.getString("ticker");
+        result.setTicker(ticker != null ? ticker : "SPY");
+        result.setDataDate(rs.getDate("data_date").toLocalDate());
+        result.setTimestamp(toInstant(rs.getTimestamp("timestamp")));
+        result.setFinalNetInflow(rs.getBigDecimal("final_net_inflow"));
+        result.setFlowIntensity(rs.getBigDecimal("flow_intensity"));
+        result.setVolumeWeightedPrice(rs.getBigDecimal("volume_weighted_price"));
+        result.setEtfComContribution(rs.getBigDecimal("etf_com_contribution"));
+        result.setYahooContribution(rs.getBigDecimal("yahoo_contribution"));
+        result.setPrimarySource(rs.getString("primary_source"));
+        result.setOverallConfidence(rs.getBigDecimal("overall_confidence"));
+        result.setDataQualityScore(rs.getBigDecimal("data_quality_score"));
+        result.setValidationPassed((Boolean) rs.getObject("validation_passed"));
+        result.setGeographicDimension(rs.getString("geographic_dimension"));
+        result.setCurrencyDimension(rs.getString("currency_dimension"));
+        result.setMarketCapDimension(rs.getString("market_cap_dimension"));
+        result.setSectorDimension(rs.getString("sector_dimension"));
+        result.setCreatedAt(toInstant(rs.getTimestamp("created_at")));
+        return result;
+    }
+
+    static Instant toInstant(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toInstant() : null;
+    }
+}
@@ -0,0 +1,30 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowRollup;
+import com.tanggo.fund.cashflow.spy.entity.SpyRollupGrain;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * SPY周期汇总仓库
+ */
+@Repository
+@Transactional(readOnly = true)
+public interface SpyFlowRollupRepository extends JpaRepository<SpyFlowRollup, Long> {
+    
+    /**
+     * 查找单个汇总桶
+     */
+    Optional<SpyFlowRollup> findByTickerAndGrainAndBucketStart(String ticker, SpyRollupGrain grain, LocalDate bucketStart);
+    
+    /**
+     * 查找范围内的汇总桶(按桶起始日倒序)
+     */
+    List<SpyFlowRollup> findByTickerAndGrainAndBucketStartBetweenOrderByBucketStartDesc(
+        String ticker, SpyRollupGrain grain, LocalDate startDate, LocalDate endDate);
+}
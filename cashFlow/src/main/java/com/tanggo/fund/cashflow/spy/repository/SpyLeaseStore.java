@@ -0,0 +1,52 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 租约存储(跨实例成员登记与分片)
+ *
+ * 同名租约同一时刻至多一个持有者；持有者需在到期前续期，否则其他实例可接管
+ */
+public interface SpyLeaseStore {
+
+    /**
+     * 租约空闲、已过期或已由owner持有时获得(续期)租约，到期时间为now+ttl
+     */
+    Acquisition tryAcquire(String name, String owner, Instant now, Duration ttl);
+
+    /**
+     * owner仍持有时立即释放，其他实例下次尝试即可接管
+     */
+    void release(String name, String owner);
+
+    Optional<Lease> find(String name);
+
+    /**
+     * 列出名称以prefix开头的全部租约(含已过期)，键为租约名
+     */
+    Map<String, Lease> findByPrefix(String prefix);
+
+    /**
+     * 删除名称以prefix开头、最近续期早于renewedBefore的租约(持有者已停止续期或已释放)，返回删除条数
+     */
+    int removeStale(String prefix, Instant renewedBefore);
+
+    /**
+     * 租约: 持有者、最近续期时刻、到期时刻
+     */
+    record Lease(String owner, Instant renewedAt, Instant expiresAt) {
+
+        public boolean isExpired(Instant now) {
+            return !expiresAt.isAfter(now);
+        }
+    }
+
+    /**
+     * 尝试结果及尝试前的租约(不存在时为null)，用于统计换主耗时
+     */
+    record Acquisition(boolean acquired, Lease previous) {
+    }
+}
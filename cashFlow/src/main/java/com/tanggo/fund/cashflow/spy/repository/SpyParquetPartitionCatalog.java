@@ -0,0 +1,162 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 冷数据Parquet分区目录
+ *
+ * 目录布局: {archive-dir}/{table}/data_date=YYYY-MM-DD/part-*.parquet
+ * 查询时按data_date裁剪分区，只把命中的分区交给read_parquet
+ */
+@Component
+@Slf4j
+public class SpyParquetPartitionCatalog {
+
+    public static final String FLOW_RESULT_TABLE = "spy_flow_result";
+    public static final String RAW_DATA_TABLE = "spy_raw_data";
+
+    private static final String PARTITION_PREFIX = "data_date=";
+
+    private final Path archiveRoot;
+    private final boolean enabled;
+
+    // 表名 -> 已归档的分区日期
+    private final Map<String, NavigableSet<LocalDate>> partitions = new ConcurrentHashMap<>();
+
+    public SpyParquetPartitionCatalog(
+            @Value("${app.storage.tiering.archive-dir:data/archive}") String archiveDir,
+            @Value("${app.storage.tiering.enabled:true}") boolean enabled) {
+        this.archiveRoot = Paths.get(archiveDir).toAbsolutePath().normalize();
+        this.enabled = enabled;
+        if (enabled) {
+            refresh();
+        }
+    }
+
+    /**
+     * 重新扫描归档目录
+     */
+    public void refresh() {
+        for (String table : List.of(FLOW_RESULT_TABLE, RAW_DATA_TABLE)) {
+            NavigableSet<LocalDate> dates = new ConcurrentSkipListSet<>();
+            Path tableDir = archiveRoot.resolve(table);
+            if (Files.isDirectory(tableDir)) {
+                try (DirectoryStream<Path> dirs = Files.newDirectoryStream(tableDir, PARTITION_PREFIX + "*")) {
+                    for (Path dir : dirs) {
+                        LocalDate date = parsePartitionDate(dir);
+                        if (date != null && hasParquetFiles(dir)) {
+                            dates.add(date);
+                        }
+                    }
+                } catch (IOException e) {
+                    log.warn("扫描Parquet归档目录失败: {}", tableDir, e);
+                }
+            }
+            partitions.put(table, dates);
+        }
+        log.info("Parquet冷数据分区加载完成: {}={}, {}={}",
+            FLOW_RESULT_TABLE, partitions.get(FLOW_RESULT_TABLE).size(),
+            RAW_DATA_TABLE, partitions.get(RAW_DATA_TABLE).size());
+    }
+
+    /**
+     * 登记新写入的分区
+     *
+     * @return false表示该分区此前已登记
+     */
+    public boolean register(String table, LocalDate dataDate) {
+        return partitions.computeIfAbsent(table, t -> new ConcurrentSkipListSet<>()).add(dataDate);
+    }
+
+    /**
+     * 撤销登记(归档回滚时)
+     */
+    public void unregister(String table, LocalDate dataDate) {
+        NavigableSet<LocalDate> dates = partitions.get(table);
+        if (dates != null) {
+            dates.remove(dataDate);
+        }
+    }
+
+    /**
+     * 获取日期范围内命中的分区文件通配路径(已裁剪)
+     */
+    public List<String> partitionGlobs(String table, LocalDate startDate, LocalDate endDate) {
+        NavigableSet<LocalDate> dates = partitions.get(table);
+        if (!enabled || dates == null || dates.isEmpty() || startDate.isAfter(endDate)) {
+            return List.of();
+        }
+
+        List<String> globs = new ArrayList<>();
+        for (LocalDate date : dates.subSet(startDate, true, endDate, true)) {
+            globs.add(partitionDir(table, date).resolve("*.parquet").toString());
+        }
+        return globs;
+    }
+
+    /**
+     * 分区目录
+     */
+    public Path partitionDir(String table, LocalDate dataDate) {
+        return archiveRoot.resolve(table).resolve(PARTITION_PREFIX + dataDate);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 构造冷热合并的数据源表达式
+     *
+     * 范围内没有冷分区时直接返回热表名；否则按列名合并热表与裁剪后的read_parquet，
+     * 归档后新增的列在旧分区中补NULL
+     */
+    public String tieredSource(String table, LocalDate startDate, LocalDate endDate) {
+        List<String> globs = partitionGlobs(table, startDate, endDate);
+        if (globs.isEmpty()) {
+            return table;
+        }
+
+        StringBuilder sql = new StringBuilder("(SELECT * FROM ").append(table)
+            .append(" UNION ALL BY NAME SELECT * FROM read_parquet([");
+        for (int i = 0; i < globs.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append('\'').append(globs.get(i).replace("'", "''")).append('\'');
+        }
+        // 目录名data_date=...会被识别为hive分区列(VARCHAR)并覆盖文件中的DATE列，需关闭
+        return sql.append("], hive_partitioning = false)) AS ").append(table).toString();
+    }
+
+    private LocalDate parsePartitionDate(Path dir) {
+        try {
+            return LocalDate.parse(dir.getFileName().toString().substring(PARTITION_PREFIX.length()));
+        } catch (DateTimeParseException e) {
+            log.warn("忽略无法识别的分区目录: {}", dir);
+            return null;
+        }
+    }
+
+    private boolean hasParquetFiles(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.parquet")) {
+            return files.iterator().hasNext();
+        }
+    }
+}
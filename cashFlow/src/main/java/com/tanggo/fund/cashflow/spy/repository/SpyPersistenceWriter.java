@@ -0,0 +1,265 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.Id;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * DuckDB单写线程
+ *
+ * 任意线程通过无锁队列提交写请求，由专用写线程按批次/时间片合并为一个事务提交(group commit)，
+ * 调用方通过CompletableFuture获取结果。批次事务失败时逐条重试，只让出错的请求失败
+ */
+@Component
+@Slf4j
+public class SpyPersistenceWriter implements SmartLifecycle {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long LINGER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final ConcurrentLinkedQueue<PendingWrite<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long timeSliceNanos;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer commitTimer;
+
+    private volatile boolean running;
+    private volatile Thread writerThread;
+
+    public SpyPersistenceWriter(PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.persistence.writer.batch-size:200}") int batchSize,
+                                @Value("${app.persistence.writer.time-slice-ms:10}") long timeSliceMs) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.timeSliceNanos = TimeUnit.MILLISECONDS.toNanos(timeSliceMs);
+
+        Gauge.builder("spy.writer.queue.depth", queueDepth, AtomicInteger::get)
+            .description("等待写入的请求数")
+            .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("spy.writer.batch.size")
+            .description("每次提交合并的写请求数")
+            .register(meterRegistry);
+        this.commitTimer = Timer.builder("spy.writer.commit")
+            .description("批次事务提交耗时")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 提交保存请求
+     *
+     * 批次回滚后实体上仍留有回滚事务内生成的主键，逐条重试前恢复为提交前的值，使新实体重新走persist而不是merge
+     */
+    public <T> CompletableFuture<T> save(CrudRepository<T, ?> repository, T entity) {
+        Field idField = findIdField(entity.getClass());
+        if (idField == null) {
+            return submit(() -> repository.save(entity));
+        }
+        Object originalId = ReflectionUtils.getField(idField, entity);
+        return submit(() -> repository.save(entity), () -> ReflectionUtils.setField(idField, entity, originalId));
+    }
+
+    /**
+     * 提交任意写操作，在写线程的批次事务内执行
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        return submit(operation, null);
+    }
+
+    /**
+     * 提交写操作，rollback在批次事务回滚后、逐条重试前执行，用于撤销操作对内存对象的修改
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> operation, Runnable rollback) {
+        PendingWrite<T> write = new PendingWrite<>(operation, rollback);
+        if (!running) {
+            write.future.completeExceptionally(new IllegalStateException("DuckDB写线程未运行"));
+            return write.future;
+        }
+
+        queue.offer(write);
+        queueDepth.incrementAndGet();
+        LockSupport.unpark(writerThread);
+        return write.future;
+    }
+
+    /**
+     * 写线程主循环
+     */
+    private void runLoop() {
+        List<PendingWrite<?>> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            PendingWrite<?> first = queue.poll();
+            if (first == null) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+
+            batch.add(first);
+            long deadline = System.nanoTime() + timeSliceNanos;
+
+            // 在时间片内尽量攒满一批
+            while (batch.size() < batchSize) {
+                PendingWrite<?> next = queue.poll();
+                if (next != null) {
+                    batch.add(next);
+                } else if (running && System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(this, LINGER_PARK_NANOS);
+                } else {
+                    break;
+                }
+            }
+
+            queueDepth.addAndGet(-batch.size());
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 以单个事务提交整批写请求
+     */
+    private void commit(List<PendingWrite<?>> batch) {
+        long start = System.nanoTime();
+        List<Object> results = new ArrayList<>(batch.size());
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (PendingWrite<?> write : batch) {
+                    results.add(write.operation.get());
+                }
+            });
+        } catch (Exception e) {
+            log.warn("批次写入失败，逐条重试: 批次大小={}", batch.size(), e);
+            batch.forEach(PendingWrite::rollback);
+            commitIndividually(batch);
+            return;
+        } finally {
+            commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizeSummary.record(batch.size());
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i));
+        }
+    }
+
+    private void commitIndividually(List<PendingWrite<?>> batch) {
+        for (PendingWrite<?> write : batch) {
+            try {
+                Object result = transactionTemplate.execute(status -> write.operation.get());
+                write.complete(result);
+            } catch (Exception e) {
+                log.error("写入请求失败", e);
+                write.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static Field findIdField(Class<?> type) {
+        Field[] found = new Field[1];
+        ReflectionUtils.doWithFields(type, field -> {
+            ReflectionUtils.makeAccessible(field);
+            found[0] = field;
+        }, field -> found[0] == null && field.isAnnotationPresent(Id.class));
+        return found[0];
+    }
+
+    /**
+     * 当前排队的写请求数
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this::runLoop, "DuckDB-Writer");
+        thread.setDaemon(true);
+        writerThread = thread;
+        thread.start();
+        log.info("DuckDB单写线程启动: 批次大小={}, 时间片={}ms",
+            batchSize, TimeUnit.NANOSECONDS.toMillis(timeSliceNanos));
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = writerThread;
+        if (thread == null) {
+            return;
+        }
+
+        LockSupport.unpark(thread);
+        try {
+            // 写完剩余队列后退出
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+        log.info("DuckDB单写线程已停止: 剩余队列={}", queueDepth.get());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 先于其他默认阶段组件启动、晚于其停止，关闭时先写完分区线程提交的结果
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 1;
+    }
+
+    /**
+     * 待写入请求
+     */
+    private static final class PendingWrite<T> {
+
+        private final Supplier<T> operation;
+        private final Runnable rollback;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private PendingWrite(Supplier<T> operation, Runnable rollback) {
+            this.operation = operation;
+            this.rollback = rollback;
+        }
+
+        private void rollback() {
+            if (rollback != null) {
+                rollback.run();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void complete(Object result) {
+            future.complete((T) result);
+        }
+    }
+}
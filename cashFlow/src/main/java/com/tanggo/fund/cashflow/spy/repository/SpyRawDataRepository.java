@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -14,7 +15,8 @@ import java.util.Optional;
  * SPY原始数据仓库
  */
 @Repository
-public interface SpyRawDataRepository extends JpaRepository<SpyRawData, Long> {
+@Transactional(readOnly = true)
+public interface SpyRawDataRepository extends JpaRepository<SpyRawData, Long>, SpyRawDataRepositoryCustom {
     
     /**
      * 根据日期和数据源查找数据
@@ -43,17 +45,4 @@ public interface SpyRawDataRepository extends JpaRepository<SpyRawData, Long> {
            "AND s.dataDate >= :startDate ORDER BY s.dataDate DESC")
     List<SpyRawData> findRecentByDataSource(@Param("dataSource") String dataSource, 
                                            @Param("startDate") LocalDate startDate);
-    
-    /**
-     * 获取数据源可用性统计
-     */
-    @Query("SELECT s.dataSource, COUNT(s) as count FROM SpyRawData s " +
-           "WHERE s.dataDate >= :startDate GROUP BY s.dataSource")
-    List<Object[]> getDataSourceAvailabilityStats(@Param("startDate") LocalDate startDate);
-    
-    /**
-     * 获取置信度平均值
-     */
-    @Query("SELECT AVG(s.confidenceScore) FROM SpyRawData s WHERE s.dataDate >= :startDate")
-    Double getAverageConfidenceScore(@Param("startDate") LocalDate startDate);
 }
\ No newline at end of file
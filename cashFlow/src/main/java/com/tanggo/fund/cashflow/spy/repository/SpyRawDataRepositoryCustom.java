@@ -0,0 +1,43 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import com.tanggo.fund.cashflow.spy.dto.SpyPageCursor;
+import com.tanggo.fund.cashflow.spy.entity.SpyRawData;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * SPY原始数据冷热分层查询
+ */
+@Transactional(readOnly = true)
+public interface SpyRawDataRepositoryCustom {
+
+    /**
+     * 根据日期范围查找数据(合并DuckDB热表与Parquet冷分区)
+     */
+    List<SpyRawData> findTieredByDataDateBetween(LocalDate startDate, LocalDate endDate);
+
+    /**
+     * ticker自startDate起各数据源的记录数(合并冷热数据)，每行为[数据源, 条数]
+     */
+    List<Object[]> getDataSourceAvailabilityStats(String ticker, LocalDate startDate);
+
+    /**
+     * ticker自startDate起的置信度平均值(合并冷热数据)
+     */
+    Double getAverageConfidenceScore(String ticker, LocalDate startDate);
+
+    /**
+     * 键集分页查询，按data_date DESC, id DESC排序返回游标之后的最多limit条数据
+     *
+     * @param after 上一页最后一行的游标，首页传null
+     */
+    List<SpyRawData> findTieredPage(LocalDate startDate, LocalDate endDate, SpyPageCursor after, int limit);
+
+    /**
+     * 流式查询日期范围内的数据，按键集分页逐页查询、逐行回调，内存中最多保留一页(app.spy.query.fetch-size行)
+     */
+    void streamTieredByDataDateBetween(LocalDate startDate, LocalDate endDate, Consumer<? super SpyRawData> consumer);
+}
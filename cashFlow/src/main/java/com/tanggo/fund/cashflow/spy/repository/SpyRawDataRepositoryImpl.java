@@ -0,0 +1,72 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import com.tanggo.fund.cashflow.spy.dto.SpyPageCursor;
+import com.tanggo.fund.cashflow.spy.entity.SpyRawData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.tanggo.fund.cashflow.spy.repository.SpyParquetPartitionCatalog.RAW_DATA_TABLE;
+
+/**
+ * SPY原始数据冷热分层查询实现
+ */
+public class SpyRawDataRepositoryImpl implements SpyRawDataRepositoryCustom {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SpyParquetPartitionCatalog partitionCatalog;
+    private final int fetchSize;
+
+    public SpyRawDataRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                    SpyParquetPartitionCatalog partitionCatalog,
+                                    @Value("${app.spy.query.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitionCatalog = partitionCatalog;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public List<SpyRawData> findTieredByDataDateBetween(LocalDate startDate, LocalDate endDate) {
+        String sql = "SELECT * FROM " + partitionCatalog.tieredSource(RAW_DATA_TABLE, startDate, endDate) +
+            " WHERE data_date BETWEEN CAST(? AS DATE) AND CAST(? AS DATE) ORDER BY data_date DESC, id DESC";
+
+        return jdbcTemplate.query(sql, SpyRawDataRowMapper.INSTANCE, startDate.toString(), endDate.toString());
+    }
+
+    @Override
+    public List<Object[]> getDataSourceAvailabilityStats(String ticker, LocalDate startDate) {
+        String sql = "SELECT data_source, COUNT(*) FROM " + tieredSinceSource(startDate) +
+            " WHERE data_date >= CAST(? AS DATE) AND COALESCE(ticker, 'SPY') = ? GROUP BY data_source";
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new Object[] {rs.getString(1), rs.getLong(2)},
+            startDate.toString(), ticker);
+    }
+
+    @Override
+    public Double getAverageConfidenceScore(String ticker, LocalDate startDate) {
+        String sql = "SELECT AVG(confidence_score) FROM " + tieredSinceSource(startDate) +
+            " WHERE data_date >= CAST(? AS DATE) AND COALESCE(ticker, 'SPY') = ?";
+
+        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> rs.getObject(1) != null ? rs.getDouble(1) : null,
+            startDate.toString(), ticker);
+    }
+
+    private String tieredSinceSource(LocalDate startDate) {
+        return partitionCatalog.tieredSource(RAW_DATA_TABLE, startDate, LocalDate.now());
+    }
+
+    @Override
+    public List<SpyRawData> findTieredPage(LocalDate startDate, LocalDate endDate, SpyPageCursor after, int limit) {
+        return SpyTieredQueries.findPage(jdbcTemplate, partitionCatalog, RAW_DATA_TABLE, SpyRawDataRowMapper.INSTANCE,
+            startDate, endDate, after, limit);
+    }
+
+    @Override
+    public void streamTieredByDataDateBetween(LocalDate startDate, LocalDate endDate, Consumer<? super SpyRawData> consumer) {
+        SpyTieredQueries.stream(jdbcTemplate, partitionCatalog, RAW_DATA_TABLE, SpyRawDataRowMapper.INSTANCE,
+            row -> new SpyPageCursor(row.getDataDate(), row.getId()), startDate, endDate, fetchSize, consumer);
+    }
+}
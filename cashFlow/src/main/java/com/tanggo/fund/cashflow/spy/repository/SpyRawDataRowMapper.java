@@ -0,0 +1,50 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyRawData;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * spy_raw_data行映射(热表与Parquet冷分区通用)
+ */
+public class SpyRawDataRowMapper implements RowMapper<SpyRawData> {
+
+    public static final SpyRawDataRowMapper INSTANCE = new SpyRawDataRowMapper();
+
+    @Override
+    public SpyRawData mapRow(ResultSet rs, int rowNum) throws SQLException {
+        SpyRawData raw = new SpyRawData();
+        raw.setId(rs.getLong("id"));
+        raw.setDataDate(rs.getDate("data_date").toLocalDate());
+        raw.setTimestamp(SpyFlowResultRowMapper.toInstant(rs.getTimestamp("timestamp")));
+        raw.setTicker(rs.getString("ticker"));
+        raw.setAum(rs.getBigDecimal("aum"));
+        raw.setSharesOutstanding(getLong(rs, "shares_outstanding"));
+        raw.setNav(rs.getBigDecimal("nav"));
+        raw.setMarketPrice(rs.getBigDecimal("market_price"));
+        raw.setDailyNetInflow(rs.getBigDecimal("daily_net_inflow"));
+        raw.setTotalInflow(rs.getBigDecimal("total_inflow"));
+        raw.setTotalOutflow(rs.getBigDecimal("total_outflow"));
+        raw.setCreationUnits(getInteger(rs, "creation_units"));
+        raw.setRedemptionUnits(getInteger(rs, "redemption_units"));
+        raw.setSharesChange(getLong(rs, "shares_change"));
+        raw.setCalculatedInflow(rs.getBigDecimal("calculated_inflow"));
+        raw.setFlowIntensity(rs.getBigDecimal("flow_intensity"));
+        raw.setDataSource(rs.getString("data_source"));
+        raw.setConfidenceScore(getInteger(rs, "confidence_score"));
+        raw.setCreatedAt(SpyFlowResultRowMapper.toInstant(rs.getTimestamp("created_at")));
+        return raw;
+    }
+
+    private static Long getLong(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+}
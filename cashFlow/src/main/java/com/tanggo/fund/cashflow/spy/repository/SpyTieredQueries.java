@@ -0,0 +1,71 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import com.tanggo.fund.cashflow.spy.dto.SpyPageCursor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 冷热分层表的键集分页与分页流式查询
+ *
+ * 排序固定为data_date DESC, id DESC。DuckDB对read_parquet上含OR的DATE谓词会触发内部错误，
+ * 因此键集条件(data_date, id) < (d, i)拆成两段只含AND的查询: 先取游标当天剩余的行，再取更早的日期
+ */
+final class SpyTieredQueries {
+
+    private SpyTieredQueries() {
+    }
+
+    /**
+     * 查询游标之后的最多limit行
+     */
+    static <T> List<T> findPage(JdbcTemplate jdbcTemplate, SpyParquetPartitionCatalog partitionCatalog,
+                                String table, RowMapper<T> rowMapper,
+                                LocalDate startDate, LocalDate endDate, SpyPageCursor after, int limit) {
+        List<T> rows = new ArrayList<>(Math.min(limit, 1024));
+        LocalDate upper = endDate;
+
+        if (after != null) {
+            LocalDate cursorDate = after.getDataDate();
+            if (!cursorDate.isBefore(startDate) && !cursorDate.isAfter(endDate)) {
+                String sql = "SELECT * FROM " + partitionCatalog.tieredSource(table, cursorDate, cursorDate) +
+                    " WHERE data_date = CAST(? AS DATE) AND id < ? ORDER BY id DESC LIMIT ?";
+                rows.addAll(jdbcTemplate.query(sql, rowMapper, cursorDate.toString(), after.getId(), limit));
+            }
+            if (!cursorDate.isAfter(endDate)) {
+                upper = cursorDate.minusDays(1);
+            }
+        }
+
+        if (rows.size() < limit && !upper.isBefore(startDate)) {
+            String sql = "SELECT * FROM " + partitionCatalog.tieredSource(table, startDate, upper) +
+                " WHERE data_date BETWEEN CAST(? AS DATE) AND CAST(? AS DATE) ORDER BY data_date DESC, id DESC LIMIT ?";
+            rows.addAll(jdbcTemplate.query(sql, rowMapper, startDate.toString(), upper.toString(), limit - rows.size()));
+        }
+        return rows;
+    }
+
+    /**
+     * 按键集分页逐页查询并逐行回调，堆上最多保留一页
+     *
+     * DuckDB JDBC会在返回第一行前物化整个结果集，fetchSize不起作用，因此大范围导出改为多次有界查询
+     */
+    static <T> void stream(JdbcTemplate jdbcTemplate, SpyParquetPartitionCatalog partitionCatalog,
+                           String table, RowMapper<T> rowMapper, Function<T, SpyPageCursor> cursorOf,
+                           LocalDate startDate, LocalDate endDate, int pageSize, Consumer<? super T> consumer) {
+        SpyPageCursor after = null;
+        List<T> page;
+        do {
+            page = findPage(jdbcTemplate, partitionCatalog, table, rowMapper, startDate, endDate, after, pageSize);
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                after = cursorOf.apply(page.get(page.size() - 1));
+            }
+        } while (page.size() == pageSize);
+    }
+}
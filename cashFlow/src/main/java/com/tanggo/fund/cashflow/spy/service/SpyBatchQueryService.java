@@ -0,0 +1,218 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.cache.SpyFlowHotWindow;
+import com.tanggo.fund.cashflow.spy.dto.SpyBatchQueryRequest;
+import com.tanggo.fund.cashflow.spy.dto.SpyBatchQueryResponse;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 批量流向查询服务
+ *
+ * 多个ticker × 多个日期的请求合并为一次解析：范围落在热窗口内且窗口有该ticker的数据时直接读内存，
+ * 其余ticker执行一条集合查询(ticker IN + 日期IN/BETWEEN)，不再逐个日期查询。
+ * 分片采集时本节点窗口可能没有其他节点负责的ticker，这些ticker同样回退数据库
+ */
+@Service
+@Slf4j
+public class SpyBatchQueryService {
+
+    static final String SOURCE_HOT_WINDOW = "hot-window";
+    static final String SOURCE_DATABASE = "database";
+
+    private final SpyFlowResultRepository flowResultRepository;
+    private final SpyFlowHotWindow hotWindow;
+    private final int maxTickers;
+    private final int maxDays;
+
+    private final DistributionSummary keysPerQuery;
+    private final Counter hotWindowRequests;
+    private final Counter databaseRequests;
+    private final Counter hotWindowKeys;
+    private final Counter databaseKeys;
+
+    public SpyBatchQueryService(SpyFlowResultRepository flowResultRepository,
+                                SpyFlowHotWindow hotWindow,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.spy.batch.max-tickers:500}") int maxTickers,
+                                @Value("${app.spy.batch.max-days:366}") int maxDays) {
+        this.flowResultRepository = flowResultRepository;
+        this.hotWindow = hotWindow;
+        this.maxTickers = maxTickers;
+        this.maxDays = maxDays;
+
+        this.keysPerQuery = DistributionSummary.builder("spy.batch.keys.per.query")
+            .description("每次数据库查询解析的ticker×日期键数")
+            .register(meterRegistry);
+        this.hotWindowRequests = requestCounter(meterRegistry, SOURCE_HOT_WINDOW);
+        this.databaseRequests = requestCounter(meterRegistry, SOURCE_DATABASE);
+        this.hotWindowKeys = keyCounter(meterRegistry, SOURCE_HOT_WINDOW);
+        this.databaseKeys = keyCounter(meterRegistry, SOURCE_DATABASE);
+    }
+
+    /**
+     * 执行批量查询
+     *
+     * @throws IllegalArgumentException 请求缺少ticker或日期、超出数量上限
+     */
+    public SpyBatchQueryResponse query(SpyBatchQueryRequest request) {
+        List<String> tickers = normalizeTickers(request.getTickers());
+        NavigableSet<LocalDate> dates = normalizeDates(request);
+        LocalDate startDate = dates != null ? dates.first() : request.getStartDate();
+        LocalDate endDate = dates != null ? dates.last() : request.getEndDate();
+        int datesPerTicker = dates != null ? dates.size() : (int) ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        int requestedKeys = tickers.size() * datesPerTicker;
+
+        Map<String, List<SpyBatchQueryResponse.FlowPoint>> flows = new LinkedHashMap<>();
+        tickers.forEach(ticker -> flows.put(ticker, new ArrayList<>()));
+
+        List<String> fromDatabase = resolveFromHotWindow(tickers, dates, startDate, endDate, flows);
+        int windowKeys = (tickers.size() - fromDatabase.size()) * datesPerTicker;
+        if (windowKeys > 0) {
+            hotWindowKeys.increment(windowKeys);
+        }
+
+        String source;
+        int queries;
+        if (fromDatabase.isEmpty()) {
+            source = SOURCE_HOT_WINDOW;
+            queries = 0;
+            hotWindowRequests.increment();
+        } else {
+            int databaseKeyCount = fromDatabase.size() * datesPerTicker;
+            List<SpyFlowResult> results = flowResultRepository.findTieredLatestByTickers(fromDatabase, startDate, endDate, dates);
+            results.forEach(result -> flows.computeIfAbsent(tickerOf(result), t -> new ArrayList<>()).add(toPoint(result)));
+            source = SOURCE_DATABASE;
+            queries = 1;
+            databaseRequests.increment();
+            databaseKeys.increment(databaseKeyCount);
+            keysPerQuery.record(databaseKeyCount);
+        }
+
+        int foundKeys = flows.values().stream().mapToInt(List::size).sum();
+        log.debug("批量查询完成: tickers={}, keys={}, found={}, source={}", tickers.size(), requestedKeys, foundKeys, source);
+
+        return SpyBatchQueryResponse.builder()
+            .flows(flows)
+            .requestedKeys(requestedKeys)
+            .foundKeys(foundKeys)
+            .queries(queries)
+            .source(source)
+            .build();
+    }
+
+    /**
+     * 从热窗口解析能解析的ticker，返回需要查询数据库的ticker
+     *
+     * 范围超出窗口或窗口未加载时全部需要查询；窗口中没有任何数据的ticker也需要查询
+     */
+    private List<String> resolveFromHotWindow(List<String> tickers, Set<LocalDate> dates, LocalDate startDate, LocalDate endDate,
+                                              Map<String, List<SpyBatchQueryResponse.FlowPoint>> flows) {
+        List<String> fromDatabase = new ArrayList<>();
+        for (String ticker : tickers) {
+            Optional<List<SpyFlowResult>> window = hotWindow.between(ticker, startDate, endDate);
+            if (window.isEmpty()) {
+                return tickers;
+            }
+            if (hotWindow.size(ticker) == 0) {
+                fromDatabase.add(ticker);
+                continue;
+            }
+            window.get().stream()
+                .filter(result -> dates == null || dates.contains(result.getDataDate()))
+                .forEach(result -> flows.get(ticker).add(toPoint(result)));
+        }
+        return fromDatabase;
+    }
+
+    private List<String> normalizeTickers(List<String> tickers) {
+        if (tickers == null || tickers.isEmpty()) {
+            throw new IllegalArgumentException("tickers不能为空");
+        }
+
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String ticker : tickers) {
+            if (ticker != null && !ticker.isBlank()) {
+                normalized.add(ticker.trim().toUpperCase(Locale.ROOT));
+            }
+        }
+        if (normalized.isEmpty() || normalized.size() > maxTickers) {
+            throw new IllegalArgumentException("ticker数量须在1到" + maxTickers + "之间");
+        }
+        return List.copyOf(normalized);
+    }
+
+    /**
+     * 指定了dates时返回去重排序后的日期集合，按范围查询时返回null
+     */
+    private NavigableSet<LocalDate> normalizeDates(SpyBatchQueryRequest request) {
+        if (request.getDates() != null && !request.getDates().isEmpty()) {
+            TreeSet<LocalDate> dates = new TreeSet<>();
+            request.getDates().stream().filter(Objects::nonNull).forEach(dates::add);
+            if (dates.isEmpty() || dates.size() > maxDays) {
+                throw new IllegalArgumentException("日期数量须在1到" + maxDays + "之间");
+            }
+            return dates;
+        }
+
+        LocalDate startDate = request.getStartDate();
+        LocalDate endDate = request.getEndDate();
+        if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("须指定dates或有效的startDate/endDate");
+        }
+        if (ChronoUnit.DAYS.between(startDate, endDate) >= maxDays) {
+            throw new IllegalArgumentException("日期范围不能超过" + maxDays + "天");
+        }
+        return null;
+    }
+
+    private static SpyBatchQueryResponse.FlowPoint toPoint(SpyFlowResult result) {
+        return SpyBatchQueryResponse.FlowPoint.builder()
+            .date(result.getDataDate())
+            .netInflow(result.getFinalNetInflow())
+            .flowIntensity(result.getFlowIntensity())
+            .confidence(result.getOverallConfidence())
+            .dataQuality(result.getDataQualityScore())
+            .validationPassed(result.getValidationPassed())
+            .timestamp(result.getTimestamp())
+            .build();
+    }
+
+    private static String tickerOf(SpyFlowResult result) {
+        return result.getTicker() != null ? result.getTicker() : SpyFlowHotWindow.DEFAULT_TICKER;
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("spy.batch.requests")
+            .description("批量查询请求数")
+            .tag("source", source)
+            .register(meterRegistry);
+    }
+
+    private static Counter keyCounter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("spy.batch.keys")
+            .description("批量查询解析的键数")
+            .tag("source", source)
+            .register(meterRegistry);
+    }
+}
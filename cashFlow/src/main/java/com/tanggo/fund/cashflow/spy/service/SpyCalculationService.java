@@ -2,11 +2,14 @@ package com.tanggo.fund.cashflow.spy.service;
 
 import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
 import com.tanggo.fund.cashflow.spy.entity.SpyRawData;
+import com.tanggo.fund.cashflow.spy.event.SpyFlowResultSavedEvent;
+import com.tanggo.fund.cashflow.spy.event.SpyPipelineTrace;
+import com.tanggo.fund.cashflow.spy.event.SpyUpdateBackplane;
 import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
-import com.tanggo.fund.cashflow.spy.websocket.SpyWebSocketHandler;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
@@ -21,29 +24,65 @@ import java.time.Instant;
 public class SpyCalculationService {
     
     private final SpyFlowResultRepository flowResultRepository;
-    private final SpyWebSocketHandler webSocketHandler;
+    private final SpyUpdateBackplane updateBackplane;
+    private final SpyPersistenceWriter persistenceWriter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SpyTickerPartitions partitions;
     
     /**
      * 异步计算SPY资金流向
+     *
+     * 按ticker路由到所属分区线程：同一ticker的计算、状态更新与发布按顺序在同一线程执行
      */
-    @Async
     public void calculateSpyFlowAsync(SpyRawData rawData) {
-        log.info("开始异步计算SPY流向数据: dataDate={}", rawData.getDataDate());
+        partitions.execute(rawData.getTicker(), state -> calculate(state, rawData));
+    }
+    
+    private void calculate(SpyTickerState state, SpyRawData rawData) {
+        SpyPipelineTrace trace = rawData.getTrace();
+        mark(trace, SpyPipelineTrace.Stage.CALC_STARTED);
+        log.info("开始异步计算SPY流向数据: ticker={}, dataDate={}", rawData.getTicker(), rawData.getDataDate());
         
         try {
             SpyFlowResult result = calculateSpyFlow(rawData);
-            flowResultRepository.save(result);
-            
-            // 广播实时更新
-            webSocketHandler.broadcastSpyUpdate(result);
+            result.setTrace(trace);
+            mark(trace, SpyPipelineTrace.Stage.CALCULATED);
+            state.calculated(result);
             
-            log.info("SPY流向计算完成: 净流入=${}, 置信度={}", 
-                result.getFinalNetInflow(), result.getOverallConfidence());
+            // 单写线程确认后回到本分区发布，不阻塞分区线程，同一ticker仍按计算顺序发布；停止时等待确认后再退出
+            partitions.executeWhenComplete(state.getTicker(), persistenceWriter.save(flowResultRepository, result),
+                (owner, error) -> onSaved(owner, result, error));
         } catch (Exception e) {
             log.error("SPY流向计算失败", e);
         }
     }
     
+    private void onSaved(SpyTickerState state, SpyFlowResult result, Throwable error) {
+        if (error != null) {
+            state.failed(result);
+            log.error("SPY流向结果保存失败: ticker={}", state.getTicker(), error);
+            return;
+        }
+        mark(result.getTrace(), SpyPipelineTrace.Stage.RESULT_SAVED);
+        state.saved(result);
+        
+        // 通知缓存等下游组件
+        eventPublisher.publishEvent(new SpyFlowResultSavedEvent(result));
+        
+        // 经背板发布一次，各实例向本地WebSocket/SSE订阅者广播
+        updateBackplane.publish(result);
+        
+        log.info("SPY流向计算完成: ticker={}, 净流入=${}, 置信度={}, 滚动均值=${}",
+            state.getTicker(), result.getFinalNetInflow(), result.getOverallConfidence(),
+            state.getRollingAverageInflow());
+    }
+    
+    private static void mark(SpyPipelineTrace trace, SpyPipelineTrace.Stage stage) {
+        if (trace != null) {
+            trace.mark(stage);
+        }
+    }
+    
     /**
      * 计算SPY资金流向
      */
@@ -59,6 +98,7 @@ public class SpyCalculationService {
         
         // 4. 13维度分类
         return SpyFlowResult.builder()
+            .ticker(rawData.getTicker())
             .dataDate(rawData.getDataDate())
             .timestamp(Instant.now())
             .finalNetInflow(rawData.getDailyNetInflow())
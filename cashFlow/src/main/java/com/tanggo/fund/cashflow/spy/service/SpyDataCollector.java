@@ -2,57 +2,102 @@ package com.tanggo.fund.cashflow.spy.service;
 
 import com.tanggo.fund.cashflow.spy.dto.SpyFlowData;
 import com.tanggo.fund.cashflow.spy.entity.SpyRawData;
+import com.tanggo.fund.cashflow.spy.event.SpyPipelineTrace;
 import com.tanggo.fund.cashflow.spy.repository.SpyDataSourceRepository;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
 import com.tanggo.fund.cashflow.spy.repository.SpyRawDataRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * SPY数据采集器
+ *
+ * 多实例部署时按SpyShardCoordinator分片，每个实例只采集、校验并计算归属自己的ticker
  */
 @Component
 @Slf4j
-@RequiredArgsConstructor
 public class SpyDataCollector {
 
     private final SpyDataSourceRepository dataSourceService;
     private final SpyRawDataRepository rawDataRepository;
     private final SpyDataValidationService validationService;
     private final SpyCalculationService calculationService;
+    private final SpyPersistenceWriter persistenceWriter;
+    private final SpyShardCoordinator shardCoordinator;
+    private final Executor dataTaskExecutor;
+
+    public SpyDataCollector(SpyDataSourceRepository dataSourceService,
+                            SpyRawDataRepository rawDataRepository,
+                            SpyDataValidationService validationService,
+                            SpyCalculationService calculationService,
+                            SpyPersistenceWriter persistenceWriter,
+                            SpyShardCoordinator shardCoordinator,
+                            @Qualifier("dataTaskExecutor") Executor dataTaskExecutor) {
+        this.dataSourceService = dataSourceService;
+        this.rawDataRepository = rawDataRepository;
+        this.validationService = validationService;
+        this.calculationService = calculationService;
+        this.persistenceWriter = persistenceWriter;
+        this.shardCoordinator = shardCoordinator;
+        this.dataTaskExecutor = dataTaskExecutor;
+    }
 
     @Scheduled(fixedRate = 300000) // 5分钟执行一次
     public void collectSpyData() {
-        log.info("开始SPY数据采集...");
+        Set<String> tickers = shardCoordinator.refresh();
+        if (tickers.isEmpty()) {
+            log.debug("本实例没有分配到ticker，跳过本轮采集: owner={}", shardCoordinator.getOwner());
+            return;
+        }
 
+        log.info("开始SPY数据采集: 本实例分片={}", tickers);
+
+        // 各ticker相互独立，并行采集
+        CompletableFuture.allOf(tickers.stream()
+            .map(ticker -> CompletableFuture.runAsync(() -> collect(ticker), dataTaskExecutor))
+            .toArray(CompletableFuture[]::new)).join();
+    }
+
+    /**
+     * 采集单个ticker
+     */
+    private void collect(String ticker) {
         try {
             // 1. 从主数据源获取数据
-            SpyFlowData primaryData = dataSourceService.fetchFromPrimarySource();
+            SpyFlowData primaryData = dataSourceService.fetchFromPrimarySource(ticker);
+            SpyPipelineTrace trace = SpyPipelineTrace.fetched();
 
             // 2. 数据验证
             ValidationResult validation = validationService.validateSpyData(primaryData);
+            trace.mark(SpyPipelineTrace.Stage.VALIDATED);
 
             if (validation.isValid()) {
                 // 3. 存储原始数据
                 SpyRawData rawData = convertToRawData(primaryData);
-                rawDataRepository.save(rawData);
+                rawData.setTrace(trace);
+                persistenceWriter.save(rawDataRepository, rawData).join();
+                trace.mark(SpyPipelineTrace.Stage.RAW_SAVED);
 
                 // 4. 异步触发计算
                 calculationService.calculateSpyFlowAsync(rawData);
 
-                log.info("SPY数据采集成功: 净流入=${}, 数据源={}",
-                    primaryData.getDailyNetInflow(), primaryData.getDataSource());
+                log.info("SPY数据采集成功: ticker={}, 净流入=${}, 数据源={}",
+                    ticker, primaryData.getDailyNetInflow(), primaryData.getDataSource());
             } else {
                 // 使用备用数据源
-                handleDataSourceFailover(validation);
+                handleDataSourceFailover(ticker, validation);
             }
 
         } catch (Exception e) {
-            log.error("SPY数据采集失败", e);
+            log.error("SPY数据采集失败: ticker={}", ticker, e);
             handleCollectionFailure(e);
         }
     }
@@ -60,17 +105,21 @@ public class SpyDataCollector {
     /**
      * 处理数据源故障转移
      */
-    private void handleDataSourceFailover(ValidationResult validation) {
-        log.warn("主数据源验证失败: {}, 尝试备用数据源", validation.getErrors());
+    private void handleDataSourceFailover(String ticker, ValidationResult validation) {
+        log.warn("主数据源验证失败: ticker={}, {}, 尝试备用数据源", ticker, validation.getErrors());
 
         try {
-            SpyFlowData backupData = dataSourceService.fetchFromBackupSource();
+            SpyFlowData backupData = dataSourceService.fetchFromBackupSource(ticker);
+            SpyPipelineTrace trace = SpyPipelineTrace.fetched();
             ValidationResult backupValidation = validationService.validateSpyData(backupData);
+            trace.mark(SpyPipelineTrace.Stage.VALIDATED);
 
             if (backupValidation.isValid()) {
                 SpyRawData rawData = convertToRawData(backupData);
                 rawData.setDataSource("BACKUP_" + rawData.getDataSource());
-                rawDataRepository.save(rawData);
+                rawData.setTrace(trace);
+                persistenceWriter.save(rawDataRepository, rawData).join();
+                trace.mark(SpyPipelineTrace.Stage.RAW_SAVED);
                 calculationService.calculateSpyFlowAsync(rawData);
 
                 log.info("备用数据源采集成功: {}", backupData.getDataSource());
@@ -0,0 +1,200 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 时间序列降采样
+ *
+ * 在原始类型数组上单次扫描，返回保留点的下标(升序)，各列按同一组下标投影。
+ * LTTB按三角形面积选点保留曲线形状；MINMAX每个桶保留最小值和最大值，不会丢失尖峰。
+ * 缺失值(NaN)不参与选点
+ */
+public final class SpyDownsampler {
+
+    /**
+     * 降采样算法
+     */
+    public enum Mode {
+        LTTB,
+        MINMAX;
+
+        /**
+         * 由请求参数解析，无法识别时抛出IllegalArgumentException
+         */
+        public static Mode fromParam(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private SpyDownsampler() {
+    }
+
+    /**
+     * 选出不超过maxPoints个点的下标，点数未超过上限时返回全部下标
+     *
+     * @param x 升序的横坐标(epoch毫秒)
+     * @param y 用于选点的数值列
+     */
+    public static int[] select(long[] x, double[] y, int size, int maxPoints, Mode mode) {
+        if (maxPoints < 3) {
+            throw new IllegalArgumentException("maxPoints不能小于3");
+        }
+        if (size <= maxPoints) {
+            return identity(size);
+        }
+        return mode == Mode.MINMAX ? minMax(y, size, maxPoints) : lttb(x, y, size, maxPoints);
+    }
+
+    public static long[] pick(long[] column, int[] indices) {
+        long[] picked = new long[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            picked[i] = column[indices[i]];
+        }
+        return picked;
+    }
+
+    public static double[] pick(double[] column, int[] indices) {
+        double[] picked = new double[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            picked[i] = column[indices[i]];
+        }
+        return picked;
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets: 首尾有效点固定，中间每个桶选出与上一个选中点、下一个桶均值点构成面积最大的点。
+     * 首尾的缺失值被裁掉，全为缺失值的桶不出点，因此返回的点数可能少于threshold
+     */
+    static int[] lttb(long[] x, double[] y, int size, int threshold) {
+        int first = 0;
+        while (first < size && Double.isNaN(y[first])) {
+            first++;
+        }
+        if (first == size) {
+            return new int[0];
+        }
+        int last = size - 1;
+        while (Double.isNaN(y[last])) {
+            last--;
+        }
+        int span = last - first + 1;
+        if (span <= threshold) {
+            return validIndices(y, first, last);
+        }
+
+        int[] sampled = new int[threshold];
+        int count = 0;
+        double every = (double) (span - 2) / (threshold - 2);
+        long origin = x[first];
+        int a = first;
+        sampled[count++] = first;
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // 下一个桶的均值点
+            int avgStart = first + (int) Math.floor((i + 1) * every) + 1;
+            int avgEnd = Math.min(first + (int) Math.floor((i + 2) * every) + 1, last + 1);
+            double avgX = 0;
+            double avgY = 0;
+            int valid = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                if (!Double.isNaN(y[j])) {
+                    avgX += x[j] - origin;
+                    avgY += y[j];
+                    valid++;
+                }
+            }
+            if (valid > 0) {
+                avgX /= valid;
+                avgY /= valid;
+            } else {
+                avgX = x[Math.min(avgStart, last)] - origin;
+                avgY = y[a];
+            }
+
+            // 当前桶中面积最大的有效点
+            int rangeStart = first + (int) Math.floor(i * every) + 1;
+            int rangeEnd = first + (int) Math.floor((i + 1) * every) + 1;
+            double ax = x[a] - origin;
+            double ay = y[a];
+            double maxArea = -1;
+            int next = -1;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                if (Double.isNaN(y[j])) {
+                    continue;
+                }
+                double area = Math.abs((ax - avgX) * (y[j] - ay) - (ax - (x[j] - origin)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+
+            if (next >= 0) {
+                sampled[count++] = next;
+                a = next;
+            }
+        }
+
+        sampled[count++] = last;
+        return count == threshold ? sampled : Arrays.copyOf(sampled, count);
+    }
+
+    /**
+     * 均分为maxPoints / 2个桶，每个桶按原顺序保留最小值和最大值，全为缺失值的桶跳过
+     */
+    static int[] minMax(double[] y, int size, int maxPoints) {
+        int buckets = maxPoints / 2;
+        int[] sampled = new int[buckets * 2];
+        int count = 0;
+
+        for (int b = 0; b < buckets; b++) {
+            int start = (int) ((long) b * size / buckets);
+            int end = (int) ((long) (b + 1) * size / buckets);
+            int minIndex = -1;
+            int maxIndex = -1;
+            for (int j = start; j < end; j++) {
+                if (Double.isNaN(y[j])) {
+                    continue;
+                }
+                if (minIndex < 0 || y[j] < y[minIndex]) {
+                    minIndex = j;
+                }
+                if (maxIndex < 0 || y[j] > y[maxIndex]) {
+                    maxIndex = j;
+                }
+            }
+
+            if (minIndex < 0) {
+                // 全为缺失值的桶不出点
+                continue;
+            }
+            if (minIndex == maxIndex) {
+                sampled[count++] = minIndex;
+            } else {
+                sampled[count++] = Math.min(minIndex, maxIndex);
+                sampled[count++] = Math.max(minIndex, maxIndex);
+            }
+        }
+        return Arrays.copyOf(sampled, count);
+    }
+
+    private static int[] validIndices(double[] y, int from, int to) {
+        int[] indices = new int[to - from + 1];
+        int count = 0;
+        for (int i = from; i <= to; i++) {
+            if (!Double.isNaN(y[i])) {
+                indices[count++] = i;
+            }
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
+    private static int[] identity(int size) {
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+}
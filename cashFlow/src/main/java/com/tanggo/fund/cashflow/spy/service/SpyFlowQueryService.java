@@ -0,0 +1,118 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.cache.SpyCacheNames;
+import com.tanggo.fund.cashflow.spy.cache.SpySingleFlight;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
+import com.tanggo.fund.cashflow.spy.repository.SpyRawDataRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * SPY结果查询服务
+ *
+ * 控制器与WebSocket的读路径统一经过此服务，结果由两级缓存承载，
+ * 新结果保存后由SpyFlowCacheInvalidator精确失效。缓存未命中时并发的相同查询
+ * 经SpySingleFlight合并为一次数据库访问，避免采集周期结束后的查询尖峰。
+ * 缓存注解使用sync，加载经SpyTwoLevelCache.get(key, loader)，加载期间被淘汰的结果不会回填。
+ * 各查询按ticker过滤(旧数据ticker为空时视为SPY)，缓存键包含ticker
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SpyFlowQueryService {
+    
+    private static final String CACHE_KEYS = "T(com.tanggo.fund.cashflow.spy.cache.SpyCacheNames)";
+    
+    private final SpyFlowResultRepository flowResultRepository;
+    private final SpyRawDataRepository rawDataRepository;
+    private final SpySingleFlight singleFlight;
+    
+    /**
+     * 获取ticker的最新结果
+     */
+    @Cacheable(cacheNames = SpyCacheNames.LATEST, sync = true, key = "#ticker")
+    public Optional<SpyFlowResult> getLatest(String ticker) {
+        return singleFlight.execute("latest", ticker,
+            () -> flowResultRepository.findLatestByTicker(ticker, Limit.of(1)).stream().findFirst());
+    }
+    
+    /**
+     * 根据日期获取ticker的结果
+     */
+    @Cacheable(cacheNames = SpyCacheNames.BY_DATE, sync = true, key = CACHE_KEYS + ".dateKey(#ticker, #date)")
+    public Optional<SpyFlowResult> getByDate(String ticker, LocalDate date) {
+        return singleFlight.execute("byDate", SpyCacheNames.dateKey(ticker, date),
+            () -> flowResultRepository.findTieredByDataDate(ticker, date));
+    }
+    
+    /**
+     * 获取ticker在日期范围内的结果
+     */
+    @Cacheable(cacheNames = SpyCacheNames.RANGE, sync = true,
+               key = CACHE_KEYS + ".rangeKey(#ticker, #startDate, #endDate)")
+    public List<SpyFlowResult> getByRange(String ticker, LocalDate startDate, LocalDate endDate) {
+        return singleFlight.execute("range", SpyCacheNames.rangeKey(ticker, startDate, endDate),
+            () -> flowResultRepository.findTieredByDataDateBetween(ticker, startDate, endDate));
+    }
+    
+    /**
+     * 获取ticker最近N天的统计信息，返回的Map在合并的调用者之间共享且不可修改
+     */
+    public Map<String, Object> getStats(String ticker, int days) {
+        LocalDate startDate = LocalDate.now().minusDays(days);
+        return singleFlight.execute("stats", SpyCacheNames.dateKey(ticker, startDate), () -> loadStats(ticker, startDate));
+    }
+    
+    private Map<String, Object> loadStats(String ticker, LocalDate startDate) {
+        Map<String, Object> stats = new HashMap<>();
+        
+        // 置信度统计
+        Object[] confidenceStats = flowResultRepository.getConfidenceStats(ticker, startDate);
+        if (confidenceStats != null && confidenceStats.length >= 3) {
+            Map<String, Object> confidence = new HashMap<>();
+            confidence.put("average", confidenceStats[0]);
+            confidence.put("minimum", confidenceStats[1]);
+            confidence.put("maximum", confidenceStats[2]);
+            stats.put("confidence", confidence);
+        }
+        
+        // 净流入统计
+        Object[] inflowStats = flowResultRepository.getNetInflowStats(ticker, startDate);
+        if (inflowStats != null && inflowStats.length >= 3) {
+            Map<String, Object> inflow = new HashMap<>();
+            inflow.put("total", inflowStats[0]);
+            inflow.put("average", inflowStats[1]);
+            inflow.put("count", inflowStats[2]);
+            stats.put("netInflow", inflow);
+        }
+        
+        // 数据质量统计
+        Double avgQuality = flowResultRepository.getAverageDataQualityScore(ticker, startDate);
+        stats.put("averageDataQuality", avgQuality);
+        
+        // 验证失败记录数
+        stats.put("validationFailures", flowResultRepository.countValidationFailures(ticker, startDate));
+        
+        // 数据可用性统计
+        List<Object[]> availabilityStats = rawDataRepository.getDataSourceAvailabilityStats(ticker, startDate);
+        Map<String, Object> availability = new HashMap<>();
+        availability.put("dataSources", availabilityStats);
+        
+        Double avgConfidence = rawDataRepository.getAverageConfidenceScore(ticker, startDate);
+        availability.put("averageConfidence", avgConfidence);
+        stats.put("dataAvailability", availability);
+        
+        return Collections.unmodifiableMap(stats);
+    }
+}
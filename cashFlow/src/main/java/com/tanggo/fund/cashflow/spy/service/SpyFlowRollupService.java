@@ -0,0 +1,190 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowRollup;
+import com.tanggo.fund.cashflow.spy.entity.SpyRollupGrain;
+import com.tanggo.fund.cashflow.spy.event.SpyFlowResultSavedEvent;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowRollupRepository;
+import com.tanggo.fund.cashflow.spy.repository.SpyParquetPartitionCatalog;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * SPY周期汇总服务
+ *
+ * 周/月/季汇总物化在spy_flow_rollup表中。日结果保存后只重算该日期所在的各粒度桶，
+ * 重算与写入都在单写线程内执行；汇总表为空时启动后全量重建一次。
+ * 同一日期有多条结果时只取时间戳最新的一条参与汇总
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SpyFlowRollupService {
+
+    private static final String DEFAULT_TICKER = "SPY";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SpyPersistenceWriter persistenceWriter;
+    private final SpyParquetPartitionCatalog partitionCatalog;
+    private final SpyFlowRollupRepository rollupRepository;
+
+    /**
+     * 汇总表为空时全量重建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        try {
+            if (rollupRepository.count() > 0) {
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("检查汇总表失败，跳过重建: {}", e.getMessage());
+            return;
+        }
+
+        persistenceWriter.submit(this::rebuild)
+            .whenComplete((count, error) -> {
+                if (error != null) {
+                    log.error("汇总表重建失败", error);
+                } else {
+                    log.info("汇总表重建完成: 汇总行数={}", count);
+                }
+            });
+    }
+
+    /**
+     * 新结果保存后增量刷新所在的桶
+     *
+     * 远程结果的事件由SpyRemoteResultRelay在该结果写入本地库之后发布，重算时源表已含这一行
+     */
+    @EventListener
+    public void onResultSaved(SpyFlowResultSavedEvent event) {
+        SpyFlowResult result = event.getResult();
+        if (result.getDataDate() == null) {
+            return;
+        }
+
+        String ticker = result.getTicker() != null ? result.getTicker() : DEFAULT_TICKER;
+        persistenceWriter.submit(() -> refreshBuckets(ticker, result.getDataDate()))
+            .whenComplete((count, error) -> {
+                if (error != null) {
+                    log.error("汇总增量刷新失败: ticker={}, dataDate={}", ticker, result.getDataDate(), error);
+                }
+            });
+    }
+
+    /**
+     * 查询范围内的汇总，startDate所在的桶也包含在内
+     */
+    public List<SpyFlowRollup> getRollups(String ticker, SpyRollupGrain grain, LocalDate startDate, LocalDate endDate) {
+        return rollupRepository.findByTickerAndGrainAndBucketStartBetweenOrderByBucketStartDesc(
+            ticker, grain, grain.bucketStart(startDate), endDate);
+    }
+
+    /**
+     * 重算日期所在的各粒度桶(需在写线程内调用)
+     */
+    int refreshBuckets(String ticker, LocalDate dataDate) {
+        int refreshed = 0;
+        for (SpyRollupGrain grain : SpyRollupGrain.values()) {
+            LocalDate bucketStart = grain.bucketStart(dataDate);
+            List<SpyFlowRollup> computed = aggregate(grain, bucketStart, grain.bucketEnd(bucketStart), ticker);
+            upsert(ticker, grain, bucketStart, computed.isEmpty() ? null : computed.get(0));
+            refreshed++;
+        }
+        return refreshed;
+    }
+
+    /**
+     * 从全部冷热数据重建汇总表(需在写线程内调用)
+     */
+    int rebuild() {
+        rollupRepository.deleteAllInBatch();
+
+        List<SpyFlowRollup> rollups = new ArrayList<>();
+        for (SpyRollupGrain grain : SpyRollupGrain.values()) {
+            rollups.addAll(aggregate(grain, LocalDate.EPOCH, LocalDate.now().plusDays(1), null));
+        }
+        rollupRepository.saveAll(rollups);
+        return rollups.size();
+    }
+
+    private void upsert(String ticker, SpyRollupGrain grain, LocalDate bucketStart, SpyFlowRollup computed) {
+        Optional<SpyFlowRollup> existing = rollupRepository.findByTickerAndGrainAndBucketStart(ticker, grain, bucketStart);
+
+        if (computed == null) {
+            existing.ifPresent(rollupRepository::delete);
+            return;
+        }
+
+        existing.ifPresent(rollup -> computed.setId(rollup.getId()));
+        rollupRepository.save(computed);
+    }
+
+    /**
+     * 按粒度聚合日结果，ticker为null时聚合所有ticker
+     */
+    private List<SpyFlowRollup> aggregate(SpyRollupGrain grain, LocalDate startDate, LocalDate endDate, String ticker) {
+        String source = partitionCatalog.tieredSource(SpyParquetPartitionCatalog.FLOW_RESULT_TABLE, startDate, endDate);
+
+        String sql = "SELECT COALESCE(ticker, 'SPY') AS ticker, " +
+            "CAST(date_trunc(?, data_date) AS DATE) AS bucket_start, " +
+            "SUM(final_net_inflow) AS total_net_inflow, " +
+            "CAST(AVG(final_net_inflow) AS DECIMAL(15,2)) AS avg_net_inflow, " +
+            "MIN(final_net_inflow) AS min_net_inflow, " +
+            "MAX(final_net_inflow) AS max_net_inflow, " +
+            "CAST(AVG(flow_intensity) AS DECIMAL(8,4)) AS avg_flow_intensity, " +
+            "CAST(AVG(overall_confidence) AS DECIMAL(5,2)) AS avg_confidence, " +
+            "CAST(AVG(data_quality_score) AS DECIMAL(5,2)) AS avg_data_quality, " +
+            "SUM(CASE WHEN validation_passed = false THEN 1 ELSE 0 END) AS validation_failures, " +
+            "COUNT(*) AS day_count, MIN(data_date) AS first_data_date, MAX(data_date) AS last_data_date " +
+            "FROM (SELECT * FROM " + source + " " +
+            "WHERE data_date BETWEEN CAST(? AS DATE) AND CAST(? AS DATE)" +
+            (ticker != null ? " AND COALESCE(ticker, 'SPY') = ?" : "") + " " +
+            "QUALIFY ROW_NUMBER() OVER (PARTITION BY COALESCE(ticker, 'SPY'), data_date " +
+            "ORDER BY timestamp DESC, id DESC) = 1) AS daily " +
+            "GROUP BY 1, 2";
+
+        List<Object> args = new ArrayList<>(List.of(grain.getTruncUnit(), startDate.toString(), endDate.toString()));
+        if (ticker != null) {
+            args.add(ticker);
+        }
+        return jdbcTemplate.query(sql, rollupMapper(grain), args.toArray());
+    }
+
+    private static RowMapper<SpyFlowRollup> rollupMapper(SpyRollupGrain grain) {
+        return (rs, rowNum) -> {
+            LocalDate bucketStart = rs.getDate("bucket_start").toLocalDate();
+            return SpyFlowRollup.builder()
+                .ticker(rs.getString("ticker"))
+                .grain(grain)
+                .bucketStart(bucketStart)
+                .bucketEnd(grain.bucketEnd(bucketStart))
+                .totalNetInflow(rs.getBigDecimal("total_net_inflow"))
+                .avgNetInflow(rs.getBigDecimal("avg_net_inflow"))
+                .minNetInflow(rs.getBigDecimal("min_net_inflow"))
+                .maxNetInflow(rs.getBigDecimal("max_net_inflow"))
+                .avgFlowIntensity(rs.getBigDecimal("avg_flow_intensity"))
+                .avgConfidence(rs.getBigDecimal("avg_confidence"))
+                .avgDataQuality(rs.getBigDecimal("avg_data_quality"))
+                .validationFailures(rs.getInt("validation_failures"))
+                .dayCount(rs.getInt("day_count"))
+                .firstDataDate(rs.getDate("first_data_date").toLocalDate())
+                .lastDataDate(rs.getDate("last_data_date").toLocalDate())
+                .updatedAt(Instant.now())
+                .build();
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 数据新鲜度健康检查(/actuator/health 中的spyFreshness)
+ *
+ * 最近窗口内端到端p99超过SLO，或超过max-age没有新的更新推送时降级为DEGRADED；尚无样本时为UNKNOWN
+ */
+@Component
+public class SpyFreshnessHealthIndicator implements HealthIndicator {
+
+    public static final Status DEGRADED = new Status("DEGRADED", "数据新鲜度未达标");
+
+    private static final double P99 = 0.99;
+
+    private final SpyFreshnessTracker tracker;
+    private final Duration sloP99;
+    private final Duration maxAge;
+
+    public SpyFreshnessHealthIndicator(SpyFreshnessTracker tracker,
+                                       @Value("${app.spy.freshness.slo-p99:5s}") Duration sloP99,
+                                       @Value("${app.spy.freshness.max-age:15m}") Duration maxAge) {
+        this.tracker = tracker;
+        this.sloP99 = sloP99;
+        this.maxAge = maxAge;
+    }
+
+    @Override
+    public Health health() {
+        Optional<Instant> lastDelivered = tracker.getLastDelivered();
+        if (lastDelivered.isEmpty()) {
+            return Health.unknown()
+                .withDetail("sloP99", sloP99.toString())
+                .withDetail("message", "尚无推送样本")
+                .build();
+        }
+
+        Duration age = Duration.between(lastDelivered.get(), Instant.now());
+        Optional<Duration> p99 = tracker.endToEndPercentile(P99);
+        boolean stale = age.compareTo(maxAge) > 0;
+        boolean breached = p99.isPresent() && p99.get().compareTo(sloP99) > 0;
+
+        Health.Builder builder = stale || breached ? Health.status(DEGRADED) : Health.up();
+        builder.withDetail("sloP99", sloP99.toString())
+            .withDetail("endToEndP99", p99.map(Duration::toString).orElse("n/a"))
+            .withDetail("lastDeliveredAt", lastDelivered.get().toString())
+            .withDetail("lastDeliveredAge", age.toString())
+            .withDetail("maxAge", maxAge.toString())
+            .withDetail("delivered", tracker.getDeliveredCount());
+        if (breached) {
+            Map<String, String> stages = new LinkedHashMap<>();
+            tracker.stagePercentiles(P99).forEach((stage, value) -> stages.put(stage, value.toString()));
+            builder.withDetail("stageP99", stages);
+        }
+        if (stale) {
+            builder.withDetail("message", "超过" + maxAge + "没有新的更新推送");
+        }
+        return builder.build();
+    }
+}
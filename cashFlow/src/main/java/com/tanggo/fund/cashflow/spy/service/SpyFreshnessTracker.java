@@ -0,0 +1,125 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.event.SpyPipelineTrace;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据新鲜度统计
+ *
+ * 更新推送到本实例的WebSocket会话后，按流水线相邻阶段及端到端(采集到推送)记录耗时直方图。
+ * p50/p99为最近window内的滑动统计，供SpyFreshnessHealthIndicator判断SLO
+ */
+@Component
+@Slf4j
+public class SpyFreshnessTracker {
+
+    private static final SpyPipelineTrace.Stage[] STAGES = SpyPipelineTrace.Stage.values();
+
+    private final Map<SpyPipelineTrace.Stage, Timer> stageTimers = new EnumMap<>(SpyPipelineTrace.Stage.class);
+    private final Timer endToEnd;
+    private volatile Instant lastDelivered;
+
+    public SpyFreshnessTracker(MeterRegistry meterRegistry,
+                               @Value("${app.spy.freshness.window:15m}") Duration window) {
+        // 阶段以结束时刻命名，耗时为上一阶段到该阶段的间隔
+        for (int i = 1; i < STAGES.length; i++) {
+            stageTimers.put(STAGES[i], timer("spy.freshness.stage", window)
+                .description("流水线相邻阶段耗时(上一阶段到本阶段)")
+                .tag("stage", STAGES[i].name().toLowerCase())
+                .register(meterRegistry));
+        }
+        this.endToEnd = timer("spy.freshness.end_to_end", window)
+            .description("从采集到源数据到推送给WebSocket会话的端到端耗时")
+            .register(meterRegistry);
+    }
+
+    private static Timer.Builder timer(String name, Duration window) {
+        return Timer.builder(name)
+            .publishPercentiles(0.5, 0.99)
+            .publishPercentileHistogram()
+            .distributionStatisticExpiry(window)
+            .distributionStatisticBufferLength(3);
+    }
+
+    /**
+     * 标记已推送并记录各阶段耗时；没有追踪信息的更新(如手动广播)忽略
+     */
+    public void delivered(SpyPipelineTrace trace) {
+        if (trace == null) {
+            return;
+        }
+        trace.mark(SpyPipelineTrace.Stage.DELIVERED);
+        Map<SpyPipelineTrace.Stage, Instant> stages = trace.getStages();
+
+        Instant previous = null;
+        for (SpyPipelineTrace.Stage stage : STAGES) {
+            Instant at = stages.get(stage);
+            if (at == null) {
+                continue; // 缺失的阶段并入下一阶段
+            }
+            if (previous != null) {
+                stageTimers.get(stage).record(Duration.between(previous, at));
+            }
+            previous = at;
+        }
+
+        Instant fetched = stages.get(SpyPipelineTrace.Stage.FETCHED);
+        Instant delivered = stages.get(SpyPipelineTrace.Stage.DELIVERED);
+        if (fetched != null) {
+            Duration latency = Duration.between(fetched, delivered);
+            endToEnd.record(latency);
+            log.debug("SPY更新端到端新鲜度: {}ms", latency.toMillis());
+        }
+        lastDelivered = delivered;
+    }
+
+    /**
+     * 最近窗口内的端到端p99
+     */
+    public Optional<Duration> endToEndPercentile(double percentile) {
+        return percentile(endToEnd, percentile);
+    }
+
+    /**
+     * 最近窗口内各阶段p99，用于定位耗时阶段
+     */
+    public Map<String, Duration> stagePercentiles(double percentile) {
+        Map<String, Duration> result = new LinkedHashMap<>();
+        stageTimers.forEach((stage, timer) ->
+            percentile(timer, percentile).ifPresent(value -> result.put(stage.name().toLowerCase(), value)));
+        return result;
+    }
+
+    public long getDeliveredCount() {
+        return endToEnd.count();
+    }
+
+    public Optional<Instant> getLastDelivered() {
+        return Optional.ofNullable(lastDelivered);
+    }
+
+    private static Optional<Duration> percentile(Timer timer, double percentile) {
+        if (timer.count() == 0) {
+            return Optional.empty();
+        }
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                return Optional.of(Duration.ofNanos((long) value.value(TimeUnit.NANOSECONDS)));
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,137 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.repository.SpyParquetPartitionCatalog;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parquet冷数据归档服务
+ *
+ * 超出热窗口的data_date分区从DuckDB表导出为压缩Parquet文件后删除，
+ * 查询由仓库层自动合并冷热两层
+ */
+@Service
+@Slf4j
+public class SpyParquetArchiveService {
+
+    private static final Set<String> COMPRESSIONS = Set.of("zstd", "snappy", "gzip", "uncompressed");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SpyPersistenceWriter persistenceWriter;
+    private final SpyParquetPartitionCatalog partitionCatalog;
+    private final int hotWindowDays;
+    private final String compression;
+
+    public SpyParquetArchiveService(JdbcTemplate jdbcTemplate,
+                                    SpyPersistenceWriter persistenceWriter,
+                                    SpyParquetPartitionCatalog partitionCatalog,
+                                    @Value("${app.storage.tiering.hot-window-days:90}") int hotWindowDays,
+                                    @Value("${app.storage.tiering.compression:zstd}") String compression) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.persistenceWriter = persistenceWriter;
+        this.partitionCatalog = partitionCatalog;
+        this.hotWindowDays = hotWindowDays;
+        this.compression = compression.toLowerCase();
+        if (!COMPRESSIONS.contains(this.compression)) {
+            throw new IllegalArgumentException("不支持的Parquet压缩格式: " + compression);
+        }
+    }
+
+    /**
+     * 定时归档冷分区
+     */
+    @Scheduled(cron = "${app.storage.tiering.archive-cron:0 30 2 * * *}")
+    public void archiveColdPartitions() {
+        if (!partitionCatalog.isEnabled()) {
+            return;
+        }
+
+        LocalDate cutoff = LocalDate.now().minusDays(hotWindowDays);
+        log.info("开始归档冷数据分区: cutoff={}", cutoff);
+
+        for (String table : List.of(SpyParquetPartitionCatalog.FLOW_RESULT_TABLE,
+                                    SpyParquetPartitionCatalog.RAW_DATA_TABLE)) {
+            try {
+                int archived = archiveTable(table, cutoff);
+                log.info("冷数据归档完成: table={}, 分区数={}", table, archived);
+            } catch (Exception e) {
+                log.error("冷数据归档失败: table={}", table, e);
+            }
+        }
+    }
+
+    /**
+     * 归档指定表中早于cutoff的所有分区
+     */
+    public int archiveTable(String table, LocalDate cutoff) {
+        List<LocalDate> dates = jdbcTemplate.query(
+            "SELECT DISTINCT data_date FROM " + table + " WHERE data_date < CAST(? AS DATE) ORDER BY data_date",
+            (rs, rowNum) -> rs.getDate(1).toLocalDate(), cutoff.toString());
+
+        for (LocalDate date : dates) {
+            archivePartition(table, date);
+        }
+        return dates.size();
+    }
+
+    /**
+     * 导出单个分区并从热表删除
+     *
+     * 同一分区再次归档时写入新的part文件，已有文件保持不变。分区在导出后、删除提交前登记，
+     * 期间查询可能同时读到冷热两份(按id/日期取最新一条去重)，但不会出现两层都读不到的空窗
+     */
+    private void archivePartition(String table, LocalDate dataDate) {
+        Path dir = partitionCatalog.partitionDir(table, dataDate);
+        Path file = dir.resolve("part-" + System.currentTimeMillis() + ".parquet");
+
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new IllegalStateException("创建归档目录失败: " + dir, e);
+        }
+
+        String dateLiteral = "DATE '" + dataDate + "'";
+        boolean[] registered = {false};
+        // 事务回滚时撤销登记并清理已导出的文件，避免冷热两层出现重复数据
+        Runnable undo = () -> {
+            if (registered[0]) {
+                partitionCatalog.unregister(table, dataDate);
+                registered[0] = false;
+            }
+            deleteQuietly(file);
+        };
+        try {
+            // 导出与删除在单写线程的同一事务内完成
+            persistenceWriter.submit(() -> {
+                jdbcTemplate.execute("COPY (SELECT * FROM " + table + " WHERE data_date = " + dateLiteral + ") TO '" +
+                    file.toString().replace("'", "''") + "' (FORMAT PARQUET, COMPRESSION " + compression + ")");
+                registered[0] = partitionCatalog.register(table, dataDate);
+                return jdbcTemplate.update("DELETE FROM " + table + " WHERE data_date = " + dateLiteral);
+            }, undo).join();
+        } catch (RuntimeException e) {
+            undo.run();
+            throw e;
+        }
+
+        log.debug("分区已归档: table={}, dataDate={}, file={}", table, dataDate, file);
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("清理归档文件失败: {}", file, e);
+        }
+    }
+}
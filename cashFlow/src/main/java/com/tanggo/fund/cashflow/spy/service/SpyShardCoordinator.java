@@ -0,0 +1,246 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.repository.SpyLeaseStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 采集分片协调
+ *
+ * 每个实例在租约表中持有一条成员租约({name}/{owner})并按renew-interval续期；未过期的成员租约即存活节点，
+ * 按一致性哈希把ticker全集分给存活节点，本实例只采集归属自己的分片。实例宕机后其成员租约在ttl内过期，
+ * 其余实例下次续期时重新分片接管，ttl+renew-interval应小于采集间隔以保证一个周期内完成换主
+ */
+@Component
+@Slf4j
+public class SpyShardCoordinator {
+
+    private final SpyLeaseStore leaseStore;
+    private final String name;
+    private final String owner;
+    private final Duration ttl;
+    private final List<String> tickers;
+    private final int virtualNodes;
+    private final Timer handoverTimer;
+    private final Counter acquiredCounter;
+    private final Counter lostCounter;
+    private final Counter rebalanceCounter;
+
+    private volatile boolean held;
+    private volatile Set<String> ownedTickers = Set.of();
+    private volatile Map<String, SpyLeaseStore.Lease> members = Map.of();
+
+    public SpyShardCoordinator(SpyLeaseStore leaseStore,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.spy.lease.name:spy-collector}") String name,
+                               @Value("${app.spy.lease.owner:}") String owner,
+                               @Value("${app.spy.lease.ttl:90s}") Duration ttl,
+                               @Value("${app.spy.collection.tickers:SPY}") List<String> tickers,
+                               @Value("${app.spy.shard.virtual-nodes:128}") int virtualNodes) {
+        this.leaseStore = leaseStore;
+        this.name = name;
+        this.owner = owner.isBlank() ? defaultOwner() : owner;
+        this.ttl = ttl;
+        this.tickers = List.copyOf(new LinkedHashSet<>(tickers));
+        this.virtualNodes = virtualNodes;
+
+        Gauge.builder("spy.lease.held", this, coordinator -> coordinator.held ? 1 : 0)
+            .description("本实例是否持有成员租约(1=参与采集分片)")
+            .tag("lease", name)
+            .tag("owner", this.owner)
+            .register(meterRegistry);
+        Gauge.builder("spy.shard.members", this, coordinator -> coordinator.getMembers().size())
+            .description("当前存活的采集节点数")
+            .tag("lease", name)
+            .register(meterRegistry);
+        Gauge.builder("spy.shard.owned", this, coordinator -> coordinator.ownedTickers.size())
+            .description("本实例负责采集的ticker数")
+            .tag("lease", name)
+            .tag("owner", this.owner)
+            .register(meterRegistry);
+        this.handoverTimer = Timer.builder("spy.lease.handover")
+            .description("换主耗时(离开节点最后一次续期到本实例接管其分片)")
+            .tag("lease", name)
+            .register(meterRegistry);
+        this.acquiredCounter = Counter.builder("spy.lease.transitions")
+            .description("成员租约获得/丢失次数")
+            .tag("lease", name)
+            .tag("type", "acquired")
+            .register(meterRegistry);
+        this.lostCounter = Counter.builder("spy.lease.transitions")
+            .description("成员租约获得/丢失次数")
+            .tag("lease", name)
+            .tag("type", "lost")
+            .register(meterRegistry);
+        this.rebalanceCounter = Counter.builder("spy.shard.rebalances")
+            .description("节点加入/离开引起的重新分片次数")
+            .tag("lease", name)
+            .register(meterRegistry);
+    }
+
+    private static String defaultOwner() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * 定时续期成员租约并重新分片
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.spy.lease.renew-interval:30000}")
+    public void heartbeat() {
+        refresh();
+    }
+
+    /**
+     * 续期成员租约，按当前存活节点重新计算并返回本实例的分片
+     *
+     * 租约存储不可用时视为未持有，宁可漏采一轮也不重复采集
+     */
+    public synchronized Set<String> refresh() {
+        Instant now = Instant.now();
+        Map<String, SpyLeaseStore.Lease> all = new HashMap<>();
+        try {
+            if (leaseStore.tryAcquire(memberLease(), owner, now, ttl).acquired()) {
+                leaseStore.findByPrefix(name + "/").values().forEach(lease -> all.put(lease.owner(), lease));
+            }
+        } catch (Exception e) {
+            log.warn("成员租约续期失败，按非采集节点处理: {}", e.getMessage());
+        }
+
+        Map<String, SpyLeaseStore.Lease> live = new HashMap<>(all);
+        live.values().removeIf(lease -> lease.isExpired(now));
+
+        boolean wasHeld = held;
+        held = live.containsKey(owner);
+        if (held && !wasHeld) {
+            acquiredCounter.increment();
+            log.info("加入采集分片: lease={}, owner={}", name, owner);
+        } else if (!held && wasHeld) {
+            lostCounter.increment();
+            log.warn("失去成员租约，暂停采集: lease={}, owner={}", name, owner);
+        }
+
+        Set<String> previousOwned = ownedTickers;
+        Map<String, SpyLeaseStore.Lease> previousMembers = members;
+        SpyTickerRing ring = new SpyTickerRing(held ? live.keySet() : Set.of(), virtualNodes);
+        Set<String> owned = new LinkedHashSet<>();
+        for (String ticker : tickers) {
+            if (ring.ownerOf(ticker).filter(owner::equals).isPresent()) {
+                owned.add(ticker);
+            }
+        }
+        members = live;
+        ownedTickers = Collections.unmodifiableSet(owned);
+
+        if (!live.keySet().equals(previousMembers.keySet())) {
+            rebalanceCounter.increment();
+            recordHandover(previousMembers.keySet(), all, live, previousOwned, owned, now);
+            log.info("采集节点变化，重新分片: 节点={}, 本实例分片={}/{}", ring.getNodes(), owned.size(), tickers.size());
+        }
+        if (held) {
+            removeStaleMembers(now);
+        }
+        return ownedTickers;
+    }
+
+    /**
+     * 删除停止续期超过2倍ttl的成员租约
+     *
+     * owner每次重启都会变化，离开节点的租约不清理会一直累积。过期后再保留一个ttl，
+     * 使其余节点(续期间隔小于ttl)都能在下次刷新时看到离开的节点并记录换主耗时
+     */
+    private void removeStaleMembers(Instant now) {
+        try {
+            int removed = leaseStore.removeStale(name + "/", now.minus(ttl.multipliedBy(2)));
+            if (removed > 0) {
+                log.info("已清理离开节点的成员租约: {}条", removed);
+            }
+        } catch (Exception e) {
+            log.warn("清理过期成员租约失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从离开节点接管到ticker时，记录其最后一次续期(过期的成员租约清理前仍保留在存储中)到接管的耗时
+     */
+    private void recordHandover(Set<String> previousMembers, Map<String, SpyLeaseStore.Lease> all,
+                                Map<String, SpyLeaseStore.Lease> live, Set<String> previousOwned, Set<String> owned,
+                                Instant now) {
+        if (previousOwned.containsAll(owned)) {
+            return;
+        }
+        for (String member : previousMembers) {
+            SpyLeaseStore.Lease lease = all.get(member);
+            if (lease != null && !live.containsKey(member)) {
+                Duration handover = Duration.between(lease.renewedAt(), now);
+                handoverTimer.record(handover);
+                log.info("接管离开节点的分片: 原节点={}, 换主耗时={}ms", member, handover.toMillis());
+            }
+        }
+    }
+
+    /**
+     * 关闭时(单写线程停止前)主动释放，其他实例下次续期即接管分片
+     */
+    @EventListener(ContextClosedEvent.class)
+    public synchronized void release() {
+        if (!held) {
+            return;
+        }
+        held = false;
+        ownedTickers = Set.of();
+        try {
+            leaseStore.release(memberLease(), owner);
+            log.info("已释放成员租约: lease={}, owner={}", name, owner);
+        } catch (Exception e) {
+            log.warn("释放成员租约失败，等待过期: {}", e.getMessage());
+        }
+    }
+
+    private String memberLease() {
+        return name + "/" + owner;
+    }
+
+    public boolean isHeld() {
+        return held;
+    }
+
+    /**
+     * 最近一次刷新时本实例负责的ticker
+     */
+    public Set<String> getOwnedTickers() {
+        return ownedTickers;
+    }
+
+    public Set<String> getMembers() {
+        return Set.copyOf(members.keySet());
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+}
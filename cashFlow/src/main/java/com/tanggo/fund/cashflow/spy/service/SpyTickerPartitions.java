@@ -0,0 +1,245 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 按ticker分区的单线程工作者
+ *
+ * ticker按哈希固定归属N个分区之一，每个分区一个工作线程和一个无锁邮箱。同一ticker的任务按提交顺序
+ * 在同一线程执行，其状态(SpyTickerState)只被该线程读写，无需加锁；不同ticker在各分区间并行。
+ *
+ * 停止时先拒绝新任务，等待已接受的任务及其登记的异步回调(如保存确认)全部执行完，再停止工作线程。
+ * 本组件先于单写线程(SpyPersistenceWriter，phase更低)停止，等待期间保存确认仍能完成
+ */
+@Component
+@Slf4j
+public class SpyTickerPartitions implements SmartLifecycle {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long SHUTDOWN_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SHUTDOWN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final Partition[] partitions;
+    private final int rollingWindow;
+    /** 已接受未执行完的任务数 + 尚未完成的异步回调数 */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private volatile boolean running;
+    private volatile boolean accepting;
+
+    public SpyTickerPartitions(MeterRegistry meterRegistry,
+                               @Value("${app.spy.partition.workers:0}") int workers,
+                               @Value("${app.spy.partition.rolling-window:20}") int rollingWindow) {
+        int count = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.rollingWindow = rollingWindow;
+        this.partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            Partition partition = new Partition(i, Counter.builder("spy.partition.processed")
+                .description("分区已执行的任务数")
+                .tag("partition", String.valueOf(i))
+                .register(meterRegistry));
+            Gauge.builder("spy.partition.queue.depth", partition.depth, AtomicInteger::get)
+                .description("分区邮箱中等待执行的任务数")
+                .tag("partition", String.valueOf(i))
+                .register(meterRegistry);
+            partitions[i] = partition;
+        }
+    }
+
+    /**
+     * ticker所属分区
+     */
+    public int partitionOf(String ticker) {
+        return Math.floorMod(Objects.hashCode(ticker), partitions.length);
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * 提交任务，在ticker所属分区线程上以该ticker的状态执行
+     */
+    public void execute(String ticker, Consumer<SpyTickerState> task) {
+        if (!accepting) {
+            log.warn("分区工作线程未运行，丢弃任务: ticker={}", ticker);
+            return;
+        }
+        submit(ticker, task);
+    }
+
+    /**
+     * future完成后在ticker所属分区线程上执行task(第二个参数为future的异常，成功时为null)
+     *
+     * 停止过程中已登记的回调仍会执行，停止会等待future完成
+     */
+    public void executeWhenComplete(String ticker, CompletableFuture<?> future,
+                                    BiConsumer<SpyTickerState, Throwable> task) {
+        if (!running) {
+            log.warn("分区工作线程未运行，丢弃回调: ticker={}", ticker);
+            return;
+        }
+        outstanding.incrementAndGet();
+        future.whenComplete((value, error) -> {
+            try {
+                if (running) {
+                    submit(ticker, state -> task.accept(state, error));
+                } else {
+                    log.warn("分区工作线程已停止，丢弃回调: ticker={}", ticker);
+                }
+            } finally {
+                outstanding.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * 在所属分区线程上读取ticker状态，避免跨线程直接访问
+     */
+    public <T> CompletableFuture<T> query(String ticker, Function<SpyTickerState, T> reader) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new IllegalStateException("分区工作线程未运行"));
+            return future;
+        }
+        submit(ticker, state -> {
+            try {
+                future.complete(reader.apply(state));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void submit(String ticker, Consumer<SpyTickerState> task) {
+        outstanding.incrementAndGet();
+        partitions[partitionOf(ticker)].offer(new Task(ticker, task));
+    }
+
+    /**
+     * 各分区邮箱当前深度
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            depths[i] = partitions[i].depth.get();
+        }
+        return depths;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        accepting = true;
+        for (Partition partition : partitions) {
+            Thread thread = new Thread(partition::runLoop, "SPY-Partition-" + partition.index);
+            thread.setDaemon(true);
+            partition.thread = thread;
+            thread.start();
+        }
+        log.info("ticker分区工作线程启动: 分区数={}", partitions.length);
+    }
+
+    @Override
+    public void stop() {
+        accepting = false;
+        // 等待已接受的任务及保存确认等回调执行完
+        long deadline = System.nanoTime() + SHUTDOWN_TIMEOUT_NANOS;
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(this, SHUTDOWN_POLL_NANOS);
+        }
+        if (outstanding.get() > 0) {
+            log.warn("等待分区任务超时，剩余{}个任务/回调未完成", outstanding.get());
+        }
+
+        running = false;
+        for (Partition partition : partitions) {
+            Thread thread = partition.thread;
+            if (thread == null) {
+                continue;
+            }
+            LockSupport.unpark(thread);
+            try {
+                // 执行完邮箱中剩余任务后退出
+                thread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            partition.thread = null;
+        }
+        log.info("ticker分区工作线程已停止");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 单个分区: 邮箱、工作线程及其独占的ticker状态
+     */
+    private final class Partition {
+
+        private final int index;
+        private final ConcurrentLinkedQueue<Task> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final Map<String, SpyTickerState> states = new HashMap<>();
+        private final Counter processed;
+        private volatile Thread thread;
+
+        private Partition(int index, Counter processed) {
+            this.index = index;
+            this.processed = processed;
+        }
+
+        private void offer(Task task) {
+            mailbox.offer(task);
+            depth.incrementAndGet();
+            LockSupport.unpark(thread);
+        }
+
+        private void runLoop() {
+            while (running || !mailbox.isEmpty()) {
+                Task task = mailbox.poll();
+                if (task == null) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    continue;
+                }
+                depth.decrementAndGet();
+
+                SpyTickerState state = states.computeIfAbsent(task.ticker(),
+                    ticker -> new SpyTickerState(ticker, rollingWindow));
+                try {
+                    task.action().accept(state);
+                } catch (Exception e) {
+                    log.error("分区任务执行失败: partition={}, ticker={}", index, task.ticker(), e);
+                } finally {
+                    outstanding.decrementAndGet();
+                }
+                processed.increment();
+            }
+        }
+    }
+
+    private record Task(String ticker, Consumer<SpyTickerState> action) {
+    }
+}
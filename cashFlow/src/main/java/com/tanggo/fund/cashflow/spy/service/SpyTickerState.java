@@ -0,0 +1,98 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 单个ticker的处理状态
+ *
+ * 只由所属分区(SpyTickerPartitions)的工作线程读写，不加锁；其他线程通过分区查询获取快照
+ */
+@Getter
+public class SpyTickerState {
+
+    private final String ticker;
+    private final int rollingWindow;
+    @Getter(AccessLevel.NONE)
+    private final Deque<BigDecimal> recentInflows = new ArrayDeque<>();
+    @Getter(AccessLevel.NONE)
+    private BigDecimal rollingSum = BigDecimal.ZERO;
+
+    /**
+     * 最近一次已保存的结果
+     */
+    private SpyFlowResult latest;
+
+    /**
+     * 已计算、等待单写线程确认保存的结果
+     */
+    private SpyFlowResult pending;
+
+    private long calculatedCount;
+    private long savedCount;
+    private long failedCount;
+
+    public SpyTickerState(String ticker, int rollingWindow) {
+        this.ticker = ticker;
+        this.rollingWindow = rollingWindow;
+    }
+
+    /**
+     * 计算完成，计入滚动统计并等待保存
+     */
+    public void calculated(SpyFlowResult result) {
+        BigDecimal inflow = result.getFinalNetInflow();
+        if (inflow != null) {
+            recentInflows.addLast(inflow);
+            rollingSum = rollingSum.add(inflow);
+            if (recentInflows.size() > rollingWindow) {
+                rollingSum = rollingSum.subtract(recentInflows.removeFirst());
+            }
+        }
+        pending = result;
+        calculatedCount++;
+    }
+
+    public void saved(SpyFlowResult result) {
+        latest = result;
+        if (pending == result) {
+            pending = null;
+        }
+        savedCount++;
+    }
+
+    public void failed(SpyFlowResult result) {
+        if (pending == result) {
+            pending = null;
+        }
+        failedCount++;
+    }
+
+    /**
+     * 最近rollingWindow次计算的平均净流入
+     */
+    public BigDecimal getRollingAverageInflow() {
+        if (recentInflows.isEmpty()) {
+            return BigDecimal.ZERO;
+        }
+        return rollingSum.divide(BigDecimal.valueOf(recentInflows.size()), 2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * 供其他线程读取的不可变快照
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(ticker, latest, pending != null, getRollingAverageInflow(), recentInflows.size(),
+            calculatedCount, savedCount, failedCount);
+    }
+
+    public record Snapshot(String ticker, SpyFlowResult latest, boolean pending, BigDecimal rollingAverageInflow,
+                           int rollingSamples, long calculated, long saved, long failed) {
+    }
+}
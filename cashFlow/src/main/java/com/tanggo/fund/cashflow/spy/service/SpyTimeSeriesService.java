@@ -0,0 +1,184 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.dto.SpyFlowResponse;
+import com.tanggo.fund.cashflow.spy.repository.SpyArrowStreams;
+import com.tanggo.fund.cashflow.spy.repository.SpyParquetPartitionCatalog;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * SPY时间序列服务
+ *
+ * 直接从投影查询构建列式时间序列，不加载实体。同一日期有多条结果时取时间戳最新的一条
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SpyTimeSeriesService {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SpyParquetPartitionCatalog partitionCatalog;
+    private final BufferAllocator arrowBufferAllocator;
+
+    /**
+     * 获取日期范围内的列式时间序列(按日期升序)
+     */
+    @Transactional(readOnly = true)
+    public SpyFlowResponse getColumnar(String ticker, LocalDate startDate, LocalDate endDate) {
+        return getColumnar(ticker, startDate, endDate, null, SpyDownsampler.Mode.LTTB);
+    }
+
+    /**
+     * 获取列式时间序列并按净流入降采样到最多maxPoints个点，汇总仍基于全部数据
+     *
+     * @param maxPoints 为null时不降采样
+     */
+    @Transactional(readOnly = true)
+    public SpyFlowResponse getColumnar(String ticker, LocalDate startDate, LocalDate endDate,
+                                       Integer maxPoints, SpyDownsampler.Mode mode) {
+        String sql = projectionSql("CAST(data_date - DATE '1970-01-01' AS BIGINT) AS epoch_day, " +
+            "CAST(final_net_inflow AS DOUBLE) AS net_inflow, " +
+            "CAST(overall_confidence AS DOUBLE) AS confidence, " +
+            "CAST(flow_intensity AS DOUBLE) AS flow_intensity, " +
+            "timestamp, primary_source", startDate, endDate);
+
+        ColumnCollector collector = new ColumnCollector();
+        jdbcTemplate.query(sql, collector, startDate.toString(), endDate.toString(), ticker);
+
+        return SpyFlowResponse.builder()
+            .success(true)
+            .data(SpyFlowResponse.SpyData.builder()
+                .symbol(ticker)
+                .name(ticker + " ETF Flow")
+                .timeRange(startDate + "/" + endDate)
+                .summary(collector.summary())
+                .columns(collector.columns(maxPoints, mode))
+                .build())
+            .build();
+    }
+
+    /**
+     * 将日期范围内的时间序列以Arrow IPC流写出(由DuckDB直接导出)，返回行数
+     */
+    @Transactional(readOnly = true)
+    public long exportArrow(String ticker, LocalDate startDate, LocalDate endDate, OutputStream out) {
+        String sql = projectionSql("data_date, " +
+            "CAST(final_net_inflow AS DOUBLE) AS net_inflow, " +
+            "CAST(overall_confidence AS DOUBLE) AS confidence, " +
+            "CAST(flow_intensity AS DOUBLE) AS flow_intensity", startDate, endDate);
+
+        ResultSetExtractor<Long> exporter = rs -> SpyArrowStreams.write(rs, arrowBufferAllocator, out);
+        Long rows = jdbcTemplate.query(sql, exporter, startDate.toString(), endDate.toString(), ticker);
+        return rows != null ? rows : 0L;
+    }
+
+    /**
+     * 每日最新一条结果的投影查询(按日期升序)，参数依次为起止日期和ticker
+     */
+    private String projectionSql(String columns, LocalDate startDate, LocalDate endDate) {
+        String source = partitionCatalog.tieredSource(SpyParquetPartitionCatalog.FLOW_RESULT_TABLE, startDate, endDate);
+        return "SELECT " + columns + " FROM " + source + " " +
+            "WHERE data_date BETWEEN CAST(? AS DATE) AND CAST(? AS DATE) AND COALESCE(ticker, 'SPY') = ? " +
+            "QUALIFY ROW_NUMBER() OVER (PARTITION BY data_date ORDER BY timestamp DESC, id DESC) = 1 " +
+            "ORDER BY data_date";
+    }
+
+    /**
+     * 逐行追加到可增长的原始类型数组
+     */
+    private static final class ColumnCollector implements RowCallbackHandler {
+
+        private int size;
+        private long[] timestamps = new long[64];
+        private double[] netInflow = new double[64];
+        private double[] confidence = new double[64];
+        private double[] flowIntensity = new double[64];
+
+        private double totalNetInflow;
+        private Timestamp lastUpdated;
+        private String primarySource;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            if (size == timestamps.length) {
+                int capacity = size * 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                netInflow = Arrays.copyOf(netInflow, capacity);
+                confidence = Arrays.copyOf(confidence, capacity);
+                flowIntensity = Arrays.copyOf(flowIntensity, capacity);
+            }
+
+            timestamps[size] = rs.getLong(1) * MILLIS_PER_DAY;
+            netInflow[size] = getDouble(rs, 2);
+            confidence[size] = getDouble(rs, 3);
+            flowIntensity[size] = getDouble(rs, 4);
+
+            if (!Double.isNaN(netInflow[size])) {
+                totalNetInflow += netInflow[size];
+            }
+            // 升序扫描，最后一行即最新
+            lastUpdated = rs.getTimestamp(5);
+            primarySource = rs.getString(6);
+            size++;
+        }
+
+        SpyFlowResponse.SpyTimeSeriesColumns columns(Integer maxPoints, SpyDownsampler.Mode mode) {
+            if (maxPoints == null || size <= maxPoints) {
+                return SpyFlowResponse.SpyTimeSeriesColumns.builder()
+                    .timestamps(Arrays.copyOf(timestamps, size))
+                    .netInflow(Arrays.copyOf(netInflow, size))
+                    .confidence(Arrays.copyOf(confidence, size))
+                    .flowIntensity(Arrays.copyOf(flowIntensity, size))
+                    .sourcePoints(size)
+                    .build();
+            }
+
+            int[] indices = SpyDownsampler.select(timestamps, netInflow, size, maxPoints, mode);
+            return SpyFlowResponse.SpyTimeSeriesColumns.builder()
+                .timestamps(SpyDownsampler.pick(timestamps, indices))
+                .netInflow(SpyDownsampler.pick(netInflow, indices))
+                .confidence(SpyDownsampler.pick(confidence, indices))
+                .flowIntensity(SpyDownsampler.pick(flowIntensity, indices))
+                .sourcePoints(size)
+                .downsample(mode.name().toLowerCase(Locale.ROOT))
+                .build();
+        }
+
+        SpyFlowResponse.SpyFlowSummary summary() {
+            if (size == 0) {
+                return null;
+            }
+            int last = size - 1;
+            return SpyFlowResponse.SpyFlowSummary.builder()
+                .totalNetInflow(BigDecimal.valueOf(totalNetInflow).setScale(2, RoundingMode.HALF_UP))
+                .flowIntensity(Double.isNaN(flowIntensity[last]) ? null : BigDecimal.valueOf(flowIntensity[last]))
+                .lastUpdated(lastUpdated != null ? lastUpdated.toInstant() : null)
+                .confidence(Double.isNaN(confidence[last]) ? null : (int) Math.round(confidence[last]))
+                .primarySource(primarySource)
+                .build();
+        }
+
+        private static double getDouble(ResultSet rs, int column) throws SQLException {
+            double value = rs.getDouble(column);
+            return rs.wasNull() ? Double.NaN : value;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.tanggo.fund.cashflow.spy.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * WebSocket协议v2编码器: 订阅时发送完整快照，之后只发送变化字段
+ *
+ * 服务端按ticker维护最近一次广播的字段状态及版本号，每次更新只编码一次差量帧，所有v2会话共享同一个不可变帧；
+ * 快照帧按版本缓存，同一版本的订阅共享。客户端按ticker维护状态，忽略ver不大于本地版本的差量，
+ * base与本地版本不一致时发送getLatest重新获取快照
+ */
+@Component
+@Slf4j
+public class SpyDeltaEncoder {
+
+    public static final int PROTOCOL_VERSION = 2;
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, TickerState> states = new HashMap<>();
+
+    public SpyDeltaEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 应用一次更新，返回共享的差量帧；字段均未变化时返回null
+     *
+     * @param seq 更新在SpyUpdateJournal中的序列号，0表示不在日志中(如以热窗口数据初始化)
+     */
+    public synchronized SpyFrame apply(SpyFlowResult result, long seq) {
+        String ticker = SpyTopicRouter.tickerOf(result);
+        TickerState state = states.computeIfAbsent(ticker, t -> new TickerState());
+        Map<String, Object> next = fields(result);
+        Map<String, Object> changes = new LinkedHashMap<>();
+        next.forEach((field, value) -> {
+            if (!sameValue(state.fields.get(field), value)) {
+                changes.put(field, value);
+            }
+        });
+        if (changes.isEmpty()) {
+            return null;
+        }
+
+        long base = state.version;
+        state.fields = next;
+        state.result = result;
+        state.seq = seq;
+        state.version++;
+        state.snapshotFrame = null;
+
+        Map<String, Object> delta = new LinkedHashMap<>();
+        delta.put("type", "delta");
+        delta.put("v", PROTOCOL_VERSION);
+        delta.put("ticker", ticker);
+        delta.put("seq", seq);
+        delta.put("ver", state.version);
+        delta.put("base", base);
+        delta.put("changes", changes);
+        return frame(delta);
+    }
+
+    /**
+     * ticker当前状态的快照帧；尚未广播过时用fallback初始化状态，仍无数据时返回empty
+     */
+    public synchronized Optional<SpyFrame> snapshot(String ticker,
+                                                       Function<String, Optional<SpyFlowResult>> fallback) {
+        TickerState state = states.get(ticker);
+        if (state == null) {
+            fallback.apply(ticker).ifPresent(result -> apply(result, 0));
+            state = states.get(ticker);
+        }
+        if (state == null) {
+            return Optional.empty();
+        }
+
+        if (state.snapshotFrame == null) {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("type", "snapshot");
+            snapshot.put("v", PROTOCOL_VERSION);
+            snapshot.put("ticker", ticker);
+            snapshot.put("seq", state.seq);
+            snapshot.put("ver", state.version);
+            snapshot.put("data", state.fields);
+            state.snapshotFrame = frame(snapshot);
+        }
+        return Optional.ofNullable(state.snapshotFrame);
+    }
+
+    /**
+     * 各ticker最近一次广播的结果，用于按主题确定订阅时需要的快照
+     */
+    public synchronized Map<String, SpyFlowResult> latestResults() {
+        Map<String, SpyFlowResult> latest = new HashMap<>();
+        states.forEach((ticker, state) -> latest.put(ticker, state.result));
+        return latest;
+    }
+
+    public synchronized Optional<SpyFlowResult> latest(String ticker) {
+        TickerState state = states.get(ticker);
+        return state != null ? Optional.of(state.result) : Optional.empty();
+    }
+
+    public synchronized long getVersion(String ticker) {
+        TickerState state = states.get(ticker);
+        return state != null ? state.version : 0;
+    }
+
+    /**
+     * 精简字段表，省略创建时间等客户端不需要的字段
+     */
+    static Map<String, Object> fields(SpyFlowResult result) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("id", result.getId());
+        fields.put("ticker", result.getTicker());
+        fields.put("date", result.getDataDate() != null ? result.getDataDate().toString() : null);
+        fields.put("ts", result.getTimestamp() != null ? result.getTimestamp().toEpochMilli() : null);
+        fields.put("netInflow", result.getFinalNetInflow());
+        fields.put("intensity", result.getFlowIntensity());
+        fields.put("vwap", result.getVolumeWeightedPrice());
+        fields.put("etfCom", result.getEtfComContribution());
+        fields.put("yahoo", result.getYahooContribution());
+        fields.put("source", result.getPrimarySource());
+        fields.put("confidence", result.getOverallConfidence());
+        fields.put("quality", result.getDataQualityScore());
+        fields.put("valid", result.getValidationPassed());
+        fields.put("geo", result.getGeographicDimension());
+        fields.put("currency", result.getCurrencyDimension());
+        fields.put("marketCap", result.getMarketCapDimension());
+        fields.put("sector", result.getSectorDimension());
+        return Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * 数值按大小比较，忽略精度差异
+     */
+    private static boolean sameValue(Object current, Object next) {
+        if (current instanceof BigDecimal a && next instanceof BigDecimal b) {
+            return a.compareTo(b) == 0;
+        }
+        return Objects.equals(current, next);
+    }
+
+    private SpyFrame frame(Map<String, Object> payload) {
+        try {
+            return SpyFrame.of(objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            log.error("序列化WebSocket帧失败", e);
+            return null;
+        }
+    }
+
+    private static class TickerState {
+        private Map<String, Object> fields = Collections.emptyMap();
+        private SpyFlowResult result;
+        private long seq;
+        private long version;
+        private SpyFrame snapshotFrame;
+    }
+}
@@ -0,0 +1,111 @@
+package com.tanggo.fund.cashflow.spy.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 不可变的WebSocket消息帧
+ *
+ * 以JSON文本构建，CBOR二进制在首次需要时由JSON转码一次(数值按double编码)。
+ * 文本消息在会话间共享；二进制消息的ByteBuffer在发送时会被消费，每次发送包装同一个字节数组
+ */
+public final class SpyFrame {
+
+    /**
+     * 会话编码，由握手协商的子协议决定
+     */
+    public enum Encoding {
+        JSON("spy.json"),
+        CBOR("spy.cbor");
+
+        private final String subProtocol;
+
+        Encoding(String subProtocol) {
+            this.subProtocol = subProtocol;
+        }
+
+        public String getSubProtocol() {
+            return subProtocol;
+        }
+
+        public String tag() {
+            return name().toLowerCase();
+        }
+
+        /**
+         * 协商了spy.cbor的原生WebSocket会话使用CBOR；SockJS只支持文本，始终使用JSON
+         */
+        public static Encoding of(WebSocketSession session) {
+            if (CBOR.subProtocol.equals(session.getAcceptedProtocol())
+                && !(WebSocketSessionDecorator.unwrap(session) instanceof SockJsSession)) {
+                return CBOR;
+            }
+            return JSON;
+        }
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+    private final TextMessage text;
+    private volatile byte[] cbor;
+
+    private SpyFrame(String json) {
+        // 以字节构建，发送缓冲与指标统计长度时不再重复编码
+        this.text = new TextMessage(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SpyFrame of(String json) {
+        return new SpyFrame(json);
+    }
+
+    public String getJson() {
+        return text.getPayload();
+    }
+
+    public WebSocketMessage<?> message(Encoding encoding) {
+        return encoding == Encoding.JSON ? text : new BinaryMessage(cbor());
+    }
+
+    /**
+     * 指定编码下的消息字节数(压缩前)
+     */
+    public int length(Encoding encoding) {
+        return encoding == Encoding.JSON ? text.getPayloadLength() : cbor().length;
+    }
+
+    private byte[] cbor() {
+        byte[] bytes = cbor;
+        if (bytes == null) {
+            // 并发首次访问时可能重复转码，结果相同
+            bytes = toCbor(text.getPayload());
+            cbor = bytes;
+        }
+        return bytes;
+    }
+
+    static byte[] toCbor(String json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length());
+        try (JsonParser parser = JSON_FACTORY.createParser(json);
+             JsonGenerator generator = CBOR_FACTORY.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException("JSON转CBOR失败", e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,128 @@
+package com.tanggo.fund.cashflow.spy.websocket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * 单个会话的广播发送队列
+ *
+ * 帧按提交顺序排队，由分发线程池串行发送：同一会话同时最多占用一个线程，每次最多发送DRAIN_BATCH帧后让出线程，
+ * 慢会话不会饿死其他会话。排队字节数超出上限、队首等待超过时限或线程池拒绝时不再排队，
+ * 丢弃该会话全部待发送帧并返回false，由调用方断开会话(客户端重连后按lastSeq补发)；从不在提交线程上发送
+ */
+final class SpySessionOutbox {
+
+    static final int DRAIN_BATCH = 16;
+
+    private final Executor executor;
+    private final Consumer<SpyFrame> sender;
+    private final long maxBytes;
+    private final long maxWaitNanos;
+
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private long queuedBytes;
+    private boolean scheduled;
+    private boolean closed;
+
+    SpySessionOutbox(Executor executor, Consumer<SpyFrame> sender, long maxBytes, long maxWaitNanos) {
+        this.executor = executor;
+        this.sender = sender;
+        this.maxBytes = maxBytes;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    /**
+     * 提交一帧，onDone在发送完成或被丢弃后恰好调用一次
+     *
+     * @return false表示会话积压已超出限制，待发送帧已全部丢弃
+     */
+    boolean offer(SpyFrame frame, int bytes, Runnable onDone) {
+        Pending pending = new Pending(frame, bytes, onDone, System.nanoTime());
+        boolean accepted;
+        boolean schedule = false;
+        synchronized (queue) {
+            queue.add(pending);
+            accepted = !closed && !overLimit(pending);
+            if (!accepted) {
+                closed = true;
+            } else {
+                queuedBytes += bytes;
+                schedule = !scheduled;
+                scheduled = true;
+            }
+        }
+        if (!accepted) {
+            discard();
+            return false;
+        }
+        return !schedule || submit();
+    }
+
+    /**
+     * 丢弃全部待发送帧，之后的提交直接丢弃
+     */
+    void close() {
+        synchronized (queue) {
+            closed = true;
+        }
+        discard();
+    }
+
+    /**
+     * next已加入队尾；只有它一帧时总是接受
+     */
+    private boolean overLimit(Pending next) {
+        if (queue.size() == 1) {
+            return false;
+        }
+        return queuedBytes + next.bytes > maxBytes || next.enqueuedAt - queue.peek().enqueuedAt > maxWaitNanos;
+    }
+
+    private boolean submit() {
+        try {
+            executor.execute(this::drain);
+            return true;
+        } catch (RejectedExecutionException e) {
+            close();
+            return false;
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < DRAIN_BATCH; i++) {
+            Pending next;
+            synchronized (queue) {
+                next = queue.poll();
+                if (next == null) {
+                    scheduled = false;
+                    return;
+                }
+                queuedBytes -= next.bytes;
+            }
+            try {
+                sender.accept(next.frame);
+            } finally {
+                next.onDone.run();
+            }
+        }
+        // 仍有积压时重新排到线程池队尾
+        submit();
+    }
+
+    private void discard() {
+        List<Pending> dropped;
+        synchronized (queue) {
+            dropped = new ArrayList<>(queue);
+            queue.clear();
+            queuedBytes = 0;
+        }
+        dropped.forEach(pending -> pending.onDone.run());
+    }
+
+    private record Pending(SpyFrame frame, int bytes, Runnable onDone, long enqueuedAt) {
+    }
+}
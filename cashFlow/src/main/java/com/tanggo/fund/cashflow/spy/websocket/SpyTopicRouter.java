@@ -0,0 +1,149 @@
+package com.tanggo.fund.cashflow.spy.websocket;
+
+import com.tanggo.fund.cashflow.spy.cache.SpyFlowHotWindow;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket主题订阅路由
+ *
+ * 维护 主题→会话 的索引，广播只访问订阅了该更新所属主题的会话，而不是遍历全部会话。
+ * 主题: spy_updates(全部更新)、ticker:代码、geo/currency/marketCap/sector:维度值。
+ * 每个主题的订阅者集合为并发集合，增删通过compute在键上原子完成，空主题随即移除
+ */
+@Component
+public class SpyTopicRouter {
+
+    /**
+     * 全部更新(兼容原spy_updates订阅)
+     */
+    public static final String ALL = "spy_updates";
+
+    public static final String TICKER = "ticker";
+
+    private static final List<String> DIMENSIONS = List.of(TICKER, "geo", "currency", "marketCap", "sector");
+
+    private final Map<String, Set<String>> subscribers = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> sessionTopics = new ConcurrentHashMap<>();
+
+    public static String ticker(String ticker) {
+        return TICKER + ":" + ticker;
+    }
+
+    /**
+     * 主题格式校验: spy_updates或 维度:非空值
+     */
+    public static boolean isValid(String topic) {
+        if (ALL.equals(topic)) {
+            return true;
+        }
+        int separator = topic != null ? topic.indexOf(':') : -1;
+        return separator > 0 && separator < topic.length() - 1 && DIMENSIONS.contains(topic.substring(0, separator));
+    }
+
+    /**
+     * 一条更新所属的全部主题
+     */
+    public static List<String> topicsOf(SpyFlowResult result) {
+        List<String> topics = new ArrayList<>(DIMENSIONS.size() + 1);
+        topics.add(ALL);
+        topics.add(ticker(tickerOf(result)));
+        addDimension(topics, "geo", result.getGeographicDimension());
+        addDimension(topics, "currency", result.getCurrencyDimension());
+        addDimension(topics, "marketCap", result.getMarketCapDimension());
+        addDimension(topics, "sector", result.getSectorDimension());
+        return topics;
+    }
+
+    static String tickerOf(SpyFlowResult result) {
+        return result.getTicker() != null ? result.getTicker() : SpyFlowHotWindow.DEFAULT_TICKER;
+    }
+
+    public void subscribe(String sessionId, Collection<String> topics) {
+        for (String topic : topics) {
+            subscribers.compute(topic, (key, sessions) -> {
+                Set<String> target = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+                target.add(sessionId);
+                return target;
+            });
+        }
+        sessionTopics.computeIfAbsent(sessionId, id -> ConcurrentHashMap.newKeySet()).addAll(topics);
+    }
+
+    public void unsubscribe(String sessionId, Collection<String> topics) {
+        for (String topic : topics) {
+            subscribers.computeIfPresent(topic, (key, sessions) -> {
+                sessions.remove(sessionId);
+                return sessions.isEmpty() ? null : sessions;
+            });
+        }
+        sessionTopics.computeIfPresent(sessionId, (id, subscribed) -> {
+            subscribed.removeAll(topics);
+            return subscribed.isEmpty() ? null : subscribed;
+        });
+    }
+
+    /**
+     * 取消会话的全部订阅
+     */
+    public void remove(String sessionId) {
+        Set<String> topics = sessionTopics.remove(sessionId);
+        if (topics != null) {
+            unsubscribe(sessionId, Set.copyOf(topics));
+        }
+    }
+
+    public Set<String> topicsOf(String sessionId) {
+        Set<String> topics = sessionTopics.get(sessionId);
+        return topics != null ? Set.copyOf(topics) : Collections.emptySet();
+    }
+
+    public boolean isSubscribed(String sessionId) {
+        return sessionTopics.containsKey(sessionId);
+    }
+
+    /**
+     * 订阅了任一主题的会话，同一会话只出现一次；只有一个主题有订阅者时直接返回其集合视图
+     */
+    public Collection<String> route(Collection<String> topics) {
+        Set<String> only = null;
+        Set<String> union = null;
+        for (String topic : topics) {
+            Set<String> sessions = subscribers.get(topic);
+            if (sessions == null || sessions.isEmpty()) {
+                continue;
+            }
+            if (only == null) {
+                only = sessions;
+            } else {
+                if (union == null) {
+                    union = new HashSet<>(only);
+                }
+                union.addAll(sessions);
+            }
+        }
+        if (union != null) {
+            return union;
+        }
+        return only != null ? Collections.unmodifiableSet(only) : Collections.emptySet();
+    }
+
+    public int getTopicCount() {
+        return subscribers.size();
+    }
+
+    private static void addDimension(List<String> topics, String dimension, String value) {
+        if (value != null && !value.isEmpty()) {
+            topics.add(dimension + ":" + value);
+        }
+    }
+}
@@ -1,65 +1,209 @@
 package com.tanggo.fund.cashflow.spy.websocket;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.tanggo.fund.cashflow.spy.cache.SpyFlowHotWindow;
 import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
-import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
-import lombok.RequiredArgsConstructor;
+import com.tanggo.fund.cashflow.spy.event.SpyUpdateBackplane;
+import com.tanggo.fund.cashflow.spy.event.SpyUpdateJournal;
+import com.tanggo.fund.cashflow.spy.service.SpyFlowQueryService;
+import com.tanggo.fund.cashflow.spy.service.SpyFreshnessTracker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SPY WebSocket处理器
+ *
+ * 每个会话包装为带有界发送缓冲和发送时限的ConcurrentWebSocketSessionDecorator，
+ * 同一会话的发送串行化；广播帧进入会话各自的发送队列(SpySessionOutbox)，由分发线程池按会话顺序发送，
+ * 积压超出缓冲上限或等待超过发送时限的慢客户端被断开，不会在广播线程上发送。
+ * 订阅按主题路由(见SpyTopicRouter)，广播只分发给订阅了更新所属主题的会话；
+ * 订阅时指定protocol=2的会话先收到完整快照，之后只收到变化字段的差量帧；每次更新的帧只编码一次并在会话间共享。
+ * 广播先写入SpyUpdateJournal取得单调递增的seq，重连的客户端订阅时携带lastSeq，从内存日志补发错过的更新
+ * (v1补发原消息，v2发送有变化ticker的快照)，缺口超出日志时发送reset与完整状态；建连不访问数据库。
+ * 补发与实时广播可能交错到达，客户端按seq(v2按ticker的ver)去重。
+ * 原生WebSocket客户端可通过子协议spy.cbor选择CBOR二进制帧(请求也可用CBOR发送)，permessage-deflate压缩由握手协商。
+ * 更新经SpyUpdateBackplane到达每个实例，各实例只向本地会话广播；seq由实例各自的日志分配，重连补发以所连实例为准
  */
 @Component
 @Slf4j
-@RequiredArgsConstructor
-public class SpyWebSocketHandler extends TextWebSocketHandler {
+public class SpyWebSocketHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
     
-    private final SpyFlowResultRepository flowResultRepository;
+    // Tomcat阻塞发送超时(毫秒)，限制慢客户端占用分发线程的时间
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+    
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    
+    private final SpyFlowQueryService flowQueryService;
+    private final SpyFlowHotWindow hotWindow;
     private final ObjectMapper objectMapper;
+    private final ObjectMapper cborMapper = new CBORMapper();
+    private final SpyDeltaEncoder deltaEncoder;
+    private final SpyTopicRouter topicRouter;
+    private final SpyUpdateJournal updateJournal;
+    private final SpyFreshnessTracker freshnessTracker;
+    private final Executor fanoutExecutor;
+    private final int sendTimeLimitMillis;
+    private final int bufferSizeLimit;
+    
+    private final Timer fanoutTimer;
+    private final Counter evictions;
+    private final Counter sendFailures;
+    private final Counter delivered;
+    
+    // 按编码与是否压缩统计发送字节数(压缩前)
+    private final Counter[][] bytesSent = new Counter[SpyFrame.Encoding.values().length][2];
+    
+    // 存储所有活跃连接(已包装的会话)
+    private final Map<String, ConcurrentWebSocketSessionDecorator> sessions = new ConcurrentHashMap<>();
     
-    // 存储所有活跃连接
-    private final CopyOnWriteArraySet<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    // 各会话的广播发送队列
+    private final Map<String, SpySessionOutbox> outboxes = new ConcurrentHashMap<>();
     
-    // 存储会话订阅信息
-    private final Map<String, String> sessionSubscriptions = new ConcurrentHashMap<>();
+    // 使用差量协议(v2)的会话
+    private final Set<String> deltaSessions = ConcurrentHashMap.newKeySet();
+    
+    // 日志追加、差量状态推进与订阅互斥，保证订阅者的补发/快照与其收到的第一条实时更新衔接
+    private final Object deltaLock = new Object();
+    
+    public SpyWebSocketHandler(SpyFlowQueryService flowQueryService,
+                               SpyFlowHotWindow hotWindow,
+                               ObjectMapper objectMapper,
+                               SpyDeltaEncoder deltaEncoder,
+                               SpyTopicRouter topicRouter,
+                               SpyUpdateJournal updateJournal,
+                               SpyUpdateBackplane updateBackplane,
+                               SpyFreshnessTracker freshnessTracker,
+                               MeterRegistry meterRegistry,
+                               @Qualifier("wsFanoutExecutor") Executor fanoutExecutor,
+                               @Value("${app.spy.websocket.send-time-limit:5s}") Duration sendTimeLimit,
+                               @Value("${app.spy.websocket.buffer-size-limit:524288}") int bufferSizeLimit) {
+        this.flowQueryService = flowQueryService;
+        this.hotWindow = hotWindow;
+        this.objectMapper = objectMapper;
+        this.deltaEncoder = deltaEncoder;
+        this.topicRouter = topicRouter;
+        this.updateJournal = updateJournal;
+        this.freshnessTracker = freshnessTracker;
+        this.fanoutExecutor = fanoutExecutor;
+        this.sendTimeLimitMillis = (int) sendTimeLimit.toMillis();
+        this.bufferSizeLimit = bufferSizeLimit;
+        
+        this.fanoutTimer = Timer.builder("spy.ws.fanout")
+            .description("一次广播发送(或缓冲)到全部订阅会话的耗时")
+            .register(meterRegistry);
+        this.evictions = Counter.builder("spy.ws.evicted")
+            .description("因发送缓冲溢出或发送超时被断开的会话数")
+            .register(meterRegistry);
+        this.sendFailures = Counter.builder("spy.ws.send.failures")
+            .description("发送失败的消息数")
+            .register(meterRegistry);
+        this.delivered = Counter.builder("spy.ws.delivered")
+            .description("本实例发送(或缓冲)到会话的广播消息数")
+            .register(meterRegistry);
+        for (SpyFrame.Encoding encoding : SpyFrame.Encoding.values()) {
+            for (boolean deflate : new boolean[]{false, true}) {
+                bytesSent[encoding.ordinal()][deflate ? 1 : 0] = Counter.builder("spy.ws.bytes.sent")
+                    .description("WebSocket发送的消息字节数(压缩前)，按编码与permessage-deflate区分")
+                    .baseUnit("bytes")
+                    .tag("encoding", encoding.tag())
+                    .tag("deflate", String.valueOf(deflate))
+                    .register(meterRegistry);
+            }
+        }
+        Gauge.builder("spy.ws.sessions", sessions, Map::size)
+            .description("活跃WebSocket会话数")
+            .register(meterRegistry);
+        Gauge.builder("spy.ws.topics", topicRouter, SpyTopicRouter::getTopicCount)
+            .description("有订阅者的主题数")
+            .register(meterRegistry);
+        Gauge.builder("spy.ws.buffer.bytes", this, SpyWebSocketHandler::totalBufferedBytes)
+            .description("所有会话待发送缓冲的总字节数")
+            .register(meterRegistry);
+        Gauge.builder("spy.ws.buffer.max.bytes", this, SpyWebSocketHandler::maxBufferedBytes)
+            .description("单个会话待发送缓冲的最大字节数")
+            .register(meterRegistry);
+        
+        updateBackplane.subscribe(this::broadcastSpyUpdate);
+    }
     
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.add(session);
+        limitBlockingSend(session);
+        ConcurrentWebSocketSessionDecorator decorated = new ConcurrentWebSocketSessionDecorator(
+            session, sendTimeLimitMillis, bufferSizeLimit, ConcurrentWebSocketSessionDecorator.OverflowStrategy.TERMINATE);
+        sessions.put(session.getId(), decorated);
+        outboxes.put(session.getId(), new SpySessionOutbox(fanoutExecutor, frame -> send(decorated, frame),
+            bufferSizeLimit, TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMillis)));
         log.info("SPY WebSocket连接建立: sessionId={}, 当前连接数={}", 
             session.getId(), sessions.size());
         
-        // 发送欢迎消息和最新数据
-        sendWelcomeMessage(session);
-        sendLatestData(session);
+        // 发送欢迎消息和最新数据，只读内存不查询数据库，批量重连不会冲击数据库
+        sendWelcomeMessage(decorated);
+        sendLatestData(decorated, false);
     }
     
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        sessions.remove(session);
-        sessionSubscriptions.remove(session.getId());
+        removeSession(session.getId());
         log.info("SPY WebSocket连接关闭: sessionId={}, 状态={}, 当前连接数={}", 
             session.getId(), status, sessions.size());
     }
     
     @Override
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        String payload = message.getPayload();
-        log.debug("收到WebSocket消息: sessionId={}, message={}", session.getId(), payload);
-        
+    public List<String> getSubProtocols() {
+        return Arrays.stream(SpyFrame.Encoding.values()).map(SpyFrame.Encoding::getSubProtocol).toList();
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void handleTextMessage(WebSocketSession rawSession, TextMessage message) throws Exception {
+        log.debug("收到WebSocket消息: sessionId={}, message={}", rawSession.getId(), message.getPayload());
+        handleRequest(outbound(rawSession), () -> objectMapper.readValue(message.getPayload(), Map.class));
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void handleBinaryMessage(WebSocketSession rawSession, BinaryMessage message) throws Exception {
+        byte[] payload = new byte[message.getPayloadLength()];
+        message.getPayload().get(payload);
+        handleRequest(outbound(rawSession), () -> cborMapper.readValue(payload, Map.class));
+    }
+    
+    private void handleRequest(WebSocketSession session, RequestReader reader) throws IOException {
         try {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> request = objectMapper.readValue(payload, Map.class);
+            Map<String, Object> request = reader.read();
             String action = (String) request.get("action");
             
             switch (action) {
@@ -67,10 +211,10 @@ public class SpyWebSocketHandler extends TextWebSocketHandler {
                     handleSubscribe(session, request);
                     break;
                 case "unsubscribe":
-                    handleUnsubscribe(session);
+                    handleUnsubscribe(session, request);
                     break;
                 case "getLatest":
-                    sendLatestData(session);
+                    sendLatestData(session, true);
                     break;
                 default:
                     sendErrorMessage(session, "未知操作: " + action);
@@ -84,83 +228,283 @@ public class SpyWebSocketHandler extends TextWebSocketHandler {
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
         log.error("WebSocket传输错误: sessionId={}", session.getId(), exception);
-        sessions.remove(session);
-        sessionSubscriptions.remove(session.getId());
+        removeSession(session.getId());
     }
     
     /**
-     * 广播SPY数据更新
+     * 向本实例的会话广播SPY数据更新(同时写入SSE与重连补发共用的更新日志)，由背板投递调用
      */
     public void broadcastSpyUpdate(SpyFlowResult flowResult) {
-        if (sessions.isEmpty()) {
+        List<ConcurrentWebSocketSessionDecorator> legacyTargets = new ArrayList<>();
+        List<ConcurrentWebSocketSessionDecorator> deltaTargets = new ArrayList<>();
+        SpyUpdateJournal.Entry entry;
+        SpyFrame deltaFrame;
+        synchronized (deltaLock) {
+            entry = updateJournal.append(flowResult);
+            if (entry == null) {
+                return;
+            }
+            // 无会话时也推进差量状态，之后订阅的快照与差量保持衔接
+            deltaFrame = deltaEncoder.apply(flowResult, entry.getId());
+            for (String sessionId : topicRouter.route(SpyTopicRouter.topicsOf(flowResult))) {
+                ConcurrentWebSocketSessionDecorator session = sessions.get(sessionId);
+                if (session != null && session.isOpen()) {
+                    (deltaSessions.contains(sessionId) ? deltaTargets : legacyTargets).add(session);
+                }
+            }
+        }
+        if (deltaFrame == null) {
+            deltaTargets.clear();
+        }
+        if (legacyTargets.isEmpty() && deltaTargets.isEmpty()) {
+            freshnessTracker.delivered(flowResult.getTrace());
             return;
         }
         
-        Map<String, Object> update = Map.of(
-            "type", "spy_update",
-            "timestamp", java.time.Instant.now().toString(),
-            "data", flowResult
-        );
+        // v1帧即日志中已序列化的消息
+        SpyFrame legacyFrame = SpyFrame.of(entry.getPayload());
         
-        String message;
+        // 按会话排队发送，消息对象在同协议会话间共享
+        long start = System.nanoTime();
+        AtomicInteger remaining = new AtomicInteger(legacyTargets.size() + deltaTargets.size());
+        dispatch(legacyTargets, legacyFrame, remaining, start, flowResult);
+        dispatch(deltaTargets, deltaFrame, remaining, start, flowResult);
+        
+        log.debug("SPY数据更新已提交广播给{}个客户端(差量协议{}个)",
+            legacyTargets.size() + deltaTargets.size(), deltaTargets.size());
+    }
+    
+    /**
+     * 最后一个会话发送(或丢弃)完成时记录分发耗时与数据新鲜度
+     */
+    private void dispatch(List<ConcurrentWebSocketSessionDecorator> targets, SpyFrame frame,
+                          AtomicInteger remaining, long start, SpyFlowResult flowResult) {
+        Runnable onDone = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                fanoutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                freshnessTracker.delivered(flowResult.getTrace());
+            }
+        };
+        for (ConcurrentWebSocketSessionDecorator session : targets) {
+            SpySessionOutbox outbox = outboxes.get(session.getId());
+            if (outbox == null) {
+                onDone.run();
+            } else if (!outbox.offer(frame, frame.length(SpyFrame.Encoding.of(session)), onDone)) {
+                evict(session);
+            }
+        }
+    }
+    
+    /**
+     * 发送队列积压超限的会话: 丢弃待发送帧并断开，客户端重连后按lastSeq补发
+     */
+    private void evict(ConcurrentWebSocketSessionDecorator session) {
+        evictions.increment();
+        removeSession(session.getId());
+        log.warn("慢客户端已断开: sessionId={}, 发送队列积压超出限制", session.getId());
         try {
-            message = objectMapper.writeValueAsString(update);
-        } catch (Exception e) {
-            log.error("序列化SPY更新数据失败", e);
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            log.debug("关闭慢客户端失败: sessionId={}", session.getId(), e);
+        }
+    }
+    
+    /**
+     * 发送到单个会话，缓冲溢出或超时的会话由装饰器关闭后移除
+     */
+    private void send(ConcurrentWebSocketSessionDecorator session, SpyFrame frame) {
+        try {
+            deliver(session, frame);
+            delivered.increment();
+        } catch (SessionLimitExceededException e) {
+            evictions.increment();
+            removeSession(session.getId());
+            log.warn("慢客户端已断开: sessionId={}, 待发送缓冲={}字节, 原因={}",
+                session.getId(), session.getBufferSize(), e.getMessage());
+        } catch (IOException e) {
+            sendFailures.increment();
+            removeSession(session.getId());
+            log.warn("发送WebSocket消息失败: sessionId={}", session.getId(), e);
+        }
+    }
+    
+    /**
+     * 按会话协商的编码发送并计入字节数
+     */
+    private void deliver(WebSocketSession session, SpyFrame frame) throws IOException {
+        SpyFrame.Encoding encoding = SpyFrame.Encoding.of(session);
+        int length = frame.length(encoding);
+        session.sendMessage(frame.message(encoding));
+        bytesSent[encoding.ordinal()][isDeflate(session) ? 1 : 0].increment(length);
+    }
+    
+    private void sendControl(WebSocketSession session, Object payload) throws IOException {
+        deliver(session, SpyFrame.of(objectMapper.writeValueAsString(payload)));
+    }
+    
+    private static boolean isDeflate(WebSocketSession session) {
+        for (WebSocketExtension extension : session.getExtensions()) {
+            if (PERMESSAGE_DEFLATE.equals(extension.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void removeSession(String sessionId) {
+        sessions.remove(sessionId);
+        SpySessionOutbox outbox = outboxes.remove(sessionId);
+        if (outbox != null) {
+            outbox.close();
+        }
+        topicRouter.remove(sessionId);
+        deltaSessions.remove(sessionId);
+    }
+    
+    /**
+     * 返回会话的包装实例，保证所有发送都经过同一个串行化缓冲
+     */
+    private WebSocketSession outbound(WebSocketSession session) {
+        WebSocketSession decorated = sessions.get(session.getId());
+        return decorated != null ? decorated : session;
+    }
+    
+    /**
+     * 设置底层容器的阻塞发送超时，避免慢客户端长时间占用分发线程
+     */
+    private void limitBlockingSend(WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession nativeSession) {
+            jakarta.websocket.Session container = nativeSession.getNativeSession(jakarta.websocket.Session.class);
+            if (container != null) {
+                container.getUserProperties().put(BLOCKING_SEND_TIMEOUT, (long) sendTimeLimitMillis);
+            }
+        }
+    }
+    
+    private double totalBufferedBytes() {
+        return sessions.values().stream().mapToLong(ConcurrentWebSocketSessionDecorator::getBufferSize).sum();
+    }
+    
+    private double maxBufferedBytes() {
+        return sessions.values().stream().mapToLong(ConcurrentWebSocketSessionDecorator::getBufferSize).max().orElse(0);
+    }
+    
+    /**
+     * 处理订阅请求: topics为主题列表；未指定时按原协议取type(仅支持spy_updates)
+     */
+    private void handleSubscribe(WebSocketSession session, Map<String, Object> request) throws IOException {
+        List<String> topics = requestedTopics(request);
+        if (topics.isEmpty()) {
+            sendErrorMessage(session, "不支持的订阅类型: " + request.get("type"));
             return;
         }
+        for (String topic : topics) {
+            if (!SpyTopicRouter.isValid(topic)) {
+                sendErrorMessage(session, "不支持的订阅主题: " + topic);
+                return;
+            }
+        }
         
-        // 并发发送给所有订阅客户端
-        sessions.parallelStream().forEach(session -> {
-            if (session.isOpen() && isSubscribedToUpdates(session)) {
-                try {
-                    session.sendMessage(new TextMessage(message));
-                } catch (IOException e) {
-                    log.warn("发送WebSocket消息失败: sessionId={}", session.getId(), e);
-                    sessions.remove(session);
-                }
+        int protocol = request.get("protocol") instanceof Number number ? number.intValue() : 1;
+        boolean delta = protocol == SpyDeltaEncoder.PROTOCOL_VERSION;
+        Long lastSeq = request.get("lastSeq") instanceof Number number ? number.longValue() : null;
+        
+        Set<String> subscribed;
+        Optional<List<SpyUpdateJournal.Entry>> missed;
+        List<SpyFrame> frames;
+        long seq;
+        synchronized (deltaLock) {
+            topicRouter.subscribe(session.getId(), topics);
+            subscribed = topicRouter.topicsOf(session.getId());
+            if (delta) {
+                deltaSessions.add(session.getId());
+            } else {
+                deltaSessions.remove(session.getId());
             }
-        });
+            seq = updateJournal.head();
+            missed = lastSeq != null ? updateJournal.since(lastSeq) : Optional.empty();
+            frames = missed.map(entries -> replayFrames(entries, subscribed, delta))
+                .orElseGet(() -> delta ? snapshotsFor(subscribed) : List.of());
+        }
         
-        log.debug("SPY数据更新已广播给{}个客户端", sessions.size());
+        Map<String, Object> response = Map.of(
+            "type", "subscription_confirmed",
+            "subscriptionType", SpyTopicRouter.ALL,
+            "topics", subscribed,
+            "protocol", delta ? SpyDeltaEncoder.PROTOCOL_VERSION : 1,
+            "seq", seq,
+            "resumed", missed.isPresent(),
+            "message", "已订阅SPY实时更新"
+        );
+        sendControl(session, response);
+        
+        if (lastSeq != null && missed.isEmpty()) {
+            // 缺口超出日志(或为重启前的seq)，客户端丢弃本地状态后以下发的完整状态为准
+            sendResetMessage(session, seq);
+            if (!delta) {
+                sendLatestData(session, false);
+            }
+        }
+        if (delta) {
+            sendSnapshots(session, frames);
+        } else {
+            for (SpyFrame frame : frames) {
+                deliver(session, frame);
+            }
+        }
+        log.info("客户端订阅SPY更新: sessionId={}, topics={}, protocol={}, lastSeq={}, 补发={}",
+            session.getId(), topics, delta ? 2 : 1, lastSeq, frames.size());
     }
     
     /**
-     * 处理订阅请求
+     * 日志中订阅主题相关的错过更新: v1补发原消息，v2发送有变化ticker的当前快照
      */
-    private void handleSubscribe(WebSocketSession session, Map<String, Object> request) throws IOException {
-        String subscriptionType = (String) request.get("type");
-        if ("spy_updates".equals(subscriptionType)) {
-            sessionSubscriptions.put(session.getId(), subscriptionType);
-            
-            Map<String, Object> response = Map.of(
-                "type", "subscription_confirmed",
-                "subscriptionType", subscriptionType,
-                "message", "已订阅SPY实时更新"
-            );
-            
-            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
-            log.info("客户端订阅SPY更新: sessionId={}", session.getId());
-        } else {
-            sendErrorMessage(session, "不支持的订阅类型: " + subscriptionType);
+    private List<SpyFrame> replayFrames(List<SpyUpdateJournal.Entry> entries, Set<String> topics, boolean delta) {
+        List<SpyUpdateJournal.Entry> relevant = entries.stream()
+            .filter(entry -> entry.getResult() != null)
+            .filter(entry -> SpyTopicRouter.topicsOf(entry.getResult()).stream().anyMatch(topics::contains))
+            .toList();
+        if (!delta) {
+            return relevant.stream().map(entry -> SpyFrame.of(entry.getPayload())).toList();
         }
+        return relevant.stream()
+            .map(entry -> SpyTopicRouter.tickerOf(entry.getResult()))
+            .distinct()
+            .map(ticker -> deltaEncoder.snapshot(ticker, this::cachedLatest))
+            .flatMap(Optional::stream)
+            .toList();
     }
     
     /**
-     * 处理取消订阅
+     * 处理取消订阅: 指定topics时只取消这些主题，否则取消全部
      */
-    private void handleUnsubscribe(WebSocketSession session) throws IOException {
-        sessionSubscriptions.remove(session.getId());
+    private void handleUnsubscribe(WebSocketSession session, Map<String, Object> request) throws IOException {
+        if (request.get("topics") instanceof List<?>) {
+            topicRouter.unsubscribe(session.getId(), requestedTopics(request));
+        } else {
+            topicRouter.remove(session.getId());
+        }
+        if (!topicRouter.isSubscribed(session.getId())) {
+            deltaSessions.remove(session.getId());
+        }
         
         Map<String, Object> response = Map.of(
             "type", "unsubscribed",
-            "message", "已取消所有订阅"
+            "topics", topicRouter.topicsOf(session.getId()),
+            "message", topicRouter.isSubscribed(session.getId()) ? "已取消指定订阅" : "已取消所有订阅"
         );
         
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
+        sendControl(session, response);
         log.info("客户端取消订阅: sessionId={}", session.getId());
     }
     
+    private List<String> requestedTopics(Map<String, Object> request) {
+        if (request.get("topics") instanceof List<?> list) {
+            return list.stream().map(String::valueOf).distinct().toList();
+        }
+        return SpyTopicRouter.ALL.equals(request.get("type")) ? List.of(SpyTopicRouter.ALL) : List.of();
+    }
+    
     /**
      * 发送欢迎消息
      */
@@ -169,24 +513,43 @@ public class SpyWebSocketHandler extends TextWebSocketHandler {
             "type", "welcome",
             "message", "欢迎连接SPY资金流向实时数据流",
             "availableActions", new String[]{"subscribe", "unsubscribe", "getLatest"},
-            "subscriptionTypes", new String[]{"spy_updates"}
+            "seq", updateJournal.head(),
+            "subscriptionTypes", new String[]{"spy_updates"},
+            "topicPatterns", new String[]{"spy_updates", "ticker:{ticker}", "geo:{value}", "currency:{value}",
+                "marketCap:{value}", "sector:{value}"},
+            "protocols", new int[]{1, SpyDeltaEncoder.PROTOCOL_VERSION},
+            "encoding", SpyFrame.Encoding.of(session).tag()
         );
         
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(welcome)));
+        sendControl(session, welcome);
     }
     
     /**
      * 发送最新数据
+     *
+     * @param allowDatabase 内存中无数据时是否回退查询(仅客户端显式getLatest时允许)
      */
-    private void sendLatestData(WebSocketSession session) throws IOException {
-        flowResultRepository.findTopByOrderByDataDateDesc().ifPresentOrElse(
+    private void sendLatestData(WebSocketSession session, boolean allowDatabase) throws IOException {
+        if (deltaSessions.contains(session.getId())) {
+            List<SpyFrame> snapshots;
+            synchronized (deltaLock) {
+                snapshots = snapshotsFor(topicRouter.topicsOf(session.getId()));
+            }
+            sendSnapshots(session, snapshots);
+            return;
+        }
+        Optional<SpyFlowResult> latestResult = cachedLatest(SpyFlowHotWindow.DEFAULT_TICKER);
+        if (latestResult.isEmpty() && allowDatabase) {
+            latestResult = flowQueryService.getLatest(SpyFlowHotWindow.DEFAULT_TICKER);
+        }
+        latestResult.ifPresentOrElse(
             latest -> {
                 try {
                     Map<String, Object> response = Map.of(
                         "type", "latest_data",
                         "data", latest
                     );
-                    session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
+                    sendControl(session, response);
                 } catch (Exception e) {
                     log.error("发送最新数据失败", e);
                 }
@@ -201,6 +564,60 @@ public class SpyWebSocketHandler extends TextWebSocketHandler {
         );
     }
     
+    /**
+     * 订阅主题涉及的各ticker快照: 显式ticker主题，以及当前状态匹配任一主题的ticker
+     */
+    private List<SpyFrame> snapshotsFor(Collection<String> topics) {
+        Set<String> tickers = new LinkedHashSet<>();
+        for (String topic : topics) {
+            if (topic.startsWith(SpyTopicRouter.TICKER + ":")) {
+                tickers.add(topic.substring(SpyTopicRouter.TICKER.length() + 1));
+            }
+        }
+        deltaEncoder.latestResults().forEach((ticker, result) -> {
+            if (SpyTopicRouter.topicsOf(result).stream().anyMatch(topics::contains)) {
+                tickers.add(ticker);
+            }
+        });
+        if (tickers.isEmpty() && topics.contains(SpyTopicRouter.ALL)) {
+            tickers.add(SpyFlowHotWindow.DEFAULT_TICKER);
+        }
+        return tickers.stream()
+            .map(ticker -> deltaEncoder.snapshot(ticker, this::cachedLatest))
+            .flatMap(Optional::stream)
+            .toList();
+    }
+    
+    /**
+     * 发送v2快照帧，快照帧按版本在会话间共享
+     */
+    private void sendSnapshots(WebSocketSession session, List<SpyFrame> snapshots) throws IOException {
+        if (snapshots.isEmpty()) {
+            sendErrorMessage(session, "暂无可用数据");
+            return;
+        }
+        for (SpyFrame snapshot : snapshots) {
+            deliver(session, snapshot);
+        }
+    }
+    
+    /**
+     * 内存中的最新结果: 优先热窗口，其次最近一次广播，不访问数据库
+     */
+    private Optional<SpyFlowResult> cachedLatest(String ticker) {
+        Optional<SpyFlowResult> latest = hotWindow.isLoaded() ? hotWindow.latest(ticker) : Optional.empty();
+        return latest.isPresent() ? latest : deltaEncoder.latest(ticker);
+    }
+    
+    private void sendResetMessage(WebSocketSession session, long seq) throws IOException {
+        Map<String, Object> reset = Map.of(
+            "type", SpyUpdateJournal.RESET_EVENT,
+            "seq", seq,
+            "message", "错过的更新已超出补发范围，请以随后的完整数据为准"
+        );
+        sendControl(session, reset);
+    }
+    
     /**
      * 发送错误消息
      */
@@ -211,14 +628,7 @@ public class SpyWebSocketHandler extends TextWebSocketHandler {
             "timestamp", java.time.Instant.now().toString()
         );
         
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(errorMsg)));
-    }
-    
-    /**
-     * 检查会话是否订阅了更新
-     */
-    private boolean isSubscribedToUpdates(WebSocketSession session) {
-        return "spy_updates".equals(sessionSubscriptions.get(session.getId()));
+        sendControl(session, errorMsg);
     }
     
     /**
@@ -227,4 +637,9 @@ public class SpyWebSocketHandler extends TextWebSocketHandler {
     public int getActiveConnectionCount() {
         return sessions.size();
     }
-}
\ No newline at end of file
+    
+    @FunctionalInterface
+    private interface RequestReader {
+        Map<String, Object> read() throws IOException;
+    }
+}
@@ -0,0 +1,74 @@
+-- DuckDB热表结构，每次启动执行，只创建缺失的对象
+-- 主键取自独立序列，重启不会重置，已归档到Parquet的id不会被复用
+
+CREATE SEQUENCE IF NOT EXISTS spy_raw_data_id_seq;
+
+CREATE TABLE IF NOT EXISTS spy_raw_data (
+    id BIGINT PRIMARY KEY DEFAULT nextval('spy_raw_data_id_seq'),
+    data_date DATE NOT NULL,
+    timestamp TIMESTAMP NOT NULL,
+    ticker VARCHAR(10),
+    aum NUMERIC(15,2),
+    shares_outstanding BIGINT,
+    nav NUMERIC(10,4),
+    market_price NUMERIC(10,4),
+    daily_net_inflow NUMERIC(15,2),
+    total_inflow NUMERIC(15,2),
+    total_outflow NUMERIC(15,2),
+    creation_units INTEGER,
+    redemption_units INTEGER,
+    shares_change BIGINT,
+    calculated_inflow NUMERIC(15,2),
+    flow_intensity NUMERIC(8,4),
+    data_source VARCHAR(50),
+    confidence_score INTEGER,
+    created_at TIMESTAMP
+);
+
+CREATE SEQUENCE IF NOT EXISTS spy_flow_result_id_seq;
+
+CREATE TABLE IF NOT EXISTS spy_flow_result (
+    id BIGINT PRIMARY KEY DEFAULT nextval('spy_flow_result_id_seq'),
+    data_date DATE NOT NULL,
+    timestamp TIMESTAMP NOT NULL,
+    final_net_inflow NUMERIC(15,2),
+    flow_intensity NUMERIC(8,4),
+    volume_weighted_price NUMERIC(10,4),
+    etf_com_contribution NUMERIC(15,2),
+    yahoo_contribution NUMERIC(15,2),
+    primary_source VARCHAR(50),
+    overall_confidence NUMERIC(5,2),
+    data_quality_score NUMERIC(5,2),
+    validation_passed BOOLEAN,
+    geographic_dimension VARCHAR(50),
+    currency_dimension VARCHAR(10),
+    market_cap_dimension VARCHAR(20),
+    sector_dimension VARCHAR(50),
+    created_at TIMESTAMP,
+    ticker VARCHAR(10) DEFAULT 'SPY'
+);
+
+-- 早期库无ticker列
+ALTER TABLE spy_flow_result ADD COLUMN IF NOT EXISTS ticker VARCHAR(10) DEFAULT 'SPY';
+
+CREATE SEQUENCE IF NOT EXISTS spy_flow_rollup_id_seq;
+
+CREATE TABLE IF NOT EXISTS spy_flow_rollup (
+    id BIGINT PRIMARY KEY DEFAULT nextval('spy_flow_rollup_id_seq'),
+    ticker VARCHAR(10) NOT NULL,
+    grain VARCHAR(10) NOT NULL,
+    bucket_start DATE NOT NULL,
+    bucket_end DATE NOT NULL,
+    total_net_inflow NUMERIC(18,2),
+    avg_net_inflow NUMERIC(15,2),
+    min_net_inflow NUMERIC(15,2),
+    max_net_inflow NUMERIC(15,2),
+    avg_flow_intensity NUMERIC(8,4),
+    avg_confidence NUMERIC(5,2),
+    avg_data_quality NUMERIC(5,2),
+    validation_failures INTEGER,
+    day_count INTEGER,
+    first_data_date DATE,
+    last_data_date DATE,
+    updated_at TIMESTAMP
+);
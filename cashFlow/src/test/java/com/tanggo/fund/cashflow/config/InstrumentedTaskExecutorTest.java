@@ -0,0 +1,104 @@
+package com.tanggo.fund.cashflow.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 线程池指标与在线调整测试
+ */
+class InstrumentedTaskExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InstrumentedTaskExecutor executor = new InstrumentedTaskExecutor("testExecutor", meterRegistry);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void testCallerRunsCountedAndTimingsRecorded() throws Exception {
+        start(1, 1, 1);
+        executor.execute(this::block);
+        executor.execute(this::block);
+
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        executor.execute(() -> ranOn.set(Thread.currentThread()));
+
+        assertSame(Thread.currentThread(), ranOn.get(), "队列已满时应由调用线程执行");
+        assertEquals(1.0, meterRegistry.get("executor.rejected")
+            .tag("name", "testExecutor").tag("policy", "CallerRunsPolicy").counter().count());
+
+        release.countDown();
+        awaitCompleted(2);
+        assertEquals(3, meterRegistry.get("executor.task.run").tag("name", "testExecutor").timer().count());
+        assertEquals(3, meterRegistry.get("executor.task.wait").timer().count());
+        assertTrue(meterRegistry.get("executor.task.wait").timer().max(TimeUnit.NANOSECONDS) > 0, "排队任务应记录等待时间");
+    }
+
+    @Test
+    void testResizeTakesEffectWithoutRestart() throws Exception {
+        start(1, 1, 1);
+        executor.execute(this::block);
+        executor.execute(this::block);
+
+        executor.resize(3, 4, 10);
+        for (int i = 0; i < 5; i++) {
+            executor.execute(this::block);
+        }
+        ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+        assertEquals(3, pool.getCorePoolSize());
+        assertEquals(4, pool.getMaximumPoolSize());
+        assertEquals(0.0, meterRegistry.get("executor.rejected").counter().count(), "扩容后不应再由调用线程执行");
+        assertEquals(10 - pool.getQueue().size(), pool.getQueue().remainingCapacity(), "剩余容量应按新上限计算");
+
+        executor.resize(1, 2, 0);
+        assertEquals(1, pool.getCorePoolSize());
+        assertEquals(2, pool.getMaximumPoolSize());
+        assertEquals(0, executor.getQueueCapacity());
+        assertFalse(pool.getQueue().offer(() -> { }), "缩容后队列超过上限应拒绝入队");
+    }
+
+    @Test
+    void testInvalidResizeRejected() {
+        start(2, 4, 10);
+
+        assertThrows(IllegalArgumentException.class, () -> executor.resize(5, null, null), "core不能大于max");
+        assertThrows(IllegalArgumentException.class, () -> executor.resize(null, null, -1));
+        assertEquals(2, executor.getCorePoolSize(), "无效调整不应改变配置");
+        assertEquals(4, executor.getMaxPoolSize());
+    }
+
+    private void start(int core, int max, int queueCapacity) {
+        executor.setCorePoolSize(core);
+        executor.setMaxPoolSize(max);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+    }
+
+    private void block() {
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitCompleted(long tasks) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getThreadPoolExecutor().getCompletedTaskCount() < tasks && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
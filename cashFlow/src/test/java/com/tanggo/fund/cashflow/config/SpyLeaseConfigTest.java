@@ -0,0 +1,26 @@
+package com.tanggo.fund.cashflow.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 租约存储配置测试: 数据库表租约只接受各实例共享的数据库
+ */
+class SpyLeaseConfigTest {
+
+    @Test
+    void testEmbeddedDatabaseRejected() {
+        assertThrows(IllegalStateException.class,
+            () -> SpyLeaseConfig.requireSharedDatabase("jdbc:duckdb:data/cashflow.db"), "本地DuckDB文件其他实例不可见");
+        assertThrows(IllegalStateException.class, () -> SpyLeaseConfig.requireSharedDatabase("jdbc:duckdb:"));
+        assertThrows(IllegalStateException.class, () -> SpyLeaseConfig.requireSharedDatabase("jdbc:h2:mem:testdb"));
+    }
+
+    @Test
+    void testSharedDatabaseAccepted() {
+        assertDoesNotThrow(() -> SpyLeaseConfig.requireSharedDatabase("jdbc:postgresql://db:5432/cashflow"));
+        assertDoesNotThrow(() -> SpyLeaseConfig.requireSharedDatabase("jdbc:duckdb:md:cashflow"));
+        assertDoesNotThrow(() -> SpyLeaseConfig.requireSharedDatabase("jdbc:h2:tcp://db/cashflow"));
+    }
+}
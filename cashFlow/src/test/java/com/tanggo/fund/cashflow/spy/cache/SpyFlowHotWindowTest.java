@@ -0,0 +1,86 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 内存热窗口测试
+ */
+class SpyFlowHotWindowTest {
+
+    private final LocalDate today = LocalDate.now();
+    private SpyFlowHotWindow hotWindow;
+
+    @BeforeEach
+    void setUp() {
+        SpyFlowResultRepository repository = mock(SpyFlowResultRepository.class);
+        when(repository.findRecentResults(any())).thenReturn(List.of(
+            result(today.minusDays(1), "100.50", Instant.parse("2024-01-01T00:00:00Z")),
+            result(today.minusDays(3), "-20.25", Instant.parse("2024-01-01T00:00:00Z"))));
+
+        hotWindow = new SpyFlowHotWindow(repository, 10);
+        hotWindow.loadFromDatabase();
+    }
+
+    @Test
+    void testLatestAndRecentOrdering() {
+        SpyFlowResult newest = result(today, "5.00", Instant.now());
+        hotWindow.apply(newest);
+        hotWindow.apply(result(today.minusDays(2), "7.75", Instant.now()));
+
+        assertSame(newest, hotWindow.latest("SPY").orElseThrow(), "最新结果应直接返回保存的实体");
+
+        List<SpyFlowResult> recent = hotWindow.recent("SPY", 10).orElseThrow();
+        assertEquals(4, recent.size());
+        assertEquals(today, recent.get(0).getDataDate(), "应按日期倒序返回");
+        assertEquals(today.minusDays(3), recent.get(3).getDataDate());
+        assertEquals(new BigDecimal("-20.25"), recent.get(3).getFinalNetInflow(), "数值应按列还原");
+        assertEquals("100.50", recent.get(1).getFinalNetInflow().toPlainString(), "应保留列的小数位");
+        assertTrue(recent.get(3).getValidationPassed());
+
+        assertEquals(2, hotWindow.recent("SPY", 1).orElseThrow().size(), "应只返回N天内的数据");
+    }
+
+    @Test
+    void testSameDateKeepsNewerTimestamp() {
+        LocalDate date = today.minusDays(1);
+        hotWindow.apply(result(date, "1.00", Instant.parse("2023-12-31T00:00:00Z")));
+        assertEquals(0, new BigDecimal("100.50").compareTo(hotWindow.latest("SPY").orElseThrow().getFinalNetInflow()),
+            "较旧的结果不应覆盖已有记录");
+
+        hotWindow.apply(result(date, "2.00", Instant.parse("2024-02-01T00:00:00Z")));
+        assertEquals(2, hotWindow.size("SPY"), "同一日期应替换而不是追加");
+        assertEquals(new BigDecimal("2.00"), hotWindow.latest("SPY").orElseThrow().getFinalNetInflow());
+    }
+
+    @Test
+    void testOutsideWindow() {
+        hotWindow.apply(result(today.minusDays(30), "9.00", Instant.now()));
+
+        assertEquals(2, hotWindow.size("SPY"), "窗口外的结果应忽略");
+        assertTrue(hotWindow.recent("SPY", 11).isEmpty(), "超出窗口的查询应回退数据库");
+        assertTrue(hotWindow.latest("QQQ").isEmpty());
+    }
+
+    private SpyFlowResult result(LocalDate date, String netInflow, Instant timestamp) {
+        return SpyFlowResult.builder()
+            .dataDate(date)
+            .timestamp(timestamp)
+            .finalNetInflow(new BigDecimal(netInflow))
+            .overallConfidence(new BigDecimal("85.00"))
+            .validationPassed(true)
+            .build();
+    }
+}
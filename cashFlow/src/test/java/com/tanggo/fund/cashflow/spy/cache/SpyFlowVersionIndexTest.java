@@ -0,0 +1,58 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.event.SpyFlowResultSavedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 结果版本索引测试
+ */
+class SpyFlowVersionIndexTest {
+
+    private final LocalDate date = LocalDate.of(2024, 3, 15);
+    private final SpyFlowVersionIndex index =
+        new SpyFlowVersionIndex(100, Duration.ofSeconds(30), Duration.ofSeconds(300));
+
+    @Test
+    void testSavedResultAdvancesVersion() {
+        index.record(result(date, 1L, "2024-03-15T21:00:00Z"), true);
+        String before = index.latest("SPY").orElseThrow().getETag();
+
+        index.onResultSaved(new SpyFlowResultSavedEvent(result(date, 2L, "2024-03-15T21:05:00Z")));
+
+        SpyFlowVersionIndex.Version after = index.latest("SPY").orElseThrow();
+        assertNotEquals(before, after.getETag(), "新结果应产生新的ETag");
+        assertTrue(after.getETag().startsWith("\"") && after.getETag().endsWith("\""), "应为强ETag");
+        assertEquals(Instant.parse("2024-03-15T21:05:00Z").toEpochMilli(), after.getLastModified());
+        assertEquals(after.getETag(), index.forDate("SPY", date).orElseThrow().getETag(), "日期索引应同步更新");
+    }
+
+    @Test
+    void testStaleReadDoesNotRegress() {
+        index.onResultSaved(new SpyFlowResultSavedEvent(result(date, 2L, "2024-03-15T21:05:00Z")));
+        String current = index.latest("SPY").orElseThrow().getETag();
+
+        // 并发查询读到的旧结果不应覆盖事件写入的新版本
+        index.record(result(date, 1L, "2024-03-15T21:00:00Z"), true);
+        index.record(result(date.minusDays(1), 0L, "2024-03-14T21:00:00Z"), true);
+
+        assertEquals(current, index.latest("SPY").orElseThrow().getETag());
+        assertEquals(current, index.forDate("SPY", date).orElseThrow().getETag());
+        assertTrue(index.forDate("SPY", date.minusDays(1)).isPresent(), "历史日期仍应补录");
+        assertTrue(index.latest("QQQ").isEmpty());
+    }
+
+    private SpyFlowResult result(LocalDate dataDate, Long id, String timestamp) {
+        return SpyFlowResult.builder()
+            .id(id)
+            .dataDate(dataDate)
+            .timestamp(Instant.parse(timestamp))
+            .build();
+    }
+}
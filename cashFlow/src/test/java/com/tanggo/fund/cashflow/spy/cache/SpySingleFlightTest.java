@@ -0,0 +1,98 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 并发相同查询合并测试
+ */
+class SpySingleFlightTest {
+
+    private static final int CALLERS = 16;
+
+    private final SpySingleFlight singleFlight = new SpySingleFlight(new SimpleMeterRegistry());
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testConcurrentCallersShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Object shared = new Object();
+
+        List<Future<Object>> futures = submitCallers(() -> singleFlight.execute("stats", "2024-01-01", () -> {
+            executions.incrementAndGet();
+            await(release);
+            return shared;
+        }));
+        waitUntilCoalesced("stats", CALLERS - 1);
+        release.countDown();
+
+        for (Future<Object> future : futures) {
+            assertSame(shared, future.get(5, TimeUnit.SECONDS), "所有调用者应共享同一结果");
+        }
+        assertEquals(1, executions.get(), "并发相同查询只应执行一次");
+        assertEquals(CALLERS - 1, singleFlight.getCoalescedCount("stats"));
+
+        singleFlight.execute("stats", "2024-01-01", () -> executions.incrementAndGet());
+        assertEquals(2, executions.get(), "执行结束后的调用应重新查询");
+    }
+
+    @Test
+    void testFailureIsSharedAndNotCached() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<Object>> futures = submitCallers(() -> singleFlight.execute("latest", "latest", () -> {
+            await(release);
+            throw new IllegalStateException("db down");
+        }));
+        waitUntilCoalesced("latest", CALLERS - 1);
+        release.countDown();
+
+        for (Future<Object> future : futures) {
+            Exception e = assertThrows(Exception.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause(), "等待者应收到原始异常");
+        }
+        assertEquals("ok", singleFlight.execute("latest", "latest", () -> "ok"), "失败结果不应保留");
+    }
+
+    private List<Future<Object>> submitCallers(Callable<Object> call) {
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(executor.submit(call));
+        }
+        return futures;
+    }
+
+    private void waitUntilCoalesced(String query, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.getCoalescedCount(query) < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.tanggo.fund.cashflow.spy.cache;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.event.SpyFlowResultSavedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 两级缓存测试(二级缓存使用进程内替身)
+ */
+class SpyTwoLevelCacheTest {
+    
+    private InMemorySpyL2CacheStore sharedL2;
+    private SpyTwoLevelCacheManager instanceA;
+    private SpyTwoLevelCacheManager instanceB;
+    
+    @BeforeEach
+    void setUp() {
+        sharedL2 = new InMemorySpyL2CacheStore(Duration.ofMinutes(10));
+        instanceA = new SpyTwoLevelCacheManager(sharedL2, new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+        instanceB = new SpyTwoLevelCacheManager(sharedL2, new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+    }
+    
+    @Test
+    void testL2SharedAcrossInstances() {
+        SpyFlowResult result = result(LocalDate.of(2024, 3, 1));
+        instanceA.getCache(SpyCacheNames.BY_DATE).put("2024-03-01", result);
+        
+        assertSame(result, instanceB.getCache(SpyCacheNames.BY_DATE).get("2024-03-01").get(),
+            "其他实例应从二级缓存命中");
+    }
+    
+    @Test
+    void testNullValueCached() {
+        instanceA.getCache(SpyCacheNames.LATEST).put("SPY", null);
+        
+        assertNotNull(instanceA.getCache(SpyCacheNames.LATEST).get("SPY"), "空结果也应缓存");
+    }
+    
+    @Test
+    void testInvalidationIsPrecise() {
+        SpyTwoLevelCache range = instanceA.getCache(SpyCacheNames.RANGE);
+        range.put("SPY:2024-01-01_2024-01-31", "january");
+        range.put("SPY:2024-03-01_2024-03-31", "march");
+        range.put("QQQ:2024-03-01_2024-03-31", "qqq-march");
+        SpyTwoLevelCache byDate = instanceA.getCache(SpyCacheNames.BY_DATE);
+        byDate.put("SPY:2024-03-15", "mid-march");
+        byDate.put("SPY:2024-03-16", "next-day");
+        byDate.put("QQQ:2024-03-15", "qqq-mid-march");
+        SpyTwoLevelCache latest = instanceA.getCache(SpyCacheNames.LATEST);
+        latest.put("SPY", "spy-latest");
+        latest.put("QQQ", "qqq-latest");
+        
+        new SpyFlowCacheInvalidator(instanceA).onResultSaved(
+            new SpyFlowResultSavedEvent(result(LocalDate.of(2024, 3, 15))));
+        
+        assertNull(range.get("SPY:2024-03-01_2024-03-31"), "覆盖该日期的范围应失效");
+        assertNotNull(range.get("SPY:2024-01-01_2024-01-31"), "不相关的范围应保留");
+        assertNotNull(range.get("QQQ:2024-03-01_2024-03-31"), "其他ticker的范围应保留");
+        assertNull(byDate.get("SPY:2024-03-15"));
+        assertNotNull(byDate.get("SPY:2024-03-16"));
+        assertNotNull(byDate.get("QQQ:2024-03-15"), "其他ticker的同日结果应保留");
+        assertNull(latest.get("SPY"));
+        assertNotNull(latest.get("QQQ"));
+        assertNull(sharedL2.get(SpyCacheNames.RANGE, "SPY:2024-03-01_2024-03-31"), "二级缓存也应失效");
+    }
+    
+    @Test
+    void testLoadRacingSaveIsNotCached() {
+        SpyTwoLevelCache byDate = instanceA.getCache(SpyCacheNames.BY_DATE);
+        SpyFlowCacheInvalidator invalidator = new SpyFlowCacheInvalidator(instanceA);
+        
+        // 读取在保存前开始，保存后的淘汰发生在读取返回之前
+        Object loaded = byDate.get("SPY:2024-03-15", () -> {
+            invalidator.onResultSaved(new SpyFlowResultSavedEvent(result(LocalDate.of(2024, 3, 15))));
+            return "before-save";
+        });
+        
+        assertEquals("before-save", loaded, "本次调用仍返回加载结果");
+        assertNull(byDate.get("SPY:2024-03-15"), "淘汰后不应回填旧值");
+        assertNull(sharedL2.get(SpyCacheNames.BY_DATE, "SPY:2024-03-15"), "二级缓存也不应回填旧值");
+        
+        assertEquals("after-save", byDate.get("SPY:2024-03-15", () -> "after-save"));
+        assertEquals("after-save", instanceB.getCache(SpyCacheNames.BY_DATE).get("SPY:2024-03-15").get(),
+            "没有并发淘汰的加载正常回填");
+    }
+    
+    @Test
+    void testRemoteEvictionDuringLoadIsNotCached() {
+        SpyTwoLevelCache byDate = instanceA.getCache(SpyCacheNames.BY_DATE);
+        
+        byDate.get("2024-03-15", () -> {
+            byDate.evictLocal("2024-03-15"); // 其他实例保存后的淘汰通知
+            return "before-save";
+        });
+        
+        assertNull(byDate.get("2024-03-15"));
+    }
+    
+    @Test
+    void testRangeCacheBounded() {
+        SpyTwoLevelCacheManager manager = new SpyTwoLevelCacheManager(sharedL2, new SimpleMeterRegistry(),
+            100, Duration.ofMinutes(1), Map.of(SpyCacheNames.RANGE, 5L));
+        
+        assertEquals(5L, manager.getCache(SpyCacheNames.RANGE).getNativeCache().policy().eviction()
+            .orElseThrow().getMaximum(), "范围缓存应使用单独容量");
+        assertEquals(100L, manager.getCache(SpyCacheNames.BY_DATE).getNativeCache().policy().eviction()
+            .orElseThrow().getMaximum());
+    }
+    
+    @Test
+    void testRangeContains() {
+        LocalDate date = LocalDate.of(2024, 3, 15);
+        
+        assertTrue(SpyFlowCacheInvalidator.rangeContains("SPY:2024-03-15_2024-03-15", "SPY", date));
+        assertFalse(SpyFlowCacheInvalidator.rangeContains("SPY:2024-03-16_2024-04-01", "SPY", date));
+        assertFalse(SpyFlowCacheInvalidator.rangeContains("QQQ:2024-03-15_2024-03-15", "SPY", date));
+        assertTrue(SpyFlowCacheInvalidator.rangeContains("garbage", "SPY", date), "无法识别的键应保守淘汰");
+    }
+    
+    private SpyFlowResult result(LocalDate dataDate) {
+        return SpyFlowResult.builder()
+            .dataDate(dataDate)
+            .finalNetInflow(new BigDecimal("1000000"))
+            .build();
+    }
+}
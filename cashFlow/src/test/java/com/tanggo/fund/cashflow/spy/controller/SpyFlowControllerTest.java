@@ -0,0 +1,328 @@
+package com.tanggo.fund.cashflow.spy.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanggo.fund.cashflow.spy.cache.SpyFlowHotWindow;
+import com.tanggo.fund.cashflow.spy.cache.SpyFlowVersionIndex;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.event.AbstractSpyUpdateBackplane;
+import com.tanggo.fund.cashflow.spy.event.SpyFlowResultSavedEvent;
+import com.tanggo.fund.cashflow.spy.event.SpyRemoteResultRelay;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
+import com.tanggo.fund.cashflow.spy.repository.SpyRawDataRepository;
+import com.tanggo.fund.cashflow.spy.service.SpyBatchQueryService;
+import com.tanggo.fund.cashflow.spy.service.SpyFlowQueryService;
+import com.tanggo.fund.cashflow.spy.service.SpyFlowRollupService;
+import com.tanggo.fund.cashflow.spy.service.SpyFreshnessHealthIndicator;
+import com.tanggo.fund.cashflow.spy.service.SpyTickerPartitions;
+import com.tanggo.fund.cashflow.spy.service.SpyTickerState;
+import com.tanggo.fund.cashflow.spy.service.SpyTimeSeriesService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * SPY流向控制器测试
+ */
+class SpyFlowControllerTest {
+
+    private final LocalDate today = LocalDate.now();
+
+    private SpyFlowResultRepository flowResultRepository;
+    private SpyFlowQueryService flowQueryService;
+    private SpyFlowHotWindow hotWindow;
+    private SpyFlowVersionIndex versionIndex;
+    private SpyFreshnessHealthIndicator freshnessHealth;
+    private SpyFlowController controller;
+
+    @BeforeEach
+    void setUp() {
+        flowResultRepository = mock(SpyFlowResultRepository.class);
+        flowQueryService = mock(SpyFlowQueryService.class);
+        hotWindow = new SpyFlowHotWindow(flowResultRepository, 30);
+        versionIndex = new SpyFlowVersionIndex(100, Duration.ofSeconds(30), Duration.ofMinutes(5));
+        freshnessHealth = mock(SpyFreshnessHealthIndicator.class);
+        controller = new SpyFlowController(flowResultRepository, mock(SpyRawDataRepository.class), flowQueryService,
+            hotWindow, versionIndex,
+            mock(SpyFlowRollupService.class), mock(SpyTimeSeriesService.class), mock(SpyBatchQueryService.class),
+            new ObjectMapper(), mock(SpyResponseEncoder.class), freshnessHealth);
+    }
+
+    @Test
+    void testLatestFallsBackWhenWindowHasNoRows() {
+        // 窗口已加载但30天内没有结果，数据库中有更早的结果
+        when(flowResultRepository.findRecentResults(any())).thenReturn(List.of());
+        hotWindow.loadFromDatabase();
+        SpyFlowResult older = result(today.minusDays(60), "100.50");
+        when(flowQueryService.getLatest("SPY")).thenReturn(Optional.of(older));
+
+        ResponseEntity<SpyFlowResult> response = controller.getLatestFlow("SPY", webRequest());
+
+        assertEquals(HttpStatus.OK, response.getStatusCode(), "窗口未命中时应回退数据库");
+        assertSame(older, response.getBody());
+    }
+
+    @Test
+    void testLatestFallbackKeepsRequestedTicker() {
+        // 窗口中只有SPY，请求QQQ时应按QQQ查询而不是返回SPY或任意ticker的结果
+        when(flowResultRepository.findRecentResults(any())).thenReturn(List.of(result(today, "5.00")));
+        hotWindow.loadFromDatabase();
+        SpyFlowResult qqq = result(today.minusDays(60), "8.00");
+        qqq.setTicker("QQQ");
+        when(flowQueryService.getLatest("QQQ")).thenReturn(Optional.of(qqq));
+
+        ResponseEntity<SpyFlowResult> response = controller.getLatestFlow("QQQ", webRequest());
+
+        assertSame(qqq, response.getBody());
+        verify(flowQueryService, never()).getLatest("SPY");
+    }
+
+    @Test
+    void testLatestServedFromWindow() {
+        when(flowResultRepository.findRecentResults(any())).thenReturn(List.of(result(today, "5.00")));
+        hotWindow.loadFromDatabase();
+
+        ResponseEntity<SpyFlowResult> response = controller.getLatestFlow("SPY", webRequest());
+
+        assertEquals(today, response.getBody().getDataDate());
+        assertEquals("5.00", response.getBody().getFinalNetInflow().toPlainString());
+    }
+
+    @Test
+    void testHealthWithoutFreshnessSamplesUsesDataDate() {
+        // 重启后尚无推送样本，但已有当天数据
+        when(flowResultRepository.findRecentResults(any())).thenReturn(List.of(result(today, "5.00")));
+        hotWindow.loadFromDatabase();
+        when(freshnessHealth.health()).thenReturn(Health.unknown().withDetail("message", "尚无推送样本").build());
+
+        Map<String, Object> health = controller.health().getBody();
+
+        assertEquals("UNKNOWN", health.get("freshness"));
+        assertEquals(true, health.get("hasRecentData"));
+        assertEquals("HEALTHY", health.get("status"), "无推送样本时不应因新鲜度未知而告警");
+    }
+
+    @Test
+    void testHealthWarnsWhenFreshnessDegraded() {
+        when(flowResultRepository.findRecentResults(any())).thenReturn(List.of(result(today, "5.00")));
+        hotWindow.loadFromDatabase();
+        when(freshnessHealth.health()).thenReturn(Health.status(SpyFreshnessHealthIndicator.DEGRADED).build());
+
+        Map<String, Object> health = controller.health().getBody();
+
+        assertEquals(true, health.get("hasRecentData"));
+        assertEquals("WARNING", health.get("status"));
+    }
+
+    @Test
+    void testNotModifiedUsesServedVersion() throws Exception {
+        // 本节点索引停留在旧版本，客户端持有的是实际返回数据的版本
+        SpyFlowResult older = result(today.minusDays(1), "1.00");
+        SpyFlowResult current = result(today, "5.00");
+        current.setId(2L);
+        versionIndex.record(older, true);
+        when(flowResultRepository.findRecentResults(any())).thenReturn(List.of(older, current));
+        hotWindow.loadFromDatabase();
+        String currentETag = SpyFlowVersionIndex.Version.of(current).getETag();
+
+        MvcResult result = mockMvc().perform(get("/api/spy/latest").header("If-None-Match", currentETag)).andReturn();
+
+        assertEquals(304, result.getResponse().getStatus(), "客户端版本与返回数据一致应返回304");
+        assertEquals(List.of(currentETag), result.getResponse().getHeaders("ETag"));
+    }
+
+    @Test
+    void testIndexedDateVersionAnsweredWithoutQuery() throws Exception {
+        SpyFlowResult saved = result(today.minusDays(1), "1.00");
+        versionIndex.record(saved, false);
+        String eTag = SpyFlowVersionIndex.Version.of(saved).getETag();
+
+        MvcResult result = mockMvc().perform(get("/api/spy/date/" + today.minusDays(1))
+            .header("If-None-Match", "\"other\", W/" + eTag)).andReturn();
+
+        assertEquals(304, result.getResponse().getStatus());
+        assertEquals(List.of(eTag), result.getResponse().getHeaders("ETag"));
+        assertNotNull(result.getResponse().getHeader("Cache-Control"));
+        verify(flowQueryService, never()).getByDate(any(), any());
+    }
+
+    @Test
+    void testUnknownDateVersionFallsBackToQuery() throws Exception {
+        SpyFlowResult indexed = result(today.minusDays(1), "1.00");
+        SpyFlowResult newer = result(today.minusDays(1), "2.00");
+        newer.setId(2L);
+        newer.setTimestamp(indexed.getTimestamp().plusSeconds(60));
+        versionIndex.record(indexed, false);
+        when(flowQueryService.getByDate("SPY", today.minusDays(1))).thenReturn(Optional.of(newer));
+
+        // 客户端持有本节点索引未知的版本，应查询后按实际结果返回
+        MvcResult result = mockMvc().perform(get("/api/spy/date/" + today.minusDays(1))
+            .header("If-None-Match", SpyFlowVersionIndex.Version.of(newer).getETag())).andReturn();
+
+        assertEquals(304, result.getResponse().getStatus());
+        verify(flowQueryService).getByDate("SPY", today.minusDays(1));
+    }
+
+    @Test
+    void testIndexedLatestAnsweredWithoutQueryBeforeWindowLoads() throws Exception {
+        SpyFlowResult saved = result(today, "5.00");
+        versionIndex.onResultSaved(new SpyFlowResultSavedEvent(saved));
+
+        MvcResult result = mockMvc().perform(get("/api/spy/latest")
+            .header("If-None-Match", SpyFlowVersionIndex.Version.of(saved).getETag())).andReturn();
+
+        assertEquals(304, result.getResponse().getStatus());
+        verify(flowQueryService, never()).getLatest(any());
+    }
+
+    @Test
+    void testStaleClientVersionGetsBodyWithSingleETag() throws Exception {
+        SpyFlowResult older = result(today.minusDays(1), "1.00");
+        SpyFlowResult current = result(today, "5.00");
+        current.setId(2L);
+        versionIndex.record(older, true);
+        when(flowResultRepository.findRecentResults(any())).thenReturn(List.of(older, current));
+        hotWindow.loadFromDatabase();
+        String olderETag = SpyFlowVersionIndex.Version.of(older).getETag();
+
+        MvcResult result = mockMvc().perform(get("/api/spy/latest").header("If-None-Match", olderETag)).andReturn();
+
+        assertEquals(200, result.getResponse().getStatus());
+        assertEquals(List.of(SpyFlowVersionIndex.Version.of(current).getETag()), result.getResponse().getHeaders("ETag"),
+            "响应应只带一个ETag且对应返回的数据");
+        assertEquals(1, result.getResponse().getHeaders("Last-Modified").size());
+    }
+
+    @Test
+    void testNewerClientVersionIsNotAnsweredWithNotModified() throws Exception {
+        // 客户端从其他实例拿到了更新的版本，本节点数据较旧时不能回304
+        SpyFlowResult local = result(today.minusDays(1), "1.00");
+        SpyFlowResult remote = result(today, "5.00");
+        remote.setId(2L);
+        versionIndex.record(remote, true);
+        when(flowResultRepository.findRecentResults(any())).thenReturn(List.of(local));
+        hotWindow.loadFromDatabase();
+
+        MvcResult result = mockMvc().perform(get("/api/spy/latest")
+            .header("If-None-Match", SpyFlowVersionIndex.Version.of(remote).getETag())).andReturn();
+
+        assertEquals(200, result.getResponse().getStatus());
+        assertEquals(List.of(SpyFlowVersionIndex.Version.of(local).getETag()), result.getResponse().getHeaders("ETag"));
+    }
+
+    @Test
+    void testRemoteResultServedByReceivingNode() throws Exception {
+        // 两个实例各有自己的数据库、热窗口与版本索引
+        LinkedBackplane publisherBackplane = new LinkedBackplane();
+        LinkedBackplane receiverBackplane = new LinkedBackplane();
+        publisherBackplane.peer = receiverBackplane;
+        when(flowResultRepository.findRecentResults(any())).thenReturn(List.of());
+        when(flowQueryService.getLatest("SPY")).thenReturn(Optional.empty());
+        hotWindow.loadFromDatabase();
+        // 写入与分区回调同步执行，远程结果以本地主键31写入
+        when(flowResultRepository.findVersion(any(), any(), any())).thenReturn(List.of());
+        when(flowResultRepository.save(any())).thenAnswer(invocation -> {
+            SpyFlowResult stored = invocation.getArgument(0);
+            stored.setId(31L);
+            return stored;
+        });
+        SpyPersistenceWriter writer = mock(SpyPersistenceWriter.class);
+        when(writer.submit(any())).thenAnswer(invocation ->
+            CompletableFuture.completedFuture(((Supplier<?>) invocation.getArgument(0)).get()));
+        SpyTickerPartitions partitions = mock(SpyTickerPartitions.class);
+        doAnswer(invocation -> {
+            CompletableFuture<?> future = invocation.getArgument(1);
+            BiConsumer<SpyTickerState, Throwable> task = invocation.getArgument(2);
+            future.whenComplete((value, error) -> task.accept(null, error));
+            return null;
+        }).when(partitions).executeWhenComplete(any(), any(), any());
+        new SpyRemoteResultRelay(receiverBackplane, event -> {
+            hotWindow.onResultSaved((SpyFlowResultSavedEvent) event);
+            versionIndex.onResultSaved((SpyFlowResultSavedEvent) event);
+        }, flowResultRepository, writer, partitions);
+        assertEquals(404, mockMvc().perform(get("/api/spy/latest")).andReturn().getResponse().getStatus());
+
+        SpyFlowResult published = result(today, "7.25");
+        published.setId(9L);
+        publisherBackplane.publish(published);
+
+        String storedETag = SpyFlowVersionIndex.Version.of(published.toBuilder().id(31L).build()).getETag();
+        MvcResult response = mockMvc().perform(get("/api/spy/latest")).andReturn();
+        assertEquals(200, response.getResponse().getStatus(), "接收实例的/latest应反映其他实例保存的结果");
+        assertTrue(response.getResponse().getContentAsString().contains("7.25"));
+        assertEquals(List.of(storedETag), response.getResponse().getHeaders("ETag"), "接收实例返回本地写入的行");
+        assertEquals(storedETag,
+            versionIndex.latest(SpyFlowHotWindow.DEFAULT_TICKER).orElseThrow().getETag(), "版本索引应随远程结果更新");
+        assertEquals(1, publisherBackplane.publishedCount, "远程结果不应再发布到背板");
+        assertEquals(0, receiverBackplane.publishedCount);
+    }
+
+    private MockMvc mockMvc() {
+        return MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    private static ServletWebRequest webRequest() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/api/spy/latest"), new MockHttpServletResponse());
+    }
+
+    private static SpyFlowResult result(LocalDate dataDate, String netInflow) {
+        return SpyFlowResult.builder()
+            .id(1L)
+            .dataDate(dataDate)
+            .timestamp(Instant.parse("2024-01-01T00:00:00Z"))
+            .finalNetInflow(new BigDecimal(netInflow))
+            .build();
+    }
+
+    /**
+     * 两实例背板: 发布时本实例投递，并作为远程更新投递给对端
+     */
+    private static final class LinkedBackplane extends AbstractSpyUpdateBackplane {
+
+        private LinkedBackplane peer;
+        private int publishedCount;
+
+        LinkedBackplane() {
+            super(new SimpleMeterRegistry());
+        }
+
+        @Override
+        public void publish(SpyFlowResult result) {
+            publishedCount++;
+            recordPublished();
+            deliverLocal(result);
+            if (peer != null) {
+                peer.deliverRemote(result, System.currentTimeMillis());
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.tanggo.fund.cashflow.spy.controller;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.repository.SpyArrowStreams;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 响应编码测试与基准: Accept协商，以及JSON对比CBOR/Smile/Arrow的编码耗时与每行字节数
+ *
+ * 基准标记为load，默认构建不运行，使用 mvn -B test -Pload-test 执行
+ */
+@Slf4j
+class SpyResponseEncodingBenchmarkTest {
+
+    private static final int ROWS = 10_000;
+    private static final int ROUNDS = 5;
+
+    private final SpyResponseEncoder encoder = new SpyResponseEncoder(
+        Jackson2ObjectMapperBuilder.json().build(),
+        new MappingJackson2CborHttpMessageConverter(Jackson2ObjectMapperBuilder.cbor().build()),
+        new MappingJackson2SmileHttpMessageConverter(Jackson2ObjectMapperBuilder.smile().build()));
+
+    @Test
+    void testNegotiation() {
+        assertEquals(MediaType.APPLICATION_JSON, encoder.negotiate(null));
+        assertEquals(MediaType.APPLICATION_JSON, encoder.negotiate("*/*"));
+        assertEquals(MediaType.APPLICATION_CBOR, encoder.negotiate("application/cbor, application/json;q=0.5"));
+        assertEquals(SpyResponseEncoder.APPLICATION_SMILE, encoder.negotiate("application/x-jackson-smile"));
+        assertEquals(MediaType.APPLICATION_JSON, encoder.negotiate("text/plain, application/json"));
+    }
+
+    @Test
+    void testNegotiationHonoursQualityValues() {
+        assertEquals(MediaType.APPLICATION_CBOR, encoder.negotiate("application/json;q=0.5, application/cbor"),
+            "质量值高的类型优先，与在Accept中的位置无关");
+        assertEquals(SpyResponseEncoder.APPLICATION_SMILE,
+            encoder.negotiate("application/cbor;q=0.2, application/x-jackson-smile;q=0.8, */*;q=0.1"));
+        assertEquals(MediaType.APPLICATION_CBOR, encoder.negotiate("*/*, application/cbor"), "相同质量值时具体类型优先");
+        assertEquals(MediaType.APPLICATION_JSON, encoder.negotiate("application/cbor;q=0, application/json;q=0.1"));
+    }
+
+    @Test
+    @Tag("load")
+    void benchmarkEncodings() throws Exception {
+        List<SpyFlowResult> rows = sampleRows();
+
+        long jsonBytes = measure("JSON", rows, MediaType.APPLICATION_JSON);
+        long cborBytes = measure("CBOR", rows, MediaType.APPLICATION_CBOR);
+        long smileBytes = measure("Smile", rows, SpyResponseEncoder.APPLICATION_SMILE);
+        long arrowBytes = measureArrow();
+
+        assertTrue(cborBytes < jsonBytes, "CBOR应小于JSON");
+        assertTrue(smileBytes < jsonBytes, "Smile应小于JSON");
+        assertTrue(arrowBytes < jsonBytes, "Arrow应小于JSON");
+    }
+
+    private long measure(String name, List<SpyFlowResult> rows, MediaType mediaType) throws Exception {
+        byte[] payload = encoder.encode(rows, mediaType);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            payload = encoder.encode(rows, mediaType);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        report(name, payload.length, best);
+        return payload.length;
+    }
+
+    /**
+     * Arrow路径从DuckDB查询结果直接导出，耗时包含查询
+     */
+    private long measureArrow() throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:duckdb:");
+             BufferAllocator allocator = new RootAllocator()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE spy_flow_result AS SELECT i::BIGINT AS id, 'SPY' AS ticker, " +
+                    "DATE '2000-01-01' + i::INTEGER AS data_date, TIMESTAMP '2000-01-01 21:00:00' AS timestamp, " +
+                    "(i * 1234.56)::DECIMAL(15,2) AS final_net_inflow, 0.1234::DECIMAL(8,4) AS flow_intensity, " +
+                    "452.1234::DECIMAL(10,4) AS volume_weighted_price, (i * 617.28)::DECIMAL(15,2) AS etf_com_contribution, " +
+                    "(i * 617.28)::DECIMAL(15,2) AS yahoo_contribution, 'etf.com' AS primary_source, " +
+                    "85.50::DECIMAL(5,2) AS overall_confidence, 90.00::DECIMAL(5,2) AS data_quality_score, " +
+                    "true AS validation_passed, 'North America' AS geographic_dimension, 'USD' AS currency_dimension, " +
+                    "'Large Cap' AS market_cap_dimension, 'Broad Market' AS sector_dimension, " +
+                    "TIMESTAMP '2000-01-01 21:00:00' AS created_at FROM range(0, " + ROWS + ") t(i)");
+            }
+
+            long bytes = 0;
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i <= ROUNDS; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                long start = System.nanoTime();
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery("SELECT * FROM spy_flow_result ORDER BY data_date DESC")) {
+                    assertEquals(ROWS, SpyArrowStreams.write(rs, allocator, out));
+                }
+                if (i > 0) {
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                bytes = out.size();
+            }
+            report("Arrow", bytes, best);
+            return bytes;
+        }
+    }
+
+    private void report(String name, long bytes, long nanos) {
+        log.info(String.format("%-6s 行数=%d 总字节=%d 每行字节=%.1f 编码耗时=%.2fms 每行耗时=%.0fns",
+            name, ROWS, bytes, (double) bytes / ROWS, nanos / 1e6, (double) nanos / ROWS));
+    }
+
+    private List<SpyFlowResult> sampleRows() {
+        List<SpyFlowResult> rows = new ArrayList<>(ROWS);
+        Instant timestamp = Instant.parse("2000-01-01T21:00:00Z");
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(SpyFlowResult.builder()
+                .id((long) i)
+                .dataDate(LocalDate.of(2000, 1, 1).plusDays(i))
+                .timestamp(timestamp)
+                .finalNetInflow(BigDecimal.valueOf(i * 123456L, 2))
+                .flowIntensity(new BigDecimal("0.1234"))
+                .volumeWeightedPrice(new BigDecimal("452.1234"))
+                .etfComContribution(BigDecimal.valueOf(i * 61728L, 2))
+                .yahooContribution(BigDecimal.valueOf(i * 61728L, 2))
+                .primarySource("etf.com")
+                .overallConfidence(new BigDecimal("85.50"))
+                .dataQualityScore(new BigDecimal("90.00"))
+                .validationPassed(true)
+                .createdAt(timestamp)
+                .build());
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,146 @@
+package com.tanggo.fund.cashflow.spy.event;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
+import com.tanggo.fund.cashflow.spy.service.SpyTickerPartitions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 远程结果转发测试: 先写入本地库再发布，按版本幂等
+ */
+class SpyRemoteResultRelayTest {
+
+    private final LocalDate date = LocalDate.of(2024, 3, 15);
+
+    private final List<SpyFlowResult> rows = new CopyOnWriteArrayList<>();
+    private final List<String> steps = new CopyOnWriteArrayList<>();
+    private final List<SpyFlowResultSavedEvent> events = new CopyOnWriteArrayList<>();
+
+    private SimpleMeterRegistry registry;
+    private SpyPersistenceWriter writer;
+    private SpyTickerPartitions partitions;
+    private InMemorySpyUpdateBackplane backplane;
+    private CountDownLatch published;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        writer = new SpyPersistenceWriter(new NoOpTransactionManager(), registry, 50, 1);
+        partitions = new SpyTickerPartitions(registry, 2, 20);
+        backplane = new InMemorySpyUpdateBackplane(registry);
+
+        // 以列表模拟本地库
+        SpyFlowResultRepository repository = mock(SpyFlowResultRepository.class);
+        when(repository.findVersion(any(), any(), any())).thenAnswer(invocation -> rows.stream()
+            .filter(row -> row.getTicker().equals(invocation.getArgument(0))
+                && row.getDataDate().equals(invocation.getArgument(1))
+                && row.getTimestamp().equals(invocation.getArgument(2)))
+            .toList());
+        when(repository.save(any())).thenAnswer(invocation -> {
+            SpyFlowResult row = invocation.getArgument(0);
+            row.setId(100L + rows.size());
+            rows.add(row);
+            steps.add("saved");
+            return row;
+        });
+
+        new SpyRemoteResultRelay(backplane, event -> {
+            steps.add("published");
+            events.add((SpyFlowResultSavedEvent) event);
+            published.countDown();
+        }, repository, writer, partitions);
+
+        writer.start();
+        partitions.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        partitions.stop();
+        writer.stop();
+    }
+
+    @Test
+    void testRemoteResultStoredLocallyBeforePublish() throws Exception {
+        published = new CountDownLatch(1);
+        SpyFlowResult remote = result(Instant.parse("2024-03-15T21:00:00Z"));
+
+        backplane.deliverRemote(remote, System.currentTimeMillis());
+
+        assertTrue(published.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("saved", "published"), steps, "应在写入本地库之后发布");
+        assertEquals(1, rows.size());
+        SpyFlowResult stored = rows.get(0);
+        assertEquals(100L, stored.getId(), "应以本地主键写入，不沿用发布实例的主键");
+        assertEquals(9L, remote.getId(), "不应修改收到的对象");
+        assertSame(stored, events.get(0).getResult(), "事件应携带本地行");
+        assertTrue(events.get(0).isRemote());
+    }
+
+    @Test
+    void testRedeliveredVersionWrittenOnce() throws Exception {
+        published = new CountDownLatch(2);
+        // 发布实例内存中的纳秒时间戳，库中只保留到微秒
+        Instant timestamp = Instant.parse("2024-03-15T21:00:00.123456789Z");
+
+        backplane.deliverRemote(result(timestamp), System.currentTimeMillis());
+        backplane.deliverRemote(result(timestamp), System.currentTimeMillis());
+
+        assertTrue(published.await(5, TimeUnit.SECONDS));
+        assertEquals(1, rows.size(), "同一版本重复投递只写入一次");
+        assertEquals(Instant.parse("2024-03-15T21:00:00.123456Z"), rows.get(0).getTimestamp());
+        assertSame(events.get(0).getResult(), events.get(1).getResult());
+    }
+
+    private SpyFlowResult result(Instant timestamp) {
+        return SpyFlowResult.builder()
+            .id(9L)
+            .ticker("SPY")
+            .dataDate(date)
+            .timestamp(timestamp)
+            .finalNetInflow(new BigDecimal("7.25"))
+            .build();
+    }
+
+    /**
+     * 不连接数据库的事务管理器
+     */
+    private static final class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.tanggo.fund.cashflow.spy.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 实时更新背板测试: 每个实例各投递一次，发布失败不影响本实例
+ */
+class SpyUpdateBackplaneTest {
+
+    private static final String CHANNEL = "spy:updates";
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final SimpleMeterRegistry registryA = new SimpleMeterRegistry();
+    private final SimpleMeterRegistry registryB = new SimpleMeterRegistry();
+    private final RedisSpyUpdateBackplane instanceA = backplane(registryA);
+    private final RedisSpyUpdateBackplane instanceB = backplane(registryB);
+
+    @AfterEach
+    void tearDown() throws Exception {
+        instanceA.destroy();
+        instanceB.destroy();
+    }
+
+    @Test
+    void testPublishedOnceDeliveredOncePerInstance() {
+        List<SpyFlowResult> receivedA = new CopyOnWriteArrayList<>();
+        List<SpyFlowResult> receivedB = new CopyOnWriteArrayList<>();
+        List<SpyFlowResult> remoteA = new CopyOnWriteArrayList<>();
+        List<SpyFlowResult> remoteB = new CopyOnWriteArrayList<>();
+        instanceA.subscribe(receivedA::add);
+        instanceB.subscribe(receivedB::add);
+        instanceA.subscribeRemote(remoteA::add);
+        instanceB.subscribeRemote(remoteB::add);
+
+        SpyFlowResult result = result();
+        instanceA.publish(result);
+
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate, times(1)).convertAndSend(eq(CHANNEL), message.capture());
+        // 频道消息送达所有订阅实例，包括发布者自身
+        instanceA.handleMessage(message.getValue());
+        instanceB.handleMessage(message.getValue());
+
+        assertEquals(List.of(result), receivedA, "发布者应只在发布时投递一次");
+        assertEquals(1, receivedB.size(), "其他实例应投递一次");
+        assertEquals(0, result.getFinalNetInflow().compareTo(receivedB.get(0).getFinalNetInflow()));
+        assertEquals(result.getTimestamp(), receivedB.get(0).getTimestamp());
+        assertTrue(remoteA.isEmpty(), "发布者自身的更新不应作为远程结果应用");
+        assertEquals(receivedB, remoteB, "其他实例应把收到的更新应用到本地读模型");
+
+        assertEquals(1.0, delivered(registryA, "local"));
+        assertEquals(0.0, delivered(registryA, "remote"));
+        assertEquals(1.0, delivered(registryB, "remote"));
+        assertEquals(1, registryB.get("spy.backplane.lag").timer().count());
+    }
+
+    @Test
+    void testPublishFailureStillDeliversLocally() {
+        doThrow(new RedisConnectionFailureException("connection refused"))
+            .when(redisTemplate).convertAndSend(anyString(), anyString());
+        List<SpyFlowResult> received = new CopyOnWriteArrayList<>();
+        instanceA.subscribe(received::add);
+
+        instanceA.publish(result());
+
+        assertEquals(1, received.size(), "Redis不可用时本实例订阅者仍应收到更新");
+        assertEquals(1.0, registryA.get("spy.backplane.publish.failures").counter().count());
+    }
+
+    @Test
+    void testMalformedMessageIgnored() {
+        List<SpyFlowResult> received = new CopyOnWriteArrayList<>();
+        instanceB.subscribe(received::add);
+
+        instanceB.handleMessage("not-json");
+
+        assertTrue(received.isEmpty());
+        assertEquals(0.0, delivered(registryB, "remote"));
+    }
+
+    private RedisSpyUpdateBackplane backplane(SimpleMeterRegistry meterRegistry) {
+        return new RedisSpyUpdateBackplane(redisTemplate, mock(RedisConnectionFactory.class), objectMapper,
+            meterRegistry, CHANNEL);
+    }
+
+    private double delivered(SimpleMeterRegistry registry, String origin) {
+        return registry.get("spy.backplane.delivered").tag("origin", origin).counter().count();
+    }
+
+    private SpyFlowResult result() {
+        return SpyFlowResult.builder()
+            .id(42L)
+            .ticker("SPY")
+            .dataDate(LocalDate.of(2024, 3, 15))
+            .timestamp(Instant.parse("2024-03-15T21:00:00Z"))
+            .finalNetInflow(new BigDecimal("1234567.89"))
+            .primarySource("etf.com")
+            .build();
+    }
+}
@@ -0,0 +1,79 @@
+package com.tanggo.fund.cashflow.spy.event;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 实时更新日志测试
+ */
+class SpyUpdateJournalTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final SpyUpdateJournal journal =
+        new SpyUpdateJournal(Jackson2ObjectMapperBuilder.json().build(), new SimpleMeterRegistry(), 4);
+
+    @Test
+    void testReplayAfterLastEventId() {
+        long first = journal.append(result(1)).getId();
+        journal.append(result(2));
+        long third = journal.append(result(3)).getId();
+
+        List<SpyUpdateJournal.Entry> replayed = journal.subscribe(first).take(2).collectList().block(TIMEOUT);
+
+        assertEquals(List.of(first + 1, third), replayed.stream().map(SpyUpdateJournal.Entry::getId).toList(),
+            "应补发最后收到ID之后的更新");
+        assertTrue(replayed.get(1).getPayload().contains("\"type\":\"spy_update\""), "消息格式应与WebSocket广播一致");
+    }
+
+    @Test
+    void testResetWhenGapExceedsJournal() {
+        long first = journal.append(result(1)).getId();
+        for (int i = 2; i <= 6; i++) {
+            journal.append(result(i));
+        }
+
+        SpyUpdateJournal.Entry entry = journal.subscribe(first).blockFirst(TIMEOUT);
+
+        assertEquals(SpyUpdateJournal.RESET_EVENT, entry.getEvent(), "缺口超出日志容量时应提示重新拉取");
+        assertEquals(journal.head(), entry.getId());
+
+        SpyUpdateJournal.Entry restarted = journal.subscribe(first - 1_000_000).blockFirst(TIMEOUT);
+        assertEquals(SpyUpdateJournal.RESET_EVENT, restarted.getEvent(), "重启前的ID应触发reset");
+    }
+
+    @Test
+    void testNewSubscriberGetsLatestThenLiveUpdates() throws Exception {
+        long latest = journal.append(result(1)).getId();
+
+        CompletableFuture<List<SpyUpdateJournal.Entry>> received =
+            journal.subscribe(null).take(3).collectList().toFuture();
+        assertEquals(1, journal.getSubscriberCount());
+
+        journal.append(result(2));
+        journal.append(result(3));
+
+        List<Long> ids = received.get(TIMEOUT.toSeconds(), TimeUnit.SECONDS).stream()
+            .map(SpyUpdateJournal.Entry::getId).toList();
+        assertEquals(List.of(latest, latest + 1, latest + 2), ids, "新连接应先收到最近一条再接收实时更新，ID单调递增");
+        assertEquals(0, journal.getSubscriberCount(), "取消订阅后应释放计数");
+    }
+
+    private SpyFlowResult result(int day) {
+        return SpyFlowResult.builder()
+            .dataDate(LocalDate.of(2024, 3, day))
+            .timestamp(Instant.parse("2024-03-01T21:00:00Z"))
+            .build();
+    }
+}
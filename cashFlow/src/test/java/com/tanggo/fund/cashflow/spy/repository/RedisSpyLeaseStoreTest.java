@@ -0,0 +1,69 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Redis租约存储测试: 租约编码与脚本返回值解析(脚本本身在Redis中原子执行)
+ */
+class RedisSpyLeaseStoreTest {
+
+    private static final String KEY = "spy:leases";
+    private static final Instant NOW = Instant.ofEpochMilli(1_700_000_000_000L);
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final RedisSpyLeaseStore store = new RedisSpyLeaseStore(redisTemplate, KEY);
+
+    @Test
+    void testEncodeRoundTrip() {
+        SpyLeaseStore.Lease lease = new SpyLeaseStore.Lease("host|a-1", NOW, NOW.plusSeconds(90));
+
+        assertEquals(lease, RedisSpyLeaseStore.decode(RedisSpyLeaseStore.encode(lease)), "持有者中的分隔符不影响解析");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAcquisitionParsed() {
+        SpyLeaseStore.Lease previous = new SpyLeaseStore.Lease("node-b", NOW.minusSeconds(120), NOW.minusSeconds(30));
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+            .thenReturn(List.of("1", RedisSpyLeaseStore.encode(previous)))
+            .thenReturn(List.of("0", RedisSpyLeaseStore.encode(previous)))
+            .thenReturn(List.of("1", ""));
+
+        SpyLeaseStore.Acquisition takeover = store.tryAcquire("spy-collector/node-a", "node-a", NOW, Duration.ofSeconds(90));
+        SpyLeaseStore.Acquisition rejected = store.tryAcquire("spy-collector/node-a", "node-a", NOW, Duration.ofSeconds(90));
+        SpyLeaseStore.Acquisition first = store.tryAcquire("spy-collector/node-a", "node-a", NOW, Duration.ofSeconds(90));
+
+        assertTrue(takeover.acquired());
+        assertEquals(previous, takeover.previous(), "接管时返回原租约用于统计换主耗时");
+        assertFalse(rejected.acquired());
+        assertTrue(first.acquired());
+        assertNull(first.previous(), "首次获得时没有原租约");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFindByPrefix() {
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        SpyLeaseStore.Lease a = new SpyLeaseStore.Lease("node-a", NOW, NOW.plusSeconds(90));
+        SpyLeaseStore.Lease other = new SpyLeaseStore.Lease("node-x", NOW, NOW.plusSeconds(90));
+        when(hashOperations.entries(KEY)).thenReturn(Map.of(
+            "spy-collector/node-a", RedisSpyLeaseStore.encode(a),
+            "other/node-x", RedisSpyLeaseStore.encode(other)));
+
+        assertEquals(Map.of("spy-collector/node-a", a), store.findByPrefix("spy-collector/"));
+    }
+}
@@ -0,0 +1,168 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 冷热分层批量查询测试(内存DuckDB + 临时Parquet分区)
+ */
+class SpyFlowResultRepositoryImplTest {
+
+    private static final LocalDate DAY1 = LocalDate.of(2024, 1, 1);
+    private static final LocalDate DAY2 = DAY1.plusDays(1);
+    private static final LocalDate DAY3 = DAY1.plusDays(2);
+
+    @TempDir
+    Path archiveDir;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private SpyParquetPartitionCatalog catalog;
+    private SpyFlowResultRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new SingleConnectionDataSource("jdbc:duckdb:", true);
+        dataSource.setAutoCommit(true);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        catalog = new SpyParquetPartitionCatalog(archiveDir.toString(), true);
+        repository = new SpyFlowResultRepositoryImpl(jdbcTemplate, catalog, null, 100);
+
+        // 早期数据ticker为空，按SPY处理
+        insert(null, DAY1, "1.00", "2024-01-01 21:00:00");
+        insert("SPY", DAY1, "2.00", "2024-01-01 22:00:00");
+        insert("QQQ", DAY1, "10.00", "2024-01-01 21:00:00");
+        insert("SPY", DAY2, "3.00", "2024-01-02 21:00:00");
+        insert("SPY", DAY2, "4.00", "2024-01-02 20:00:00");
+        insert("QQQ", DAY2, "20.00", "2024-01-02 21:00:00");
+        insert("IWM", DAY2, "99.00", "2024-01-02 21:00:00");
+        insert("SPY", DAY3, "5.00", "2024-01-03 21:00:00");
+        insert(null, DAY3, "6.00", "2024-01-03 21:00:00");
+        archive(DAY1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void testLatestPerTickerAndDateAcrossTiers() {
+        List<SpyFlowResult> results = repository.findTieredLatestByTickers(List.of("SPY", "QQQ"), DAY1, DAY3, null);
+
+        assertEquals(List.of("QQQ/2024-01-01/10.00", "QQQ/2024-01-02/20.00",
+                "SPY/2024-01-01/2.00", "SPY/2024-01-02/3.00", "SPY/2024-01-03/6.00"),
+            keys(results), "每个ticker每天只取时间戳最新(同时间戳取id最大)的一条，冷分区一并读取");
+    }
+
+    @Test
+    void testExplicitDates() {
+        List<SpyFlowResult> results = repository.findTieredLatestByTickers(List.of("SPY", "IWM"), DAY1, DAY3,
+            List.of(DAY1, DAY3));
+
+        assertEquals(List.of("SPY/2024-01-01/2.00", "SPY/2024-01-03/6.00"), keys(results), "只返回指定日期");
+    }
+
+    @Test
+    void testUnknownTicker() {
+        assertTrue(repository.findTieredLatestByTickers(List.of("DIA"), DAY1, DAY3, null).isEmpty());
+    }
+
+    @Test
+    void testRangeFiltersTicker() {
+        assertEquals(List.of("SPY/2024-01-03/6.00", "SPY/2024-01-03/5.00", "SPY/2024-01-02/4.00", "SPY/2024-01-02/3.00",
+                "SPY/2024-01-01/2.00", "SPY/2024-01-01/1.00"),
+            keys(repository.findTieredByDataDateBetween("SPY", DAY1, DAY3)), "ticker为空的旧数据按SPY返回");
+        assertEquals(List.of("QQQ/2024-01-02/20.00", "QQQ/2024-01-01/10.00"),
+            keys(repository.findTieredByDataDateBetween("QQQ", DAY1, DAY3)));
+    }
+
+    @Test
+    void testSingleDateFiltersTickerAndTakesNewestTimestamp() {
+        assertEquals("3.00", repository.findTieredByDataDate("SPY", DAY2).orElseThrow().getFinalNetInflow().toPlainString(),
+            "同一日期取时间戳最新的一条，而不是最后写入的一条");
+        assertEquals("2.00", repository.findTieredByDataDate("SPY", DAY1).orElseThrow().getFinalNetInflow().toPlainString());
+        assertEquals("10.00", repository.findTieredByDataDate("QQQ", DAY1).orElseThrow().getFinalNetInflow().toPlainString());
+        assertTrue(repository.findTieredByDataDate("DIA", DAY1).isEmpty());
+    }
+
+    @Test
+    void testRecentResultsCoverAllTickersAcrossTiers() {
+        List<SpyFlowResult> results = repository.findRecentResults(DAY1);
+
+        assertEquals(9, results.size(), "热窗口加载应包含冷分区与全部ticker");
+        assertEquals(DAY3, results.get(0).getDataDate());
+        assertEquals(DAY1, results.get(results.size() - 1).getDataDate());
+    }
+
+    @Test
+    void testFindVersion() {
+        SpyFlowResult stored = repository.findTieredByDataDate("SPY", DAY2).orElseThrow();
+
+        List<SpyFlowResult> found = repository.findVersion("SPY", DAY2, stored.getTimestamp());
+
+        assertEquals(1, found.size());
+        assertEquals(stored.getId(), found.get(0).getId(), "按写入时的时间戳应能找回同一行");
+        assertTrue(repository.findVersion("DIA", DAY2, stored.getTimestamp()).isEmpty());
+        assertTrue(repository.findVersion("SPY", DAY2, stored.getTimestamp().plusMillis(1)).isEmpty());
+        Instant day3 = repository.findTieredByDataDate("SPY", DAY3).orElseThrow().getTimestamp();
+        assertEquals(2, repository.findVersion("SPY", DAY3, day3).size(), "ticker为空的旧数据按SPY匹配");
+    }
+
+    @Test
+    void testStatsFilterTickerAcrossTiers() {
+        jdbcTemplate.update("UPDATE spy_flow_result SET validation_passed = false WHERE final_net_inflow IN (3.00, 20.00)");
+
+        Object[] spy = repository.getNetInflowStats("SPY", DAY1);
+        assertEquals(0, new BigDecimal("21.00").compareTo(new BigDecimal(spy[0].toString())), "含冷分区与ticker为空的旧数据");
+        assertEquals(6L, spy[2]);
+        assertEquals(4L, repository.getNetInflowStats("SPY", DAY2)[2]);
+        assertEquals(0, new BigDecimal("30.00").compareTo(new BigDecimal(repository.getNetInflowStats("QQQ", DAY1)[0].toString())));
+        assertEquals(1L, repository.countValidationFailures("SPY", DAY1));
+        assertEquals(1L, repository.countValidationFailures("QQQ", DAY1));
+        assertNull(repository.getAverageDataQualityScore("SPY", DAY1));
+        assertEquals(0L, repository.getNetInflowStats("DIA", DAY1)[2]);
+    }
+
+    private static List<String> keys(List<SpyFlowResult> results) {
+        return results.stream()
+            .map(result -> (result.getTicker() != null ? result.getTicker() : "SPY") + "/" + result.getDataDate() + "/" +
+                result.getFinalNetInflow().toPlainString())
+            .toList();
+    }
+
+    private void insert(String ticker, LocalDate dataDate, String netInflow, String timestamp) {
+        jdbcTemplate.update("INSERT INTO spy_flow_result (ticker, data_date, timestamp, final_net_inflow) " +
+                "VALUES (?, CAST(? AS DATE), CAST(? AS TIMESTAMP), CAST(? AS DECIMAL(15,2)))",
+            ticker, dataDate.toString(), timestamp, netInflow);
+    }
+
+    /**
+     * 按归档服务的目录布局导出一天的分区并从热表删除
+     */
+    private void archive(LocalDate dataDate) throws Exception {
+        Path dir = catalog.partitionDir(SpyParquetPartitionCatalog.FLOW_RESULT_TABLE, dataDate);
+        Files.createDirectories(dir);
+        jdbcTemplate.execute("COPY (SELECT * FROM spy_flow_result WHERE data_date = DATE '" + dataDate + "') TO '" +
+            dir.resolve("part-0.parquet") + "' (FORMAT PARQUET)");
+        jdbcTemplate.execute("DELETE FROM spy_flow_result WHERE data_date = DATE '" + dataDate + "'");
+        catalog.register(SpyParquetPartitionCatalog.FLOW_RESULT_TABLE, dataDate);
+    }
+}
@@ -0,0 +1,78 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Parquet冷数据分区目录测试
+ */
+class SpyParquetPartitionCatalogTest {
+    
+    @TempDir
+    Path archiveDir;
+    
+    private SpyParquetPartitionCatalog catalog;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        createPartition("spy_flow_result", "2024-01-02");
+        createPartition("spy_flow_result", "2024-01-03");
+        createPartition("spy_flow_result", "2024-02-01");
+        // 空目录不算已归档分区
+        Files.createDirectories(archiveDir.resolve("spy_flow_result").resolve("data_date=2024-01-04"));
+        
+        catalog = new SpyParquetPartitionCatalog(archiveDir.toString(), true);
+    }
+    
+    @Test
+    void testPartitionPruning() {
+        List<String> globs = catalog.partitionGlobs("spy_flow_result",
+            LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+        
+        assertEquals(2, globs.size(), "只应命中1月的两个分区");
+        assertTrue(globs.get(0).contains("data_date=2024-01-02"));
+        assertTrue(globs.get(1).contains("data_date=2024-01-03"));
+    }
+    
+    @Test
+    void testHotOnlyRangeUsesTableDirectly() {
+        String source = catalog.tieredSource("spy_flow_result",
+            LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31));
+        
+        assertEquals("spy_flow_result", source, "没有冷分区时应直接查询热表");
+    }
+    
+    @Test
+    void testTieredSourceUnionsColdPartitions() {
+        String source = catalog.tieredSource("spy_flow_result",
+            LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 1));
+        
+        assertTrue(source.contains("UNION ALL BY NAME"));
+        assertTrue(source.contains("read_parquet(["));
+        assertTrue(source.contains("hive_partitioning = false"), "分区目录名不应覆盖文件中的DATE列");
+        assertTrue(source.contains("data_date=2024-02-01"));
+        assertFalse(source.contains("data_date=2024-01-02"), "范围外的分区应被裁剪");
+    }
+    
+    @Test
+    void testRegisterNewPartition() {
+        catalog.register("spy_raw_data", LocalDate.of(2024, 5, 1));
+        
+        assertEquals(1, catalog.partitionGlobs("spy_raw_data",
+            LocalDate.of(2024, 5, 1), LocalDate.of(2024, 5, 1)).size());
+    }
+    
+    private void createPartition(String table, String date) throws Exception {
+        Path dir = archiveDir.resolve(table).resolve("data_date=" + date);
+        Files.createDirectories(dir);
+        Files.createFile(dir.resolve("part-1.parquet"));
+    }
+}
@@ -0,0 +1,184 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DuckDB单写线程测试
+ */
+class SpyPersistenceWriterTest {
+    
+    private CountingTransactionManager transactionManager;
+    private SpyPersistenceWriter writer;
+    
+    @BeforeEach
+    void setUp() {
+        transactionManager = new CountingTransactionManager();
+        writer = new SpyPersistenceWriter(transactionManager, new SimpleMeterRegistry(), 50, 20);
+        writer.start();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        writer.stop();
+    }
+    
+    @Test
+    void testGroupCommitFromManyThreads() throws Exception {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        
+        for (int t = 0; t < 4; t++) {
+            int base = t * 100;
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    int value = base + i;
+                    synchronized (futures) {
+                        futures.add(writer.submit(() -> value));
+                    }
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        
+        assertEquals(400, futures.size());
+        assertTrue(transactionManager.commits.get() < 400, "写请求应合并为更少的事务提交");
+        assertEquals(0, writer.getQueueDepth());
+    }
+    
+    @Test
+    void testFailedWriteIsIsolated() {
+        CompletableFuture<String> ok = writer.submit(() -> "ok");
+        CompletableFuture<String> bad = writer.submit(() -> {
+            throw new IllegalStateException("写入失败");
+        });
+        
+        assertEquals("ok", ok.join(), "同批次的正常请求不应受失败请求影响");
+        CompletionException e = assertThrows(CompletionException.class, bad::join);
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+    
+    @Test
+    void testBatchRetryInsertsNewRows() {
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(new DriverManagerDataSource(
+            "jdbc:h2:mem:writer;DB_CLOSE_DELAY=-1;NON_KEYWORDS=TIMESTAMP", "sa", ""));
+        factoryBean.setPackagesToScan("com.tanggo.fund.cashflow.spy.entity");
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "create-drop"));
+        factoryBean.afterPropertiesSet();
+        EntityManagerFactory entityManagerFactory = factoryBean.getObject();
+        FlowResultRepository repository = new JpaRepositoryFactory(
+            SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory))
+            .getRepository(FlowResultRepository.class);
+
+        // 时间片足够长，保证四个请求落在同一批次
+        SpyPersistenceWriter jpaWriter = new SpyPersistenceWriter(
+            new JpaTransactionManager(entityManagerFactory), new SimpleMeterRegistry(), 50, 500);
+        jpaWriter.start();
+        try {
+            SpyFlowResult first = result(LocalDate.of(2025, 1, 2));
+            SpyFlowResult second = result(LocalDate.of(2025, 1, 3));
+            SpyFlowResult invalid = result(null);
+            SpyFlowResult third = result(LocalDate.of(2025, 1, 6));
+
+            List<CompletableFuture<SpyFlowResult>> saves = List.of(
+                jpaWriter.save(repository, first),
+                jpaWriter.save(repository, second),
+                jpaWriter.save(repository, invalid),
+                jpaWriter.save(repository, third));
+
+            assertThrows(CompletionException.class, saves.get(2)::join, "违反非空约束的实体应失败");
+            assertNull(invalid.getId());
+            HashSet<Long> ids = new HashSet<>();
+            for (int i : new int[]{0, 1, 3}) {
+                ids.add(saves.get(i).join().getId());
+            }
+            assertEquals(3, ids.size(), "重试后的实体应作为新行插入");
+            assertEquals(3, repository.count());
+            assertEquals(ids, new HashSet<>(repository.findAll().stream().map(SpyFlowResult::getId).toList()));
+        } finally {
+            jpaWriter.stop();
+            factoryBean.destroy();
+        }
+    }
+
+    @Test
+    void testRejectsAfterStop() {
+        writer.stop();
+        
+        CompletableFuture<String> future = writer.submit(() -> "late");
+        
+        assertTrue(future.isCompletedExceptionally(), "写线程停止后应拒绝新请求");
+    }
+    
+    private static SpyFlowResult result(LocalDate dataDate) {
+        return SpyFlowResult.builder()
+            .dataDate(dataDate)
+            .timestamp(Instant.now())
+            .finalNetInflow(new BigDecimal("100.50"))
+            .build();
+    }
+
+    interface FlowResultRepository extends JpaRepository<SpyFlowResult, Long> {
+    }
+
+    /**
+     * 只计数的事务管理器
+     */
+    private static class CountingTransactionManager extends AbstractPlatformTransactionManager {
+        
+        private final AtomicInteger commits = new AtomicInteger();
+        
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+        
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+        
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            commits.incrementAndGet();
+        }
+        
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
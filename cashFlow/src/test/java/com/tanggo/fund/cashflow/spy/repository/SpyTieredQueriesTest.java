@@ -0,0 +1,123 @@
+package com.tanggo.fund.cashflow.spy.repository;
+
+import com.tanggo.fund.cashflow.spy.dto.SpyPageCursor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 冷热分层键集分页测试(内存DuckDB + 临时Parquet分区)
+ */
+class SpyTieredQueriesTest {
+
+    private static final String TABLE = SpyParquetPartitionCatalog.FLOW_RESULT_TABLE;
+    private static final LocalDate FIRST_DATE = LocalDate.of(2024, 1, 1);
+    private static final RowMapper<String> KEY_MAPPER =
+        (rs, rowNum) -> rs.getDate("data_date").toLocalDate() + "#" + rs.getLong("id");
+
+    @TempDir
+    Path archiveDir;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private SpyParquetPartitionCatalog catalog;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new SingleConnectionDataSource("jdbc:duckdb:", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE " + TABLE + " (id BIGINT, data_date DATE)");
+        // 10天，每天3行
+        jdbcTemplate.execute("INSERT INTO " + TABLE + " SELECT i, DATE '" + FIRST_DATE + "' + CAST(floor(i / 3) AS INTEGER) FROM range(0, 30) t(i)");
+
+        // 前5天归档为冷分区
+        for (int day = 0; day < 5; day++) {
+            LocalDate date = FIRST_DATE.plusDays(day);
+            Path dir = archiveDir.resolve(TABLE).resolve("data_date=" + date);
+            Files.createDirectories(dir);
+            jdbcTemplate.execute("COPY (SELECT * FROM " + TABLE + " WHERE data_date = DATE '" + date + "') TO '" +
+                dir.resolve("part-0.parquet") + "' (FORMAT PARQUET)");
+            jdbcTemplate.execute("DELETE FROM " + TABLE + " WHERE data_date = DATE '" + date + "'");
+        }
+        catalog = new SpyParquetPartitionCatalog(archiveDir.toString(), true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void testPagesCoverTiersWithoutGapsOrDuplicates() {
+        LocalDate endDate = FIRST_DATE.plusDays(9);
+        List<String> all = new ArrayList<>();
+        SpyPageCursor cursor = null;
+
+        // 页大小4，游标会落在同一天的中间
+        for (int page = 0; page < 20; page++) {
+            List<String> rows = SpyTieredQueries.findPage(jdbcTemplate, catalog, TABLE, KEY_MAPPER,
+                FIRST_DATE, endDate, cursor, 4);
+            all.addAll(rows);
+            if (rows.size() < 4) {
+                break;
+            }
+            cursor = cursorOf(rows.get(rows.size() - 1));
+        }
+
+        assertEquals(cursor, SpyPageCursor.decode(cursor.encode()), "游标编码应可还原");
+
+        List<String> expected = new ArrayList<>();
+        SpyTieredQueries.stream(jdbcTemplate, catalog, TABLE, KEY_MAPPER, SpyTieredQueriesTest::cursorOf,
+            FIRST_DATE, endDate, 8, expected::add);
+
+        assertEquals(30, expected.size(), "流式查询应覆盖冷热两层全部数据");
+        assertEquals(expected, all, "逐页拼接结果应与完整排序一致");
+        assertEquals(FIRST_DATE.plusDays(9) + "#29", all.get(0), "应按data_date DESC, id DESC排序");
+    }
+
+    @Test
+    void testStreamIssuesBoundedQueries() {
+        List<Object> limits = new ArrayList<>();
+        JdbcTemplate recording = new JdbcTemplate(dataSource) {
+            @Override
+            public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+                limits.add(args[args.length - 1]);
+                return super.query(sql, rowMapper, args);
+            }
+        };
+        List<String> rows = new ArrayList<>();
+
+        SpyTieredQueries.stream(recording, catalog, TABLE, KEY_MAPPER, SpyTieredQueriesTest::cursorOf,
+            FIRST_DATE, FIRST_DATE.plusDays(9), 8, rows::add);
+
+        assertEquals(30, rows.size());
+        assertTrue(limits.size() >= 4, "30行按每页8行至少分4次查询");
+        limits.forEach(limit -> assertTrue((Integer) limit <= 8, "每次查询都应带不超过页大小的LIMIT"));
+    }
+
+    @Test
+    void testCursorOutsideRange() {
+        SpyPageCursor after = new SpyPageCursor(FIRST_DATE.plusDays(30), 999);
+
+        List<String> rows = SpyTieredQueries.findPage(jdbcTemplate, catalog, TABLE, KEY_MAPPER,
+            FIRST_DATE, FIRST_DATE.plusDays(1), after, 10);
+
+        assertEquals(6, rows.size(), "游标晚于范围时应从范围末尾开始");
+    }
+
+    private static SpyPageCursor cursorOf(String key) {
+        return new SpyPageCursor(LocalDate.parse(key.substring(0, 10)), Long.parseLong(key.substring(11)));
+    }
+}
@@ -0,0 +1,125 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.cache.SpyFlowHotWindow;
+import com.tanggo.fund.cashflow.spy.dto.SpyBatchQueryRequest;
+import com.tanggo.fund.cashflow.spy.dto.SpyBatchQueryResponse;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 批量流向查询测试
+ */
+class SpyBatchQueryServiceTest {
+
+    private final LocalDate today = LocalDate.now();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SpyFlowResultRepository repository;
+    private SpyBatchQueryService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(SpyFlowResultRepository.class);
+        when(repository.findRecentResults(any())).thenReturn(List.of(
+            result("SPY", today.minusDays(2), "10.00"),
+            result("SPY", today.minusDays(1), "20.00"),
+            result("QQQ", today.minusDays(1), "30.00")));
+
+        SpyFlowHotWindow hotWindow = new SpyFlowHotWindow(repository, 10);
+        hotWindow.loadFromDatabase();
+        service = new SpyBatchQueryService(repository, hotWindow, meterRegistry, 50, 100);
+    }
+
+    @Test
+    void testResolvedFromHotWindowWithoutQuery() {
+        SpyBatchQueryResponse response = service.query(SpyBatchQueryRequest.builder()
+            .tickers(List.of("spy", "QQQ"))
+            .dates(List.of(today.minusDays(1), today.minusDays(2)))
+            .build());
+
+        assertEquals(SpyBatchQueryService.SOURCE_HOT_WINDOW, response.getSource());
+        assertEquals(0, response.getQueries());
+        assertEquals(4, response.getRequestedKeys());
+        assertEquals(3, response.getFoundKeys());
+        assertEquals(List.of("SPY", "QQQ"), List.copyOf(response.getFlows().keySet()), "应保持请求顺序并规范化ticker");
+        assertEquals(today.minusDays(2), response.getFlows().get("SPY").get(0).getDate(), "应按日期升序");
+        verify(repository, never()).findTieredLatestByTickers(any(), any(), any(), any());
+    }
+
+    @Test
+    void testTickerMissingFromWindowFallsBackToDatabase() {
+        // IWM由其他节点采集，本节点窗口中没有它的数据
+        when(repository.findTieredLatestByTickers(eq(List.of("IWM")), any(), any(), any()))
+            .thenReturn(List.of(result("IWM", today.minusDays(1), "40.00")));
+
+        SpyBatchQueryResponse response = service.query(SpyBatchQueryRequest.builder()
+            .tickers(List.of("SPY", "IWM", "QQQ"))
+            .dates(List.of(today.minusDays(1), today.minusDays(2)))
+            .build());
+
+        assertEquals(SpyBatchQueryService.SOURCE_DATABASE, response.getSource());
+        assertEquals(1, response.getQueries());
+        assertEquals(List.of("SPY", "IWM", "QQQ"), List.copyOf(response.getFlows().keySet()), "应保持请求顺序");
+        assertEquals(2, response.getFlows().get("SPY").size(), "窗口内的ticker仍从内存解析");
+        assertEquals(1, response.getFlows().get("IWM").size(), "窗口缺失的ticker应回退数据库");
+        assertEquals(4, response.getFoundKeys());
+        verify(repository, times(1)).findTieredLatestByTickers(eq(List.of("IWM")), any(), any(), any());
+        assertEquals(2.0, meterRegistry.get("spy.batch.keys.per.query").summary().mean(), "只查询窗口缺失的键");
+        assertEquals(4.0, meterRegistry.get("spy.batch.keys").tag("source", SpyBatchQueryService.SOURCE_HOT_WINDOW)
+            .counter().count());
+    }
+
+    @Test
+    void testOutsideWindowUsesSingleQuery() {
+        LocalDate start = today.minusDays(40);
+        when(repository.findTieredLatestByTickers(eq(List.of("SPY", "QQQ")), eq(start), eq(today), any()))
+            .thenReturn(List.of(result("QQQ", start, "1.00"), result("SPY", today, "2.00")));
+
+        SpyBatchQueryResponse response = service.query(SpyBatchQueryRequest.builder()
+            .tickers(List.of("SPY", "QQQ"))
+            .startDate(start)
+            .endDate(today)
+            .build());
+
+        assertEquals(SpyBatchQueryService.SOURCE_DATABASE, response.getSource());
+        assertEquals(1, response.getQueries());
+        assertEquals(82, response.getRequestedKeys());
+        assertEquals(1, response.getFlows().get("QQQ").size());
+        verify(repository, times(1)).findTieredLatestByTickers(any(), any(), any(), eq(null));
+        assertEquals(82.0, meterRegistry.get("spy.batch.keys.per.query").summary().mean(), "应记录每次查询的键数");
+    }
+
+    @Test
+    void testRejectsInvalidRequest() {
+        assertThrows(IllegalArgumentException.class, () -> service.query(SpyBatchQueryRequest.builder()
+            .tickers(List.of(" ")).dates(List.of(today)).build()));
+        assertThrows(IllegalArgumentException.class, () -> service.query(SpyBatchQueryRequest.builder()
+            .tickers(List.of("SPY")).build()), "缺少日期时应拒绝");
+        assertThrows(IllegalArgumentException.class, () -> service.query(SpyBatchQueryRequest.builder()
+            .tickers(List.of("SPY")).startDate(today.minusDays(100)).endDate(today).build()), "范围超过上限时应拒绝");
+        assertDoesNotThrow(() -> service.query(SpyBatchQueryRequest.builder()
+            .tickers(List.of("SPY")).dates(List.copyOf(Set.of(today))).build()));
+    }
+
+    private SpyFlowResult result(String ticker, LocalDate date, String netInflow) {
+        return SpyFlowResult.builder()
+            .ticker(ticker)
+            .dataDate(date)
+            .timestamp(Instant.now())
+            .finalNetInflow(new BigDecimal(netInflow))
+            .build();
+    }
+}
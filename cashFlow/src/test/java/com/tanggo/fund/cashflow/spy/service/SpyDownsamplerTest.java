@@ -0,0 +1,118 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 时间序列降采样测试
+ */
+class SpyDownsamplerTest {
+
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final int SIZE = 10_000;
+
+    @Test
+    void testLttbKeepsEndpointsAndSpike() {
+        long[] x = timestamps(SIZE);
+        double[] y = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            y[i] = Math.sin(i / 100.0);
+        }
+        y[4321] = 50.0;
+        y[100] = Double.NaN;
+
+        int[] indices = SpyDownsampler.select(x, y, SIZE, 200, SpyDownsampler.Mode.LTTB);
+
+        assertEquals(200, indices.length, "应恰好返回maxPoints个点");
+        assertEquals(0, indices[0], "首点应保留");
+        assertEquals(SIZE - 1, indices[indices.length - 1], "末点应保留");
+        assertTrue(isStrictlyAscending(indices), "下标应严格升序");
+        assertTrue(Arrays.stream(indices).anyMatch(i -> i == 4321), "尖峰应保留");
+        assertTrue(Arrays.stream(indices).noneMatch(i -> i == 100), "缺失值不应被选中");
+    }
+
+    @Test
+    void testMinMaxKeepsExtremes() {
+        long[] x = timestamps(SIZE);
+        double[] y = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            y[i] = i % 7;
+        }
+        y[777] = -99.0;
+        y[8888] = 99.0;
+
+        int[] indices = SpyDownsampler.select(x, y, SIZE, 100, SpyDownsampler.Mode.MINMAX);
+
+        assertTrue(indices.length <= 100);
+        assertTrue(isStrictlyAscending(indices));
+        double[] picked = SpyDownsampler.pick(y, indices);
+        assertEquals(-99.0, Arrays.stream(picked).min().orElseThrow(), "全局最小值应保留");
+        assertEquals(99.0, Arrays.stream(picked).max().orElseThrow(), "全局最大值应保留");
+        assertEquals(x[777], SpyDownsampler.pick(x, indices)[Arrays.binarySearch(indices, 777)], "各列应按同一组下标投影");
+    }
+
+    @Test
+    void testMissingValuesNeverSelected() {
+        long[] x = timestamps(SIZE);
+        double[] y = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            y[i] = Math.cos(i / 50.0);
+        }
+        // 首尾各有一段缺失，中间有一段整桶缺失
+        Arrays.fill(y, 0, 30, Double.NaN);
+        Arrays.fill(y, SIZE - 20, SIZE, Double.NaN);
+        Arrays.fill(y, 5000, 5500, Double.NaN);
+
+        for (SpyDownsampler.Mode mode : SpyDownsampler.Mode.values()) {
+            int[] indices = SpyDownsampler.select(x, y, SIZE, 100, mode);
+
+            assertTrue(indices.length > 0 && indices.length <= 100, mode + "点数不应超过上限");
+            assertTrue(isStrictlyAscending(indices), mode + "下标应严格升序");
+            assertTrue(Arrays.stream(indices).noneMatch(i -> Double.isNaN(y[i])), mode + "不应选中缺失值");
+            if (mode == SpyDownsampler.Mode.LTTB) {
+                assertEquals(30, indices[0], "首点应为第一个有效点");
+                assertEquals(SIZE - 21, indices[indices.length - 1], "末点应为最后一个有效点");
+            }
+        }
+    }
+
+    @Test
+    void testAllMissing() {
+        double[] y = new double[SIZE];
+        Arrays.fill(y, Double.NaN);
+
+        for (SpyDownsampler.Mode mode : SpyDownsampler.Mode.values()) {
+            assertEquals(0, SpyDownsampler.select(timestamps(SIZE), y, SIZE, 100, mode).length, mode + "全为缺失值时不出点");
+        }
+    }
+
+    @Test
+    void testNoDownsampleWithinLimit() {
+        int[] indices = SpyDownsampler.select(timestamps(5), new double[5], 5, 10, SpyDownsampler.Mode.LTTB);
+
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, indices);
+        assertThrows(IllegalArgumentException.class,
+            () -> SpyDownsampler.select(timestamps(5), new double[5], 5, 2, SpyDownsampler.Mode.LTTB));
+        assertEquals(SpyDownsampler.Mode.MINMAX, SpyDownsampler.Mode.fromParam("minmax"));
+    }
+
+    private long[] timestamps(int size) {
+        long[] x = new long[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = 1_700_000_000_000L + i * DAY_MILLIS;
+        }
+        return x;
+    }
+
+    private boolean isStrictlyAscending(int[] indices) {
+        for (int i = 1; i < indices.length; i++) {
+            if (indices[i] <= indices[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,303 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowRollup;
+import com.tanggo.fund.cashflow.spy.entity.SpyRollupGrain;
+import com.tanggo.fund.cashflow.spy.event.AbstractSpyUpdateBackplane;
+import com.tanggo.fund.cashflow.spy.event.SpyFlowResultSavedEvent;
+import com.tanggo.fund.cashflow.spy.event.SpyRemoteResultRelay;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowRollupRepository;
+import com.tanggo.fund.cashflow.spy.repository.SpyParquetPartitionCatalog;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 周期汇总维护测试(聚合SQL在内存DuckDB上执行，汇总表用内存仓库替身)
+ */
+class SpyFlowRollupServiceTest {
+
+    @TempDir
+    Path archiveDir;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private SpyParquetPartitionCatalog catalog;
+    private final Map<String, SpyFlowRollup> rollups = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private SpyFlowRollupService service;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:duckdb:", true);
+        dataSource.setAutoCommit(true);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        catalog = new SpyParquetPartitionCatalog(archiveDir.toString(), true);
+        service = new SpyFlowRollupService(jdbcTemplate, null, catalog, rollupRepository());
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void testBucketBoundaries() {
+        // 2024-03-31为周日，2024-04-01为周一且是第二季度首日
+        insert("SPY", "2024-03-31", "100.00", "2024-03-31T21:00:00Z");
+        insert("SPY", "2024-04-01", "50.00", "2024-04-01T21:00:00Z");
+
+        service.refreshBuckets("SPY", LocalDate.of(2024, 3, 31));
+        service.refreshBuckets("SPY", LocalDate.of(2024, 4, 1));
+
+        SpyFlowRollup week = rollup(SpyRollupGrain.WEEK, "2024-03-25");
+        assertEquals(LocalDate.of(2024, 3, 31), week.getBucketEnd(), "周桶为周一至周日");
+        assertEquals(1, week.getDayCount());
+        assertEquals(1, rollup(SpyRollupGrain.WEEK, "2024-04-01").getDayCount());
+        assertEquals(0, new BigDecimal("100.00").compareTo(rollup(SpyRollupGrain.MONTH, "2024-03-01").getTotalNetInflow()));
+        assertEquals(0, new BigDecimal("50.00").compareTo(rollup(SpyRollupGrain.MONTH, "2024-04-01").getTotalNetInflow()));
+        assertEquals(LocalDate.of(2024, 3, 31), rollup(SpyRollupGrain.QUARTER, "2024-01-01").getBucketEnd());
+        assertEquals(LocalDate.of(2024, 4, 1), rollup(SpyRollupGrain.QUARTER, "2024-04-01").getFirstDataDate());
+        assertEquals(6, rollups.size());
+    }
+
+    @Test
+    void testIncrementalRefreshUpdatesBucketInPlace() {
+        insert("SPY", "2024-05-06", "10.00", "2024-05-06T21:00:00Z");
+        service.refreshBuckets("SPY", LocalDate.of(2024, 5, 6));
+        Long weekId = rollup(SpyRollupGrain.WEEK, "2024-05-06").getId();
+
+        insert("SPY", "2024-05-07", "-4.00", "2024-05-07T21:00:00Z");
+        // 同一日期的重算结果替换旧值，不重复计入
+        insert("SPY", "2024-05-06", "30.00", "2024-05-06T22:00:00Z");
+        service.refreshBuckets("SPY", LocalDate.of(2024, 5, 7));
+
+        SpyFlowRollup week = rollup(SpyRollupGrain.WEEK, "2024-05-06");
+        assertEquals(weekId, week.getId(), "增量刷新应更新已有的桶");
+        assertEquals(2, week.getDayCount());
+        assertEquals(0, new BigDecimal("26.00").compareTo(week.getTotalNetInflow()));
+        assertEquals(0, new BigDecimal("-4.00").compareTo(week.getMinNetInflow()));
+        assertEquals(0, new BigDecimal("30.00").compareTo(week.getMaxNetInflow()));
+        assertEquals(0, new BigDecimal("13.00").compareTo(week.getAvgNetInflow()));
+        assertEquals(1, week.getValidationFailures(), "-4.00的记录验证未通过");
+    }
+
+    @Test
+    void testRefreshOnlyTouchesOwnTicker() {
+        insert("SPY", "2024-05-06", "10.00", "2024-05-06T21:00:00Z");
+        insert("QQQ", "2024-05-06", "99.00", "2024-05-06T21:00:00Z");
+
+        service.refreshBuckets("SPY", LocalDate.of(2024, 5, 6));
+
+        assertEquals(3, rollups.size());
+        assertTrue(rollups.values().stream().allMatch(r -> r.getTicker().equals("SPY")));
+        assertEquals(0, new BigDecimal("10.00").compareTo(rollup(SpyRollupGrain.MONTH, "2024-05-01").getTotalNetInflow()));
+    }
+
+    @Test
+    void testRefreshRemovesEmptyBucket() {
+        insert("SPY", "2024-05-06", "10.00", "2024-05-06T21:00:00Z");
+        service.refreshBuckets("SPY", LocalDate.of(2024, 5, 6));
+
+        jdbcTemplate.update("DELETE FROM spy_flow_result");
+        service.refreshBuckets("SPY", LocalDate.of(2024, 5, 6));
+
+        assertTrue(rollups.isEmpty(), "桶内没有结果时应删除汇总行");
+    }
+
+    @Test
+    void testRebuildMatchesIncrementalAndIncludesColdPartitions() throws Exception {
+        insert("SPY", "2024-01-02", "5.00", "2024-01-02T21:00:00Z");
+        insert("SPY", "2024-01-03", "7.00", "2024-01-03T21:00:00Z");
+        insert("SPY", "2024-02-05", "-3.00", "2024-02-05T21:00:00Z");
+        insert("QQQ", "2024-02-05", "8.00", "2024-02-05T21:00:00Z");
+        archive("2024-01-02");
+
+        service.refreshBuckets("SPY", LocalDate.of(2024, 1, 2));
+        service.refreshBuckets("SPY", LocalDate.of(2024, 2, 5));
+        service.refreshBuckets("QQQ", LocalDate.of(2024, 2, 5));
+        Map<String, SpyFlowRollup> incremental = Map.copyOf(rollups);
+
+        rollups.put("stale", SpyFlowRollup.builder().ticker("SPY").grain(SpyRollupGrain.WEEK)
+            .bucketStart(LocalDate.of(2023, 1, 2)).build());
+        int rebuilt = service.rebuild();
+
+        assertEquals(incremental.size(), rebuilt);
+        assertFalse(rollups.containsKey("stale"), "重建应清空旧汇总");
+        SpyFlowRollup january = rollup(SpyRollupGrain.MONTH, "2024-01-01");
+        assertEquals(2, january.getDayCount(), "冷分区中的结果也应参与汇总");
+        assertEquals(0, new BigDecimal("12.00").compareTo(january.getTotalNetInflow()));
+        incremental.values().forEach(expected -> {
+            SpyFlowRollup actual = rollups.get(key(expected.getTicker(), expected.getGrain(), expected.getBucketStart()));
+            assertNotNull(actual);
+            assertEquals(0, expected.getTotalNetInflow().compareTo(actual.getTotalNetInflow()), "全量重建应与增量结果一致");
+            assertEquals(expected.getDayCount(), actual.getDayCount());
+        });
+    }
+
+    @Test
+    void testSavedEventRefreshesThroughWriter() throws Exception {
+        SpyPersistenceWriter writer = new SpyPersistenceWriter(
+            new DataSourceTransactionManager(dataSource), new SimpleMeterRegistry(), 50, 1);
+        writer.start();
+        try {
+            SpyFlowRollupService withWriter = new SpyFlowRollupService(jdbcTemplate, writer, catalog, rollupRepository());
+            insert("SPY", "2024-05-06", "10.00", "2024-05-06T21:00:00Z");
+
+            withWriter.onResultSaved(new SpyFlowResultSavedEvent(SpyFlowResult.builder()
+                .dataDate(LocalDate.of(2024, 5, 6))
+                .ticker("SPY")
+                .build()));
+            writer.submit(() -> null).get(5, TimeUnit.SECONDS);
+
+            assertEquals(3, rollups.size(), "保存事件应刷新三个粒度的桶");
+        } finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    void testRemoteResultIncludedAfterLocalWrite() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SpyPersistenceWriter writer = new SpyPersistenceWriter(
+            new DataSourceTransactionManager(dataSource), registry, 50, 1);
+        SpyTickerPartitions partitions = new SpyTickerPartitions(registry, 1, 20);
+        SpyFlowRollupService withWriter = new SpyFlowRollupService(jdbcTemplate, writer, catalog, rollupRepository());
+        SpyFlowResultRepository flowResultRepository = mock(SpyFlowResultRepository.class);
+        when(flowResultRepository.findVersion(any(), any(), any())).thenReturn(List.of());
+        when(flowResultRepository.save(any())).thenAnswer(invocation -> {
+            SpyFlowResult result = invocation.getArgument(0);
+            insert(result.getTicker(), result.getDataDate().toString(),
+                result.getFinalNetInflow().toPlainString(), result.getTimestamp().toString());
+            return result;
+        });
+        // 对端实例发布的结果作为远程更新投递到本实例
+        AbstractSpyUpdateBackplane backplane = new AbstractSpyUpdateBackplane(registry) {
+            @Override
+            public void publish(SpyFlowResult result) {
+                deliverRemote(result, System.currentTimeMillis());
+            }
+        };
+        CountDownLatch applied = new CountDownLatch(1);
+        new SpyRemoteResultRelay(backplane, event -> {
+            withWriter.onResultSaved((SpyFlowResultSavedEvent) event);
+            applied.countDown();
+        }, flowResultRepository, writer, partitions);
+
+        writer.start();
+        partitions.start();
+        try {
+            insert("SPY", "2024-05-06", "10.00", "2024-05-06T21:00:00Z");
+            backplane.publish(SpyFlowResult.builder()
+                .ticker("SPY")
+                .dataDate(LocalDate.of(2024, 5, 7))
+                .timestamp(Instant.parse("2024-05-07T21:00:00Z"))
+                .finalNetInflow(new BigDecimal("5.00"))
+                .build());
+            assertTrue(applied.await(5, TimeUnit.SECONDS));
+            writer.submit(() -> null).get(5, TimeUnit.SECONDS);
+
+            SpyFlowRollup week = rollup(SpyRollupGrain.WEEK, "2024-05-06");
+            assertEquals(2, week.getDayCount(), "远程结果写入本地后应参与汇总");
+            assertEquals(0, new BigDecimal("15.00").compareTo(week.getTotalNetInflow()));
+        } finally {
+            partitions.stop();
+            writer.stop();
+        }
+    }
+
+    private void insert(String ticker, String dataDate, String netInflow, String timestamp) {
+        jdbcTemplate.update("INSERT INTO spy_flow_result (ticker, data_date, timestamp, final_net_inflow, " +
+                "flow_intensity, overall_confidence, data_quality_score, validation_passed) " +
+                "VALUES (?, CAST(? AS DATE), CAST(? AS TIMESTAMP), CAST(? AS DECIMAL(15,2)), 0.0010, 85.00, 90.00, ?)",
+            ticker, dataDate, timestamp.replace("T", " ").replace("Z", ""), netInflow, !netInflow.startsWith("-"));
+    }
+
+    /**
+     * 按归档服务的目录布局导出一天的分区并从热表删除
+     */
+    private void archive(String dataDate) throws Exception {
+        Path dir = catalog.partitionDir(SpyParquetPartitionCatalog.FLOW_RESULT_TABLE, LocalDate.parse(dataDate));
+        Files.createDirectories(dir);
+        jdbcTemplate.execute("COPY (SELECT * FROM spy_flow_result WHERE data_date = DATE '" + dataDate + "') TO '" +
+            dir.resolve("part-0.parquet") + "' (FORMAT PARQUET)");
+        jdbcTemplate.execute("DELETE FROM spy_flow_result WHERE data_date = DATE '" + dataDate + "'");
+        catalog.register(SpyParquetPartitionCatalog.FLOW_RESULT_TABLE, LocalDate.parse(dataDate));
+    }
+
+    private SpyFlowRollup rollup(SpyRollupGrain grain, String bucketStart) {
+        SpyFlowRollup rollup = rollups.get(key("SPY", grain, LocalDate.parse(bucketStart)));
+        assertNotNull(rollup, grain + "桶" + bucketStart + "应存在");
+        return rollup;
+    }
+
+    private static String key(String ticker, SpyRollupGrain grain, LocalDate bucketStart) {
+        return ticker + "/" + grain + "/" + bucketStart;
+    }
+
+    /**
+     * 以(ticker, grain, bucket_start)为键的内存汇总仓库
+     */
+    private SpyFlowRollupRepository rollupRepository() {
+        SpyFlowRollupRepository repository = mock(SpyFlowRollupRepository.class);
+        when(repository.findByTickerAndGrainAndBucketStart(any(), any(), any())).thenAnswer(invocation ->
+            Optional.ofNullable(rollups.get(key(invocation.getArgument(0), invocation.getArgument(1),
+                invocation.getArgument(2)))));
+        when(repository.save(any())).thenAnswer(invocation -> {
+            SpyFlowRollup rollup = invocation.getArgument(0);
+            if (rollup.getId() == null) {
+                rollup.setId(ids.incrementAndGet());
+            }
+            rollups.put(key(rollup.getTicker(), rollup.getGrain(), rollup.getBucketStart()), rollup);
+            return rollup;
+        });
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<SpyFlowRollup> saved = new ArrayList<>();
+            for (SpyFlowRollup rollup : invocation.<List<SpyFlowRollup>>getArgument(0)) {
+                saved.add(repository.save(rollup));
+            }
+            return saved;
+        });
+        doAnswer(invocation -> {
+            SpyFlowRollup rollup = invocation.getArgument(0);
+            rollups.remove(key(rollup.getTicker(), rollup.getGrain(), rollup.getBucketStart()));
+            return null;
+        }).when(repository).delete(any());
+        doAnswer(invocation -> {
+            rollups.clear();
+            return null;
+        }).when(repository).deleteAllInBatch();
+        return repository;
+    }
+}
@@ -0,0 +1,84 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.event.SpyPipelineTrace;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 数据新鲜度统计与SLO健康检查测试
+ */
+class SpyFreshnessHealthIndicatorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SpyFreshnessTracker tracker = new SpyFreshnessTracker(meterRegistry, Duration.ofMinutes(15));
+
+    @Test
+    void testStagesAndEndToEndRecorded() {
+        tracker.delivered(trace(Duration.ofMillis(800)));
+
+        assertEquals(1, meterRegistry.get("spy.freshness.end_to_end").timer().count());
+        // 客户端百分位为近似值
+        Duration p99 = tracker.endToEndPercentile(0.99).orElseThrow();
+        assertTrue(p99.toMillis() >= 700 && p99.toMillis() < 1000, "端到端耗时应从采集时刻算起: " + p99);
+        for (String stage : new String[]{"validated", "raw_saved", "calc_started", "calculated", "result_saved", "delivered"}) {
+            assertEquals(1, meterRegistry.get("spy.freshness.stage").tag("stage", stage).timer().count(), stage);
+        }
+        assertTrue(tracker.stagePercentiles(0.99).get("calc_started").toMillis() >= 350,
+            "应能定位到异步计算排队阶段");
+
+        tracker.delivered(null);
+        assertEquals(1, tracker.getDeliveredCount(), "无追踪信息的广播不计入");
+    }
+
+    @Test
+    void testDegradesWhenP99BreachesSlo() {
+        SpyFreshnessHealthIndicator indicator =
+            new SpyFreshnessHealthIndicator(tracker, Duration.ofSeconds(2), Duration.ofMinutes(15));
+        assertEquals(Status.UNKNOWN, indicator.health().getStatus(), "尚无样本时状态未知");
+
+        tracker.delivered(trace(Duration.ofMillis(500)));
+        assertEquals(Status.UP, indicator.health().getStatus());
+
+        tracker.delivered(trace(Duration.ofSeconds(5)));
+        Health health = indicator.health();
+        assertEquals(SpyFreshnessHealthIndicator.DEGRADED, health.getStatus(), "p99超过SLO应降级");
+        assertTrue(health.getDetails().containsKey("stageP99"), "降级时应给出各阶段p99");
+    }
+
+    @Test
+    void testDegradesWhenNoRecentDelivery() throws Exception {
+        SpyFreshnessHealthIndicator indicator =
+            new SpyFreshnessHealthIndicator(tracker, Duration.ofSeconds(2), Duration.ofMillis(1));
+        tracker.delivered(trace(Duration.ofMillis(100)));
+        Thread.sleep(5);
+
+        Health health = indicator.health();
+        assertEquals(SpyFreshnessHealthIndicator.DEGRADED, health.getStatus(), "长时间没有新推送应降级");
+        assertNotNull(health.getDetails().get("message"));
+    }
+
+    /**
+     * 采集于age之前，其中一半时间在异步计算排队
+     */
+    private SpyPipelineTrace trace(Duration age) {
+        Instant fetched = Instant.now().minus(age);
+        Duration step = age.dividedBy(10);
+        Map<SpyPipelineTrace.Stage, Instant> stages = new EnumMap<>(SpyPipelineTrace.Stage.class);
+        stages.put(SpyPipelineTrace.Stage.FETCHED, fetched);
+        stages.put(SpyPipelineTrace.Stage.VALIDATED, fetched.plus(step));
+        stages.put(SpyPipelineTrace.Stage.RAW_SAVED, fetched.plus(step.multipliedBy(2)));
+        stages.put(SpyPipelineTrace.Stage.CALC_STARTED, fetched.plus(step.multipliedBy(7)));
+        stages.put(SpyPipelineTrace.Stage.CALCULATED, fetched.plus(step.multipliedBy(8)));
+        stages.put(SpyPipelineTrace.Stage.RESULT_SAVED, fetched.plus(step.multipliedBy(9)));
+        return new SpyPipelineTrace(stages);
+    }
+}
@@ -0,0 +1,105 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.repository.SpyParquetPartitionCatalog;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 冷数据归档测试: 导出到删除提交之间分区始终可读，回滚时撤销登记
+ */
+class SpyParquetArchiveServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 1, 1);
+    private static final String TABLE = SpyParquetPartitionCatalog.FLOW_RESULT_TABLE;
+
+    @TempDir
+    Path archiveDir;
+
+    private SingleConnectionDataSource dataSource;
+    private SpyPersistenceWriter writer;
+    private SpyParquetPartitionCatalog catalog;
+    private final List<Long> visibleDuringDelete = new ArrayList<>();
+    private boolean failDelete;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:duckdb:", true);
+        dataSource.setAutoCommit(true);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        writer = new SpyPersistenceWriter(new DataSourceTransactionManager(dataSource), new SimpleMeterRegistry(), 50, 1);
+        writer.start();
+        catalog = new SpyParquetPartitionCatalog(archiveDir.toString(), true);
+
+        new JdbcTemplate(dataSource).update("INSERT INTO " + TABLE + " (ticker, data_date, timestamp, final_net_inflow) " +
+            "VALUES ('SPY', DATE '2024-01-01', TIMESTAMP '2024-01-01 21:00:00', 1.00)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.stop();
+        dataSource.destroy();
+    }
+
+    @Test
+    void testPartitionReadableUntilDeleteCommits() {
+        service().archiveTable(TABLE, DAY.plusDays(1));
+
+        assertEquals(List.of(1L), visibleDuringDelete, "热表数据删除后、提交前冷分区应已可读");
+        assertEquals(1, count(), "归档后从冷分区读取");
+        assertEquals(0, new JdbcTemplate(dataSource).queryForObject("SELECT COUNT(*) FROM " + TABLE, Long.class));
+    }
+
+    @Test
+    void testRollbackUnregistersPartition() throws Exception {
+        failDelete = true;
+
+        assertThrows(RuntimeException.class, () -> service().archiveTable(TABLE, DAY.plusDays(1)));
+
+        assertTrue(catalog.partitionGlobs(TABLE, DAY, DAY).isEmpty(), "回滚后应撤销分区登记");
+        try (Stream<Path> files = Files.walk(archiveDir)) {
+            assertEquals(0, files.filter(file -> file.toString().endsWith(".parquet")).count(), "回滚后应删除导出的文件");
+        }
+        assertEquals(1, count(), "热表数据保留");
+    }
+
+    private long count() {
+        return new JdbcTemplate(dataSource).queryForObject(
+            "SELECT COUNT(DISTINCT id) FROM " + catalog.tieredSource(TABLE, DAY, DAY), Long.class);
+    }
+
+    private SpyParquetArchiveService service() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource) {
+            @Override
+            public int update(String sql) {
+                int deleted = super.update(sql);
+                if (sql.startsWith("DELETE")) {
+                    // 同一连接上读取，能看到事务内已删除热表数据后的状态
+                    visibleDuringDelete.add(count());
+                    if (failDelete) {
+                        throw new IllegalStateException("删除失败");
+                    }
+                }
+                return deleted;
+            }
+        };
+        return new SpyParquetArchiveService(jdbcTemplate, writer, catalog, 90, "zstd");
+    }
+}
@@ -0,0 +1,171 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.repository.InMemorySpyLeaseStore;
+import com.tanggo.fund.cashflow.spy.repository.JdbcSpyLeaseStore;
+import com.tanggo.fund.cashflow.spy.repository.SpyLeaseStore;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 采集分片协调测试
+ */
+class SpyShardCoordinatorTest {
+
+    private static final List<String> TICKERS = IntStream.range(0, 300)
+        .mapToObj(i -> "T" + i)
+        .collect(Collectors.toList());
+
+    private final SpyLeaseStore store = new InMemorySpyLeaseStore();
+
+    @Test
+    void testShardsPartitionUniverse() {
+        SpyShardCoordinator a = coordinator("node-a", Duration.ofMinutes(1), new SimpleMeterRegistry());
+        SpyShardCoordinator b = coordinator("node-b", Duration.ofMinutes(1), new SimpleMeterRegistry());
+        SpyShardCoordinator c = coordinator("node-c", Duration.ofMinutes(1), new SimpleMeterRegistry());
+        a.refresh();
+        b.refresh();
+        c.refresh();
+
+        // 所有节点都看到完整成员后分片稳定
+        Set<String> shardA = a.refresh();
+        Set<String> shardB = b.refresh();
+        Set<String> shardC = c.refresh();
+
+        assertEquals(Set.of("node-a", "node-b", "node-c"), a.getMembers());
+        assertEquals(TICKERS.size(), shardA.size() + shardB.size() + shardC.size(), "分片之间不应重叠");
+        Set<String> union = new HashSet<>(shardA);
+        union.addAll(shardB);
+        union.addAll(shardC);
+        assertEquals(new HashSet<>(TICKERS), union, "分片应覆盖全部ticker");
+        assertFalse(shardA.isEmpty() || shardB.isEmpty() || shardC.isEmpty());
+    }
+
+    @Test
+    void testRebalanceWhenNodeDies() throws Exception {
+        SimpleMeterRegistry registryA = new SimpleMeterRegistry();
+        SpyShardCoordinator a = coordinator("node-a", Duration.ofMillis(200), registryA);
+        SpyShardCoordinator b = coordinator("node-b", Duration.ofMillis(200), new SimpleMeterRegistry());
+        a.refresh();
+        b.refresh();
+        Set<String> shardA = a.refresh();
+        assertTrue(shardA.size() < TICKERS.size());
+
+        // node-b停止续期(宕机)，租约过期后node-a接管全部ticker
+        Thread.sleep(250);
+        assertEquals(new HashSet<>(TICKERS), a.refresh(), "离开节点的分片应由存活节点接管");
+        assertEquals(Set.of("node-a"), a.getMembers());
+        assertEquals(1, registryA.get("spy.lease.handover").timer().count());
+        assertTrue(registryA.get("spy.lease.handover").timer().totalTime(TimeUnit.MILLISECONDS) >= 200,
+            "换主耗时从离开节点最后续期算起");
+        assertEquals(TICKERS.size(), registryA.get("spy.shard.owned").gauge().value());
+
+        // node-b恢复后重新加入，只迁回其分片
+        Set<String> shardB = b.refresh();
+        assertEquals(TICKERS.size() - shardB.size(), a.refresh().size());
+        assertEquals(shardA, a.getOwnedTickers(), "重新加入后分片应恢复原状");
+    }
+
+    @Test
+    void testReleaseHandsOverImmediately() {
+        SpyShardCoordinator a = coordinator("node-a", Duration.ofMinutes(1), new SimpleMeterRegistry());
+        SpyShardCoordinator b = coordinator("node-b", Duration.ofMinutes(1), new SimpleMeterRegistry());
+        a.refresh();
+        b.refresh();
+        a.refresh();
+
+        a.release();
+        assertFalse(a.isHeld());
+        assertTrue(a.getOwnedTickers().isEmpty());
+        assertEquals(new HashSet<>(TICKERS), b.refresh(), "释放后其他实例无需等待过期");
+    }
+
+    @Test
+    void testDepartedMemberLeasesRemoved() throws Exception {
+        SpyShardCoordinator a = coordinator("node-a", Duration.ofMillis(100), new SimpleMeterRegistry());
+        SpyShardCoordinator b = coordinator("node-b", Duration.ofMillis(100), new SimpleMeterRegistry());
+        a.refresh();
+        b.refresh();
+
+        // node-b停止续期；过期后先保留一个ttl，供其余节点记录换主
+        Thread.sleep(120);
+        a.refresh();
+        assertTrue(store.find("spy-collector/node-b").isPresent(), "刚过期的成员租约暂不删除");
+
+        Thread.sleep(150);
+        a.refresh();
+        assertEquals(Set.of("spy-collector/node-a"), store.findByPrefix("spy-collector/").keySet(),
+            "离开节点的成员租约应被清理，避免每次重启后累积");
+    }
+
+    @Test
+    void testStoreFailureStopsCollection() {
+        SpyLeaseStore failing = new InMemorySpyLeaseStore() {
+            @Override
+            public Acquisition tryAcquire(String name, String owner, Instant now, Duration ttl) {
+                throw new IllegalStateException("数据库不可用");
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SpyShardCoordinator isolated = new SpyShardCoordinator(failing, registry, "spy-collector", "node-x",
+            Duration.ofMinutes(1), TICKERS, 128);
+        assertTrue(isolated.refresh().isEmpty(), "租约存储不可用时不采集");
+        assertEquals(0, registry.get("spy.lease.held").gauge().value());
+    }
+
+    @Test
+    void testJdbcStoreConditionalTakeover() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:lease;DB_CLOSE_DELAY=-1", "sa", "");
+        SpyPersistenceWriter writer = new SpyPersistenceWriter(
+            new DataSourceTransactionManager(dataSource), new SimpleMeterRegistry(), 50, 1);
+        writer.start();
+        try {
+            SpyLeaseStore jdbcStore = new JdbcSpyLeaseStore(new JdbcTemplate(dataSource), writer);
+            Instant now = Instant.now();
+            Duration ttl = Duration.ofSeconds(30);
+
+            assertTrue(jdbcStore.tryAcquire("collector", "node-a", now, ttl).acquired());
+            assertFalse(jdbcStore.tryAcquire("collector", "node-b", now.plusSeconds(10), ttl).acquired());
+            assertTrue(jdbcStore.tryAcquire("collector", "node-a", now.plusSeconds(20), ttl).acquired(), "持有者续期");
+
+            SpyLeaseStore.Acquisition takeover = jdbcStore.tryAcquire("collector", "node-b", now.plusSeconds(51), ttl);
+            assertTrue(takeover.acquired(), "过期后可接管");
+            assertEquals("node-a", takeover.previous().owner());
+            assertEquals(now.plusSeconds(20).toEpochMilli(), takeover.previous().renewedAt().toEpochMilli());
+
+            jdbcStore.release("collector", "node-a");
+            assertEquals("node-b", jdbcStore.find("collector").orElseThrow().owner(), "非持有者不能释放");
+
+            jdbcStore.tryAcquire("spy_collector/node-c", "node-c", now, ttl);
+            jdbcStore.tryAcquire("spyXcollector/node-d", "node-d", now, ttl);
+            assertEquals(Set.of("spy_collector/node-c"), jdbcStore.findByPrefix("spy_collector/").keySet(),
+                "前缀中的_不应作为通配符");
+
+            jdbcStore.tryAcquire("spy_collector/node-e", "node-e", now.plusSeconds(60), ttl);
+            assertEquals(1, jdbcStore.removeStale("spy_collector/", now.plusSeconds(30)), "只删除停止续期的租约");
+            assertEquals(Set.of("spy_collector/node-e"), jdbcStore.findByPrefix("spy_collector/").keySet());
+            assertTrue(jdbcStore.find("spyXcollector/node-d").isPresent(), "其他前缀不受影响");
+        } finally {
+            writer.stop();
+        }
+    }
+
+    private SpyShardCoordinator coordinator(String owner, Duration ttl, SimpleMeterRegistry registry) {
+        return new SpyShardCoordinator(store, registry, "spy-collector", owner, ttl, TICKERS, 128);
+    }
+}
@@ -0,0 +1,144 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.entity.SpyRawData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ticker分区基准: 分区数从1到CPU核数的吞吐对比(对照组为全局锁共享状态)
+ *
+ * 标记为load，默认构建不运行，使用 mvn -B test -Pload-test 执行；功能测试见SpyTickerPartitionsTest
+ */
+@Slf4j
+@Tag("load")
+class SpyTickerPartitionsBenchmarkTest {
+
+    private static final int TICKERS = 1024;
+    private static final int TASKS = 200_000;
+    private static final int PRODUCERS = 2;
+
+    private final SpyCalculationService calculator = new SpyCalculationService(null, null, null, null, null);
+
+    @Test
+    void benchmarkScalingWithPartitions() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> counts = new ArrayList<>();
+        for (int n = 1; n < cores; n *= 2) {
+            counts.add(n);
+        }
+        counts.add(cores);
+
+        log.info(String.format("CPU核数=%d ticker数=%d 任务数=%d", cores, TICKERS, TASKS));
+        double baseline = 0;
+        for (int workers : counts) {
+            runPartitioned(workers); // 预热
+            double partitioned = runPartitioned(workers);
+            double locked = runLocked(workers);
+            if (baseline == 0) {
+                baseline = partitioned;
+            }
+            log.info(String.format("线程数=%-3d 分区无锁=%,.0f/s (x%.2f)  全局锁=%,.0f/s",
+                workers, partitioned, partitioned / baseline, locked));
+        }
+    }
+
+    /**
+     * 分区模型: 状态只由所属分区线程访问
+     */
+    private double runPartitioned(int workers) throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SpyTickerPartitions partitions = new SpyTickerPartitions(registry, workers, 20);
+        partitions.start();
+        try {
+            CountDownLatch done = new CountDownLatch(TASKS);
+            int[] peakDepth = new int[workers];
+            long elapsed = produce((ticker, raw) -> partitions.execute(ticker, state -> {
+                process(state, raw);
+                done.countDown();
+            }), () -> {
+                int[] depths = partitions.getQueueDepths();
+                for (int i = 0; i < depths.length; i++) {
+                    peakDepth[i] = Math.max(peakDepth[i], depths[i]);
+                }
+            }, done);
+            log.info(String.format("    分区数=%d 各分区峰值队列深度=%s", workers, Arrays.toString(peakDepth)));
+            return TASKS * 1e9 / elapsed;
+        } finally {
+            partitions.stop();
+        }
+    }
+
+    /**
+     * 对照组: 线程池 + 全局锁保护的共享状态
+     */
+    private double runLocked(int workers) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        Map<String, SpyTickerState> states = new HashMap<>();
+        Object lock = new Object();
+        try {
+            CountDownLatch done = new CountDownLatch(TASKS);
+            long elapsed = produce((ticker, raw) -> pool.execute(() -> {
+                synchronized (lock) {
+                    process(states.computeIfAbsent(ticker, key -> new SpyTickerState(key, 20)), raw);
+                }
+                done.countDown();
+            }), () -> {
+            }, done);
+            return TASKS * 1e9 / elapsed;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void process(SpyTickerState state, SpyRawData raw) {
+        SpyFlowResult result = calculator.calculateSpyFlow(raw);
+        state.calculated(result);
+        state.saved(result);
+    }
+
+    private long produce(TaskSink sink, Runnable sampler, CountDownLatch done) throws Exception {
+        List<SpyRawData> samples = new ArrayList<>(TICKERS);
+        for (int t = 0; t < TICKERS; t++) {
+            samples.add(SpyTickerPartitionsTest.rawData("T" + t, t));
+        }
+
+        long start = System.nanoTime();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int offset = p;
+            Thread producer = new Thread(() -> {
+                for (int i = offset; i < TASKS; i += PRODUCERS) {
+                    SpyRawData raw = samples.get(i % TICKERS);
+                    sink.accept(raw.getTicker(), raw);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        while (!done.await(5, TimeUnit.MILLISECONDS)) {
+            sampler.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        return elapsed;
+    }
+
+    private interface TaskSink {
+        void accept(String ticker, SpyRawData raw);
+    }
+}
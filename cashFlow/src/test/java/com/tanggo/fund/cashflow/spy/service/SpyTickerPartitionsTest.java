@@ -0,0 +1,196 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.entity.SpyRawData;
+import com.tanggo.fund.cashflow.spy.event.InMemorySpyUpdateBackplane;
+import com.tanggo.fund.cashflow.spy.event.SpyFlowResultSavedEvent;
+import com.tanggo.fund.cashflow.spy.repository.SpyFlowResultRepository;
+import com.tanggo.fund.cashflow.spy.repository.SpyPersistenceWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * ticker分区测试: 单线程归属、保存确认后按序发布、停止时不丢弃已提交的保存确认
+ */
+class SpyTickerPartitionsTest {
+
+    @Test
+    void testTickerStateOwnedBySingleThread() throws Exception {
+        SpyTickerPartitions partitions = new SpyTickerPartitions(new SimpleMeterRegistry(), 4, 10);
+        partitions.start();
+        try {
+            Map<String, Set<String>> threads = new ConcurrentHashMap<>();
+            AtomicInteger outOfOrder = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(64 * 500);
+
+            for (int i = 0; i < 500; i++) {
+                for (int t = 0; t < 64; t++) {
+                    String ticker = "T" + t;
+                    long expected = i;
+                    partitions.execute(ticker, state -> {
+                        threads.computeIfAbsent(ticker, key -> ConcurrentHashMap.newKeySet())
+                            .add(Thread.currentThread().getName());
+                        if (state.getCalculatedCount() != expected) {
+                            outOfOrder.incrementAndGet();
+                        }
+                        state.calculated(result(ticker, expected));
+                        done.countDown();
+                    });
+                }
+            }
+
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(0, outOfOrder.get(), "同一ticker的任务应按提交顺序执行");
+            threads.forEach((ticker, names) -> assertEquals(1, names.size(), ticker + "应只由一个线程处理"));
+
+            SpyTickerState.Snapshot snapshot = partitions.query("T0", SpyTickerState::snapshot).get(5, TimeUnit.SECONDS);
+            assertEquals(500, snapshot.calculated());
+            assertEquals(10, snapshot.rollingSamples());
+            assertEquals(new BigDecimal("494.50"), snapshot.rollingAverageInflow(), "滚动均值为最近10次(490..499)");
+        } finally {
+            partitions.stop();
+        }
+    }
+
+    @Test
+    void testResultsPublishedInOrderAfterSave() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SpyTickerPartitions partitions = new SpyTickerPartitions(registry, 2, 20);
+        SpyPersistenceWriter writer = new SpyPersistenceWriter(new NoOpTransactionManager(), registry, 50, 1);
+        SpyFlowResultRepository repository = mock(SpyFlowResultRepository.class);
+        when(repository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        InMemorySpyUpdateBackplane backplane = new InMemorySpyUpdateBackplane(registry);
+        SpyCalculationService service = new SpyCalculationService(repository, backplane, writer, event -> {
+        }, partitions);
+
+        List<BigDecimal> published = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(100);
+        backplane.subscribe(result -> {
+            published.add(result.getFinalNetInflow());
+            done.countDown();
+        });
+
+        writer.start();
+        partitions.start();
+        try {
+            for (int i = 0; i < 100; i++) {
+                service.calculateSpyFlowAsync(rawData("SPY", i));
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+
+            for (int i = 0; i < 100; i++) {
+                assertEquals(0, BigDecimal.valueOf(i).compareTo(published.get(i)), "同一ticker应按计算顺序发布");
+            }
+            SpyTickerState.Snapshot snapshot = partitions.query("SPY", SpyTickerState::snapshot).get(5, TimeUnit.SECONDS);
+            assertEquals(100, snapshot.saved());
+            assertFalse(snapshot.pending(), "保存确认后不应有待保存结果");
+            assertEquals(0, BigDecimal.valueOf(99).compareTo(snapshot.latest().getFinalNetInflow()));
+            assertEquals(0, registry.get("spy.partition.queue.depth").tag("partition", "0").gauge().value());
+        } finally {
+            partitions.stop();
+            writer.stop();
+        }
+    }
+
+    @Test
+    void testStopWaitsForPendingSaves() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SpyTickerPartitions partitions = new SpyTickerPartitions(registry, 2, 20);
+        SpyPersistenceWriter writer = new SpyPersistenceWriter(new NoOpTransactionManager(), registry, 1, 1);
+        SpyFlowResultRepository repository = mock(SpyFlowResultRepository.class);
+        when(repository.save(any())).thenAnswer(invocation -> {
+            // 慢速提交，停止时仍有保存未确认
+            Thread.sleep(2);
+            return invocation.getArgument(0);
+        });
+        InMemorySpyUpdateBackplane backplane = new InMemorySpyUpdateBackplane(registry);
+        List<BigDecimal> savedEvents = new CopyOnWriteArrayList<>();
+        SpyCalculationService service = new SpyCalculationService(repository, backplane, writer,
+            event -> savedEvents.add(((SpyFlowResultSavedEvent) event).getResult().getFinalNetInflow()), partitions);
+        List<BigDecimal> published = new CopyOnWriteArrayList<>();
+        backplane.subscribe(result -> published.add(result.getFinalNetInflow()));
+
+        writer.start();
+        partitions.start();
+        for (int i = 0; i < 50; i++) {
+            service.calculateSpyFlowAsync(rawData("SPY", i));
+        }
+        // 与容器关闭顺序一致: 分区先停，单写线程后停
+        partitions.stop();
+        service.calculateSpyFlowAsync(rawData("SPY", 50));
+        writer.stop();
+
+        verify(repository, times(50)).save(any());
+        assertEquals(50, published.size(), "停止前已接受的计算在保存确认后都应发布");
+        assertEquals(50, savedEvents.size(), "每个已提交的结果都应发出保存事件");
+        for (int i = 0; i < 50; i++) {
+            assertEquals(0, BigDecimal.valueOf(i).compareTo(published.get(i)), "停止过程中仍按计算顺序发布");
+        }
+    }
+
+    static SpyRawData rawData(String ticker, long inflow) {
+        return SpyRawData.builder()
+            .ticker(ticker)
+            .dataDate(LocalDate.of(2025, 1, 2))
+            .aum(new BigDecimal("450000000000"))
+            .marketPrice(new BigDecimal("480.50"))
+            .nav(new BigDecimal("480.40"))
+            .sharesOutstanding(935000000L)
+            .dailyNetInflow(BigDecimal.valueOf(inflow))
+            .calculatedInflow(BigDecimal.valueOf(inflow))
+            .creationUnits(10)
+            .redemptionUnits(2)
+            .dataSource("YAHOO_FINANCE")
+            .confidenceScore(85)
+            .build();
+    }
+
+    private static SpyFlowResult result(String ticker, long inflow) {
+        return SpyFlowResult.builder()
+            .ticker(ticker)
+            .finalNetInflow(BigDecimal.valueOf(inflow))
+            .build();
+    }
+
+    /**
+     * 不连接数据库的事务管理器
+     */
+    static final class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ticker一致性哈希环测试
+ */
+class SpyTickerRingTest {
+
+    private static final List<String> TICKERS = IntStream.range(0, 2000)
+        .mapToObj(i -> "T" + i)
+        .collect(Collectors.toList());
+
+    @Test
+    void testShardsAreBalanced() {
+        for (int nodeCount = 1; nodeCount <= 8; nodeCount++) {
+            Map<String, Integer> shardSizes = shardSizes(new SpyTickerRing(nodes(nodeCount), 128));
+
+            assertEquals(nodeCount, shardSizes.size());
+            int ideal = TICKERS.size() / nodeCount;
+            int largest = shardSizes.values().stream().max(Integer::compare).orElseThrow();
+            // 单节点工作量随节点数近似线性下降
+            assertTrue(largest <= ideal * 1.35, nodeCount + "个节点时最大分片=" + largest + ", 理想=" + ideal);
+        }
+    }
+
+    @Test
+    void testOnlyDepartedNodeTickersMove() {
+        SpyTickerRing before = new SpyTickerRing(nodes(4), 128);
+        SpyTickerRing after = new SpyTickerRing(List.of("node-0", "node-1", "node-3"), 128);
+
+        for (String ticker : TICKERS) {
+            String previous = before.ownerOf(ticker).orElseThrow();
+            if (!previous.equals("node-2")) {
+                assertEquals(previous, after.ownerOf(ticker).orElseThrow(), "存活节点的ticker不应迁移: " + ticker);
+            }
+        }
+    }
+
+    @Test
+    void testJoinMovesAboutOneNth() {
+        SpyTickerRing before = new SpyTickerRing(nodes(4), 128);
+        SpyTickerRing after = new SpyTickerRing(nodes(5), 128);
+
+        long moved = TICKERS.stream()
+            .filter(ticker -> !before.ownerOf(ticker).equals(after.ownerOf(ticker)))
+            .count();
+        long movedToNewNode = TICKERS.stream()
+            .filter(ticker -> !before.ownerOf(ticker).equals(after.ownerOf(ticker)))
+            .filter(ticker -> after.ownerOf(ticker).orElseThrow().equals("node-4"))
+            .count();
+
+        assertEquals(moved, movedToNewNode, "新节点加入时只有迁往新节点的ticker改变归属");
+        assertTrue(moved < TICKERS.size() * 0.3, "迁移比例应约为1/5: " + moved);
+    }
+
+    @Test
+    void testAssignmentIndependentOfNodeOrder() {
+        SpyTickerRing a = new SpyTickerRing(List.of("node-0", "node-1", "node-2"), 64);
+        SpyTickerRing b = new SpyTickerRing(List.of("node-2", "node-0", "node-1"), 64);
+
+        for (String ticker : TICKERS) {
+            assertEquals(a.ownerOf(ticker), b.ownerOf(ticker), "各实例看到的节点顺序不同也应得到相同分片");
+        }
+        assertTrue(new SpyTickerRing(List.of(), 64).ownerOf("SPY").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> new SpyTickerRing(List.of("node-0"), 0));
+    }
+
+    private static List<String> nodes(int count) {
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            nodes.add("node-" + i);
+        }
+        return nodes;
+    }
+
+    private static Map<String, Integer> shardSizes(SpyTickerRing ring) {
+        Map<String, Integer> sizes = new HashMap<>();
+        for (String ticker : TICKERS) {
+            sizes.merge(ring.ownerOf(ticker).orElseThrow(), 1, Integer::sum);
+        }
+        return sizes;
+    }
+}
@@ -0,0 +1,138 @@
+package com.tanggo.fund.cashflow.spy.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanggo.fund.cashflow.spy.dto.SpyFlowResponse;
+import com.tanggo.fund.cashflow.spy.repository.SpyParquetPartitionCatalog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 列式时间序列测试(投影查询在内存DuckDB上执行)
+ */
+class SpyTimeSeriesServiceTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @TempDir
+    Path archiveDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private SpyTimeSeriesService service;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:duckdb:", true);
+        dataSource.setAutoCommit(true);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        service = new SpyTimeSeriesService(jdbcTemplate, new SpyParquetPartitionCatalog(archiveDir.toString(), true), null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void testResponseShape() throws Exception {
+        insert("SPY", "2024-01-01", "100.50", "85.00", "0.0012", "2024-01-01 21:00:00");
+        insert("SPY", "2024-01-02", "-20.00", "80.00", "0.0008", "2024-01-02 21:00:00");
+        // 同日更晚的结果覆盖较早的
+        insert("SPY", "2024-01-02", "-30.00", "82.00", "0.0009", "2024-01-02 22:00:00");
+        insert("QQQ", "2024-01-02", "999.00", "90.00", "0.0100", "2024-01-02 21:00:00");
+
+        JsonNode data = toJson(service.getColumnar("SPY", START, START.plusDays(1))).get("data");
+        JsonNode columns = data.get("columns");
+
+        assertEquals("SPY", data.get("symbol").asText());
+        assertEquals("2024-01-01/2024-01-02", data.get("timeRange").asText());
+        assertEquals(START.toEpochDay() * 86_400_000L, columns.get("timestamps").get(0).asLong(), "时间戳为当日UTC零点");
+        assertEquals(START.plusDays(1).toEpochDay() * 86_400_000L, columns.get("timestamps").get(1).asLong());
+        assertEquals(100.5, columns.get("netInflow").get(0).asDouble());
+        assertEquals(-30.0, columns.get("netInflow").get(1).asDouble(), "同日取时间戳最新的一条");
+        assertEquals(82.0, columns.get("confidence").get(1).asDouble());
+        assertEquals(0.0009, columns.get("flowIntensity").get(1).asDouble());
+        assertEquals(2, columns.get("sourcePoints").asInt());
+        assertTrue(columns.get("downsample").isNull(), "未降采样时不标注算法");
+        assertEquals(70.5, data.get("summary").get("totalNetInflow").asDouble());
+        assertEquals(82, data.get("summary").get("confidence").asInt());
+    }
+
+    @Test
+    void testMissingValuesSerializeAsNull() throws Exception {
+        insert("SPY", "2024-01-01", "100.50", "85.00", "0.0012", "2024-01-01 21:00:00");
+        insert("SPY", "2024-01-02", null, null, null, "2024-01-02 21:00:00");
+        insert("SPY", "2024-01-03", "-20.00", "80.00", "0.0008", "2024-01-03 21:00:00");
+
+        SpyFlowResponse response = service.getColumnar("SPY", START, START.plusDays(2));
+        String json = objectMapper.writeValueAsString(response);
+        JsonNode columns = objectMapper.readTree(json).get("data").get("columns");
+
+        assertFalse(json.contains("NaN"), "缺失值不应序列化为NaN字符串: " + json);
+        assertEquals(3, columns.get("netInflow").size(), "缺失的点仍占位，与时间戳对齐");
+        assertTrue(columns.get("netInflow").get(1).isNull());
+        assertTrue(columns.get("confidence").get(1).isNull());
+        assertTrue(columns.get("flowIntensity").get(1).isNull());
+        assertEquals(-20.0, columns.get("netInflow").get(2).asDouble());
+        assertEquals(80.5, objectMapper.readTree(json).get("data").get("summary").get("totalNetInflow").asDouble(),
+            "汇总跳过缺失值");
+    }
+
+    @Test
+    void testDownsampledShape() throws Exception {
+        for (int day = 0; day < 50; day++) {
+            String inflow = day == 25 ? null : String.valueOf(day % 7 * 10 - 30);
+            insert("SPY", START.plusDays(day).toString(), inflow, "85.00", "0.0010",
+                START.plusDays(day) + " 21:00:00");
+        }
+
+        JsonNode columns = toJson(service.getColumnar("SPY", START, START.plusDays(49), 10, SpyDownsampler.Mode.LTTB))
+            .get("data").get("columns");
+
+        assertEquals(10, columns.get("timestamps").size());
+        assertEquals(10, columns.get("netInflow").size());
+        assertEquals(10, columns.get("confidence").size());
+        assertEquals(10, columns.get("flowIntensity").size());
+        assertEquals(50, columns.get("sourcePoints").asInt());
+        assertEquals("lttb", columns.get("downsample").asText());
+        for (JsonNode value : columns.get("netInflow")) {
+            assertTrue(value.isNumber(), "降采样不应选中缺失点");
+        }
+    }
+
+    @Test
+    void testEmptyRange() throws Exception {
+        JsonNode data = toJson(service.getColumnar("SPY", START, START.plusDays(1))).get("data");
+
+        assertEquals(0, data.get("columns").get("timestamps").size());
+        assertEquals(0, data.get("columns").get("netInflow").size());
+        assertTrue(data.get("summary").isNull(), "无数据时不生成汇总");
+    }
+
+    private JsonNode toJson(SpyFlowResponse response) throws Exception {
+        return objectMapper.readTree(objectMapper.writeValueAsString(response));
+    }
+
+    private void insert(String ticker, String dataDate, String netInflow, String confidence, String intensity,
+                        String timestamp) {
+        jdbcTemplate.update("INSERT INTO spy_flow_result (ticker, data_date, timestamp, final_net_inflow, " +
+                "overall_confidence, flow_intensity) VALUES (?, CAST(? AS DATE), CAST(? AS TIMESTAMP), " +
+                "CAST(? AS DECIMAL(15,2)), CAST(? AS DECIMAL(5,2)), CAST(? AS DECIMAL(8,4)))",
+            ticker, dataDate, timestamp, netInflow, confidence, intensity);
+    }
+}
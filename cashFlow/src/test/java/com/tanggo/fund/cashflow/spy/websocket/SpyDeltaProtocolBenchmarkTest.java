@@ -0,0 +1,292 @@
+package com.tanggo.fund.cashflow.spy.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanggo.fund.cashflow.spy.cache.SpyFlowHotWindow;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.event.InMemorySpyUpdateBackplane;
+import com.tanggo.fund.cashflow.spy.event.SpyUpdateJournal;
+import com.tanggo.fund.cashflow.spy.service.SpyFlowQueryService;
+import com.tanggo.fund.cashflow.spy.service.SpyFreshnessTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 差量协议测试与基准: v1完整帧对比v2差量帧的每次更新字节数及广播的CPU耗时
+ *
+ * 基准(默认1万会话，-Dload.delta-recipients调整)标记为load，默认构建不运行，使用 mvn -B test -Pload-test 执行
+ */
+@Slf4j
+class SpyDeltaProtocolBenchmarkTest {
+
+    private static final int RECIPIENTS = Integer.getInteger("load.delta-recipients", 10_000);
+    private static final int SMALL_RECIPIENTS = 20;
+    private static final int UPDATES = 20;
+    private static final int WARMUP = 5;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Test
+    void testSnapshotThenDeltaCarriesOnlyChangedFields() throws Exception {
+        SpyDeltaEncoder encoder = new SpyDeltaEncoder(objectMapper);
+        encoder.apply(update(0), 1);
+
+        JsonNode snapshot = objectMapper.readTree(snapshot(encoder).orElseThrow().getJson());
+        assertEquals("snapshot", snapshot.get("type").asText());
+        assertEquals(1, snapshot.get("ver").asLong());
+        assertEquals("North America", snapshot.get("data").get("geo").asText(), "快照应包含全部字段");
+        assertSame(snapshot(encoder).orElseThrow(), snapshot(encoder).orElseThrow(), "同一版本的快照帧应共享");
+
+        SpyFlowResult next = update(1);
+        next.setFlowIntensity(new BigDecimal("0.12340"));
+        JsonNode delta = objectMapper.readTree(encoder.apply(next, 2).getJson());
+        assertEquals("delta", delta.get("type").asText());
+        assertEquals("SPY", delta.get("ticker").asText());
+        assertEquals(2, delta.get("seq").asLong());
+        assertEquals(1, delta.get("base").asLong());
+        assertEquals(2, delta.get("ver").asLong());
+        List<String> changed = new ArrayList<>();
+        delta.get("changes").fieldNames().forEachRemaining(changed::add);
+        assertEquals(List.of("id", "ts", "netInflow", "etfCom", "yahoo"), changed, "差量应只包含变化字段，数值精度差异不算变化");
+
+        assertNull(encoder.apply(update(1), 3), "无变化的更新不应产生差量帧");
+        assertEquals(2, encoder.getVersion("SPY"));
+    }
+
+    @Test
+    void testSnapshotFallsBackWhenNoBroadcastYet() {
+        SpyDeltaEncoder encoder = new SpyDeltaEncoder(objectMapper);
+
+        assertTrue(snapshot(encoder).isEmpty(), "无数据时不应产生快照");
+        assertTrue(encoder.snapshot("SPY", ticker -> Optional.of(update(0))).isPresent(), "首次订阅应以热窗口最新数据初始化状态");
+        assertEquals(1, encoder.getVersion("SPY"));
+    }
+
+    @Test
+    void testBroadcastDeliversEveryUpdateToEverySession() throws Exception {
+        Result legacy = runBroadcast(false, SMALL_RECIPIENTS);
+        Result delta = runBroadcast(true, SMALL_RECIPIENTS);
+
+        assertTrue(delta.bytesPerUpdate * 2 < legacy.bytesPerUpdate, "差量帧应显著小于完整帧");
+    }
+
+    @Test
+    @Tag("load")
+    void benchmarkBroadcast() throws Exception {
+        Result legacy = runBroadcast(false, RECIPIENTS);
+        Result delta = runBroadcast(true, RECIPIENTS);
+
+        report("v1完整帧", legacy);
+        report("v2差量帧", delta);
+
+        assertTrue(delta.bytesPerUpdate * 2 < legacy.bytesPerUpdate, "差量帧应显著小于完整帧");
+    }
+
+    private Result runBroadcast(boolean delta, int recipients) throws Exception {
+        SpyFlowQueryService queryService = mock(SpyFlowQueryService.class);
+        when(queryService.getLatest("SPY")).thenReturn(Optional.empty());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SpyWebSocketHandler handler = new SpyWebSocketHandler(queryService, mock(SpyFlowHotWindow.class), objectMapper,
+            new SpyDeltaEncoder(objectMapper), new SpyTopicRouter(), new SpyUpdateJournal(objectMapper, meterRegistry, 1024),
+            new InMemorySpyUpdateBackplane(meterRegistry), new SpyFreshnessTracker(meterRegistry, Duration.ofMinutes(15)),
+            meterRegistry, Runnable::run, Duration.ofSeconds(10), 1 << 20);
+
+        String subscribe = delta
+            ? "{\"action\":\"subscribe\",\"type\":\"spy_updates\",\"protocol\":2}"
+            : "{\"action\":\"subscribe\",\"type\":\"spy_updates\"}";
+        handler.broadcastSpyUpdate(update(0));
+        List<CountingSession> sessions = new ArrayList<>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            CountingSession session = new CountingSession("s" + i);
+            handler.afterConnectionEstablished(session);
+            handler.handleTextMessage(session, new TextMessage(subscribe));
+            sessions.add(session);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        CountingSession probe = sessions.get(0);
+        long cpu = 0;
+        long bytes = 0;
+        for (int i = 1; i <= WARMUP + UPDATES; i++) {
+            SpyFlowResult update = update(i);
+            long probeBefore = probe.bytes;
+            long start = threads.getCurrentThreadCpuTime();
+            handler.broadcastSpyUpdate(update);
+            if (i > WARMUP) {
+                cpu += threads.getCurrentThreadCpuTime() - start;
+                bytes += probe.bytes - probeBefore;
+            }
+        }
+        for (CountingSession session : sessions) {
+            assertEquals(WARMUP + UPDATES, session.updates, "每个会话应收到全部更新");
+        }
+        return new Result((double) bytes / UPDATES, cpu / UPDATES);
+    }
+
+    private Optional<SpyFrame> snapshot(SpyDeltaEncoder encoder) {
+        return encoder.snapshot("SPY", ticker -> Optional.empty());
+    }
+
+    private void report(String name, Result result) {
+        log.info(String.format("%-8s 会话数=%d 每次更新字节=%.1f 每次广播CPU=%.2fms 每会话CPU=%.0fns",
+            name, RECIPIENTS, result.bytesPerUpdate, result.cpuNanosPerBroadcast / 1e6,
+            (double) result.cpuNanosPerBroadcast / RECIPIENTS));
+    }
+
+    /**
+     * 盘中更新: 资金流与时间戳变化，维度与来源不变
+     */
+    private SpyFlowResult update(int i) {
+        return SpyFlowResult.builder()
+            .id(1000L + i)
+            .ticker("SPY")
+            .dataDate(LocalDate.of(2024, 3, 15))
+            .timestamp(Instant.parse("2024-03-15T14:30:00Z").plusSeconds(60L * i))
+            .finalNetInflow(BigDecimal.valueOf(123_456_789L + i * 1_000L, 2))
+            .flowIntensity(new BigDecimal("0.1234"))
+            .volumeWeightedPrice(new BigDecimal("512.3456"))
+            .etfComContribution(BigDecimal.valueOf(61_728_394L + i * 500L, 2))
+            .yahooContribution(BigDecimal.valueOf(61_728_395L + i * 500L, 2))
+            .primarySource("etf.com")
+            .overallConfidence(new BigDecimal("85.50"))
+            .dataQualityScore(new BigDecimal("90.00"))
+            .validationPassed(true)
+            .geographicDimension("North America")
+            .currencyDimension("USD")
+            .marketCapDimension("Large Cap")
+            .sectorDimension("Broad Market")
+            .createdAt(Instant.parse("2024-03-15T14:30:01Z").plusSeconds(60L * i))
+            .build();
+    }
+
+    private record Result(double bytesPerUpdate, long cpuNanosPerBroadcast) {
+    }
+
+    /**
+     * 轻量会话桩，按UTF-8编码计数以模拟容器发送时的编码开销
+     */
+    private static class CountingSession implements WebSocketSession {
+
+        private final String id;
+        private final Map<String, Object> attributes = new HashMap<>();
+        private long bytes;
+        private int updates;
+
+        CountingSession(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            String payload = (String) message.getPayload();
+            if (payload.contains("\"spy_update\"") || payload.startsWith("{\"type\":\"delta\"")) {
+                bytes += payload.getBytes(StandardCharsets.UTF_8).length;
+                updates++;
+            }
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return HttpHeaders.EMPTY;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.tanggo.fund.cashflow.spy.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.event.SpyUpdateJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * WebSocket帧编码测试: CBOR转码一致性、会话编码选择及各编码的字节数
+ */
+class SpyFrameTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Test
+    void testCborCarriesSameContent() throws Exception {
+        SpyFrame frame = SpyFrame.of(updatePayload());
+
+        ByteBuffer first = (ByteBuffer) frame.message(SpyFrame.Encoding.CBOR).getPayload();
+        first.position(first.limit());
+        BinaryMessage second = (BinaryMessage) frame.message(SpyFrame.Encoding.CBOR);
+        assertEquals(frame.length(SpyFrame.Encoding.CBOR), second.getPayloadLength(), "二进制帧被发送消费后不应影响其他会话");
+        assertSame(frame.message(SpyFrame.Encoding.JSON), frame.message(SpyFrame.Encoding.JSON), "文本消息应在会话间共享");
+
+        byte[] cbor = new byte[second.getPayloadLength()];
+        second.getPayload().get(cbor);
+        JsonNode decoded = new CBORMapper().readTree(cbor);
+        JsonNode expected = objectMapper.readTree(frame.getJson());
+        assertEquals(expected.get("seq").asLong(), decoded.get("seq").asLong());
+        assertEquals(expected.get("data").get("primarySource"), decoded.get("data").get("primarySource"));
+        assertEquals(expected.get("data").get("finalNetInflow").asDouble(), decoded.get("data").get("finalNetInflow").asDouble());
+    }
+
+    @Test
+    void testEncodingFollowsNegotiatedSubProtocol() {
+        WebSocketSession cbor = mock(WebSocketSession.class);
+        when(cbor.getAcceptedProtocol()).thenReturn("spy.cbor");
+        SockJsSession sockJs = mock(SockJsSession.class);
+        when(sockJs.getAcceptedProtocol()).thenReturn("spy.cbor");
+
+        assertEquals(SpyFrame.Encoding.CBOR, SpyFrame.Encoding.of(cbor));
+        assertEquals(SpyFrame.Encoding.JSON, SpyFrame.Encoding.of(sockJs), "SockJS只支持文本帧");
+        assertEquals(SpyFrame.Encoding.JSON, SpyFrame.Encoding.of(mock(WebSocketSession.class)), "未协商子协议时默认JSON");
+    }
+
+    @Test
+    void testCompactEncodingsAreSmaller() throws Exception {
+        SpyFrame full = SpyFrame.of(updatePayload());
+        SpyDeltaEncoder deltaEncoder = new SpyDeltaEncoder(objectMapper);
+        deltaEncoder.apply(result(0), 1);
+        SpyFrame delta = deltaEncoder.apply(result(1), 2);
+
+        for (SpyFrame frame : new SpyFrame[]{full, delta}) {
+            int json = frame.length(SpyFrame.Encoding.JSON);
+            int cbor = frame.length(SpyFrame.Encoding.CBOR);
+            assertTrue(cbor < json, (frame == full ? "v1完整帧" : "v2差量帧") + ": CBOR应小于JSON");
+        }
+        assertTrue(deflated(((TextMessage) full.message(SpyFrame.Encoding.JSON)).asBytes())
+            < full.length(SpyFrame.Encoding.JSON), "permessage-deflate应压缩完整帧");
+    }
+
+    /**
+     * 与permessage-deflate相同的raw deflate，不含上下文复用
+     */
+    private int deflated(byte[] payload) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(payload);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.size();
+    }
+
+    private String updatePayload() {
+        SpyUpdateJournal journal = new SpyUpdateJournal(objectMapper, new SimpleMeterRegistry(), 4);
+        return journal.append(result(0)).getPayload();
+    }
+
+    private SpyFlowResult result(int i) {
+        return SpyFlowResult.builder()
+            .id(1000L + i)
+            .ticker("SPY")
+            .dataDate(LocalDate.of(2024, 3, 15))
+            .timestamp(Instant.parse("2024-03-15T14:30:00Z").plusSeconds(60L * i))
+            .finalNetInflow(BigDecimal.valueOf(123_456_789L + i * 1_000L, 2))
+            .flowIntensity(new BigDecimal("0.1234"))
+            .volumeWeightedPrice(new BigDecimal("512.3456"))
+            .primarySource("etf.com")
+            .overallConfidence(new BigDecimal("85.50"))
+            .dataQualityScore(new BigDecimal("90.00"))
+            .validationPassed(true)
+            .geographicDimension("North America")
+            .currencyDimension("USD")
+            .marketCapDimension("Large Cap")
+            .sectorDimension("Broad Market")
+            .createdAt(Instant.parse("2024-03-15T14:30:01Z"))
+            .build();
+    }
+}
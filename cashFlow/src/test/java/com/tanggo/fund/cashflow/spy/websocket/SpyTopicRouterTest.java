@@ -0,0 +1,66 @@
+package com.tanggo.fund.cashflow.spy.websocket;
+
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * WebSocket主题路由测试
+ */
+class SpyTopicRouterTest {
+
+    private final SpyTopicRouter router = new SpyTopicRouter();
+
+    @Test
+    void testRouteReachesOnlyInterestedSessionsOnce() {
+        router.subscribe("all", List.of(SpyTopicRouter.ALL));
+        router.subscribe("spy", List.of("ticker:SPY", "sector:Broad Market"));
+        router.subscribe("qqq", List.of("ticker:QQQ"));
+        router.subscribe("tech", List.of("sector:Technology"));
+
+        List<String> topics = SpyTopicRouter.topicsOf(result("SPY", "Broad Market"));
+
+        assertEquals(Set.of("all", "spy"), Set.copyOf(router.route(topics)), "只应路由到订阅了所属主题的会话");
+        assertEquals(2, router.route(topics).size(), "订阅多个匹配主题的会话只应出现一次");
+        assertEquals(Set.of("all", "qqq", "tech"), Set.copyOf(router.route(SpyTopicRouter.topicsOf(result("QQQ", "Technology")))));
+        assertTrue(SpyTopicRouter.topicsOf(result(null, null)).contains("ticker:SPY"), "缺省ticker按SPY路由");
+    }
+
+    @Test
+    void testUnsubscribeAndRemoveCleanUpIndex() {
+        router.subscribe("s1", List.of("ticker:SPY", "geo:North America"));
+        router.subscribe("s2", List.of("ticker:SPY"));
+
+        router.unsubscribe("s1", List.of("ticker:SPY"));
+        assertEquals(Set.of("geo:North America"), router.topicsOf("s1"));
+        assertEquals(Set.of("s2"), Set.copyOf(router.route(List.of("ticker:SPY"))));
+
+        router.remove("s1");
+        router.remove("s2");
+        assertFalse(router.isSubscribed("s1"));
+        assertEquals(0, router.getTopicCount(), "无订阅者的主题应移除");
+        assertTrue(router.route(List.of("ticker:SPY")).isEmpty());
+    }
+
+    @Test
+    void testTopicValidation() {
+        assertTrue(SpyTopicRouter.isValid("spy_updates"));
+        assertTrue(SpyTopicRouter.isValid("ticker:QQQ"));
+        assertTrue(SpyTopicRouter.isValid("marketCap:Large Cap"));
+        assertFalse(SpyTopicRouter.isValid("ticker:"), "维度值不能为空");
+        assertFalse(SpyTopicRouter.isValid("price:1"), "未知维度应拒绝");
+        assertFalse(SpyTopicRouter.isValid(null));
+    }
+
+    private SpyFlowResult result(String ticker, String sector) {
+        return SpyFlowResult.builder()
+            .ticker(ticker)
+            .geographicDimension("North America")
+            .sectorDimension(sector)
+            .build();
+    }
+}
@@ -0,0 +1,261 @@
+package com.tanggo.fund.cashflow.spy.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanggo.fund.cashflow.spy.cache.SpyFlowHotWindow;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.event.InMemorySpyUpdateBackplane;
+import com.tanggo.fund.cashflow.spy.event.SpyUpdateJournal;
+import com.tanggo.fund.cashflow.spy.service.SpyFlowQueryService;
+import com.tanggo.fund.cashflow.spy.service.SpyFreshnessTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * WebSocket广播测试: 慢客户端隔离、会话内顺序、断线重连补发与多实例背板投递
+ */
+class SpyWebSocketHandlerTest {
+
+    private static final String SUBSCRIBE = "{\"action\":\"subscribe\",\"type\":\"spy_updates\"}";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final SpyFlowQueryService queryService = mock(SpyFlowQueryService.class);
+    private final SpyUpdateJournal journal = new SpyUpdateJournal(objectMapper, meterRegistry, 4);
+    private final ExecutorService fanoutExecutor = Executors.newFixedThreadPool(4);
+    private final CountDownLatch slowRelease = new CountDownLatch(1);
+    private SpyWebSocketHandler handler;
+    private volatile boolean slowBlocking;
+
+    @BeforeEach
+    void setUp() {
+        when(queryService.getLatest("SPY")).thenReturn(Optional.empty());
+
+        handler = new SpyWebSocketHandler(queryService, mock(SpyFlowHotWindow.class), objectMapper,
+            new SpyDeltaEncoder(objectMapper), new SpyTopicRouter(), journal, new InMemorySpyUpdateBackplane(meterRegistry),
+            new SpyFreshnessTracker(meterRegistry, Duration.ofMinutes(15)), meterRegistry, fanoutExecutor,
+            Duration.ofSeconds(10), 4096);
+    }
+
+    @AfterEach
+    void tearDown() {
+        slowRelease.countDown();
+        fanoutExecutor.shutdownNow();
+    }
+
+    @Test
+    void testSlowConsumerIsEvictedWithoutDelayingOthers() throws Exception {
+        List<String> fastReceived = new CopyOnWriteArrayList<>();
+        WebSocketSession fast = session("fast", fastReceived, false);
+        WebSocketSession slow = session("slow", new CopyOnWriteArrayList<>(), true);
+
+        for (WebSocketSession session : List.of(fast, slow)) {
+            handler.afterConnectionEstablished(session);
+            handler.handleTextMessage(session, new TextMessage(SUBSCRIBE));
+        }
+        slowBlocking = true;
+
+        // 按采集节奏持续广播，慢客户端的发送队列逐渐积压到上限
+        for (int i = 0; i < 30; i++) {
+            handler.broadcastSpyUpdate(result());
+            Thread.sleep(1);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((updates(fastReceived) < 30 || handler.getActiveConnectionCount() > 1 || fanoutCount() < 2)
+            && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(30, updates(fastReceived), "慢客户端阻塞时其他会话应及时收到全部更新");
+        assertEquals(1, handler.getActiveConnectionCount(), "缓冲溢出的慢客户端应被移除");
+        assertEquals(1.0, meterRegistry.get("spy.ws.evicted").counter().count());
+        assertTrue(fanoutCount() >= 2, "慢客户端阻塞期间其余广播的分发耗时应已记录");
+    }
+
+    @Test
+    void testUpdatesToOneSessionStayInOrder() throws Exception {
+        SpyWebSocketHandler ordered = new SpyWebSocketHandler(queryService, mock(SpyFlowHotWindow.class), objectMapper,
+            new SpyDeltaEncoder(objectMapper), new SpyTopicRouter(), journal, new InMemorySpyUpdateBackplane(meterRegistry),
+            new SpyFreshnessTracker(meterRegistry, Duration.ofMinutes(15)), meterRegistry, fanoutExecutor,
+            Duration.ofSeconds(10), 1 << 20);
+        List<String> received = new CopyOnWriteArrayList<>();
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("ordered");
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            // 发送耗时抖动，多个分发线程并发时容易暴露乱序
+            Thread.sleep(ThreadLocalRandom.current().nextInt(2));
+            received.add(((WebSocketMessage<?>) invocation.getArgument(0)).getPayload().toString());
+            return null;
+        }).when(session).sendMessage(any());
+        ordered.afterConnectionEstablished(session);
+        ordered.handleTextMessage(session, new TextMessage(SUBSCRIBE));
+
+        for (int i = 0; i < 200; i++) {
+            ordered.broadcastSpyUpdate(result());
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (updates(received) < 200 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        List<Long> seqs = new ArrayList<>();
+        for (String payload : received) {
+            if (payload.contains("\"spy_update\"")) {
+                seqs.add(objectMapper.readTree(payload).get("seq").asLong());
+            }
+        }
+        assertEquals(200, seqs.size());
+        for (int i = 1; i < seqs.size(); i++) {
+            assertTrue(seqs.get(i) > seqs.get(i - 1), "同一会话的更新应按广播顺序发送: " + seqs);
+        }
+    }
+
+    @Test
+    void testSaturatedFanoutNeverSendsOnBroadcastThread() throws Exception {
+        SpyWebSocketHandler saturated = new SpyWebSocketHandler(queryService, mock(SpyFlowHotWindow.class), objectMapper,
+            new SpyDeltaEncoder(objectMapper), new SpyTopicRouter(), journal, new InMemorySpyUpdateBackplane(meterRegistry),
+            new SpyFreshnessTracker(meterRegistry, Duration.ofMinutes(15)), meterRegistry, task -> {
+                throw new RejectedExecutionException("full");
+            }, Duration.ofSeconds(10), 1 << 20);
+        List<String> received = new CopyOnWriteArrayList<>();
+        WebSocketSession session = session("saturated", received, false);
+        saturated.afterConnectionEstablished(session);
+        saturated.handleTextMessage(session, new TextMessage(SUBSCRIBE));
+
+        saturated.broadcastSpyUpdate(result());
+
+        assertEquals(0, updates(received), "分发线程池拒绝时不应在广播线程上发送");
+        assertEquals(0, saturated.getActiveConnectionCount(), "无法排队的会话应被断开，重连后补发");
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1, meterRegistry.get("spy.ws.fanout").timer().count(), "丢弃的帧也应结束本次分发");
+    }
+
+    @Test
+    void testReconnectReplaysMissedUpdatesWithoutDatabase() throws Exception {
+        WebSocketSession before = session("before", new CopyOnWriteArrayList<>(), false);
+        handler.afterConnectionEstablished(before);
+        handler.handleTextMessage(before, new TextMessage(SUBSCRIBE));
+        handler.broadcastSpyUpdate(result());
+        long lastSeq = journal.head();
+        handler.afterConnectionClosed(before, CloseStatus.GOING_AWAY);
+
+        handler.broadcastSpyUpdate(result());
+        handler.broadcastSpyUpdate(result());
+
+        List<String> received = new CopyOnWriteArrayList<>();
+        WebSocketSession after = session("after", received, false);
+        handler.afterConnectionEstablished(after);
+        handler.handleTextMessage(after, new TextMessage(resume(lastSeq)));
+
+        List<Long> replayed = new ArrayList<>();
+        for (String payload : received) {
+            if (payload.contains("\"spy_update\"")) {
+                replayed.add(objectMapper.readTree(payload).get("seq").asLong());
+            }
+        }
+        assertEquals(List.of(lastSeq + 1, lastSeq + 2), replayed, "应按顺序补发断线期间的更新");
+        assertTrue(received.stream().anyMatch(payload -> payload.contains("\"resumed\":true")));
+        verify(queryService, never()).getLatest(any());
+
+        for (int i = 0; i < 5; i++) {
+            handler.broadcastSpyUpdate(result());
+        }
+        List<String> stale = new CopyOnWriteArrayList<>();
+        WebSocketSession late = session("late", stale, false);
+        handler.afterConnectionEstablished(late);
+        handler.handleTextMessage(late, new TextMessage(resume(lastSeq)));
+
+        assertTrue(stale.stream().anyMatch(payload -> payload.contains("\"type\":\"reset\"")), "缺口超出日志时应发送reset");
+        assertTrue(stale.stream().anyMatch(payload -> payload.contains("\"latest_data\"")), "reset后应发送内存中的最新数据");
+        verify(queryService, never()).getLatest(any());
+    }
+
+    @Test
+    void testBackplaneUpdateReachesSessionsOnEveryInstance() throws Exception {
+        InMemorySpyUpdateBackplane backplane = new InMemorySpyUpdateBackplane(meterRegistry);
+        List<List<String>> received = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            SimpleMeterRegistry instanceRegistry = new SimpleMeterRegistry();
+            SpyWebSocketHandler instance = new SpyWebSocketHandler(queryService, mock(SpyFlowHotWindow.class),
+                objectMapper, new SpyDeltaEncoder(objectMapper), new SpyTopicRouter(),
+                new SpyUpdateJournal(objectMapper, instanceRegistry, 4), backplane,
+                new SpyFreshnessTracker(instanceRegistry, Duration.ofMinutes(15)), instanceRegistry, Runnable::run,
+                Duration.ofSeconds(10), 200);
+            List<String> messages = new CopyOnWriteArrayList<>();
+            WebSocketSession session = session("instance-" + i, messages, false);
+            instance.afterConnectionEstablished(session);
+            instance.handleTextMessage(session, new TextMessage(SUBSCRIBE));
+            received.add(messages);
+        }
+
+        backplane.publish(result());
+
+        for (List<String> messages : received) {
+            assertEquals(1, updates(messages), "每个实例都应向本地会话投递一次");
+        }
+        assertEquals(1.0, meterRegistry.get("spy.backplane.published").counter().count());
+    }
+
+    private String resume(long lastSeq) {
+        return "{\"action\":\"subscribe\",\"type\":\"spy_updates\",\"lastSeq\":" + lastSeq + "}";
+    }
+
+    private WebSocketSession session(String id, List<String> received, boolean slow) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            if (slow && slowBlocking) {
+                slowRelease.await(10, TimeUnit.SECONDS);
+            }
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            received.add(message.getPayload().toString());
+            return null;
+        }).when(session).sendMessage(any());
+        return session;
+    }
+
+    private long fanoutCount() {
+        return meterRegistry.get("spy.ws.fanout").timer().count();
+    }
+
+    private long updates(List<String> received) {
+        return received.stream().filter(payload -> payload.contains("\"spy_update\"")).count();
+    }
+
+    private SpyFlowResult result() {
+        return SpyFlowResult.builder()
+            .dataDate(LocalDate.of(2024, 3, 15))
+            .timestamp(Instant.parse("2024-03-15T21:00:00Z"))
+            .finalNetInflow(new BigDecimal("1234567.89"))
+            .primarySource("etf.com")
+            .build();
+    }
+}
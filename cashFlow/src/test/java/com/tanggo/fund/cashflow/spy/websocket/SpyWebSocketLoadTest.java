@@ -0,0 +1,332 @@
+package com.tanggo.fund.cashflow.spy.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.tanggo.fund.cashflow.spy.entity.SpyFlowResult;
+import com.tanggo.fund.cashflow.spy.event.SpyUpdateJournal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.websocket.ContainerProvider;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * WebSocket广播压测
+ *
+ * 在随机端口启动应用，进程内建立N个原生WebSocket客户端订阅spy_updates，
+ * 再直接调用broadcastSpyUpdate按批次推送合成更新，输出连接速率、投递延迟p50/p99、
+ * 单会话内存与丢失消息数。默认构建不运行，使用 mvn -B test -Pload-test 执行，参数:
+ * <ul>
+ *   <li>load.clients: 客户端数(默认2000)</li>
+ *   <li>load.bursts / load.burst-size / load.burst-interval-ms: 批次数、每批更新数、批间隔</li>
+ *   <li>load.protocol: 1完整帧 / 2差量帧；load.encoding: json / cbor</li>
+ *   <li>load.connect-concurrency: 同时进行的握手数；load.drain-timeout: 等待投递完成的秒数</li>
+ * </ul>
+ * 客户端与服务端同进程，延迟包含客户端解析，内存为两端合计；用于同一环境下前后对比
+ */
+@Slf4j
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "logging.level.com.tanggo.fund.cashflow.spy.websocket=WARN",
+    "logging.level.org.springframework.web.socket=WARN"
+})
+@ActiveProfiles("test")
+class SpyWebSocketLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 2000);
+    private static final int BURSTS = Integer.getInteger("load.bursts", 10);
+    private static final int BURST_SIZE = Integer.getInteger("load.burst-size", 10);
+    private static final long BURST_INTERVAL_MS = Long.getLong("load.burst-interval-ms", 200);
+    private static final int PROTOCOL = Integer.getInteger("load.protocol", 1);
+    private static final SpyFrame.Encoding ENCODING =
+        SpyFrame.Encoding.valueOf(System.getProperty("load.encoding", "json").toUpperCase());
+    private static final int CONNECT_CONCURRENCY = Integer.getInteger("load.connect-concurrency", 200);
+    private static final long DRAIN_TIMEOUT_SECONDS = Long.getLong("load.drain-timeout", 60);
+
+    private static final CBORMapper CBOR_MAPPER = new CBORMapper();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private SpyWebSocketHandler handler;
+
+    @Autowired
+    private SpyUpdateJournal journal;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Queue<WebSocketSession> clientSessions = new ConcurrentLinkedQueue<>();
+    private ThreadPoolTaskExecutor connectExecutor;
+
+    // 接收记录: 预分配避免压测期间分配干扰内存与延迟
+    private final int capacity = CLIENTS * BURSTS * BURST_SIZE;
+    private final long[] receivedSeq = new long[capacity];
+    private final long[] receivedAt = new long[capacity];
+    private final AtomicInteger received = new AtomicInteger();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicInteger serverClosed = new AtomicInteger();
+    private volatile long measureFrom = Long.MAX_VALUE;
+
+    @AfterEach
+    void tearDown() {
+        for (WebSocketSession session : clientSessions) {
+            try {
+                session.close();
+            } catch (Exception e) {
+                log.debug("关闭压测客户端失败: {}", e.getMessage());
+            }
+        }
+        if (connectExecutor != null) {
+            connectExecutor.shutdown();
+        }
+    }
+
+    @Test
+    void loadBroadcastFanout() throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long heapBefore = usedHeapAfterGc(memory);
+
+        // 1. 建立连接并订阅
+        CountDownLatch subscribed = new CountDownLatch(CLIENTS);
+        AtomicInteger failed = new AtomicInteger();
+        long connectStart = System.nanoTime();
+        connect(subscribed, failed);
+        boolean allSubscribed = subscribed.await(Math.max(60, CLIENTS / 50), TimeUnit.SECONDS);
+        double connectSeconds = (System.nanoTime() - connectStart) / 1e9;
+        int connected = CLIENTS - (int) subscribed.getCount();
+
+        long heapAfter = usedHeapAfterGc(memory);
+
+        // 2. 预热一批，等待投递完成后再开始计量
+        int sequence = 0;
+        for (int i = 0; i < BURST_SIZE; i++) {
+            handler.broadcastSpyUpdate(result(sequence++));
+        }
+        awaitUpdates((long) connected * BURST_SIZE);
+        measureFrom = journal.head() + 1;
+
+        // 3. 按批次广播，记录每个seq的发出时刻
+        Counter evicted = meterRegistry.find("spy.ws.evicted").counter();
+        double evictedBefore = evicted != null ? evicted.count() : 0;
+        long updatesBefore = updates.get();
+        Map<Long, Long> sentAt = new HashMap<>();
+        long broadcastStart = System.nanoTime();
+        for (int b = 0; b < BURSTS; b++) {
+            for (int i = 0; i < BURST_SIZE; i++) {
+                long start = System.nanoTime();
+                handler.broadcastSpyUpdate(result(sequence++));
+                sentAt.put(journal.head(), start);
+            }
+            Thread.sleep(BURST_INTERVAL_MS);
+        }
+        long expected = (long) connected * sentAt.size();
+        awaitUpdates(updatesBefore + expected);
+        double broadcastSeconds = (System.nanoTime() - broadcastStart) / 1e9;
+
+        // 4. 汇总
+        int count = Math.min(received.get(), capacity);
+        long[] latencies = new long[count];
+        int delivered = 0;
+        for (int i = 0; i < count; i++) {
+            Long start = sentAt.get(receivedSeq[i]);
+            if (start != null) {
+                latencies[delivered++] = receivedAt[i] - start;
+            }
+        }
+        latencies = Arrays.copyOf(latencies, delivered);
+        Arrays.sort(latencies);
+        double evictedCount = (evicted != null ? evicted.count() : 0) - evictedBefore;
+
+        System.out.printf("===== SPY WebSocket压测 (protocol=v%d, encoding=%s) =====%n", PROTOCOL, ENCODING.tag());
+        System.out.printf("连接: %d/%d 成功, 失败%d, 耗时%.2fs, 速率%.0f个/s%n",
+            connected, CLIENTS, failed.get(), connectSeconds, connected / connectSeconds);
+        System.out.printf("内存: 堆增量%.1fMB, 每会话约%.1fKB(含客户端)%n",
+            (heapAfter - heapBefore) / 1048576.0, connected == 0 ? 0 : (heapAfter - heapBefore) / 1024.0 / connected);
+        System.out.printf("广播: %d批 x %d条, 耗时%.2fs, 投递%d/%d%n",
+            BURSTS, BURST_SIZE, broadcastSeconds, delivered, expected);
+        System.out.printf("投递延迟: p50=%.2fms p99=%.2fms max=%.2fms%n",
+            percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0));
+        System.out.printf("丢失: %d条, 慢消费者驱逐%.0f个, 服务端断开%d个%n",
+            expected - delivered, evictedCount, serverClosed.get());
+
+        assertTrue(allSubscribed, "全部客户端应在时限内完成订阅: " + connected + "/" + CLIENTS);
+        assertTrue(delivered > 0, "应有更新投递到客户端");
+    }
+
+    private void connect(CountDownLatch subscribed, AtomicInteger failed) throws InterruptedException {
+        connectExecutor = new ThreadPoolTaskExecutor();
+        connectExecutor.setCorePoolSize(Math.min(CONNECT_CONCURRENCY, 32));
+        connectExecutor.setQueueCapacity(CLIENTS);
+        connectExecutor.setThreadNamePrefix("load-connect-");
+        connectExecutor.initialize();
+
+        StandardWebSocketClient client = new StandardWebSocketClient(ContainerProvider.getWebSocketContainer());
+        client.setTaskExecutor(connectExecutor);
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.setSecWebSocketProtocol(ENCODING.getSubProtocol());
+        URI uri = URI.create("ws://localhost:" + port + "/ws/spy/websocket");
+
+        Semaphore inFlight = new Semaphore(CONNECT_CONCURRENCY);
+        for (int i = 0; i < CLIENTS; i++) {
+            inFlight.acquire();
+            client.execute(new LoadClient(subscribed), headers, uri).whenComplete((session, error) -> {
+                inFlight.release();
+                if (error != null) {
+                    failed.incrementAndGet();
+                    log.warn("压测客户端连接失败: {}", error.getMessage());
+                } else {
+                    clientSessions.add(session);
+                }
+            });
+        }
+    }
+
+    private void awaitUpdates(long target) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        while (updates.get() < target && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = Math.max(0, (int) Math.ceil(p * sorted.length) - 1);
+        return sorted[index] / 1e6;
+    }
+
+    private void record(long seq, long at) {
+        updates.incrementAndGet();
+        if (seq < measureFrom) {
+            return;
+        }
+        int index = received.getAndIncrement();
+        if (index < capacity) {
+            receivedSeq[index] = seq;
+            receivedAt[index] = at;
+        }
+    }
+
+    private SpyFlowResult result(int i) {
+        return SpyFlowResult.builder()
+            .id(1_000_000L + i)
+            .ticker("SPY")
+            .dataDate(LocalDate.of(2024, 3, 15))
+            .timestamp(Instant.parse("2024-03-15T14:30:00Z").plusSeconds(i))
+            .finalNetInflow(BigDecimal.valueOf(123_456_789L + i * 1_000L, 2))
+            .flowIntensity(new BigDecimal("0.1234"))
+            .volumeWeightedPrice(BigDecimal.valueOf(5_123_456L + i, 4))
+            .primarySource("etf.com")
+            .overallConfidence(new BigDecimal("85.50"))
+            .dataQualityScore(new BigDecimal("90.00"))
+            .validationPassed(true)
+            .geographicDimension("North America")
+            .currencyDimension("USD")
+            .marketCapDimension("Large Cap")
+            .sectorDimension("Broad Market")
+            .build();
+    }
+
+    /**
+     * 压测客户端: 连接后订阅，只解析更新帧的类型与seq
+     */
+    private class LoadClient extends AbstractWebSocketHandler {
+
+        private final CountDownLatch subscribed;
+
+        LoadClient(CountDownLatch subscribed) {
+            this.subscribed = subscribed;
+        }
+
+        @Override
+        public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+            session.sendMessage(new TextMessage(
+                "{\"action\":\"subscribe\",\"type\":\"spy_updates\",\"protocol\":" + PROTOCOL + "}"));
+        }
+
+        @Override
+        protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+            long at = System.nanoTime();
+            String payload = message.getPayload();
+            if (payload.contains("\"type\":\"spy_update\"") || payload.contains("\"type\":\"delta\"")) {
+                record(seqOf(payload), at);
+            } else if (payload.contains("\"type\":\"subscription_confirmed\"")) {
+                subscribed.countDown();
+            }
+        }
+
+        @Override
+        protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+            long at = System.nanoTime();
+            byte[] payload = new byte[message.getPayloadLength()];
+            message.getPayload().get(payload);
+            JsonNode frame = CBOR_MAPPER.readTree(payload);
+            String type = frame.path("type").asText();
+            if ("spy_update".equals(type) || "delta".equals(type)) {
+                record(frame.path("seq").asLong(), at);
+            } else if ("subscription_confirmed".equals(type)) {
+                subscribed.countDown();
+            }
+        }
+
+        @Override
+        public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+            if (!CloseStatus.NORMAL.equalsCode(status)) {
+                serverClosed.incrementAndGet();
+            }
+        }
+
+        private long seqOf(String payload) {
+            int start = payload.indexOf("\"seq\":") + 6;
+            int end = start;
+            while (end < payload.length() && Character.isDigit(payload.charAt(end))) {
+                end++;
+            }
+            return Long.parseLong(payload, start, end, 10);
+        }
+    }
+}